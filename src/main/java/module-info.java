@@ -2,6 +2,7 @@ module ro.ubbcluj.map.socialnetworkfx {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires org.postgresql.jdbc;
 
     exports ro.ubbcluj.map.socialnetworkfx;
     opens ro.ubbcluj.map.socialnetworkfx to javafx.fxml;
@@ -1,23 +1,32 @@
 package ro.ubbcluj.map.socialnetworkfx.controllers;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
+import javafx.geometry.Orientation;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.*;
 import javafx.stage.Stage;
 import ro.ubbcluj.map.socialnetworkfx.SocialNetworkApplication;
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
 import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
 import ro.ubbcluj.map.socialnetworkfx.events.SocialNetworkEvent;
 import ro.ubbcluj.map.socialnetworkfx.events.UserChangeEvent;
-import ro.ubbcluj.map.socialnetworkfx.exception.ServiceException;
+import ro.ubbcluj.map.socialnetworkfx.repository.BatchResult;
+import ro.ubbcluj.map.socialnetworkfx.repository.CachingUserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.ConnectionPool;
 import ro.ubbcluj.map.socialnetworkfx.repository.FriendshipDBRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.Snapshot;
+import ro.ubbcluj.map.socialnetworkfx.repository.SnapshotFriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.SnapshotUserRepository;
 import ro.ubbcluj.map.socialnetworkfx.repository.UserDBRepository;
+import ro.ubbcluj.map.socialnetworkfx.service.AsyncService;
 import ro.ubbcluj.map.socialnetworkfx.service.Service;
 import ro.ubbcluj.map.socialnetworkfx.utility.PopupEnum;
 import ro.ubbcluj.map.socialnetworkfx.utility.RandomUserGenerator;
@@ -25,8 +34,15 @@ import ro.ubbcluj.map.socialnetworkfx.utility.observer.Observer;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 /**
  * Controller for the admin interface of the social network.
@@ -61,8 +77,22 @@ public class AdminController implements Initializable, Observer<SocialNetworkEve
     public Button friendshipAddButton;
     @FXML
     public Button friendshipRemoveButton;
-    // Service dependency.
-    private Service service;
+    // Number of users loaded in the user table view at a time.
+    private static final int USER_PAGE_SIZE = 50;
+    // Number of users kept in memory and the time after which they are read again from the database.
+    private static final int USER_CACHE_SIZE = 1_000;
+    private static final long USER_CACHE_TTL_MILLIS = 5 * 60_000;
+    // File of the snapshot of the network, and the time before its watermark from which the changes are caught up,
+    // covering the transactions that were still running when the snapshot was taken.
+    private static final Path SNAPSHOT_FILE = Path.of(System.getProperty("user.home"), ".socialnetworkfx", "network.snapshot");
+    private static final Duration SNAPSHOT_CATCH_UP_MARGIN = Duration.ofMinutes(1);
+    // Service dependency, used in the background so that the UI thread never waits for the database.
+    private AsyncService service;
+    // Key after which the next page of users starts, along with the possibility of having a next page.
+    private UUID lastUserKey = null;
+    private boolean hasMoreUsers = true;
+    // Whether a page of users is being loaded.
+    private boolean loadingUsers = false;
 
     /**
      * Adds headers and texts for the popup alerts.
@@ -143,32 +173,52 @@ public class AdminController implements Initializable, Observer<SocialNetworkEve
         String USERNAME = "postgres";
         String PASSWORD = "postgres";
 
+        // Initializing the connection pool shared by the repositories.
+        ConnectionPool connectionPool = new ConnectionPool(DB_URL, USERNAME, PASSWORD);
+
         // Initializing the database repositories.
-        UserDBRepository userDBRepository = new UserDBRepository(DB_URL, USERNAME, PASSWORD);
-        FriendshipDBRepository friendshipDBRepository = new FriendshipDBRepository(DB_URL, USERNAME, PASSWORD);
-
-        // Initializing the service.
-        this.service = new Service(userDBRepository, friendshipDBRepository);
-
-        // Trying to add 20 new users if there are less than 10 users.
-        if (this.service.getUsers().size() < 10) {
-            ArrayList<User> users = RandomUserGenerator.generate20Users();
-
-            users.forEach(user -> {
-                try {
-                    this.service.addUser(user.getFirstName(), user.getLastName(), user.getEmail());
-                } catch (ServiceException sE) {
-                    System.err.println(sE.getMessage());
-                }
-            });
-        }
+        UserDBRepository userDBRepository = new UserDBRepository(connectionPool);
+        FriendshipDBRepository friendshipDBRepository = new FriendshipDBRepository(connectionPool);
+
+        // Serving the reads from the snapshot of the network once it is loaded, and the repeated user lookups from memory.
+        // The writes of a rolled back transaction are read again from the database.
+        SnapshotUserRepository snapshotUserRepository = new SnapshotUserRepository(userDBRepository, connectionPool);
+        SnapshotFriendshipRepository friendshipRepository = new SnapshotFriendshipRepository(friendshipDBRepository, snapshotUserRepository, connectionPool);
+        CachingUserRepository userRepository = new CachingUserRepository(snapshotUserRepository, USER_CACHE_SIZE, USER_CACHE_TTL_MILLIS, connectionPool);
 
-        // Adding the controller as an observer.
-        this.service.addObserver(this);
+        // Initializing the service, which applies the changes spanning both repositories in transactions of the pool,
+        // running at most as many operations at a time as there are connections.
+        Service service = new Service(userRepository, friendshipRepository, connectionPool);
+        this.service = new AsyncService(service, connectionPool.getMaxSize());
 
         // Initializing the model for the user table view.
         this.initializeUserModel();
 
+        // Loading the snapshot in the background, the writes made meanwhile being recorded for its catch-up,
+        // and then replacing it with a fresh one.
+        CompletableFuture.runAsync(() -> loadSnapshot(snapshotUserRepository, friendshipRepository, userDBRepository, friendshipDBRepository))
+                .thenRun(() -> CompletableFuture.runAsync(() -> writeSnapshot(userDBRepository, friendshipDBRepository)))
+                // Trying to add 20 new users if there are less than 10 users.
+                // The users are added in a single bulk, reporting the ones that already existed.
+                .thenCompose(ignored -> this.service.getUsersPage(null, 10))
+                .thenCompose(page -> page.getContent().size() < 10
+                        ? this.service.addUsers(RandomUserGenerator.generate20Users()).thenApply(BatchResult::getRejected)
+                        : CompletableFuture.completedFuture(List.<User>of()))
+                .whenComplete((rejected, exception) -> {
+                    if (exception != null) {
+                        System.err.println(cause(exception).getMessage());
+                    } else {
+                        rejected.forEach(user -> System.err.println("User already exists: " + user));
+                    }
+
+                    // Adding the controller as an observer and loading only the first page of users once the
+                    // table was filled, the next pages being loaded when the table is scrolled to the bottom.
+                    Platform.runLater(() -> {
+                        service.addObserver(this);
+                        this.loadNextUserPage();
+                    });
+                });
+
         // Enabling CTRL-C for the user table view.
         enableCellCopy(this.userTableView);
 
@@ -197,10 +247,103 @@ public class AdminController implements Initializable, Observer<SocialNetworkEve
 
         // Retrieving the user list as an observable one.
         // This occurs for the fact that anyone in the app may want to update itself based on the contents of the list.
-        ObservableList<User> userObservableList = FXCollections.observableList(this.service.getUsers());
+        ObservableList<User> userObservableList = FXCollections.observableArrayList();
 
         // Setting the items of the table view based on the observable list contents.
         this.userTableView.setItems(userObservableList);
+
+        // Loading the next page of users when the table is scrolled to the bottom.
+        this.userTableView.skinProperty().addListener((observable, oldSkin, newSkin) -> this.enableUserPaging());
+    }
+
+    /**
+     * Appends the next page of users to the user table view, if there is one.
+     * The page is loaded in the background and appended on the UI thread.
+     */
+    private void loadNextUserPage() {
+        if (!this.hasMoreUsers || this.loadingUsers) {
+            return;
+        }
+        this.loadingUsers = true;
+
+        this.service.getUsersPage(this.lastUserKey, USER_PAGE_SIZE).whenComplete((page, exception) -> Platform.runLater(() -> {
+            this.loadingUsers = false;
+            if (exception != null) {
+                System.err.println(cause(exception).getMessage());
+                return;
+            }
+
+            this.userTableView.getItems().addAll(page.getContent());
+            this.lastUserKey = page.getNextKey().orElse(null);
+            this.hasMoreUsers = page.hasNext();
+        }));
+    }
+
+    /**
+     * Unwraps the exception thrown by a background operation.
+     *
+     * @param exception Exception that completed the future of the operation.
+     * @return The exception thrown by the operation.
+     */
+    private static Throwable cause(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+    }
+
+    /**
+     * Attaches the snapshot of the network to the repositories, along with the changes made after it was taken.
+     * Without a valid snapshot, the repositories keep reading from the database.
+     */
+    private static void loadSnapshot(SnapshotUserRepository snapshotUserRepository, SnapshotFriendshipRepository snapshotFriendshipRepository,
+                                     UserDBRepository userDBRepository, FriendshipDBRepository friendshipDBRepository) {
+        if (!Files.exists(SNAPSHOT_FILE)) {
+            return;
+        }
+
+        try {
+            Snapshot snapshot = Snapshot.open(SNAPSHOT_FILE);
+            Instant since = snapshot.getWatermark().minus(SNAPSHOT_CATCH_UP_MARGIN);
+
+            // Recording the writes before reading the changes, so that the writes made in between aren't missed.
+            snapshotUserRepository.beginCatchUp();
+            snapshotFriendshipRepository.beginCatchUp();
+            snapshotUserRepository.attach(snapshot, userDBRepository.changesSince(since));
+            snapshotFriendshipRepository.attach(snapshot, friendshipDBRepository.changesSince(since));
+        } catch (IOException | RuntimeException exception) {
+            snapshotUserRepository.detach();
+            snapshotFriendshipRepository.detach();
+            System.err.println("The snapshot couldn't be loaded: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Writes a fresh snapshot of the network, and forgets the changes that the next catch-up no longer needs.
+     */
+    private static void writeSnapshot(UserDBRepository userDBRepository, FriendshipDBRepository friendshipDBRepository) {
+        try {
+            // The watermark is taken before reading, so that the changes made while reading are caught up later.
+            Instant watermark = userDBRepository.currentTime();
+            try (Stream<User> users = userDBRepository.stream(); Stream<Friendship> friendships = friendshipDBRepository.stream()) {
+                Files.createDirectories(SNAPSHOT_FILE.getParent());
+                Snapshot.write(SNAPSHOT_FILE, watermark, users::iterator, friendships::iterator);
+            }
+            userDBRepository.pruneChangesBefore(watermark.minus(SNAPSHOT_CATCH_UP_MARGIN));
+        } catch (IOException | RuntimeException exception) {
+            System.err.println("The snapshot couldn't be written: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Loads the next page of users each time the vertical scroll bar of the user table view reaches the bottom.
+     */
+    private void enableUserPaging() {
+        this.userTableView.lookupAll(".scroll-bar").stream()
+                .filter(node -> node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL)
+                .map(ScrollBar.class::cast)
+                .forEach(scrollBar -> scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+                    if (newValue.doubleValue() >= scrollBar.getMax()) {
+                        this.loadNextUserPage();
+                    }
+                }));
     }
 
     /**
@@ -270,45 +413,45 @@ public class AdminController implements Initializable, Observer<SocialNetworkEve
         String lastName = values.get("lastName");
         String email = values.get("email");
 
-        try {
-            // Adding the user.
-            this.service.addUser(firstName, lastName, email);
-
-            // Showing a message of success.
-            PopupEnum identifier = PopupEnum.ADD_USER_SUCCESS;
-            String header = this.popups.get(identifier).getLeft();
-            String text = "";
-            PopupAlert.showInformation(null, Alert.AlertType.CONFIRMATION, header, text);
-        } catch (ServiceException sE) {
-            // Showing a message of error.
-            PopupEnum identifier = PopupEnum.ADD_USER_EXCEPTION;
-            String header = this.popups.get(identifier).getLeft();
-            String text = sE.getMessage();
-            PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, text);
-        }
+        // Adding the user in the background, then showing the outcome on the UI thread.
+        this.service.addUser(firstName, lastName, email).whenComplete((ignored, exception) -> Platform.runLater(() -> {
+            if (exception == null) {
+                // Showing a message of success.
+                PopupEnum identifier = PopupEnum.ADD_USER_SUCCESS;
+                String header = this.popups.get(identifier).getLeft();
+                String text = "";
+                PopupAlert.showInformation(null, Alert.AlertType.CONFIRMATION, header, text);
+            } else {
+                // Showing a message of error.
+                PopupEnum identifier = PopupEnum.ADD_USER_EXCEPTION;
+                String header = this.popups.get(identifier).getLeft();
+                String text = cause(exception).getMessage();
+                PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, text);
+            }
+        }));
     }
 
     /**
-     * Returns information about the removed users and removes selected users.
+     * Removes the selected users, all at the same time, in the background.
      *
-     * @return Information about the removed users.
+     * @return Future of the information about the removed users.
      */
-    private StringBuilder getRemovedUsersInformation() {
-        StringBuilder stringBuilder = new StringBuilder();
-
-        // Retrieving a copy of the selected items so that we don't modify a list that is iterated.
-        List<User> selectedItemsCopy = new ArrayList<>(this.userTableView.getSelectionModel().getSelectedItems());
-
-        // Removing all the selected users.
-        selectedItemsCopy.forEach(user -> {
-            User removed = this.service.removeUser(user.getId());
-            stringBuilder.append(removed.toString()).append("\n");
-        });
+    private CompletableFuture<StringBuilder> getRemovedUsersInformation() {
+        // Retrieving the IDs of the selected users, the selection being shared by the cells of a row.
+        List<UUID> selectedIds = this.userTableView.getSelectionModel().getSelectedItems().stream()
+                .map(User::getId)
+                .distinct()
+                .toList();
 
         // Clearing the selection.
         this.userTableView.getSelectionModel().clearSelection();
 
-        return stringBuilder;
+        // Removing all the selected users.
+        return this.service.removeUsers(selectedIds).thenApply(removedUsers -> {
+            StringBuilder stringBuilder = new StringBuilder();
+            removedUsers.forEach(removed -> stringBuilder.append(removed.toString()).append("\n"));
+            return stringBuilder;
+        });
     }
 
     /**
@@ -327,12 +470,19 @@ public class AdminController implements Initializable, Observer<SocialNetworkEve
         }
 
         // Removing the users and retrieving the information about them.
-        StringBuilder stringBuilder = getRemovedUsersInformation();
-
-        // Showing a success message.
-        PopupEnum identifier = PopupEnum.REMOVE_USER_SUCCESS;
-        String header = this.popups.get(identifier).getLeft();
-        PopupAlert.showInformation(null, Alert.AlertType.CONFIRMATION, header, stringBuilder.toString());
+        this.getRemovedUsersInformation().whenComplete((stringBuilder, exception) -> Platform.runLater(() -> {
+            if (exception == null) {
+                // Showing a success message.
+                PopupEnum identifier = PopupEnum.REMOVE_USER_SUCCESS;
+                String header = this.popups.get(identifier).getLeft();
+                PopupAlert.showInformation(null, Alert.AlertType.CONFIRMATION, header, stringBuilder.toString());
+            } else {
+                // Showing a message of error.
+                PopupEnum identifier = PopupEnum.REMOVE_USER_EXCEPTION;
+                String header = this.popups.get(identifier).getLeft();
+                PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, cause(exception).getMessage());
+            }
+        }));
     }
 
     /**
@@ -389,27 +539,34 @@ public class AdminController implements Initializable, Observer<SocialNetworkEve
             String newLastName = values.get("lastName");
             String newEmail = values.get("email");
 
-            try {
-                // Updating the user.
-                User old = this.service.updateUser(new User(UUID.fromString(id), newFirstName, newLastName, newEmail));
-
-                // Showing a message of success.
-                PopupEnum identifier = PopupEnum.UPDATE_USER_SUCCESS;
-                String header = this.popups.get(identifier).getLeft();
-                String text = "Old user: " + old.toString() + "\nNew user: " + this.service.getUser(old.getId());
-                PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, text);
-            } catch (ServiceException sE) {
-                // Showing a message of error.
-                PopupEnum identifier = PopupEnum.UPDATE_USER_EXCEPTION;
-                String header = this.popups.get(identifier).getLeft();
-                String text = sE.getMessage();
-                PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, text);
-            }
+            // Updating the user and retrieving its new version in the background, the retrieval running after the update.
+            UUID userId = UUID.fromString(id);
+            this.service.updateUser(new User(userId, newFirstName, newLastName, newEmail))
+                    .thenCombine(this.service.getUser(userId), (old, current) -> "Old user: " + old.toString() + "\nNew user: " + current)
+                    .whenComplete((text, exception) -> Platform.runLater(() -> {
+                        if (exception == null) {
+                            // Showing a message of success.
+                            PopupEnum identifier = PopupEnum.UPDATE_USER_SUCCESS;
+                            String header = this.popups.get(identifier).getLeft();
+                            PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, text);
+                        } else {
+                            // Showing a message of error.
+                            PopupEnum identifier = PopupEnum.UPDATE_USER_EXCEPTION;
+                            String header = this.popups.get(identifier).getLeft();
+                            PopupAlert.showInformation(null, Alert.AlertType.ERROR, header, cause(exception).getMessage());
+                        }
+                    }));
         });
     }
 
     @Override
     public void update(SocialNetworkEvent event) {
+        // The service notifies from the thread that ran the operation, while the table view is changed on the UI thread.
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> this.update(event));
+            return;
+        }
+
         // Checking which type of event occurred.
         if (event.getClass().equals(UserChangeEvent.class)) {
             // Casting to the corresponding event.
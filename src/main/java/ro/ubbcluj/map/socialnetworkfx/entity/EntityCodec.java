@@ -0,0 +1,489 @@
+package ro.ubbcluj.map.socialnetworkfx.entity;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary form of the users and the friendships, much smaller and faster than Java serialization.
+ * <ul>
+ *     <li>UUIDs are written as two longs;</li>
+ *     <li>strings are written as their UTF-8 length plus one (zero for null) as a varint, followed by their bytes;</li>
+ *     <li>dates are written as microseconds since the epoch, at UTC.</li>
+ * </ul>
+ * Encoded messages start with the version of the format and the type of their content, followed by one entity,
+ * or by the number of entities and the entities, for batches.
+ * Decoding reads the entities in place, straight from the given buffer, which is left after the decoded message.
+ * Numbers are big-endian, whatever the order of the given buffer.
+ */
+public final class EntityCodec {
+    // Version of the format.
+    public static final byte VERSION = 1;
+
+    // Types of the encoded messages.
+    private static final byte USER = 1;
+    private static final byte FRIENDSHIP = 2;
+    private static final byte FRIENDSHIP_ID = 3;
+    private static final byte USER_BATCH = 4;
+    private static final byte FRIENDSHIP_BATCH = 5;
+
+    // Date written for a missing date.
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    private EntityCodec() {
+    }
+
+    /**
+     * Encodes a user.
+     *
+     * @param user User to encode.
+     * @return The encoded message.
+     * @throws IllegalArgumentException If the user or its ID is null.
+     */
+    public static byte[] encode(User user) throws IllegalArgumentException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + sizeOf(user));
+        writeHeader(buffer, USER);
+        writeUser(buffer, user);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a friendship.
+     *
+     * @param friendship Friendship to encode.
+     * @return The encoded message.
+     * @throws IllegalArgumentException If the friendship or one of its user IDs is null.
+     */
+    public static byte[] encode(Friendship friendship) throws IllegalArgumentException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + sizeOf(friendship));
+        writeHeader(buffer, FRIENDSHIP);
+        writeFriendship(buffer, friendship);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes the ID of a friendship.
+     *
+     * @param id ID to encode.
+     * @return The encoded message.
+     * @throws IllegalArgumentException If the ID or one of its user IDs is null.
+     */
+    public static byte[] encode(Tuple<UUID, UUID> id) throws IllegalArgumentException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 32);
+        writeHeader(buffer, FRIENDSHIP_ID);
+        writeFriendshipId(buffer, id);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a user.
+     *
+     * @param buffer Buffer positioned at the message.
+     * @return The decoded user.
+     * @throws IllegalArgumentException If the message isn't a user of a supported version, or is truncated.
+     */
+    public static User decodeUser(ByteBuffer buffer) throws IllegalArgumentException {
+        readHeader(buffer, USER);
+        return readUser(buffer);
+    }
+
+    /**
+     * Decodes a friendship.
+     *
+     * @param buffer Buffer positioned at the message.
+     * @return The decoded friendship.
+     * @throws IllegalArgumentException If the message isn't a friendship of a supported version, or is truncated.
+     */
+    public static Friendship decodeFriendship(ByteBuffer buffer) throws IllegalArgumentException {
+        readHeader(buffer, FRIENDSHIP);
+        return readFriendship(buffer);
+    }
+
+    /**
+     * Decodes the ID of a friendship.
+     *
+     * @param buffer Buffer positioned at the message.
+     * @return The decoded ID.
+     * @throws IllegalArgumentException If the message isn't an ID of a supported version, or is truncated.
+     */
+    public static Tuple<UUID, UUID> decodeFriendshipId(ByteBuffer buffer) throws IllegalArgumentException {
+        readHeader(buffer, FRIENDSHIP_ID);
+        return readFriendshipId(buffer);
+    }
+
+    /**
+     * Encodes several users in a single message.
+     *
+     * @param users Users to encode.
+     * @return Buffer holding the encoded message, ready to be read.
+     * @throws IllegalArgumentException If one of the users or its ID is null.
+     */
+    public static ByteBuffer encodeUsers(Collection<User> users) throws IllegalArgumentException {
+        int size = 2 + varIntSize(users.size());
+        for (User user : users) {
+            size += sizeOf(user);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeHeader(buffer, USER_BATCH);
+        writeVarInt(buffer, users.size());
+        users.forEach(user -> writeUser(buffer, user));
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes several users.
+     *
+     * @param buffer Buffer positioned at the message.
+     * @return The decoded users, in the order they were encoded.
+     * @throws IllegalArgumentException If the message isn't a batch of users of a supported version, or is truncated.
+     */
+    public static List<User> decodeUsers(ByteBuffer buffer) throws IllegalArgumentException {
+        readHeader(buffer, USER_BATCH);
+        int count = readCount(buffer, 16 + 3);
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(readUser(buffer));
+        }
+        return users;
+    }
+
+    /**
+     * Encodes several friendships in a single message.
+     *
+     * @param friendships Friendships to encode.
+     * @return Buffer holding the encoded message, ready to be read.
+     * @throws IllegalArgumentException If one of the friendships or one of its user IDs is null.
+     */
+    public static ByteBuffer encodeFriendships(Collection<Friendship> friendships) throws IllegalArgumentException {
+        int size = 2 + varIntSize(friendships.size());
+        for (Friendship friendship : friendships) {
+            size += sizeOf(friendship);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeHeader(buffer, FRIENDSHIP_BATCH);
+        writeVarInt(buffer, friendships.size());
+        friendships.forEach(friendship -> writeFriendship(buffer, friendship));
+        return buffer.flip();
+    }
+
+    /**
+     * Decodes several friendships.
+     *
+     * @param buffer Buffer positioned at the message.
+     * @return The decoded friendships, in the order they were encoded.
+     * @throws IllegalArgumentException If the message isn't a batch of friendships of a supported version, or is truncated.
+     */
+    public static List<Friendship> decodeFriendships(ByteBuffer buffer) throws IllegalArgumentException {
+        readHeader(buffer, FRIENDSHIP_BATCH);
+        int count = readCount(buffer, 32 + 8);
+        List<Friendship> friendships = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            friendships.add(readFriendship(buffer));
+        }
+        return friendships;
+    }
+
+    /**
+     * Returns the number of bytes taken by an encoded user, without the header of the message.
+     *
+     * @param user User to encode.
+     * @return The size of the encoded user.
+     * @throws IllegalArgumentException If the user is null.
+     */
+    public static int sizeOf(User user) throws IllegalArgumentException {
+        if (user == null) {
+            throw new IllegalArgumentException("The user cannot be null!");
+        }
+        return 16 + sizeOf(user.getFirstName()) + sizeOf(user.getLastName()) + sizeOf(user.getEmail());
+    }
+
+    /**
+     * Returns the number of bytes taken by an encoded friendship, without the header of the message.
+     *
+     * @param friendship Friendship to encode.
+     * @return The size of the encoded friendship.
+     * @throws IllegalArgumentException If the friendship is null.
+     */
+    public static int sizeOf(Friendship friendship) throws IllegalArgumentException {
+        if (friendship == null) {
+            throw new IllegalArgumentException("The friendship cannot be null!");
+        }
+        return 32 + 8;
+    }
+
+    /**
+     * Writes a user at the position of a buffer, without the header of a message.
+     *
+     * @param buffer Buffer with at least {@link #sizeOf(User)} bytes remaining.
+     * @param user   User to write.
+     * @throws IllegalArgumentException If the user or its ID is null.
+     */
+    public static void writeUser(ByteBuffer buffer, User user) throws IllegalArgumentException {
+        if (user == null) {
+            throw new IllegalArgumentException("The user cannot be null!");
+        }
+        writeUserId(buffer, user.getId());
+        writeString(buffer, user.getFirstName());
+        writeString(buffer, user.getLastName());
+        writeString(buffer, user.getEmail());
+    }
+
+    /**
+     * Reads a user from the position of a buffer, written by {@link #writeUser}.
+     *
+     * @param buffer Buffer positioned at the user.
+     * @return The user.
+     * @throws IllegalArgumentException If the user is truncated.
+     */
+    public static User readUser(ByteBuffer buffer) throws IllegalArgumentException {
+        UUID id = readUserId(buffer);
+        String firstName = readString(buffer);
+        String lastName = readString(buffer);
+        String email = readString(buffer);
+        return new User(id, firstName, lastName, email);
+    }
+
+    /**
+     * Writes a friendship at the position of a buffer, without the header of a message.
+     *
+     * @param buffer     Buffer with at least {@link #sizeOf(Friendship)} bytes remaining.
+     * @param friendship Friendship to write.
+     * @throws IllegalArgumentException If the friendship or one of its user IDs is null.
+     */
+    public static void writeFriendship(ByteBuffer buffer, Friendship friendship) throws IllegalArgumentException {
+        if (friendship == null) {
+            throw new IllegalArgumentException("The friendship cannot be null!");
+        }
+        writeFriendshipId(buffer, friendship.getId());
+        writeLong(buffer, friendship.getFriendshipDate() == null ? NULL_DATE : toMicros(friendship.getFriendshipDate()));
+    }
+
+    /**
+     * Reads a friendship from the position of a buffer, written by {@link #writeFriendship}.
+     *
+     * @param buffer Buffer positioned at the friendship.
+     * @return The friendship.
+     * @throws IllegalArgumentException If the friendship is truncated.
+     */
+    public static Friendship readFriendship(ByteBuffer buffer) throws IllegalArgumentException {
+        Tuple<UUID, UUID> id = readFriendshipId(buffer);
+        long date = readLong(buffer);
+        return new Friendship(id.getLeft(), id.getRight(), date == NULL_DATE ? null : toLocalDateTime(date));
+    }
+
+    /**
+     * Writes the ID of a friendship at the position of a buffer, without the header of a message.
+     *
+     * @param buffer Buffer with at least 32 bytes remaining.
+     * @param id     ID to write.
+     * @throws IllegalArgumentException If the ID or one of its user IDs is null.
+     */
+    public static void writeFriendshipId(ByteBuffer buffer, Tuple<UUID, UUID> id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        writeUserId(buffer, id.getLeft());
+        writeUserId(buffer, id.getRight());
+    }
+
+    /**
+     * Reads the ID of a friendship from the position of a buffer, written by {@link #writeFriendshipId}.
+     *
+     * @param buffer Buffer positioned at the ID.
+     * @return The ID.
+     * @throws IllegalArgumentException If the ID is truncated.
+     */
+    public static Tuple<UUID, UUID> readFriendshipId(ByteBuffer buffer) throws IllegalArgumentException {
+        return new Tuple<>(readUserId(buffer), readUserId(buffer));
+    }
+
+    private static void writeHeader(ByteBuffer buffer, byte type) {
+        buffer.put(VERSION).put(type);
+    }
+
+    private static void readHeader(ByteBuffer buffer, byte type) throws IllegalArgumentException {
+        if (buffer.remaining() < 2) {
+            throw new IllegalArgumentException("The message is truncated!");
+        }
+
+        byte version = buffer.get(buffer.position());
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported codec version: " + version);
+        }
+        if (buffer.get(buffer.position() + 1) != type) {
+            throw new IllegalArgumentException("Unexpected message type: " + buffer.get(buffer.position() + 1));
+        }
+        buffer.position(buffer.position() + 2);
+    }
+
+    /**
+     * Reads the number of entities of a batch, checking it against the remaining bytes,
+     * so that a corrupted count doesn't allocate a huge list.
+     */
+    private static int readCount(ByteBuffer buffer, int minEntitySize) throws IllegalArgumentException {
+        int count = readVarInt(buffer);
+        if (count > buffer.remaining() / minEntitySize) {
+            throw new IllegalArgumentException("The message is truncated!");
+        }
+        return count;
+    }
+
+    /**
+     * Writes the ID of a user at the position of a buffer.
+     *
+     * @param buffer Buffer with at least 16 bytes remaining.
+     * @param id     ID to write.
+     * @throws IllegalArgumentException If the ID is null.
+     */
+    public static void writeUserId(ByteBuffer buffer, UUID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        writeLong(buffer, id.getMostSignificantBits());
+        writeLong(buffer, id.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads the ID of a user from the position of a buffer, written by {@link #writeUserId}.
+     *
+     * @param buffer Buffer positioned at the ID.
+     * @return The ID.
+     * @throws IllegalArgumentException If the ID is truncated.
+     */
+    public static UUID readUserId(ByteBuffer buffer) throws IllegalArgumentException {
+        return new UUID(readLong(buffer), readLong(buffer));
+    }
+
+    private static void writeLong(ByteBuffer buffer, long value) {
+        // Writing big-endian, whatever the order of the buffer.
+        buffer.putLong(buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    private static long readLong(ByteBuffer buffer) throws IllegalArgumentException {
+        if (buffer.remaining() < 8) {
+            throw new IllegalArgumentException("The message is truncated!");
+        }
+
+        // Reading big-endian, whatever the order of the buffer.
+        long value = buffer.getLong();
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static int sizeOf(String string) {
+        if (string == null) {
+            return 1;
+        }
+        int length = utf8Length(string);
+        return varIntSize(length + 1) + length;
+    }
+
+    private static void writeString(ByteBuffer buffer, String string) {
+        if (string == null) {
+            writeVarInt(buffer, 0);
+            return;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IllegalArgumentException {
+        int length = readVarInt(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("The message is truncated!");
+        }
+
+        String string;
+        if (buffer.hasArray()) {
+            // Decoding straight from the backing array, without copying the bytes first.
+            string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * Returns the length of the UTF-8 encoding of a string, without encoding it.
+     * Unpaired surrogates are counted as the single byte they are replaced with.
+     */
+    private static int utf8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IllegalArgumentException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("The message is truncated!");
+            }
+            byte current = buffer.get();
+            value |= (current & 0x7F) << shift;
+            if (current >= 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("The message is corrupted!");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("The message is corrupted!");
+    }
+
+    private static long toMicros(LocalDateTime date) {
+        Instant instant = date.toInstant(ZoneOffset.UTC);
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+    }
+
+    private static LocalDateTime toLocalDateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -7,6 +7,7 @@ import java.util.UUID;
 
 /**
  * Class that encapsulates a Friendship.
+ * The friendship is undirected, so its ID always stores the smaller user ID first.
  */
 public class Friendship extends Entity<Tuple<UUID, UUID>> {
     // date and time of the friendship
@@ -19,7 +20,7 @@ public class Friendship extends Entity<Tuple<UUID, UUID>> {
      * @param userId2 Second user of the friendship.
      */
     public Friendship(UUID userId1, UUID userId2) {
-        super(new Tuple<>(userId1, userId2));
+        super(key(userId1, userId2));
         this.friendshipDate = LocalDateTime.now();
     }
 
@@ -32,10 +33,67 @@ public class Friendship extends Entity<Tuple<UUID, UUID>> {
      */
 
     public Friendship(UUID userId1, UUID userId2, LocalDateTime friendshipDate) {
-        super(new Tuple<>(userId1, userId2));
+        super(key(userId1, userId2));
         this.friendshipDate = friendshipDate;
     }
 
+    /**
+     * Returns the canonical ID of the friendship between two users, which stores the smaller user ID first.
+     * If one of the IDs is null, they are kept in the given order.
+     *
+     * @param userId1 ID of one user.
+     * @param userId2 ID of the other user.
+     * @return The ID of the friendship between the two users, regardless of their order.
+     */
+    public static Tuple<UUID, UUID> key(UUID userId1, UUID userId2) {
+        if (userId1 != null && userId2 != null && compareIds(userId1, userId2) > 0) {
+            return new Tuple<>(userId2, userId1);
+        }
+        return new Tuple<>(userId1, userId2);
+    }
+
+    /**
+     * Returns the canonical form of a friendship ID.
+     *
+     * @param id ID of a friendship, in any order of the users.
+     * @return The ID with the smaller user ID first.
+     */
+    public static Tuple<UUID, UUID> key(Tuple<UUID, UUID> id) {
+        return key(id.getLeft(), id.getRight());
+    }
+
+    /**
+     * Compares two user IDs the same way the database compares uuid values, byte by byte, unsigned.
+     * {@link UUID#compareTo(UUID)} compares the halves as signed numbers, so it can't be used for the canonical order.
+     *
+     * @param id1 First ID.
+     * @param id2 Second ID.
+     * @return A negative number, zero or a positive number if the first ID is smaller, equal or greater than the second.
+     */
+    public static int compareIds(UUID id1, UUID id2) {
+        int result = Long.compareUnsigned(id1.getMostSignificantBits(), id2.getMostSignificantBits());
+        if (result != 0) {
+            return result;
+        }
+        return Long.compareUnsigned(id1.getLeastSignificantBits(), id2.getLeastSignificantBits());
+    }
+
+    /**
+     * Compares two friendship IDs the same way the database orders them, by their left user ID, then by their right
+     * user ID, both compared by {@link #compareIds(UUID, UUID)}.
+     *
+     * @param id1 First ID.
+     * @param id2 Second ID.
+     * @return A negative number, zero or a positive number if the first ID is smaller, equal or greater than the second.
+     */
+    public static int compareKeys(Tuple<UUID, UUID> id1, Tuple<UUID, UUID> id2) {
+        int result = compareIds(id1.getLeft(), id2.getLeft());
+        if (result != 0) {
+            return result;
+        }
+        return compareIds(id1.getRight(), id2.getRight());
+    }
+
     /**
      * Getter for the friendship date
      *
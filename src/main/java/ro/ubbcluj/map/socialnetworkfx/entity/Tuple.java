@@ -1,14 +1,18 @@
 package ro.ubbcluj.map.socialnetworkfx.entity;
 
+import java.io.Serializable;
 import java.util.Objects;
 
 /**
  * Pair of elements.
+ * Pairs are ordered by their left element, then by their right element, if both elements are comparable.
  *
  * @param <E1> First entity of the pair.
  * @param <E2> Second entity of the pair.
  */
-public class Tuple<E1, E2> {
+public class Tuple<E1, E2> implements Comparable<Tuple<E1, E2>>, Serializable {
+    private static final long serialVersionUID = 1L;
+
     private final E1 left;
     private final E2 right;
 
@@ -25,6 +29,16 @@ public class Tuple<E1, E2> {
         return right;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(Tuple<E1, E2> other) throws ClassCastException {
+        int result = ((Comparable<E1>) this.left).compareTo(other.left);
+        if (result != 0) {
+            return result;
+        }
+        return ((Comparable<E2>) this.right).compareTo(other.right);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,105 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.utility.TaskExecutor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking view of a repository, whose operations run in the background and return futures.
+ * Operations on the same ID run in the order they were requested, while operations on different IDs may run
+ * at the same time, up to the concurrency given for the repository.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity that is stored.
+ */
+public class AsyncRepository<ID, E extends Entity<ID>> implements AutoCloseable {
+    // Repository that runs the operations.
+    private final Repository<ID, E> repository;
+    // Executor of the operations.
+    private final TaskExecutor executor;
+
+    /**
+     * Initializes a non-blocking view of a repository.
+     *
+     * @param repository     Repository that runs the operations.
+     * @param maxConcurrency Maximum number of operations that run at the same time,
+     *                       usually the number of connections available to the repository.
+     */
+    public AsyncRepository(Repository<ID, E> repository, int maxConcurrency) {
+        this.repository = repository;
+        this.executor = new TaskExecutor(maxConcurrency);
+    }
+
+    /**
+     * @return The repository that runs the operations.
+     */
+    public Repository<ID, E> getRepository() {
+        return this.repository;
+    }
+
+    /**
+     * @see Repository#size()
+     */
+    public CompletableFuture<Integer> size() {
+        return this.executor.submit(this.repository::size);
+    }
+
+    /**
+     * @see Repository#page(Object, int, SortOrder)
+     */
+    public CompletableFuture<Page<ID, E>> page(ID afterKey, int limit, SortOrder sortOrder) {
+        return this.executor.submit(() -> this.repository.page(afterKey, limit, sortOrder));
+    }
+
+    /**
+     * @see Repository#getOne(Object)
+     */
+    public CompletableFuture<Optional<E>> getOne(ID id) {
+        return this.executor.submit(id, () -> this.repository.getOne(id));
+    }
+
+    /**
+     * Searches for several entities at the same time.
+     *
+     * @param ids IDs of the entities to search.
+     * @return Future of the entities that were found, in the order of their IDs.
+     */
+    public CompletableFuture<List<E>> getMany(Collection<ID> ids) {
+        List<CompletableFuture<Optional<E>>> lookups = ids.stream().map(this::getOne).toList();
+        return CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> lookups.stream().map(CompletableFuture::join).flatMap(Optional::stream).toList());
+    }
+
+    /**
+     * @see Repository#save(Entity)
+     */
+    public CompletableFuture<Optional<E>> save(E e) {
+        return this.executor.submit(e == null ? null : e.getId(), () -> this.repository.save(e));
+    }
+
+    /**
+     * @see Repository#delete(Object)
+     */
+    public CompletableFuture<Optional<E>> delete(ID id) {
+        return this.executor.submit(id, () -> this.repository.delete(id));
+    }
+
+    /**
+     * @see Repository#update(Entity)
+     */
+    public CompletableFuture<Optional<E>> update(E e) {
+        return this.executor.submit(e == null ? null : e.getId(), () -> this.repository.update(e));
+    }
+
+    /**
+     * Stops accepting operations. The operations that were already requested still run.
+     */
+    @Override
+    public void close() {
+        this.executor.close();
+    }
+}
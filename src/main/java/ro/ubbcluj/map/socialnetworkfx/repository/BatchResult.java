@@ -0,0 +1,97 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk operation on a repository, kept for each element of the bulk in the order it was given.
+ *
+ * @param <T> Type of the elements of the bulk (entities or IDs).
+ */
+public class BatchResult<T> {
+    /**
+     * Outcome of the bulk operation for one element.
+     */
+    public enum Outcome {
+        INSERTED,
+        UPDATED,
+        DELETED,
+        // The entity was already stored, so it wasn't inserted.
+        DUPLICATE,
+        // No entity with the given ID was stored, so nothing was updated or deleted.
+        MISSING
+    }
+
+    private final List<Tuple<T, Outcome>> outcomes;
+
+    public BatchResult() {
+        this.outcomes = new ArrayList<>();
+    }
+
+    public BatchResult(int expectedSize) {
+        this.outcomes = new ArrayList<>(expectedSize);
+    }
+
+    /**
+     * Records the outcome of an element.
+     *
+     * @param element Element of the bulk.
+     * @param outcome Outcome of the operation for the element.
+     */
+    public void add(T element, Outcome outcome) {
+        this.outcomes.add(new Tuple<>(element, outcome));
+    }
+
+    /**
+     * @return Each element of the bulk along with its outcome.
+     */
+    public List<Tuple<T, Outcome>> getOutcomes() {
+        return Collections.unmodifiableList(this.outcomes);
+    }
+
+    /**
+     * @return The elements for which the operation took effect.
+     */
+    public List<T> getApplied() {
+        return this.outcomes.stream()
+                .filter(outcome -> isApplied(outcome.getRight()))
+                .map(Tuple::getLeft)
+                .toList();
+    }
+
+    /**
+     * @return The elements for which the operation had no effect.
+     */
+    public List<T> getRejected() {
+        return this.outcomes.stream()
+                .filter(outcome -> !isApplied(outcome.getRight()))
+                .map(Tuple::getLeft)
+                .toList();
+    }
+
+    /**
+     * @return Number of elements for which the operation took effect.
+     */
+    public int getAppliedCount() {
+        return (int) this.outcomes.stream().filter(outcome -> isApplied(outcome.getRight())).count();
+    }
+
+    /**
+     * @return Number of elements in the bulk.
+     */
+    public int size() {
+        return this.outcomes.size();
+    }
+
+    private static boolean isApplied(Outcome outcome) {
+        return outcome != Outcome.DUPLICATE && outcome != Outcome.MISSING;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{applied=" + this.getAppliedCount() + ", rejected=" + (this.size() - this.getAppliedCount()) + "}";
+    }
+}
@@ -0,0 +1,401 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Repository decorator that keeps the most recently used entities of another repository in memory.
+ * Lookups are read through the cache, while writes go to the wrapped repository first and then update the cache.
+ * IDs that were not found are cached as well, so that repeated lookups of missing entities don't reach the
+ * wrapped repository either.
+ * Listing, streaming and paging always go to the wrapped repository and don't fill the cache,
+ * so that a scan doesn't evict the entities that are looked up often.
+ * <p>
+ * The writes made in a unit of work of the wrapped repository are cached as soon as they are made. If the unit of
+ * work is rolled back, the IDs it wrote are removed from the cache, so that they are read again.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity to be stored.
+ */
+public class CachingRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
+    // Default values for the cache configuration.
+    public static final int DEFAULT_MAX_SIZE = 1_000;
+    public static final long NO_EXPIRATION = 0;
+
+    // Repository whose entities are cached.
+    private final Repository<ID, E> delegate;
+    // Maximum number of cached IDs, missing ones included.
+    private final int maxSize;
+    // Time after which a cached entry expires, NO_EXPIRATION if entries don't expire.
+    private final long ttlNanos;
+    // Unit of work of the wrapped repository, which reports the rolled back writes.
+    private final UnitOfWork unitOfWork;
+
+    // Cached entries, the least recently used one being first.
+    private final LinkedHashMap<ID, CacheEntry<E>> entries;
+    // Incremented on every write, so that a lookup doesn't cache an entity that was changed while it was loading.
+    private long writeVersion = 0;
+
+    // Statistics of the cache.
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Initializes a cache of the default size, whose entries don't expire.
+     *
+     * @param delegate Repository whose entities are cached.
+     */
+    public CachingRepository(Repository<ID, E> delegate) {
+        this(delegate, DEFAULT_MAX_SIZE, NO_EXPIRATION);
+    }
+
+    /**
+     * Initializes a cache in front of a repository.
+     *
+     * @param delegate  Repository whose entities are cached.
+     * @param maxSize   Maximum number of cached IDs, the least recently used ones being evicted first.
+     * @param ttlMillis Time after which a cached entry expires, {@code NO_EXPIRATION} if entries don't expire.
+     */
+    public CachingRepository(Repository<ID, E> delegate, int maxSize, long ttlMillis) {
+        this(delegate, maxSize, ttlMillis, UnitOfWork.NONE);
+    }
+
+    /**
+     * Initializes a cache in front of a repository whose writes may be made in units of work.
+     *
+     * @param delegate   Repository whose entities are cached.
+     * @param maxSize    Maximum number of cached IDs, the least recently used ones being evicted first.
+     * @param ttlMillis  Time after which a cached entry expires, {@code NO_EXPIRATION} if entries don't expire.
+     * @param unitOfWork Unit of work of the wrapped repository, such as its connection pool.
+     */
+    public CachingRepository(Repository<ID, E> delegate, int maxSize, long ttlMillis, UnitOfWork unitOfWork) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("The cached repository cannot be null!");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The size of the cache must be positive!");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("The time to live cannot be negative!");
+        }
+
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.unitOfWork = unitOfWork;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ID, CacheEntry<E>> eldest) {
+                if (this.size() > CachingRepository.this.maxSize) {
+                    CachingRepository.this.evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return The repository whose entities are cached.
+     */
+    public Repository<ID, E> getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.delegate.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return this.delegate.size();
+    }
+
+    @Override
+    public Iterable<E> getAll() {
+        return this.delegate.getAll();
+    }
+
+    @Override
+    public Stream<E> stream() {
+        return this.delegate.stream();
+    }
+
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        return this.delegate.page(afterKey, limit, sortOrder);
+    }
+
+    @Override
+    public Optional<E> getOne(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        long version;
+        synchronized (this) {
+            CacheEntry<E> entry = this.entries.get(id);
+            if (entry != null) {
+                if (!this.isExpired(entry)) {
+                    this.hitCount++;
+                    return Optional.ofNullable(entry.entity);
+                }
+                this.entries.remove(id);
+                this.evictionCount++;
+            }
+            this.missCount++;
+            version = this.writeVersion;
+        }
+
+        // Loading the entity outside the lock, caching it only if no write happened in the meantime.
+        Optional<E> loaded = this.delegate.getOne(id);
+        synchronized (this) {
+            if (version == this.writeVersion) {
+                this.entries.put(id, new CacheEntry<>(loaded.orElse(null), this.expiresAt()));
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public Optional<E> save(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        Optional<E> existing;
+        try {
+            existing = this.delegate.save(e);
+        } catch (RuntimeException exception) {
+            this.invalidate(e.getId());
+            throw exception;
+        }
+
+        // Caching the stored entity: the saved one or the one that was already stored.
+        E stored = existing.orElse(e);
+        synchronized (this) {
+            this.writeVersion++;
+            if (!stored.getId().equals(e.getId())) {
+                this.entries.remove(e.getId());
+            }
+            this.entries.put(stored.getId(), new CacheEntry<>(stored, this.expiresAt()));
+        }
+        this.invalidateOnRollback(List.of(stored.getId()));
+        return existing;
+    }
+
+    @Override
+    public Optional<E> delete(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> removed;
+        try {
+            removed = this.delegate.delete(id);
+        } catch (RuntimeException exception) {
+            this.invalidate(id);
+            throw exception;
+        }
+
+        // The ID is now missing from the repository.
+        synchronized (this) {
+            this.writeVersion++;
+            this.entries.put(id, new CacheEntry<>(null, this.expiresAt()));
+        }
+        this.invalidateOnRollback(List.of(id));
+        return removed;
+    }
+
+    @Override
+    public Optional<E> update(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> old;
+        try {
+            old = this.delegate.update(e);
+        } catch (RuntimeException exception) {
+            this.invalidate(e.getId());
+            throw exception;
+        }
+
+        // Caching the new entity only if the update took effect.
+        if (old.isPresent()) {
+            synchronized (this) {
+                this.writeVersion++;
+                this.entries.put(e.getId(), new CacheEntry<>(e, this.expiresAt()));
+            }
+            this.invalidateOnRollback(List.of(e.getId()));
+        } else {
+            this.invalidate(e.getId());
+        }
+        return old;
+    }
+
+    @Override
+    public BatchResult<E> saveAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        BatchResult<E> result;
+        try {
+            result = this.delegate.saveAll(entities);
+        } catch (RuntimeException exception) {
+            this.invalidateAll();
+            throw exception;
+        }
+
+        // The duplicates may be stored under another ID, so only the inserted entities are cached.
+        synchronized (this) {
+            this.writeVersion++;
+            result.getOutcomes().forEach(outcome -> {
+                ID id = outcome.getLeft().getId();
+                if (outcome.getRight() == BatchResult.Outcome.INSERTED) {
+                    this.entries.put(id, new CacheEntry<>(outcome.getLeft(), this.expiresAt()));
+                } else {
+                    this.entries.remove(id);
+                }
+            });
+        }
+        this.invalidateOnRollback(result.getApplied().stream().map(Entity::getId).toList());
+        return result;
+    }
+
+    @Override
+    public BatchResult<ID> deleteAll(Collection<ID> ids) throws RepositoryException, IllegalArgumentException {
+        BatchResult<ID> result;
+        try {
+            result = this.delegate.deleteAll(ids);
+        } catch (RuntimeException exception) {
+            this.invalidateAll();
+            throw exception;
+        }
+
+        // Every ID of the bulk is now missing from the repository.
+        synchronized (this) {
+            this.writeVersion++;
+            result.getOutcomes().forEach(outcome -> this.entries.put(outcome.getLeft(), new CacheEntry<>(null, this.expiresAt())));
+        }
+        this.invalidateOnRollback(result.getOutcomes().stream().map(Tuple::getLeft).toList());
+        return result;
+    }
+
+    @Override
+    public BatchResult<E> updateAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        BatchResult<E> result;
+        try {
+            result = this.delegate.updateAll(entities);
+        } catch (RuntimeException exception) {
+            this.invalidateAll();
+            throw exception;
+        }
+
+        synchronized (this) {
+            this.writeVersion++;
+            result.getOutcomes().forEach(outcome -> {
+                ID id = outcome.getLeft().getId();
+                if (outcome.getRight() == BatchResult.Outcome.UPDATED) {
+                    this.entries.put(id, new CacheEntry<>(outcome.getLeft(), this.expiresAt()));
+                } else {
+                    this.entries.remove(id);
+                }
+            });
+        }
+        this.invalidateOnRollback(result.getApplied().stream().map(Entity::getId).toList());
+        return result;
+    }
+
+    /**
+     * Removes an ID from the cache, so that its next lookup reaches the wrapped repository.
+     *
+     * @param id ID to remove.
+     */
+    public synchronized void invalidate(ID id) {
+        this.writeVersion++;
+        this.entries.remove(id);
+    }
+
+    /**
+     * Removes all the IDs from the cache.
+     */
+    public synchronized void invalidateAll() {
+        this.writeVersion++;
+        this.entries.clear();
+    }
+
+    /**
+     * Removes the IDs cached by a write from the cache if the unit of work that made the write is rolled back.
+     */
+    private void invalidateOnRollback(List<ID> ids) {
+        this.unitOfWork.onRollback(() -> ids.forEach(this::invalidate));
+    }
+
+    private boolean isExpired(CacheEntry<E> entry) {
+        return this.ttlNanos != NO_EXPIRATION && System.nanoTime() - entry.expiresAt > 0;
+    }
+
+    private long expiresAt() {
+        return System.nanoTime() + this.ttlNanos;
+    }
+
+    /**
+     * @return Number of IDs currently cached, missing ones included.
+     */
+    public synchronized int getCachedCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return Number of lookups served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * @return Number of lookups that reached the wrapped repository.
+     */
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * @return Number of entries removed because the cache was full or because they expired.
+     */
+    public synchronized long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * @return Fraction of the lookups served from the cache.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hitCount + this.missCount;
+        return lookups == 0 ? 0 : (double) this.hitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CachingRepository{cached=" + this.entries.size() + ", hits=" + this.hitCount + ", misses=" + this.missCount
+                + ", evictions=" + this.evictionCount + String.format(", hitRate=%.3f}", this.getHitRate());
+    }
+
+    /**
+     * Cached entity along with the moment it expires.
+     * A null entity marks an ID that is missing from the wrapped repository.
+     */
+    private static class CacheEntry<E> {
+        private final E entity;
+        private final long expiresAt;
+
+        private CacheEntry(E entity, long expiresAt) {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
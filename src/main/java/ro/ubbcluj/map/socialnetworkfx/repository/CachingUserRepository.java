@@ -0,0 +1,53 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Caching decorator of a user repository, which keeps the search capability of the wrapped repository.
+ * Search results aren't cached, the search being served by the index of the wrapped repository.
+ */
+public class CachingUserRepository extends CachingRepository<UUID, User> implements UserRepository {
+    private final UserRepository userRepository;
+
+    /**
+     * Initializes a cache of the default size, whose entries don't expire.
+     *
+     * @param delegate Repository whose users are cached.
+     */
+    public CachingUserRepository(UserRepository delegate) {
+        this(delegate, DEFAULT_MAX_SIZE, NO_EXPIRATION);
+    }
+
+    /**
+     * Initializes a cache in front of a user repository.
+     *
+     * @param delegate  Repository whose users are cached.
+     * @param maxSize   Maximum number of cached IDs, the least recently used ones being evicted first.
+     * @param ttlMillis Time after which a cached entry expires, {@code NO_EXPIRATION} if entries don't expire.
+     */
+    public CachingUserRepository(UserRepository delegate, int maxSize, long ttlMillis) {
+        this(delegate, maxSize, ttlMillis, UnitOfWork.NONE);
+    }
+
+    /**
+     * Initializes a cache in front of a user repository whose writes may be made in units of work.
+     *
+     * @param delegate   Repository whose users are cached.
+     * @param maxSize    Maximum number of cached IDs, the least recently used ones being evicted first.
+     * @param ttlMillis  Time after which a cached entry expires, {@code NO_EXPIRATION} if entries don't expire.
+     * @param unitOfWork Unit of work of the wrapped repository, such as its connection pool.
+     */
+    public CachingUserRepository(UserRepository delegate, int maxSize, long ttlMillis, UnitOfWork unitOfWork) {
+        super(delegate, maxSize, ttlMillis, unitOfWork);
+        this.userRepository = delegate;
+    }
+
+    @Override
+    public List<User> usersLastNameContainsString(String string) throws IllegalArgumentException, RepositoryException {
+        return this.userRepository.usersLastNameContainsString(string);
+    }
+}
@@ -0,0 +1,337 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Repository that stores its values in memory and can be shared between threads.
+ * <p>
+ * Reads don't lock: the entities are kept in a concurrent map, and the iterations are weakly consistent, seeing
+ * the changes made while iterating or not. Each change locks the stripes of the ID of the entity and of its keys
+ * in the unique indexes, always in the same order, so that changes to different entities run in parallel while
+ * two entities can never take the same unique key.
+ * <p>
+ * Unlike {@link InMemoryRepository}, the entities aren't compared with all the stored ones: an entity is a
+ * duplicate of another when they share a key in one of the unique indexes.
+ * The bulk operations are applied entity by entity, each entity atomically.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity to be stored.
+ */
+public class ConcurrentInMemoryRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
+    // Number of lock stripes, a power of two large enough for the collisions between threads to stay rare.
+    private static final int STRIPE_COUNT = 256;
+
+    // Data structure that stores the entities.
+    private final Map<ID, E> entities = new ConcurrentHashMap<>();
+    // Sorted index of the IDs, used for paging.
+    private final NavigableSet<ID> sortedKeys;
+    // Secondary indexes of the entities.
+    private final List<SecondaryIndex<?, ID, E>> indexes;
+    // Locks of the changes.
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPE_COUNT];
+
+    /**
+     * Initializes a concurrent in memory repository with secondary indexes.
+     *
+     * @param keyComparator Order of the IDs used for paging, {@link Friendship#compareIds} for the user IDs, so that
+     *                      the pages follow the order of the database; null for the natural order of the IDs.
+     * @param indexes       Secondary indexes of the entities, empty when created.
+     */
+    public ConcurrentInMemoryRepository(Comparator<? super ID> keyComparator, Collection<? extends SecondaryIndex<?, ID, E>> indexes) {
+        this.sortedKeys = new ConcurrentSkipListSet<>(keyComparator);
+        this.indexes = List.copyOf(indexes);
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.entities.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return this.entities.size();
+    }
+
+    @Override
+    public Iterable<E> getAll() {
+        return Collections.unmodifiableCollection(this.entities.values());
+    }
+
+    @Override
+    public Optional<E> getOne(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        return Optional.ofNullable(this.entities.get(id));
+    }
+
+    @Override
+    public Optional<E> save(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        // Saving an entity whose ID is stored doesn't change anything, so it isn't locked.
+        E existing = this.entities.get(e.getId());
+        if (existing != null) {
+            return Optional.of(existing);
+        }
+
+        int[] locks = this.lock(e.getId(), null, e);
+        try {
+            existing = this.entities.get(e.getId());
+            if (existing != null) {
+                return Optional.of(existing);
+            }
+            this.checkConflicts(e);
+
+            this.entities.put(e.getId(), e);
+            this.sortedKeys.add(e.getId());
+            this.indexes.forEach(index -> index.add(e));
+            return Optional.empty();
+        } finally {
+            this.unlock(locks);
+        }
+    }
+
+    @Override
+    public Optional<E> delete(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        while (true) {
+            E old = this.entities.get(id);
+            if (old == null) {
+                return Optional.empty();
+            }
+
+            int[] locks = this.lock(id, old, null);
+            try {
+                // The entity may have been replaced before its stripes were locked, with different keys.
+                if (this.entities.remove(id, old)) {
+                    this.sortedKeys.remove(id);
+                    this.indexes.forEach(index -> index.remove(old));
+                    return Optional.of(old);
+                }
+            } finally {
+                this.unlock(locks);
+            }
+        }
+    }
+
+    @Override
+    public Optional<E> update(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        while (true) {
+            E old = this.entities.get(e.getId());
+            if (old == null) {
+                throw new RepositoryException("Entity with the specified id doesn't exist!");
+            }
+
+            int[] locks = this.lock(e.getId(), old, e);
+            try {
+                if (this.entities.get(e.getId()) == old) {
+                    this.checkConflicts(e);
+
+                    this.entities.put(e.getId(), e);
+                    this.indexes.forEach(index -> index.replace(old, e));
+                    return Optional.of(old);
+                }
+            } finally {
+                this.unlock(locks);
+            }
+        }
+    }
+
+    @Override
+    public BatchResult<E> saveAll(Collection<E> entities) throws IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> {
+            BatchResult.Outcome outcome;
+            try {
+                outcome = this.save(entity).isEmpty() ? BatchResult.Outcome.INSERTED : BatchResult.Outcome.DUPLICATE;
+            } catch (RepositoryException exception) {
+                outcome = BatchResult.Outcome.DUPLICATE;
+            }
+            result.add(entity, outcome);
+        });
+        return result;
+    }
+
+    @Override
+    public BatchResult<E> updateAll(Collection<E> entities) throws IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> {
+            BatchResult.Outcome outcome;
+            try {
+                this.update(entity);
+                outcome = BatchResult.Outcome.UPDATED;
+            } catch (RepositoryException exception) {
+                // The entity is either missing or sharing a unique key with another entity.
+                outcome = this.entities.containsKey(entity.getId()) ? BatchResult.Outcome.DUPLICATE : BatchResult.Outcome.MISSING;
+            }
+            result.add(entity, outcome);
+        });
+        return result;
+    }
+
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive!");
+        }
+        if (sortOrder == null) {
+            throw new IllegalArgumentException("The sort order cannot be null!");
+        }
+
+        NavigableSet<ID> keys;
+        if (sortOrder == SortOrder.ASCENDING) {
+            keys = afterKey == null ? this.sortedKeys : this.sortedKeys.tailSet(afterKey, false);
+        } else {
+            keys = afterKey == null ? this.sortedKeys.descendingSet() : this.sortedKeys.headSet(afterKey, false).descendingSet();
+        }
+
+        // The entities deleted since their ID was read are skipped.
+        List<E> content = new ArrayList<>(limit);
+        Iterator<ID> iterator = keys.iterator();
+        while (iterator.hasNext() && content.size() < limit) {
+            E entity = this.entities.get(iterator.next());
+            if (entity != null) {
+                content.add(entity);
+            }
+        }
+
+        ID nextKey = iterator.hasNext() && !content.isEmpty() ? content.get(content.size() - 1).getId() : null;
+        return new Page<>(content, nextKey);
+    }
+
+    /**
+     * Returns the entities with a given key in one of the indexes of the repository.
+     *
+     * @param index Index declared by the repository.
+     * @param key   Key to look up.
+     * @param <K>   Type of the key.
+     * @return The entities with the key.
+     * @throws IllegalArgumentException If the index isn't declared by the repository or the key is null.
+     */
+    public <K> List<E> findBy(SecondaryIndex<K, ID, E> index, K key) throws IllegalArgumentException {
+        return this.entitiesOf(this.declared(index).find(key));
+    }
+
+    /**
+     * Returns the entities whose string in one of the indexes of the repository starts with a prefix.
+     *
+     * @param index  Index declared by the repository.
+     * @param prefix Prefix to look up.
+     * @return The entities whose string starts with the prefix, in the order of the strings.
+     * @throws IllegalArgumentException If the index isn't declared by the repository or the prefix is null.
+     */
+    public List<E> findByPrefix(PrefixIndex<ID, E> index, String prefix) throws IllegalArgumentException {
+        return this.entitiesOf(this.declared(index).findByPrefix(prefix));
+    }
+
+    private <I extends SecondaryIndex<?, ID, E>> I declared(I index) {
+        if (index == null || this.indexes.stream().noneMatch(declared -> declared == index)) {
+            throw new IllegalArgumentException("The index isn't declared by the repository!");
+        }
+        return index;
+    }
+
+    private List<E> entitiesOf(Collection<ID> ids) {
+        List<E> found = new ArrayList<>(ids.size());
+        ids.forEach(id -> {
+            E entity = this.entities.get(id);
+            if (entity != null) {
+                found.add(entity);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Checks that no other entity has the keys of an entity in the unique indexes.
+     * The stripes of the keys must be locked.
+     *
+     * @throws RepositoryException If another entity has one of the keys.
+     */
+    private void checkConflicts(E entity) throws RepositoryException {
+        for (SecondaryIndex<?, ID, E> index : this.indexes) {
+            if (index.conflict(entity).isPresent()) {
+                throw new RepositoryException("An entity with the same " + index.getName() + " is already stored!");
+            }
+        }
+    }
+
+    /**
+     * Locks the stripes of an ID and of the unique keys of the entities stored under it, in ascending order.
+     *
+     * @param id     ID of the entity.
+     * @param old    Entity stored under the ID, null if there is none.
+     * @param entity Entity that will be stored under the ID, null if there is none.
+     * @return The number of locked stripes, stored at the start of the array.
+     */
+    private int[] lock(ID id, E old, E entity) {
+        int[] indices = new int[1 + 2 * this.indexes.size()];
+        int count = 0;
+        indices[count++] = stripe(id.hashCode());
+        for (int i = 0; i < this.indexes.size(); i++) {
+            SecondaryIndex<?, ID, E> index = this.indexes.get(i);
+            if (index instanceof UniqueIndex) {
+                Object oldKey = old == null ? null : index.keyOf(old);
+                Object key = entity == null ? null : index.keyOf(entity);
+                if (oldKey != null) {
+                    indices[count++] = stripe(31 * i + oldKey.hashCode());
+                }
+                if (key != null && !key.equals(oldKey)) {
+                    indices[count++] = stripe(31 * i + key.hashCode());
+                }
+            }
+        }
+
+        // Sorting the stripes and dropping the repeated ones, as a lock is taken once.
+        Arrays.sort(indices, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indices[i] != indices[distinct - 1]) {
+                indices[distinct++] = indices[i];
+            }
+        }
+        for (int i = 0; i < distinct; i++) {
+            this.stripes[indices[i]].lock();
+        }
+        return Arrays.copyOf(indices, distinct);
+    }
+
+    private void unlock(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            this.stripes[locked[i]].unlock();
+        }
+    }
+
+    private static int stripe(int hash) {
+        hash ^= hash >>> 16;
+        return (hash * 0x9E3779B9 >>> 24) & (STRIPE_COUNT - 1);
+    }
+}
@@ -0,0 +1,474 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of database connections.
+ * Connections are validated when borrowed, closed after staying idle for too long and handed back to the pool
+ * when the borrower calls {@code close()} on them.
+ * <p>
+ * The pool is also the unit of work of the repositories that share it: while a work runs, the connections
+ * borrowed by its thread are the same one, whose transaction is committed only when the work completes.
+ */
+public class ConnectionPool implements AutoCloseable, UnitOfWork {
+    // Default values for the pool configuration.
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5_000;
+    public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // URL of the database
+    private final String dbUrl;
+    // User credentials for the connection with the database
+    private final String username;
+    private final String password;
+
+    // Configuration of the pool.
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
+    // Idle connections, the most recently returned one being on top.
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+    // Permits for borrowing, one for each connection that may be opened.
+    private final Semaphore permits;
+
+    // Statistics of the pool.
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    // Connection of the work running on each thread, if any.
+    private final ThreadLocal<Connection> transactions = new ThreadLocal<>();
+    // Actions to run if the work running on each thread is rolled back.
+    private final ThreadLocal<List<Runnable>> rollbackActions = new ThreadLocal<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Initializes a connection pool with the default configuration.
+     *
+     * @param dbUrl    URL of the database.
+     * @param username Username for the connection.
+     * @param password Password for the connection.
+     */
+    public ConnectionPool(String dbUrl, String username, String password) {
+        this(dbUrl, username, password, DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                DEFAULT_BORROW_TIMEOUT_MILLIS, DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Initializes a connection pool.
+     *
+     * @param dbUrl                    URL of the database.
+     * @param username                 Username for the connection.
+     * @param password                 Password for the connection.
+     * @param maxSize                  Maximum number of connections opened at the same time.
+     * @param idleTimeoutMillis        Time after which an idle connection is closed.
+     * @param borrowTimeoutMillis      Time to wait for a connection when the pool is exhausted.
+     * @param validationTimeoutSeconds Time to wait for the validation of a connection on borrow.
+     */
+    public ConnectionPool(String dbUrl, String username, String password, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, int validationTimeoutSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The size of the pool must be positive!");
+        }
+
+        this.dbUrl = dbUrl;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrows a connection from the pool.
+     * The connection returns to the pool when it is closed.
+     *
+     * @return A valid connection to the database.
+     * @throws RepositoryException If the pool is closed, exhausted for longer than the borrow timeout
+     *                             or a connection couldn't be opened.
+     */
+    public Connection getConnection() throws RepositoryException {
+        Connection transaction = this.transactions.get();
+        if (transaction != null) {
+            return this.join(transaction);
+        }
+        if (this.closed) {
+            throw new RepositoryException("The connection pool is closed!");
+        }
+
+        // Waiting for a free slot in the pool.
+        long start = System.nanoTime();
+        try {
+            if (!this.permits.tryAcquire(this.borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.timeoutCount.incrementAndGet();
+                throw new RepositoryException("No connection available after " + this.borrowTimeoutMillis + " ms!");
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting for a connection!");
+        }
+        this.recordWait(System.nanoTime() - start);
+
+        try {
+            Connection physical = this.takeValidConnection();
+            this.activeConnections.incrementAndGet();
+            return this.wrap(physical);
+        } catch (RuntimeException exception) {
+            this.permits.release();
+            throw exception;
+        }
+    }
+
+    /**
+     * Runs a work in a single transaction: every connection borrowed by the thread during the work is the
+     * connection of the transaction, which is committed when the work completes and rolled back otherwise.
+     * A work run inside another one joins its transaction.
+     *
+     * @param work Work that changes the repositories.
+     * @param <T>  Type of the result of the work.
+     * @return The result of the work.
+     * @throws RepositoryException If no connection could be borrowed or the transaction couldn't be committed.
+     */
+    @Override
+    public <T> T run(Supplier<T> work) throws RepositoryException {
+        if (this.transactions.get() != null) {
+            return work.get();
+        }
+
+        List<Runnable> onRollback = new ArrayList<>();
+        boolean committed = false;
+        try {
+            // Closing the connection without committing rolls the work back.
+            try (Connection connection = this.getConnection()) {
+                connection.setAutoCommit(false);
+                this.transactions.set(connection);
+                this.rollbackActions.set(onRollback);
+                try {
+                    T result = work.get();
+                    connection.commit();
+                    committed = true;
+                    return result;
+                } finally {
+                    this.transactions.remove();
+                    this.rollbackActions.remove();
+                }
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } finally {
+            // Running the actions once the connection was closed, and with it the transaction rolled back.
+            if (!committed) {
+                onRollback.forEach(Runnable::run);
+            }
+        }
+    }
+
+    @Override
+    public void onRollback(Runnable action) {
+        List<Runnable> actions = this.rollbackActions.get();
+        if (actions != null) {
+            actions.add(action);
+        }
+    }
+
+    /**
+     * Returns the connection of the running transaction to a borrower. The borrower can't close, commit or
+     * roll back the transaction, nor change its mode, as these belong to the work; a failure of the borrower
+     * propagates through the work, which then rolls the whole transaction back.
+     *
+     * @param transaction Connection of the transaction.
+     * @return Connection handed to the borrower.
+     */
+    private Connection join(Connection transaction) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "rollback":
+                case "setAutoCommit":
+                case "setReadOnly":
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "TransactionConnection[" + transaction + "]";
+                default:
+                    try {
+                        return method.invoke(transaction, args);
+                    } catch (InvocationTargetException invocationTargetException) {
+                        throw invocationTargetException.getCause();
+                    }
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    /**
+     * Retrieves an idle connection that is still valid or opens a new one.
+     *
+     * @return A physical connection to the database.
+     * @throws RepositoryException If a new connection couldn't be opened.
+     */
+    private Connection takeValidConnection() throws RepositoryException {
+        IdleConnection idle;
+        while ((idle = this.pollIdle()) != null) {
+            if (this.isExpired(idle, System.currentTimeMillis())) {
+                closeQuietly(idle.connection);
+                continue;
+            }
+
+            try {
+                if (idle.connection.isValid(this.validationTimeoutSeconds)) {
+                    return idle.connection;
+                }
+            } catch (SQLException ignored) {
+                // The connection is broken, it will be discarded.
+            }
+            closeQuietly(idle.connection);
+        }
+
+        try {
+            return DriverManager.getConnection(this.dbUrl, this.username, this.password);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    private synchronized IdleConnection pollIdle() {
+        return this.idleConnections.pollFirst();
+    }
+
+    private boolean isExpired(IdleConnection idle, long now) {
+        return now - idle.lastUsed > this.idleTimeoutMillis;
+    }
+
+    /**
+     * Returns a physical connection to the pool, resetting the state left by the borrower.
+     *
+     * @param physical Connection that was borrowed.
+     */
+    private void release(Connection physical) {
+        this.activeConnections.decrementAndGet();
+        try {
+            if (this.closed || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+
+            // Discarding the unfinished work of the borrower.
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (physical.isReadOnly()) {
+                physical.setReadOnly(false);
+            }
+
+            this.pushIdle(physical);
+        } catch (SQLException sqlException) {
+            closeQuietly(physical);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Adds a connection to the idle ones, closing the connections that stayed idle for too long.
+     *
+     * @param physical Connection to add.
+     */
+    private synchronized void pushIdle(Connection physical) {
+        long now = System.currentTimeMillis();
+
+        Iterator<IdleConnection> iterator = this.idleConnections.descendingIterator();
+        while (iterator.hasNext()) {
+            IdleConnection idle = iterator.next();
+            if (!this.isExpired(idle, now)) {
+                break;
+            }
+            iterator.remove();
+            closeQuietly(idle.connection);
+        }
+
+        this.idleConnections.addFirst(new IdleConnection(physical, now));
+    }
+
+    private void recordWait(long waitNanos) {
+        this.borrowCount.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waitNanos);
+        this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Wraps a physical connection so that closing it returns it to the pool.
+     *
+     * @param physical Physical connection.
+     * @return Connection handed to the borrower.
+     */
+    private Connection wrap(Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean returned = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!this.returned) {
+                            this.returned = true;
+                            ConnectionPool.this.release(physical);
+                        }
+                        return null;
+                    case "isClosed":
+                        return this.returned || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "PooledConnection[" + physical + "]";
+                    default:
+                        if (this.returned) {
+                            throw new SQLException("The connection was returned to the pool!");
+                        }
+                }
+
+                try {
+                    return method.invoke(physical, args);
+                } catch (InvocationTargetException invocationTargetException) {
+                    throw invocationTargetException.getCause();
+                }
+            }
+        };
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Nothing to do with a connection that can't be closed.
+        }
+    }
+
+    /**
+     * @return Maximum number of connections opened at the same time.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return Number of connections that are currently borrowed.
+     */
+    public int getActiveConnections() {
+        return this.activeConnections.get();
+    }
+
+    /**
+     * @return Number of connections that are currently idle in the pool.
+     */
+    public synchronized int getIdleConnections() {
+        return this.idleConnections.size();
+    }
+
+    /**
+     * @return Number of borrowers waiting for a connection.
+     */
+    public int getWaitingBorrowers() {
+        return this.permits.getQueueLength();
+    }
+
+    /**
+     * @return Number of successful borrows.
+     */
+    public long getBorrowCount() {
+        return this.borrowCount.get();
+    }
+
+    /**
+     * @return Number of borrows that timed out because the pool was exhausted.
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * @return Average time, in milliseconds, spent waiting for a connection.
+     */
+    public double getAverageWaitMillis() {
+        long borrows = this.borrowCount.get();
+        return borrows == 0 ? 0 : this.totalWaitNanos.get() / (borrows * 1_000_000.0);
+    }
+
+    /**
+     * @return Longest time, in milliseconds, spent waiting for a connection.
+     */
+    public double getMaxWaitMillis() {
+        return this.maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Closes the idle connections and prevents further borrowing.
+     * Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+
+        synchronized (this) {
+            this.idleConnections.forEach(idle -> closeQuietly(idle.connection));
+            this.idleConnections.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{active=" + this.getActiveConnections() + ", idle=" + this.getIdleConnections()
+                + ", waiting=" + this.getWaitingBorrowers() + ", borrows=" + this.getBorrowCount()
+                + ", timeouts=" + this.getTimeoutCount()
+                + String.format(", avgWait=%.3fms, maxWait=%.3fms}", this.getAverageWaitMillis(), this.getMaxWaitMillis());
+    }
+
+    /**
+     * Physical connection along with the moment it became idle.
+     */
+    private static class IdleConnection {
+        private final Connection connection;
+        private final long lastUsed;
+
+        private IdleConnection(Connection connection, long lastUsed) {
+            this.connection = connection;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -3,10 +3,16 @@ package ro.ubbcluj.map.socialnetworkfx.repository;
 import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Database repository based on the Repository interface
@@ -15,24 +21,43 @@ import java.util.Optional;
  * @param <E>  Entity stored.
  */
 public abstract class DBRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
-    // URL of the database
-    private static String DB_URL;
-    // User credentials for the connection with the database
-    private static String USERNAME;
-    private static String PASSWORD;
+    // Number of statements sent to the database in one round trip by the bulk operations.
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    // Number of entities starting from which saveAll loads the entities through COPY.
+    public static final int DEFAULT_COPY_THRESHOLD = 10_000;
+    // Number of rows fetched from the database in one round trip while streaming.
+    public static final int DEFAULT_FETCH_SIZE = 1_000;
+    // Size of the chunks of CSV data sent to the database by COPY.
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    // Pool that provides the connections with the database
+    private final ConnectionPool connectionPool;
+
+    // Whether the schema statements of the repository were already executed.
+    private volatile boolean schemaEnsured = false;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int copyThreshold = DEFAULT_COPY_THRESHOLD;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
 
     /**
-     * Initializes a database Repository.
+     * Initializes a database Repository with its own connection pool.
      *
      * @param db_url   URL of the database.
      * @param username Username for the connection.
      * @param password Password for the connection.
      */
-
     public DBRepository(String db_url, String username, String password) {
-        DB_URL = db_url;
-        USERNAME = username;
-        PASSWORD = password;
+        this(new ConnectionPool(db_url, username, password));
+    }
+
+    /**
+     * Initializes a database Repository that borrows its connections from a given pool.
+     *
+     * @param connectionPool Pool of connections to the database.
+     */
+    public DBRepository(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     /**
@@ -58,15 +83,9 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
     public abstract PreparedStatement statementSelectOnID(Connection connection, ID id) throws RepositoryException;
 
     /**
-     * Returns the SQL Interrogation for selection by fields.
-     *
-     * @param entity Entity on which the interrogation will proceed.
-     * @return SQL Interrogation for selection by fields.
-     */
-    public abstract PreparedStatement statementSelectOnFields(Connection connection, E entity) throws RepositoryException;
-
-    /**
-     * Returns the SQL Interrogation for inserting into a table.
+     * Returns the SQL Interrogation that inserts an entity unless it is already stored, in a single statement.
+     * The interrogation returns one row: the inserted entity with {@code was_inserted} true, or the stored
+     * entity it conflicts with and {@code was_inserted} false.
      *
      * @param entity Entity on which the interrogation will proceed.
      * @return SQL Interrogation for inserting into a table.
@@ -74,7 +93,7 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
     public abstract PreparedStatement statementInsert(Connection connection, E entity) throws RepositoryException;
 
     /**
-     * Returns the SQL Interrogation for deleting from a table.
+     * Returns the SQL Interrogation that deletes from a table, returning the deleted row.
      *
      * @param id ID on which the interrogation will proceed.
      * @return SQL Interrogation for deleting from a table.
@@ -82,7 +101,7 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
     public abstract PreparedStatement statementDelete(Connection connection, ID id) throws RepositoryException;
 
     /**
-     * Returns the SQL Interrogation for updating rows in a table.
+     * Returns the SQL Interrogation that updates a row in a table, returning the row as it was before the update.
      *
      * @param entity Entity on which the interrogation will proceed.
      * @return SQL Interrogation for updating rows in table.
@@ -90,18 +109,253 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
     public abstract PreparedStatement statementUpdate(Connection connection, E entity) throws RepositoryException;
 
     /**
-     * Connects to the database.
+     * Returns the SQL Interrogation for selecting a page of entries, ordered by ID, that start right after a given ID.
+     * The interrogation must seek the key through the primary key index instead of skipping rows with OFFSET.
+     *
+     * @param afterKey  ID after which the page starts, null for the first page.
+     * @param limit     Maximum number of entries to select.
+     * @param sortOrder Order of the IDs.
+     * @return SQL Interrogation for selecting a page of entries.
+     */
+    public abstract PreparedStatement statementPage(Connection connection, ID afterKey, int limit, SortOrder sortOrder) throws RepositoryException;
+
+    /**
+     * Returns the SQL Interrogation for inserting into a table that skips the entities which are already stored.
+     * The statement has no parameters set, they are set for each entity by {@link #addInsertBatch}.
+     *
+     * @return SQL Interrogation for inserting into a table in batches.
+     */
+    public abstract PreparedStatement statementInsertBatch(Connection connection) throws RepositoryException;
+
+    /**
+     * Returns the SQL Interrogation for deleting from a table, without parameters set.
+     *
+     * @return SQL Interrogation for deleting from a table in batches.
+     */
+    public abstract PreparedStatement statementDeleteBatch(Connection connection) throws RepositoryException;
+
+    /**
+     * Returns the SQL Interrogation for updating rows in a table, without parameters set.
+     *
+     * @return SQL Interrogation for updating rows in a table in batches.
+     */
+    public abstract PreparedStatement statementUpdateBatch(Connection connection) throws RepositoryException;
+
+    /**
+     * Sets the parameters of the batch insert statement for an entity and adds them to the batch.
+     *
+     * @param statement Statement returned by {@link #statementInsertBatch}.
+     * @param entity    Entity to insert.
+     * @throws SQLException Related to the statement editing.
+     */
+    protected abstract void addInsertBatch(PreparedStatement statement, E entity) throws SQLException;
+
+    /**
+     * Sets the parameters of the batch delete statement for an ID and adds them to the batch.
+     *
+     * @param statement Statement returned by {@link #statementDeleteBatch}.
+     * @param id        ID of the entity to delete.
+     * @throws SQLException Related to the statement editing.
+     */
+    protected abstract void addDeleteBatch(PreparedStatement statement, ID id) throws SQLException;
+
+    /**
+     * Sets the parameters of the batch update statement for an entity and adds them to the batch.
+     *
+     * @param statement Statement returned by {@link #statementUpdateBatch}.
+     * @param entity    New entity.
+     * @throws SQLException Related to the statement editing.
+     */
+    protected abstract void addUpdateBatch(PreparedStatement statement, E entity) throws SQLException;
+
+    /**
+     * Returns the SQL that creates the temporary table in which COPY loads the entities.
+     * The table must be dropped on commit.
+     *
+     * @return SQL that creates the staging table.
+     */
+    protected abstract String sqlCopyStaging();
+
+    /**
+     * Returns the COPY command that loads CSV rows written by {@link #writeCopyRow} into the staging table.
+     *
+     * @return COPY ... FROM STDIN command.
+     */
+    protected abstract String sqlCopyIn();
+
+    /**
+     * Returns the SQL that moves the staged entities that aren't already stored into the table,
+     * returning the IDs of the inserted entities.
+     *
+     * @return SQL that merges the staging table into the table.
+     */
+    protected abstract String sqlCopyMerge();
+
+    /**
+     * Appends an entity as a CSV row, ending in a new line.
+     *
+     * @param row    Builder of the CSV data.
+     * @param entity Entity to append.
+     */
+    protected abstract void writeCopyRow(StringBuilder row, E entity);
+
+    /**
+     * Extracts the ID of an Entity from a given result set.
+     *
+     * @param resultSet Given result set.
+     * @return ID extracted from the result set.
+     * @throws SQLException Resulted from the extraction if a problem was encountered.
+     */
+    protected abstract ID extractIdFromResultSet(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Returns the SQL Interrogation that selects the entries changed after a given moment, according to the change log.
+     * Each changed ID is selected once, in columns {@code change_id_1} and {@code change_id_2}, along with
+     * {@code is_present}, which is false if the entry was deleted, and the columns of the entry otherwise.
+     *
+     * @param since Moment after which the changes are selected.
+     * @return SQL Interrogation for selecting the changed entries.
+     */
+    public abstract PreparedStatement statementChangesSince(Connection connection, Instant since) throws RepositoryException;
+
+    /**
+     * Extracts the ID of a changed entry from a row selected by {@link #statementChangesSince}.
+     *
+     * @param resultSet Given result set.
+     * @return ID of the changed entry.
+     * @throws SQLException Resulted from the extraction if a problem was encountered.
+     */
+    protected abstract ID extractChangeIdFromResultSet(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Returns the statements that record every change of a table in the change log, through a trigger.
+     * The change log keeps, for each changed row, its key and the moment of the change.
+     *
+     * @param table      Name of the table.
+     * @param keyColumns Names of the uuid columns of the key of the table, at most two.
+     * @return The statements of the change log, for a migration.
+     */
+    protected static List<String> changeLogStatements(String table, String... keyColumns) {
+        String arguments = String.join(", ", Arrays.stream(keyColumns).map(column -> "'" + column + "'").toList());
+        return List.of(
+                "create table if not exists row_changes (table_name text not null, id_1 uuid not null, id_2 uuid, " +
+                        "changed_at timestamptz not null default clock_timestamp())",
+                "create index if not exists row_changes_table_changed_at_idx on row_changes(table_name, changed_at)",
+                "create or replace function record_row_change() returns trigger language plpgsql as $$ " +
+                        "declare changed jsonb := to_jsonb(case when TG_OP = 'DELETE' then OLD else NEW end); " +
+                        "begin " +
+                        "insert into row_changes(table_name, id_1, id_2) " +
+                        "values (TG_TABLE_NAME, (changed ->> TG_ARGV[0])::uuid, (changed ->> TG_ARGV[1])::uuid); " +
+                        "return null; " +
+                        "end $$",
+                "drop trigger if exists " + table + "_row_changes on " + table,
+                "create trigger " + table + "_row_changes after insert or update or delete on " + table + " " +
+                        "for each row execute function record_row_change(" + arguments + ")"
+        );
+    }
+
+    /**
+     * Appends a value as a quoted CSV field.
+     *
+     * @param row   Builder of the CSV data.
+     * @param value Value to append.
+     * @return The builder, for chaining.
+     */
+    protected static StringBuilder appendCsv(StringBuilder row, Object value) {
+        return row.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Connects to the database by borrowing a connection from the pool.
+     * Closing the connection returns it to the pool.
      *
      * @return A connection to the database.
+     * @throws RepositoryException If no connection could be borrowed.
      */
-    public Connection connect() {
+    public Connection connect() throws RepositoryException {
+        Connection connection = this.connectionPool.getConnection();
+        if (!this.schemaEnsured) {
+            this.ensureSchema(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Returns the migrations of the schema used by the repository, such as its tables and indexes,
+     * including the migrations of the tables it depends on.
+     * The pending ones are applied on the first connection of the repository.
+     *
+     * @return The migrations of the schema.
+     */
+    protected List<Migration> migrations() {
+        return List.of();
+    }
+
+    /**
+     * Applies the pending migrations of the repository once, on the first connection.
+     *
+     * @param connection Connection to the database.
+     * @throws RepositoryException If the schema couldn't be brought up to date.
+     */
+    private synchronized void ensureSchema(Connection connection) throws RepositoryException {
+        if (this.schemaEnsured) {
+            return;
+        }
+
+        List<Migration> migrations = this.migrations();
         try {
-            return DriverManager.getConnection(DB_URL, USERNAME, PASSWORD);
-        } catch (SQLException sqlException) {
-            throw new RepositoryException(sqlException.getMessage());
+            if (!migrations.isEmpty()) {
+                SchemaMigrator.migrate(connection, migrations);
+            }
+            this.schemaEnsured = true;
+        } catch (RuntimeException exception) {
+            closeQuietly(connection);
+            throw exception;
         }
     }
 
+    /**
+     * Getter for the pool that provides the connections of the repository.
+     *
+     * @return The connection pool.
+     */
+    public ConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+
+    /**
+     * Sets the number of statements sent to the database in one round trip by the bulk operations.
+     *
+     * @param batchSize Number of statements in a batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive!");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of entities starting from which saveAll loads the entities through COPY.
+     *
+     * @param copyThreshold Minimum number of entities for COPY, {@code Integer.MAX_VALUE} to disable it.
+     */
+    public void setCopyThreshold(int copyThreshold) {
+        this.copyThreshold = copyThreshold;
+    }
+
+    /**
+     * Sets the number of rows fetched from the database in one round trip while streaming.
+     *
+     * @param fetchSize Number of rows in a fetch.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("The fetch size must be positive!");
+        }
+        this.fetchSize = fetchSize;
+    }
+
     /**
      * Extracts an Entity from a given result set.
      *
@@ -111,6 +365,73 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
      */
     protected abstract E extractFromResultSet(ResultSet resultSet) throws SQLException;
 
+    /**
+     * Returns the current time of the database, which is the clock of the change log.
+     *
+     * @return The current time of the database.
+     * @throws RepositoryException SQL related exceptions.
+     */
+    public Instant currentTime() throws RepositoryException {
+        try (Connection connection = this.connect()) {
+            try (PreparedStatement statement = connection.prepareStatement("select clock_timestamp()")) {
+                ResultSet resultSet = statement.executeQuery();
+                resultSet.next();
+                return resultSet.getTimestamp(1).toInstant();
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    /**
+     * Returns the entries changed after a given moment, such as the moment a snapshot was taken.
+     *
+     * @param since Moment after which the changes are retrieved.
+     * @return The current state of each changed entry, empty if the entry was deleted.
+     * @throws RepositoryException SQL related exceptions.
+     */
+    public Map<ID, Optional<E>> changesSince(Instant since) throws RepositoryException {
+        Map<ID, Optional<E>> changes = new HashMap<>();
+
+        try (Connection connection = this.connect()) {
+            try (PreparedStatement statement = this.statementChangesSince(connection, since)) {
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    ID id = this.extractChangeIdFromResultSet(resultSet);
+                    changes.put(id, resultSet.getBoolean("is_present") ? Optional.of(this.extractFromResultSet(resultSet)) : Optional.empty());
+                }
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+
+        return changes;
+    }
+
+    /**
+     * Removes from the change log the changes of all the tables that happened before a given moment,
+     * once no snapshot older than that moment is used anymore.
+     *
+     * @param before Moment before which the changes are removed.
+     * @throws RepositoryException SQL related exceptions.
+     */
+    public void pruneChangesBefore(Instant before) throws RepositoryException {
+        try (Connection connection = this.connect()) {
+            try (PreparedStatement statement = connection.prepareStatement("delete from row_changes where changed_at < ?")) {
+                statement.setTimestamp(1, Timestamp.from(before));
+                statement.executeUpdate();
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
     @Override
     public boolean isEmpty() {
         return this.size() == 0;
@@ -156,6 +477,55 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
         return entities;
     }
 
+    /**
+     * Streams all the entries of the table through a server side cursor, inside a read-only transaction.
+     * Only {@code fetchSize} rows are held in memory at a time. The connection is kept until the stream is closed.
+     *
+     * @return Stream of all the entities stored in the table.
+     * @throws RepositoryException If the interrogation couldn't be started.
+     */
+    @Override
+    public Stream<E> stream() throws RepositoryException {
+        Connection connection = this.connect();
+        try {
+            // The driver uses a cursor only outside auto-commit mode.
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+
+            PreparedStatement statement = this.statementSelectAll(connection);
+            statement.setFetchSize(this.fetchSize);
+            ResultSet resultSet = statement.executeQuery();
+
+            return StreamSupport.stream(new ResultSetSpliterator(resultSet), false)
+                    .onClose(() -> {
+                        try (connection; statement; resultSet) {
+                            connection.commit();
+                        } catch (SQLException sqlException) {
+                            throw new RepositoryException(sqlException.getMessage());
+                        }
+                    });
+        } catch (SQLException sqlException) {
+            closeQuietly(connection);
+            throw new RepositoryException(sqlException.getMessage());
+        } catch (RuntimeException runtimeException) {
+            closeQuietly(connection);
+            throw runtimeException;
+        }
+    }
+
+    /**
+     * Closes a connection after a failure, keeping the original failure as the relevant one.
+     *
+     * @param connection Connection to close.
+     */
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // The original exception is the relevant one.
+        }
+    }
+
     @Override
     public Optional<E> getOne(ID id) throws IllegalArgumentException, RepositoryException {
         if (id == null) {
@@ -178,6 +548,39 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
         return Optional.empty();
     }
 
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException, RepositoryException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive!");
+        }
+        if (sortOrder == null) {
+            throw new IllegalArgumentException("The sort order cannot be null!");
+        }
+
+        List<E> content = new ArrayList<>(limit);
+        boolean hasNext = false;
+
+        try (Connection connection = this.connect()) {
+            // Selecting one more entry than the limit tells if there is a next page.
+            try (PreparedStatement statement = this.statementPage(connection, afterKey, limit + 1, sortOrder)) {
+                ResultSet resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    if (content.size() == limit) {
+                        hasNext = true;
+                        break;
+                    }
+                    content.add(this.extractFromResultSet(resultSet));
+                }
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+
+        return new Page<>(content, hasNext ? content.get(content.size() - 1).getId() : null);
+    }
+
     @Override
     public Optional<E> save(E entity) throws RepositoryException, IllegalArgumentException {
         if (entity == null) {
@@ -185,20 +588,16 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
         }
 
         try (Connection connection = this.connect()) {
-            try (PreparedStatement statementSelect = this.statementSelectOnFields(connection, entity)) {
-                ResultSet resultSetSelect = statementSelect.executeQuery();
+            try (PreparedStatement statementInsert = this.statementInsert(connection, entity)) {
+                ResultSet resultSet = statementInsert.executeQuery();
 
-                if (resultSetSelect.next()) {
-                    E _entity = this.extractFromResultSet(resultSetSelect);
-                    return Optional.of(_entity);
+                // No row means a concurrent insert of the same entity that isn't visible yet.
+                if (!resultSet.next()) {
+                    return Optional.of(entity);
                 }
-
-                try (PreparedStatement statementInsert = this.statementInsert(connection, entity)) {
-                    statementInsert.execute();
-                } catch (SQLException sqlException) {
-                    throw new RepositoryException(sqlException.getMessage());
+                if (!resultSet.getBoolean("was_inserted")) {
+                    return Optional.of(this.extractFromResultSet(resultSet));
                 }
-
             } catch (SQLException sqlException) {
                 throw new RepositoryException(sqlException.getMessage());
             }
@@ -215,16 +614,31 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
             throw new IllegalArgumentException("Id cannot be null!");
         }
 
+        return this.executeReturning(connection -> this.statementDelete(connection, id));
+    }
+
+    @Override
+    public Optional<E> update(E entity) throws RepositoryException, IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        return this.executeReturning(connection -> this.statementUpdate(connection, entity));
+    }
+
+    /**
+     * Executes a statement that returns at most one row.
+     *
+     * @param statement Function that prepares the statement.
+     * @return The entity from the returned row, empty if no row was returned.
+     * @throws RepositoryException SQL related exceptions.
+     */
+    private Optional<E> executeReturning(StatementFactory statement) throws RepositoryException {
         try (Connection connection = this.connect()) {
-            try (PreparedStatement statementSelect = this.statementSelectOnID(connection, id)) {
-                ResultSet resultSetSelect = statementSelect.executeQuery();
-                if (resultSetSelect.next()) {
-                    try (PreparedStatement statementDelete = this.statementDelete(connection, id)) {
-                        statementDelete.execute();
-                        return Optional.of(this.extractFromResultSet(resultSetSelect));
-                    } catch (SQLException sqlException) {
-                        throw new RepositoryException(sqlException.getMessage());
-                    }
+            try (PreparedStatement preparedStatement = statement.prepare(connection)) {
+                ResultSet resultSet = preparedStatement.executeQuery();
+                if (resultSet.next()) {
+                    return Optional.of(this.extractFromResultSet(resultSet));
                 }
             } catch (SQLException sqlException) {
                 throw new RepositoryException(sqlException.getMessage());
@@ -236,32 +650,195 @@ public abstract class DBRepository<ID, E extends Entity<ID>> implements Reposito
         return Optional.empty();
     }
 
-    @Override
-    public Optional<E> update(E entity) throws RepositoryException, IllegalArgumentException {
-        if (entity == null) {
-            throw new IllegalArgumentException("Id cannot be null!");
+    /**
+     * Sends a bulk through a batch statement in a single transaction.
+     *
+     * @param elements  Elements of the bulk.
+     * @param statement Function that prepares the batch statement.
+     * @param adder     Function that adds an element to the batch.
+     * @param applied   Outcome of the elements that changed a row.
+     * @param rejected  Outcome of the elements that changed no row.
+     * @return The outcome for each element.
+     * @throws RepositoryException If the bulk failed, in which case nothing was changed.
+     */
+    private <T> BatchResult<T> executeBatch(Collection<T> elements, StatementFactory statement, BatchAdder<T> adder,
+                                            BatchResult.Outcome applied, BatchResult.Outcome rejected) throws RepositoryException {
+        BatchResult<T> result = new BatchResult<>(elements.size());
+        if (elements.isEmpty()) {
+            return result;
         }
 
         try (Connection connection = this.connect()) {
-            try (PreparedStatement statementSelect = this.statementSelectOnID(connection, entity.getId())) {
-                ResultSet resultSetSelect = statementSelect.executeQuery();
-
-                if (resultSetSelect.next()) {
-                    try (PreparedStatement statementUpdate = this.statementUpdate(connection, entity)) {
-                        Optional<E> old = Optional.of(this.extractFromResultSet(resultSetSelect));
-                        statementUpdate.execute();
-                        return old;
-                    } catch (SQLException sqlException) {
-                        throw new RepositoryException(sqlException.getMessage());
+            connection.setAutoCommit(false);
+            try (PreparedStatement batchStatement = statement.prepare(connection)) {
+                List<T> pending = new ArrayList<>(Math.min(this.batchSize, elements.size()));
+
+                for (T element : elements) {
+                    adder.add(batchStatement, element);
+                    pending.add(element);
+
+                    if (pending.size() == this.batchSize) {
+                        recordBatch(batchStatement.executeBatch(), pending, result, applied, rejected);
+                        pending.clear();
                     }
                 }
+                if (!pending.isEmpty()) {
+                    recordBatch(batchStatement.executeBatch(), pending, result, applied, rejected);
+                }
+
+                connection.commit();
             } catch (SQLException sqlException) {
+                connection.rollback();
                 throw new RepositoryException(sqlException.getMessage());
             }
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
         }
 
-        return Optional.empty();
+        return result;
+    }
+
+    private static <T> void recordBatch(int[] counts, List<T> pending, BatchResult<T> result,
+                                        BatchResult.Outcome applied, BatchResult.Outcome rejected) {
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO means the statement ran, but the driver doesn't know how many rows changed.
+            boolean changed = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+            result.add(pending.get(i), changed ? applied : rejected);
+        }
+    }
+
+    /**
+     * Loads a bulk of entities through COPY into a staging table, then merges it into the table.
+     *
+     * @param entities Entities to insert.
+     * @return The outcome for each entity.
+     * @throws RepositoryException If the load failed, in which case nothing was inserted.
+     */
+    private BatchResult<E> copyAll(Collection<E> entities) throws RepositoryException {
+        try (Connection connection = this.connect()) {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement statement = connection.prepareStatement(this.sqlCopyStaging())) {
+                    statement.execute();
+                }
+
+                // Streaming the entities as CSV in chunks, so that the whole load is never held as text.
+                CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(this.sqlCopyIn());
+                try {
+                    StringBuilder chunk = new StringBuilder(COPY_CHUNK_SIZE + 256);
+                    for (E entity : entities) {
+                        this.writeCopyRow(chunk, entity);
+                        if (chunk.length() >= COPY_CHUNK_SIZE) {
+                            byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+                            copyIn.writeToCopy(bytes, 0, bytes.length);
+                            chunk.setLength(0);
+                        }
+                    }
+                    byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                    copyIn.endCopy();
+                } finally {
+                    if (copyIn.isActive()) {
+                        copyIn.cancelCopy();
+                    }
+                }
+
+                Set<ID> inserted = new HashSet<>();
+                try (PreparedStatement statement = connection.prepareStatement(this.sqlCopyMerge())) {
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        inserted.add(this.extractIdFromResultSet(resultSet));
+                    }
+                }
+
+                connection.commit();
+
+                BatchResult<E> result = new BatchResult<>(entities.size());
+                entities.forEach(entity -> result.add(entity,
+                        inserted.remove(entity.getId()) ? BatchResult.Outcome.INSERTED : BatchResult.Outcome.DUPLICATE));
+                return result;
+            } catch (SQLException sqlException) {
+                connection.rollback();
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public BatchResult<E> saveAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        if (entities.size() >= this.copyThreshold) {
+            return this.copyAll(entities);
+        }
+        return this.executeBatch(entities, this::statementInsertBatch, this::addInsertBatch,
+                BatchResult.Outcome.INSERTED, BatchResult.Outcome.DUPLICATE);
+    }
+
+    @Override
+    public BatchResult<ID> deleteAll(Collection<ID> ids) throws RepositoryException, IllegalArgumentException {
+        if (ids == null || ids.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Ids cannot be null!");
+        }
+
+        return this.executeBatch(ids, this::statementDeleteBatch, this::addDeleteBatch,
+                BatchResult.Outcome.DELETED, BatchResult.Outcome.MISSING);
+    }
+
+    @Override
+    public BatchResult<E> updateAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        return this.executeBatch(entities, this::statementUpdateBatch, this::addUpdateBatch,
+                BatchResult.Outcome.UPDATED, BatchResult.Outcome.MISSING);
+    }
+
+    /**
+     * Spliterator that extracts the entities of a result set one row at a time.
+     */
+    private class ResultSetSpliterator extends Spliterators.AbstractSpliterator<E> {
+        private final ResultSet resultSet;
+
+        private ResultSetSpliterator(ResultSet resultSet) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            try {
+                if (!this.resultSet.next()) {
+                    return false;
+                }
+                action.accept(DBRepository.this.extractFromResultSet(this.resultSet));
+                return true;
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Prepares a statement on a connection.
+     */
+    @FunctionalInterface
+    private interface StatementFactory {
+        PreparedStatement prepare(Connection connection) throws RepositoryException;
+    }
+
+    /**
+     * Adds an element to a batch statement.
+     *
+     * @param <T> Type of the element.
+     */
+    @FunctionalInterface
+    private interface BatchAdder<T> {
+        void add(PreparedStatement statement, T element) throws SQLException;
     }
 }
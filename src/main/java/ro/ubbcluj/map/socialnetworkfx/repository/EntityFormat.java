@@ -0,0 +1,122 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.entity.EntityCodec;
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Binary form of the entities and the IDs of a repository, used by the repositories that store them in files.
+ *
+ * @param <ID> ID type of the Entity.
+ * @param <E>  Entity that is stored.
+ */
+public interface EntityFormat<ID, E extends Entity<ID>> {
+    /**
+     * Binary form of the users.
+     */
+    EntityFormat<UUID, User> USERS = new EntityFormat<>() {
+        @Override
+        public int sizeOf(User user) {
+            return EntityCodec.sizeOf(user);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, User user) {
+            EntityCodec.writeUser(buffer, user);
+        }
+
+        @Override
+        public User read(ByteBuffer buffer) {
+            return EntityCodec.readUser(buffer);
+        }
+
+        @Override
+        public int sizeOfId(UUID id) {
+            return 16;
+        }
+
+        @Override
+        public void writeId(ByteBuffer buffer, UUID id) {
+            EntityCodec.writeUserId(buffer, id);
+        }
+
+        @Override
+        public UUID readId(ByteBuffer buffer) {
+            return EntityCodec.readUserId(buffer);
+        }
+    };
+
+    /**
+     * Binary form of the friendships.
+     */
+    EntityFormat<Tuple<UUID, UUID>, Friendship> FRIENDSHIPS = new EntityFormat<>() {
+        @Override
+        public int sizeOf(Friendship friendship) {
+            return EntityCodec.sizeOf(friendship);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Friendship friendship) {
+            EntityCodec.writeFriendship(buffer, friendship);
+        }
+
+        @Override
+        public Friendship read(ByteBuffer buffer) {
+            return EntityCodec.readFriendship(buffer);
+        }
+
+        @Override
+        public int sizeOfId(Tuple<UUID, UUID> id) {
+            return 32;
+        }
+
+        @Override
+        public void writeId(ByteBuffer buffer, Tuple<UUID, UUID> id) {
+            EntityCodec.writeFriendshipId(buffer, id);
+        }
+
+        @Override
+        public Tuple<UUID, UUID> readId(ByteBuffer buffer) {
+            return EntityCodec.readFriendshipId(buffer);
+        }
+    };
+
+    /**
+     * @return The number of bytes taken by an encoded entity.
+     */
+    int sizeOf(E entity);
+
+    /**
+     * Writes an entity at the position of a buffer.
+     */
+    void write(ByteBuffer buffer, E entity);
+
+    /**
+     * Reads an entity from the position of a buffer.
+     *
+     * @throws IllegalArgumentException If the entity is truncated.
+     */
+    E read(ByteBuffer buffer) throws IllegalArgumentException;
+
+    /**
+     * @return The number of bytes taken by an encoded ID.
+     */
+    int sizeOfId(ID id);
+
+    /**
+     * Writes an ID at the position of a buffer.
+     */
+    void writeId(ByteBuffer buffer, ID id);
+
+    /**
+     * Reads an ID from the position of a buffer.
+     *
+     * @throws IllegalArgumentException If the ID is truncated.
+     */
+    ID readId(ByteBuffer buffer) throws IllegalArgumentException;
+}
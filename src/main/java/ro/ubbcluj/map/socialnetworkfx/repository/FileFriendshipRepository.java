@@ -0,0 +1,39 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Friendship repository stored in a local directory, whose neighbourhood queries are served by the adjacency
+ * kept in memory.
+ */
+public class FileFriendshipRepository extends FileRepository<Tuple<UUID, UUID>, Friendship> implements FriendshipRepository {
+    private final InMemoryFriendshipRepository friendships;
+
+    /**
+     * Initializes a friendship repository, recovering the friendships stored in a directory.
+     *
+     * @param directory      Directory of the files, created if missing.
+     * @param userRepository Repository that stores the users of the friendships.
+     * @throws RepositoryException If the friendships couldn't be recovered from the directory.
+     */
+    public FileFriendshipRepository(Path directory, Repository<UUID, User> userRepository) throws RepositoryException {
+        this(directory, new InMemoryFriendshipRepository(userRepository));
+    }
+
+    private FileFriendshipRepository(Path directory, InMemoryFriendshipRepository friendships) throws RepositoryException {
+        super(directory, friendships, EntityFormat.FRIENDSHIPS);
+        this.friendships = friendships;
+    }
+
+    @Override
+    public synchronized List<User> getFriendsOf(UUID userId) throws IllegalArgumentException, RepositoryException {
+        return this.friendships.getFriendsOf(userId);
+    }
+}
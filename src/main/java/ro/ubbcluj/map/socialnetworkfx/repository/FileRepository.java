@@ -0,0 +1,730 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Repository that keeps its entities in memory and makes every change durable in a local directory,
+ * so that a single node can run without a database server.
+ * <p>
+ * Every change is appended to a log and synced to the disk before the write returns. A single writer thread
+ * appends the changes, syncing all the changes that accumulated while the previous sync ran at once,
+ * so that concurrent writers share the syncs.
+ * The log is periodically compacted into a snapshot of the entities, after which a new log is started
+ * and the older files are removed. On start-up, the latest snapshot is loaded and the logs written after it
+ * are replayed, a change that was only partially written before a crash being discarded.
+ * <p>
+ * Once a change couldn't be written, the repository refuses any further write, the files holding all the changes
+ * that were reported as successful.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity to be stored.
+ */
+public class FileRepository<ID, E extends Entity<ID>> implements Repository<ID, E>, AutoCloseable {
+    // Default values for the compaction configuration.
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60_000;
+    public static final long DEFAULT_COMPACTION_THRESHOLD_BYTES = 16 << 20;
+
+    // Names of the files, which end with their generation.
+    private static final Pattern FILE_NAME = Pattern.compile("(log|snapshot)-(\\d{20})\\.dat");
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    // Snapshot identification: magic and version.
+    private static final int SNAPSHOT_MAGIC = 0x534E464C;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // Log records: length of the operation and its content, checksum, operation.
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    // Directory of the files.
+    private final Path directory;
+    // Entities, along with their indexes.
+    private final InMemoryRepository<ID, E> memory;
+    // Binary form of the entities.
+    private final EntityFormat<ID, E> format;
+    // Size of the log that triggers a compaction.
+    private final long compactionThresholdBytes;
+
+    // Appends waiting for the writer thread, in the order of the changes.
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // Thread that compacts the log periodically.
+    private final ScheduledExecutorService compactor;
+    // Lock that allows a single compaction at a time.
+    private final Object compactionLock = new Object();
+
+    // Log being appended, used only by the writer thread once the repository was recovered.
+    private FileChannel log;
+    // Generation of the log being appended, and the number of bytes appended since the last compaction.
+    private long generation;
+    private long logBytes;
+    // Exception that made the log unusable, null if the log is usable.
+    private volatile Exception failure;
+    private boolean closed = false;
+
+    // Statistics of the log.
+    private volatile long appendCount = 0;
+    private volatile long syncCount = 0;
+    private volatile long compactionCount = 0;
+
+    /**
+     * Initializes a repository with the default compaction configuration.
+     *
+     * @param directory Directory of the files, created if missing.
+     * @param memory    Empty repository that keeps the entities in memory.
+     * @param format    Binary form of the entities.
+     * @throws RepositoryException If the entities couldn't be recovered from the directory.
+     */
+    public FileRepository(Path directory, InMemoryRepository<ID, E> memory, EntityFormat<ID, E> format) throws RepositoryException {
+        this(directory, memory, format, DEFAULT_COMPACTION_INTERVAL_MILLIS, DEFAULT_COMPACTION_THRESHOLD_BYTES);
+    }
+
+    /**
+     * Initializes a repository, recovering the entities stored in its directory.
+     *
+     * @param directory                Directory of the files, created if missing.
+     * @param memory                   Empty repository that keeps the entities in memory.
+     * @param format                   Binary form of the entities.
+     * @param compactionIntervalMillis Time between the checks of the size of the log, 0 for compacting only on
+     *                                 {@link #compact()}.
+     * @param compactionThresholdBytes Size of the log from which it is compacted.
+     * @throws RepositoryException If the entities couldn't be recovered from the directory.
+     */
+    public FileRepository(Path directory, InMemoryRepository<ID, E> memory, EntityFormat<ID, E> format,
+                          long compactionIntervalMillis, long compactionThresholdBytes) throws RepositoryException {
+        if (directory == null || memory == null || format == null) {
+            throw new IllegalArgumentException("The directory, the memory and the format cannot be null!");
+        }
+        if (!memory.isEmpty()) {
+            throw new IllegalArgumentException("The memory must be empty!");
+        }
+        if (compactionIntervalMillis < 0 || compactionThresholdBytes <= 0) {
+            throw new IllegalArgumentException("The compaction interval cannot be negative and the threshold must be positive!");
+        }
+
+        this.directory = directory;
+        this.memory = memory;
+        this.format = format;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+
+        try {
+            this.recover();
+        } catch (IOException | RuntimeException exception) {
+            throw new RepositoryException("The repository couldn't be recovered: " + exception.getMessage());
+        }
+
+        this.writer = new Thread(this::writeLoop, "file-repository-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-repository-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (compactionIntervalMillis > 0) {
+            this.compactor.scheduleWithFixedDelay(this::compactIfNeeded, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return this.memory.isEmpty();
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.memory.size();
+    }
+
+    @Override
+    public synchronized Iterable<E> getAll() {
+        List<E> entities = new ArrayList<>(this.memory.size());
+        this.memory.getAll().forEach(entities::add);
+        return entities;
+    }
+
+    @Override
+    public Stream<E> stream() {
+        return ((List<E>) this.getAll()).stream();
+    }
+
+    @Override
+    public synchronized Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        return this.memory.page(afterKey, limit, sortOrder);
+    }
+
+    @Override
+    public synchronized Optional<E> getOne(ID id) throws IllegalArgumentException {
+        return this.memory.getOne(id);
+    }
+
+    @Override
+    public Optional<E> save(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        Optional<E> existing;
+        CompletableFuture<Void> durable;
+        synchronized (this) {
+            this.ensureWritable();
+            existing = this.memory.save(e);
+            if (existing.isPresent()) {
+                return existing;
+            }
+            durable = this.append(List.of(this.putRecord(e)));
+        }
+        this.await(durable);
+        return existing;
+    }
+
+    @Override
+    public Optional<E> delete(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> removed;
+        CompletableFuture<Void> durable;
+        synchronized (this) {
+            this.ensureWritable();
+            removed = this.memory.delete(id);
+            if (removed.isEmpty()) {
+                return removed;
+            }
+            durable = this.append(List.of(this.deleteRecord(id)));
+        }
+        this.await(durable);
+        return removed;
+    }
+
+    @Override
+    public Optional<E> update(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> old;
+        CompletableFuture<Void> durable;
+        synchronized (this) {
+            this.ensureWritable();
+            old = this.memory.update(e);
+            durable = this.append(List.of(this.putRecord(e)));
+        }
+        this.await(durable);
+        return old;
+    }
+
+    @Override
+    public BatchResult<E> saveAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        BatchResult<E> result;
+        CompletableFuture<Void> durable;
+        synchronized (this) {
+            this.ensureWritable();
+            result = this.memory.saveAll(entities);
+            durable = this.append(result.getOutcomes().stream()
+                    .filter(outcome -> outcome.getRight() == BatchResult.Outcome.INSERTED)
+                    .map(outcome -> this.putRecord(outcome.getLeft()))
+                    .toList());
+        }
+        this.await(durable);
+        return result;
+    }
+
+    @Override
+    public BatchResult<ID> deleteAll(Collection<ID> ids) throws RepositoryException, IllegalArgumentException {
+        BatchResult<ID> result;
+        CompletableFuture<Void> durable;
+        synchronized (this) {
+            this.ensureWritable();
+            result = this.memory.deleteAll(ids);
+            durable = this.append(result.getOutcomes().stream()
+                    .filter(outcome -> outcome.getRight() == BatchResult.Outcome.DELETED)
+                    .map(outcome -> this.deleteRecord(outcome.getLeft()))
+                    .toList());
+        }
+        this.await(durable);
+        return result;
+    }
+
+    @Override
+    public BatchResult<E> updateAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        BatchResult<E> result;
+        CompletableFuture<Void> durable;
+        synchronized (this) {
+            this.ensureWritable();
+            result = this.memory.updateAll(entities);
+            durable = this.append(result.getOutcomes().stream()
+                    .filter(outcome -> outcome.getRight() == BatchResult.Outcome.UPDATED)
+                    .map(outcome -> this.putRecord(outcome.getLeft()))
+                    .toList());
+        }
+        this.await(durable);
+        return result;
+    }
+
+    /**
+     * Writes a snapshot of the entities and starts a new log, removing the older snapshot and logs.
+     *
+     * @throws RepositoryException If the snapshot couldn't be written, the previous files being kept.
+     */
+    public void compact() throws RepositoryException {
+        synchronized (this.compactionLock) {
+            ByteBuffer snapshot;
+            long generation;
+            CompletableFuture<Void> rotated;
+            synchronized (this) {
+                this.ensureWritable();
+                // The snapshot holds exactly the changes appended before the new log is started.
+                snapshot = this.encodeSnapshot();
+                generation = ++this.generation;
+                this.logBytes = 0;
+                rotated = this.enqueue(new Append(null, generation));
+            }
+
+            try {
+                this.await(rotated);
+                writeDurably(this.file("snapshot", generation), snapshot);
+
+                // The new snapshot replaces all the files of the previous generations.
+                for (Map.Entry<Path, Long> file : this.listFiles().entrySet()) {
+                    if (file.getValue() < generation) {
+                        Files.deleteIfExists(file.getKey());
+                    }
+                }
+                this.compactionCount++;
+            } catch (IOException exception) {
+                throw new RepositoryException("The log couldn't be compacted: " + exception.getMessage());
+            }
+        }
+    }
+
+    private void compactIfNeeded() {
+        synchronized (this) {
+            if (this.closed || this.failure != null || this.logBytes < this.compactionThresholdBytes) {
+                return;
+            }
+        }
+
+        try {
+            this.compact();
+        } catch (RuntimeException exception) {
+            // The log keeps growing, the next check retrying the compaction.
+            System.err.println("File repository compaction failed: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * @return Number of changes appended to the log since the repository was opened.
+     */
+    public long getAppendCount() {
+        return this.appendCount;
+    }
+
+    /**
+     * @return Number of times the log was synced to the disk, each sync making several changes durable.
+     */
+    public long getSyncCount() {
+        return this.syncCount;
+    }
+
+    /**
+     * @return Number of compactions since the repository was opened.
+     */
+    public long getCompactionCount() {
+        return this.compactionCount;
+    }
+
+    /**
+     * Stops accepting writes and closes the log, once the appended changes are durable.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Void> stopped;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            stopped = this.enqueue(new Append(null, -1));
+        }
+
+        this.compactor.shutdown();
+        stopped.exceptionally(exception -> null).join();
+        try {
+            this.writer.join();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FileRepository{directory=" + this.directory + ", generation=" + this.generation + ", appends=" + this.appendCount
+                + ", syncs=" + this.syncCount + ", compactions=" + this.compactionCount + "}";
+    }
+
+    private void ensureWritable() throws RepositoryException {
+        if (this.closed) {
+            throw new RepositoryException("The repository is closed!");
+        }
+        if (this.failure != null) {
+            throw new RepositoryException("The log is unusable: " + this.failure.getMessage());
+        }
+    }
+
+    private ByteBuffer putRecord(E entity) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1 + this.format.sizeOf(entity));
+        record.position(RECORD_HEADER_SIZE);
+        record.put(PUT);
+        this.format.write(record, entity);
+        return seal(record);
+    }
+
+    private ByteBuffer deleteRecord(ID id) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1 + this.format.sizeOfId(id));
+        record.position(RECORD_HEADER_SIZE);
+        record.put(DELETE);
+        this.format.writeId(record, id);
+        return seal(record);
+    }
+
+    /**
+     * Fills the header of a record: the length of its content and the checksum of its content.
+     */
+    private static ByteBuffer seal(ByteBuffer record) {
+        int length = record.position() - RECORD_HEADER_SIZE;
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) checksum.getValue());
+        return record.flip();
+    }
+
+    /**
+     * Appends records to the log, in the order of the changes. Must be called while holding the lock of the
+     * repository, right after the changes were applied in memory.
+     *
+     * @param records Records to append.
+     * @return Future that completes once the records are durable.
+     */
+    private CompletableFuture<Void> append(List<ByteBuffer> records) {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        records.forEach(record -> this.logBytes += record.remaining());
+        return this.enqueue(new Append(records, 0));
+    }
+
+    private CompletableFuture<Void> enqueue(Append append) {
+        this.appends.add(append);
+        return append.done;
+    }
+
+    private void await(CompletableFuture<Void> durable) throws RepositoryException {
+        try {
+            durable.join();
+        } catch (CompletionException exception) {
+            Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+            throw new RepositoryException("The change couldn't be made durable: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Appends the queued records, syncing all the records that accumulated while the previous sync ran at once.
+     * Starting a new log and stopping are queued along with the records, so that they happen between the right records.
+     */
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(this.appends.take());
+            } catch (InterruptedException interruptedException) {
+                continue;
+            }
+            this.appends.drainTo(batch);
+
+            List<Append> group = new ArrayList<>();
+            for (Append append : batch) {
+                if (append.records != null) {
+                    group.add(append);
+                    continue;
+                }
+
+                this.writeGroup(group);
+                group.clear();
+                if (append.generation < 0) {
+                    this.closeLog();
+                    append.done.complete(null);
+                    return;
+                }
+                this.startLog(append);
+            }
+            this.writeGroup(group);
+            batch.clear();
+        }
+    }
+
+    private void writeGroup(List<Append> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        if (this.failure == null) {
+            try {
+                ByteBuffer[] buffers = group.stream().flatMap(append -> append.records.stream()).toArray(ByteBuffer[]::new);
+                long remaining = Arrays.stream(buffers).mapToLong(ByteBuffer::remaining).sum();
+                while (remaining > 0) {
+                    remaining -= this.log.write(buffers);
+                }
+                this.log.force(false);
+                this.appendCount += buffers.length;
+                this.syncCount++;
+            } catch (IOException | RuntimeException exception) {
+                this.failure = exception;
+            }
+        }
+
+        group.forEach(append -> this.complete(append.done));
+    }
+
+    private void startLog(Append rotation) {
+        if (this.failure == null) {
+            try {
+                this.log.force(false);
+                this.log.close();
+                this.log = FileChannel.open(this.file("log", rotation.generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            } catch (IOException | RuntimeException exception) {
+                this.failure = exception;
+            }
+        }
+        this.complete(rotation.done);
+    }
+
+    private void closeLog() {
+        try {
+            this.log.close();
+        } catch (IOException exception) {
+            // The appended records were already synced.
+        }
+    }
+
+    private void complete(CompletableFuture<Void> done) {
+        if (this.failure == null) {
+            done.complete(null);
+        } else {
+            done.completeExceptionally(this.failure);
+        }
+    }
+
+    /**
+     * Loads the latest snapshot and replays the logs written after it, discarding a change that was only partially
+     * written at the end of the last log, then opens the last log for appending.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(this.directory);
+
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        for (Map.Entry<Path, Long> file : this.listFiles().entrySet()) {
+            String name = file.getKey().getFileName().toString();
+            (name.startsWith("snapshot") ? snapshots : logs).put(file.getValue(), file.getKey());
+        }
+
+        // Only the latest snapshot can be used, the logs it replaced being removed once it was written.
+        long base = 0;
+        if (!snapshots.isEmpty()) {
+            base = snapshots.lastKey();
+            this.loadSnapshot(snapshots.lastEntry().getValue());
+        }
+
+        this.generation = base;
+        this.logBytes = 0;
+        SortedMap<Long, Path> replayed = logs.tailMap(base);
+        for (Map.Entry<Long, Path> log : replayed.entrySet()) {
+            this.logBytes += this.replay(log.getValue(), log.getKey().equals(logs.lastKey()));
+            this.generation = log.getKey();
+        }
+
+        Path current = this.file("log", this.generation);
+        this.log = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.log.position(this.log.size());
+    }
+
+    /**
+     * Lists the snapshots and the logs of the directory, removing the temporary files left by a crash.
+     *
+     * @return The files, along with their generations.
+     */
+    private Map<Path, Long> listFiles() throws IOException {
+        Map<Path, Long> files = new HashMap<>();
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            for (Path path : paths.toList()) {
+                String name = path.getFileName().toString();
+                Matcher matcher = FILE_NAME.matcher(name);
+                if (matcher.matches()) {
+                    files.put(path, Long.parseLong(matcher.group(2)));
+                } else if (name.endsWith(TEMPORARY_SUFFIX) && FILE_NAME.matcher(name.substring(0, name.length() - TEMPORARY_SUFFIX.length())).matches()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        return files;
+    }
+
+    private Path file(String kind, long generation) {
+        return this.directory.resolve(String.format("%s-%020d.dat", kind, generation));
+    }
+
+    /**
+     * Replays the records of a log.
+     *
+     * @param path Path of the log.
+     * @param last Whether it is the last log, whose last record may have been partially written.
+     * @return The size of the valid records of the log.
+     * @throws IOException If the log couldn't be read or a record before the end of the last log is corrupted.
+     */
+    private long replay(Path path, boolean last) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 checksum = new CRC32();
+
+        int valid = 0;
+        while (buffer.limit() - valid >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt(valid);
+            int expected = buffer.getInt(valid + 4);
+            int content = valid + RECORD_HEADER_SIZE;
+            if (length <= 0 || length > buffer.limit() - content) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(buffer.array(), content, length);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+
+            if (buffer.get(content) == PUT) {
+                E entity = this.format.read(buffer.slice(content + 1, length - 1));
+                if (this.memory.getOne(entity.getId()).isPresent()) {
+                    this.memory.update(entity);
+                } else {
+                    this.memory.save(entity);
+                }
+            } else if (buffer.get(content) == DELETE) {
+                this.memory.delete(this.format.readId(buffer.slice(content + 1, length - 1)));
+            } else {
+                throw new IOException("Unknown operation in " + path.getFileName());
+            }
+            valid = content + length;
+        }
+
+        if (valid != buffer.limit()) {
+            if (!last) {
+                throw new IOException("Corrupted record in " + path.getFileName());
+            }
+            // Discarding the change that was being written during a crash, which was never reported as durable.
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(false);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Encodes the entities as a snapshot: magic, version, number of entities, the entities, each preceded by its
+     * size, and the checksum of everything before it.
+     */
+    private ByteBuffer encodeSnapshot() {
+        long size = 12 + 4;
+        for (E entity : this.memory.getAll()) {
+            size += 4 + this.format.sizeOf(entity);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new RepositoryException("The snapshot cannot be larger than 2 GB!");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(this.memory.size());
+        for (E entity : this.memory.getAll()) {
+            buffer.putInt(this.format.sizeOf(entity));
+            this.format.write(buffer, entity);
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) checksum.getValue());
+        return buffer.flip();
+    }
+
+    private void loadSnapshot(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.limit() < 16 || buffer.getInt(0) != SNAPSHOT_MAGIC) {
+            throw new IOException(path.getFileName() + " is not a snapshot!");
+        }
+        if (buffer.getInt(4) != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buffer.getInt(4));
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException(path.getFileName() + " is corrupted!");
+        }
+
+        int count = buffer.getInt(8);
+        buffer.position(12);
+        for (int i = 0; i < count; i++) {
+            int size = buffer.getInt();
+            this.memory.save(this.format.read(buffer.slice(buffer.position(), size)));
+            buffer.position(buffer.position() + size);
+        }
+    }
+
+    /**
+     * Writes a file through a temporary file, which replaces it once its content is on the disk.
+     */
+    private static void writeDurably(Path file, ByteBuffer content) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records to append to the log, or a request to start a new log or to stop, when there are no records.
+     */
+    private static final class Append {
+        // Records to append, null for a request.
+        private final List<ByteBuffer> records;
+        // Generation of the log to start, negative for stopping.
+        private final long generation;
+        // Completes once the records are durable or the request was served.
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Append(List<ByteBuffer> records, long generation) {
+            this.records = records;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * User repository stored in a local directory, whose searches are served by the index kept in memory.
+ */
+public class FileUserRepository extends FileRepository<UUID, User> implements UserRepository {
+    private final InMemoryUserRepository users;
+
+    /**
+     * Initializes a user repository, recovering the users stored in a directory.
+     *
+     * @param directory Directory of the files, created if missing.
+     * @throws RepositoryException If the users couldn't be recovered from the directory.
+     */
+    public FileUserRepository(Path directory) throws RepositoryException {
+        this(directory, new InMemoryUserRepository());
+    }
+
+    private FileUserRepository(Path directory, InMemoryUserRepository users) throws RepositoryException {
+        super(directory, users, EntityFormat.USERS);
+        this.users = users;
+    }
+
+    @Override
+    public synchronized List<User> usersLastNameContainsString(String string) throws IllegalArgumentException {
+        return this.users.usersLastNameContainsString(string);
+    }
+}
@@ -2,16 +2,96 @@ package ro.ubbcluj.map.socialnetworkfx.repository;
 
 import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
 import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 
 import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
-public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Friendship> {
+public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Friendship> implements FriendshipRepository {
+    // Part of the schema versions that covers the friendships table.
+    public static final String SCHEMA_COMPONENT = "friendships";
+    // Friendship given as input to the insert statements.
+    private static final String INPUT = "input(id_user1, id_user2, date) as (values (?::uuid, ?::uuid, ?::timestamp))";
+    // Insert of the input friendship, skipped if the friendship is already stored.
+    // The users are given in canonical order, so the unique index on the pair detects the conflict.
+    private static final String INSERT_INPUT = "insert into friendships(id_user1, id_user2, date) " +
+            "select * from input " +
+            "on conflict do nothing";
+
     public FriendshipDBRepository(String db_url, String username, String password) {
         super(db_url, username, password);
     }
 
+    public FriendshipDBRepository(ConnectionPool connectionPool) {
+        super(connectionPool);
+    }
+
+    @Override
+    protected List<Migration> migrations() {
+        // The friendships reference the users, so the users table is brought up to date first.
+        List<Migration> migrations = new ArrayList<>(UserDBRepository.schemaMigrations());
+        migrations.addAll(List.of(
+                new Migration(SCHEMA_COMPONENT, 1, "friendships table", List.of(
+                        "create table if not exists friendships (id_user1 uuid not null, id_user2 uuid not null, date timestamp not null)"
+                )),
+                new Migration(SCHEMA_COMPONENT, 2, "canonical order, key and endpoint indexes", List.of(
+                        // Migrating the stored friendships to the canonical order, the smaller user ID first.
+                        // A friendship stored in both orders keeps only its canonical row.
+                        "delete from friendships r using friendships c " +
+                                "where r.id_user1 > r.id_user2 AND c.id_user1 = r.id_user2 AND c.id_user2 = r.id_user1",
+                        "update friendships set id_user1 = id_user2, id_user2 = id_user1 where id_user1 > id_user2",
+                        // A friendship stored several times in the same order keeps only one row,
+                        // and a user can't be their own friend.
+                        "delete from friendships a using friendships b " +
+                                "where a.ctid < b.ctid AND a.id_user1 = b.id_user1 AND a.id_user2 = b.id_user2",
+                        "delete from friendships where id_user1 = id_user2",
+                        // The unique index serves the point lookups on a friendship and the lookups from the first side,
+                        // the second side being served by its own index. It becomes the primary key of the table.
+                        "create unique index if not exists friendships_id_users_uidx on friendships(id_user1, id_user2)",
+                        "drop index if exists friendships_id_user1_idx",
+                        "create index if not exists friendships_id_user2_idx on friendships(id_user2)",
+                        "do $$ begin " +
+                                "if not exists (select 1 from pg_constraint where conname = 'friendships_canonical_order') then " +
+                                "alter table friendships add constraint friendships_canonical_order check (id_user1 < id_user2); " +
+                                "end if; " +
+                                "if not exists (select 1 from pg_constraint where conrelid = 'friendships'::regclass AND contype = 'p') then " +
+                                "alter table friendships add constraint friendships_pkey primary key using index friendships_id_users_uidx; " +
+                                "end if; " +
+                                "end $$"
+                )),
+                new Migration(SCHEMA_COMPONENT, 3, "foreign keys to the users", List.of(
+                        // The friendships left behind by the users deleted before the keys existed are dropped.
+                        "delete from friendships f " +
+                                "where not exists (select 1 from users u where u.id = f.id_user1) " +
+                                "OR not exists (select 1 from users u where u.id = f.id_user2)",
+                        "alter table friendships add constraint friendships_id_user1_fkey " +
+                                "foreign key (id_user1) references users(id) on delete cascade",
+                        "alter table friendships add constraint friendships_id_user2_fkey " +
+                                "foreign key (id_user2) references users(id) on delete cascade"
+                )),
+                new Migration(SCHEMA_COMPONENT, 4, "date index", List.of(
+                        // Index that serves the filters on the date of the friendships.
+                        "create index if not exists friendships_date_idx on friendships(date)"
+                )),
+                // Change log that serves the catch-up of the snapshots.
+                new Migration(SCHEMA_COMPONENT, 5, "change log", changeLogStatements("friendships", "id_user1", "id_user2")),
+                new Migration(SCHEMA_COMPONENT, 6, "endpoint and date indexes", List.of(
+                        // Indexes that serve the friends of a user from a time range, each side of the friendship
+                        // by its own index. The second one also serves the lookups from the second side.
+                        "create index if not exists friendships_id_user1_date_idx on friendships(id_user1, date)",
+                        "create index if not exists friendships_id_user2_date_idx on friendships(id_user2, date)",
+                        "drop index if exists friendships_id_user2_idx"
+                ))
+        ));
+        return migrations;
+    }
+
     @Override
     public PreparedStatement statementCount(Connection connection) throws RepositoryException {
         try {
@@ -31,23 +111,34 @@ public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Frie
     }
 
     /**
-     * Sets the user IDs of the friendship to a specific prepared statement.
+     * Sets the user IDs of the friendship to a specific prepared statement, in canonical order.
      *
      * @param statement PreparedStatement to edit.
-     * @param id        ID in cause.
+     * @param id        ID in cause, in any order of the users.
      * @param offset    From which position to insert the ids.
      * @throws SQLException Related to the statement editing.
      */
     private void setIdStatement(PreparedStatement statement, Tuple<UUID, UUID> id, int offset) throws SQLException {
-        statement.setObject(offset, id.getLeft());
-        statement.setObject(offset + 1, id.getRight());
-        statement.setObject(offset + 2, id.getRight());
-        statement.setObject(offset + 3, id.getLeft());
+        Tuple<UUID, UUID> key = Friendship.key(id);
+        statement.setObject(offset, key.getLeft());
+        statement.setObject(offset + 1, key.getRight());
+    }
+
+    /**
+     * Sets the fields of a friendship to the input of an insert statement.
+     *
+     * @param statement  PreparedStatement to edit.
+     * @param friendship Friendship to insert.
+     * @throws SQLException Related to the statement editing.
+     */
+    private void setInsertParameters(PreparedStatement statement, Friendship friendship) throws SQLException {
+        this.setIdStatement(statement, friendship.getId(), 1);
+        statement.setObject(3, friendship.getFriendshipDate());
     }
 
     @Override
     public PreparedStatement statementSelectOnID(Connection connection, Tuple<UUID, UUID> id) throws RepositoryException {
-        String sql = "select * from friendships where (id_user1 = ? AND id_user2 = ?) OR (id_user1 = ? AND id_user2 = ?)";
+        String sql = "select * from friendships where id_user1 = ? AND id_user2 = ?";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
             this.setIdStatement(statement, id, 1);
@@ -58,12 +149,18 @@ public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Frie
     }
 
     @Override
-    public PreparedStatement statementSelectOnFields(Connection connection, Friendship friendship) throws RepositoryException {
-        String sql = "select * from friendships where (id_user1 = ? AND id_user2 = ?) OR (id_user1 = ? AND id_user2 = ?) AND date = ?";
+    public PreparedStatement statementInsert(Connection connection, Friendship friendship) throws RepositoryException {
+        // The conflicting friendship is selected in the same statement, only if the insert didn't happen.
+        String sql = "with " + INPUT + ", inserted as (" + INSERT_INPUT + " returning *) " +
+                "select true as was_inserted, * from inserted " +
+                "union all " +
+                "select false, f.* from friendships f, input i " +
+                "where f.id_user1 = i.id_user1 AND f.id_user2 = i.id_user2 " +
+                "AND not exists (select 1 from inserted) " +
+                "limit 1";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            this.setIdStatement(statement, friendship.getId(), 1);
-            statement.setObject(5, friendship.getFriendshipDate());
+            this.setInsertParameters(statement, friendship);
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
@@ -71,12 +168,26 @@ public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Frie
     }
 
     @Override
-    public PreparedStatement statementInsert(Connection connection, Friendship friendship) throws RepositoryException {
-        String sql = "insert into friendships(id_user1, id_user2, date) values(?, ?, ?)";
+    public PreparedStatement statementDelete(Connection connection, Tuple<UUID, UUID> id) throws RepositoryException {
+        String sql = "delete from friendships where id_user1 = ? AND id_user2 = ? returning *";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setObject(1, friendship.getId().getLeft());
-            statement.setObject(2, friendship.getId().getRight());
+            this.setIdStatement(statement, id, 1);
+            return statement;
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public PreparedStatement statementUpdate(Connection connection, Friendship friendship) throws RepositoryException {
+        // The old row is locked and read in the same statement that updates it.
+        String sql = "with old as (select * from friendships where id_user1 = ? AND id_user2 = ? for update) " +
+                "update friendships f set date = ? from old where f.id_user1 = old.id_user1 AND f.id_user2 = old.id_user2 " +
+                "returning old.*";
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            this.setIdStatement(statement, friendship.getId(), 1);
             statement.setObject(3, friendship.getFriendshipDate());
             return statement;
         } catch (SQLException sqlException) {
@@ -85,11 +196,19 @@ public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Frie
     }
 
     @Override
-    public PreparedStatement statementDelete(Connection connection, Tuple<UUID, UUID> id) throws RepositoryException {
-        String sql = "delete from friendships where (id_user1 = ? AND id_user2 = ?) OR (id_user1 = ? AND id_user2 = ?)";
+    public PreparedStatement statementPage(Connection connection, Tuple<UUID, UUID> afterKey, int limit, SortOrder sortOrder) throws RepositoryException {
+        String direction = sortOrder == SortOrder.ASCENDING ? "asc" : "desc";
+        String seek = afterKey == null ? ""
+                : (sortOrder == SortOrder.ASCENDING ? "where (id_user1, id_user2) > (?, ?) " : "where (id_user1, id_user2) < (?, ?) ");
+        String sql = "select * from friendships " + seek + "order by id_user1 " + direction + ", id_user2 " + direction + " limit ?";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            this.setIdStatement(statement, id, 1);
+            int index = 1;
+            if (afterKey != null) {
+                statement.setObject(index++, afterKey.getLeft());
+                statement.setObject(index++, afterKey.getRight());
+            }
+            statement.setInt(index, limit);
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
@@ -97,18 +216,285 @@ public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Frie
     }
 
     @Override
-    public PreparedStatement statementUpdate(Connection connection, Friendship friendship) throws RepositoryException {
-        String sql = "update friendships set date = ? where (id_user1 = ? AND id_user2 = ?) OR (id_user2 = ? AND id_user1 = ?)";
+    public PreparedStatement statementInsertBatch(Connection connection) throws RepositoryException {
+        String sql = "with " + INPUT + " " + INSERT_INPUT;
+        try {
+            return connection.prepareStatement(sql);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public PreparedStatement statementDeleteBatch(Connection connection) throws RepositoryException {
+        String sql = "delete from friendships where id_user1 = ? AND id_user2 = ?";
+        try {
+            return connection.prepareStatement(sql);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public PreparedStatement statementUpdateBatch(Connection connection) throws RepositoryException {
+        String sql = "update friendships set date = ? where id_user1 = ? AND id_user2 = ?";
+        try {
+            return connection.prepareStatement(sql);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    protected void addInsertBatch(PreparedStatement statement, Friendship friendship) throws SQLException {
+        this.setInsertParameters(statement, friendship);
+        statement.addBatch();
+    }
+
+    @Override
+    protected void addDeleteBatch(PreparedStatement statement, Tuple<UUID, UUID> id) throws SQLException {
+        this.setIdStatement(statement, id, 1);
+        statement.addBatch();
+    }
+
+    @Override
+    protected void addUpdateBatch(PreparedStatement statement, Friendship friendship) throws SQLException {
+        statement.setObject(1, friendship.getFriendshipDate());
+        this.setIdStatement(statement, friendship.getId(), 2);
+        statement.addBatch();
+    }
+
+    @Override
+    protected String sqlCopyStaging() {
+        return "create temporary table friendships_staging (like friendships including defaults) on commit drop";
+    }
+
+    @Override
+    protected String sqlCopyIn() {
+        return "copy friendships_staging(id_user1, id_user2, date) from stdin with (format csv)";
+    }
+
+    @Override
+    protected String sqlCopyMerge() {
+        // A friendship is inserted only once, even if it appears several times in the load.
+        return "insert into friendships(id_user1, id_user2, date) " +
+                "select distinct on (s.id_user1, s.id_user2) s.id_user1, s.id_user2, s.date " +
+                "from friendships_staging s " +
+                "on conflict do nothing returning id_user1, id_user2";
+    }
+
+    @Override
+    protected void writeCopyRow(StringBuilder row, Friendship friendship) {
+        Tuple<UUID, UUID> key = Friendship.key(friendship.getId());
+        appendCsv(row, key.getLeft()).append(',');
+        appendCsv(row, key.getRight()).append(',');
+        appendCsv(row, friendship.getFriendshipDate()).append('\n');
+    }
+
+    @Override
+    protected Tuple<UUID, UUID> extractIdFromResultSet(ResultSet resultSet) throws SQLException {
+        return new Tuple<>(UUID.fromString(resultSet.getString("id_user1")), UUID.fromString(resultSet.getString("id_user2")));
+    }
+
+    @Override
+    public PreparedStatement statementChangesSince(Connection connection, Instant since) throws RepositoryException {
+        String sql = "select c.id_1 as change_id_1, c.id_2 as change_id_2, f.id_user1 is not null as is_present, f.* " +
+                "from (select distinct id_1, id_2 from row_changes where table_name = 'friendships' AND changed_at > ?) c " +
+                "left join friendships f on f.id_user1 = c.id_1 AND f.id_user2 = c.id_2";
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setTimestamp(1, Timestamp.from(since));
+            return statement;
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    protected Tuple<UUID, UUID> extractChangeIdFromResultSet(ResultSet resultSet) throws SQLException {
+        return new Tuple<>(UUID.fromString(resultSet.getString("change_id_1")), UUID.fromString(resultSet.getString("change_id_2")));
+    }
+
+    /**
+     * Returns the SQL Interrogation that selects the friends of a user, joined with the users table.
+     * Each side of the friendship is served by its own index.
+     *
+     * @param userId ID of the user.
+     * @return SQL Interrogation for selecting the friends of a user.
+     */
+    public PreparedStatement statementFriendsOf(Connection connection, UUID userId) throws RepositoryException {
+        String sql = "select u.* from friendships f join users u on u.id = f.id_user2 where f.id_user1 = ? " +
+                "union all " +
+                "select u.* from friendships f join users u on u.id = f.id_user1 where f.id_user2 = ?";
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setObject(1, userId);
+            statement.setObject(2, userId);
+            return statement;
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    /**
+     * Returns the SQL Interrogation that selects the friends of a user whose friendships match a condition on their date,
+     * joined with the users table, in ascending order of the dates.
+     * Each side of the friendship is served by its index on the user and the date.
+     *
+     * @param dateCondition Condition on the date {@code f.date}, with the same parameters for each side.
+     * @return SQL Interrogation for selecting the friends of a user by the date of the friendships.
+     */
+    private static String sqlFriendsByDate(String dateCondition) {
+        return "select u.*, f.date as friendship_date from friendships f join users u on u.id = f.id_user2 " +
+                "where f.id_user1 = ? AND " + dateCondition + " " +
+                "union all " +
+                "select u.*, f.date from friendships f join users u on u.id = f.id_user1 " +
+                "where f.id_user2 = ? AND " + dateCondition + " " +
+                "order by friendship_date";
+    }
+
+    /**
+     * Returns the SQL Interrogation that selects the friends of a user from a time range.
+     *
+     * @param userId ID of the user.
+     * @param from   Start of the range, included.
+     * @param to     End of the range, excluded.
+     * @return SQL Interrogation for selecting the friends of a user from a time range.
+     */
+    public PreparedStatement statementFriendsBetween(Connection connection, UUID userId, LocalDateTime from, LocalDateTime to) throws RepositoryException {
+        String sql = sqlFriendsByDate("f.date >= ? AND f.date < ?");
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            for (int offset = 0; offset <= 3; offset += 3) {
+                statement.setObject(offset + 1, userId);
+                statement.setObject(offset + 2, from);
+                statement.setObject(offset + 3, to);
+            }
+            return statement;
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    /**
+     * Returns the SQL Interrogation that selects the friends of a user from a month of any year.
+     * The friendships of the user are found through the index, then filtered by month.
+     *
+     * @param userId ID of the user.
+     * @param month  Month of the friendships.
+     * @return SQL Interrogation for selecting the friends of a user from a month.
+     */
+    public PreparedStatement statementFriendsFromMonth(Connection connection, UUID userId, Month month) throws RepositoryException {
+        String sql = sqlFriendsByDate("extract(month from f.date) = ?");
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            for (int offset = 0; offset <= 2; offset += 2) {
+                statement.setObject(offset + 1, userId);
+                statement.setInt(offset + 2, month.getValue());
+            }
+            return statement;
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public List<User> getFriendsBetween(UUID userId, LocalDateTime from, LocalDateTime to) throws IllegalArgumentException, RepositoryException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("The range cannot be null!");
+        }
+        return this.queryFriends(connection -> this.statementFriendsBetween(connection, userId, from, to));
+    }
+
+    @Override
+    public List<User> getFriendsFromMonth(UUID userId, Month month) throws IllegalArgumentException, RepositoryException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        if (month == null) {
+            throw new IllegalArgumentException("The month cannot be null!");
+        }
+        return this.queryFriends(connection -> this.statementFriendsFromMonth(connection, userId, month));
+    }
+
+    @Override
+    public List<User> getFriendsOf(UUID userId) throws IllegalArgumentException, RepositoryException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        return this.queryFriends(connection -> this.statementFriendsOf(connection, userId));
+    }
+
+    /**
+     * Executes an interrogation that selects users, in a single round trip.
+     *
+     * @param statement Function that prepares the interrogation.
+     * @return The selected users.
+     * @throws RepositoryException SQL related exceptions.
+     */
+    private List<User> queryFriends(FriendsStatement statement) throws RepositoryException {
+        try (Connection connection = this.connect()) {
+            try (PreparedStatement preparedStatement = statement.prepare(connection)) {
+                ResultSet resultSet = preparedStatement.executeQuery();
+                List<User> friends = new ArrayList<>();
+
+                while (resultSet.next()) {
+                    friends.add(UserDBRepository.extractUser(resultSet));
+                }
+                return friends;
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    /**
+     * Returns the SQL Interrogation that deletes all the friendships of a user in a single statement.
+     * Each side of the friendship is served by its own index.
+     *
+     * @param userId ID of the user.
+     * @return SQL Interrogation for deleting the friendships of a user.
+     */
+    public PreparedStatement statementDeleteFriendshipsOf(Connection connection, UUID userId) throws RepositoryException {
+        String sql = "delete from friendships where id_user1 = ? OR id_user2 = ? returning *";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setObject(1, friendship.getFriendshipDate());
-            this.setIdStatement(statement, friendship.getId(), 2);
+            statement.setObject(1, userId);
+            statement.setObject(2, userId);
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
         }
     }
 
+    @Override
+    public List<Friendship> deleteFriendshipsOf(UUID userId) throws IllegalArgumentException, RepositoryException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        try (Connection connection = this.connect()) {
+            try (PreparedStatement statement = this.statementDeleteFriendshipsOf(connection, userId)) {
+                ResultSet resultSet = statement.executeQuery();
+                List<Friendship> deleted = new ArrayList<>();
+
+                while (resultSet.next()) {
+                    deleted.add(this.extractFromResultSet(resultSet));
+                }
+                return deleted;
+            } catch (SQLException sqlException) {
+                throw new RepositoryException(sqlException.getMessage());
+            }
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
     @Override
     protected Friendship extractFromResultSet(ResultSet resultSet) throws SQLException {
         String idUser1 = resultSet.getString("id_user1");
@@ -116,4 +502,12 @@ public class FriendshipDBRepository extends DBRepository<Tuple<UUID, UUID>, Frie
         Timestamp date = resultSet.getTimestamp("date");
         return new Friendship(UUID.fromString(idUser1), UUID.fromString(idUser2), date.toLocalDateTime());
     }
+
+    /**
+     * Prepares an interrogation of the friends of a user on a connection.
+     */
+    @FunctionalInterface
+    private interface FriendsStatement {
+        PreparedStatement prepare(Connection connection) throws RepositoryException;
+    }
 }
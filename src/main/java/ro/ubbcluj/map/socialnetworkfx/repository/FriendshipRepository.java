@@ -0,0 +1,93 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Repository of friendships that can answer neighbourhood queries without scanning all the friendships.
+ */
+public interface FriendshipRepository extends Repository<Tuple<UUID, UUID>, Friendship> {
+    /**
+     * Returns the users which are friends with a given user, in time proportional to the number of friends.
+     *
+     * @param userId ID of the user.
+     * @return The friends of the user.
+     * @throws IllegalArgumentException If the id is null.
+     * @throws RepositoryException      If the friends couldn't be retrieved.
+     */
+    List<User> getFriendsOf(UUID userId) throws IllegalArgumentException, RepositoryException;
+
+    /**
+     * Deletes all the friendships of a given user.
+     * By default, the friendships with the friends returned by {@link #getFriendsOf(UUID)} are deleted one by one;
+     * the repositories that know the friendships of each user delete them at once, along with the friendships
+     * whose other user is no longer stored.
+     *
+     * @param userId ID of the user.
+     * @return The deleted friendships.
+     * @throws IllegalArgumentException If the id is null.
+     * @throws RepositoryException      If the friendships couldn't be deleted.
+     */
+    default List<Friendship> deleteFriendshipsOf(UUID userId) throws IllegalArgumentException, RepositoryException {
+        List<Friendship> deleted = new ArrayList<>();
+        for (User friend : this.getFriendsOf(userId)) {
+            this.delete(Friendship.key(userId, friend.getId())).ifPresent(deleted::add);
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the users which became friends with a given user in a time range, in ascending order of the dates
+     * of the friendships. By default, the date of the friendship with each friend is looked up.
+     *
+     * @param userId ID of the user.
+     * @param from   Start of the range, included.
+     * @param to     End of the range, excluded.
+     * @return The friends of the user from the range.
+     * @throws IllegalArgumentException If an argument is null.
+     * @throws RepositoryException      If the friends couldn't be retrieved.
+     */
+    default List<User> getFriendsBetween(UUID userId, LocalDateTime from, LocalDateTime to) throws IllegalArgumentException, RepositoryException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("The range cannot be null!");
+        }
+        return this.friendsMatching(userId, date -> !date.isBefore(from) && date.isBefore(to));
+    }
+
+    /**
+     * Returns the users which became friends with a given user in a month of any year, in ascending order of the dates
+     * of the friendships. By default, the date of the friendship with each friend is looked up.
+     *
+     * @param userId ID of the user.
+     * @param month  Month of the friendships.
+     * @return The friends of the user from the month.
+     * @throws IllegalArgumentException If an argument is null.
+     * @throws RepositoryException      If the friends couldn't be retrieved.
+     */
+    default List<User> getFriendsFromMonth(UUID userId, Month month) throws IllegalArgumentException, RepositoryException {
+        if (month == null) {
+            throw new IllegalArgumentException("The month cannot be null!");
+        }
+        return this.friendsMatching(userId, date -> date.getMonth() == month);
+    }
+
+    private List<User> friendsMatching(UUID userId, Predicate<LocalDateTime> matches) {
+        List<Map.Entry<LocalDateTime, User>> friends = new ArrayList<>();
+        for (User friend : this.getFriendsOf(userId)) {
+            this.getOne(Friendship.key(userId, friend.getId()))
+                    .map(Friendship::getFriendshipDate)
+                    .filter(matches)
+                    .ifPresent(date -> friends.add(Map.entry(date, friend)));
+        }
+
+        friends.sort(Map.Entry.comparingByKey());
+        return friends.stream().map(Map.Entry::getValue).toList();
+    }
+}
@@ -0,0 +1,47 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index that looks up the entities with a given key, several entities being allowed to share a key.
+ *
+ * @param <K>  Type of the key.
+ * @param <ID> ID type of the indexed Entity.
+ * @param <E>  Entity that is indexed.
+ */
+public class HashIndex<K, ID, E extends Entity<ID>> extends SecondaryIndex<K, ID, E> {
+    // IDs of the entities with each key, each key being changed atomically by the map.
+    private final ConcurrentHashMap<K, Object> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a hash index.
+     *
+     * @param name Name of the index.
+     * @param key  Function that derives the key of an entity.
+     */
+    public HashIndex(String name, Function<? super E, ? extends K> key) {
+        super(name, key);
+    }
+
+    @Override
+    public Collection<ID> find(K key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("The key cannot be null!");
+        }
+        return postings(this.postings.get(key));
+    }
+
+    @Override
+    protected void add(K key, ID id) {
+        this.postings.compute(key, (k, existing) -> withPosting(existing, id));
+    }
+
+    @Override
+    protected void remove(K key, ID id) {
+        this.postings.computeIfPresent(key, (k, existing) -> withoutPosting(existing, id));
+    }
+}
@@ -0,0 +1,224 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.*;
+
+/**
+ * Friendship repository that stores its values in memory, along with the adjacency of each user.
+ * Friendships are looked up by their canonical ID, so the order of the users in a given ID doesn't matter.
+ */
+public class InMemoryFriendshipRepository extends InMemoryRepository<Tuple<UUID, UUID>, Friendship> implements FriendshipRepository {
+    // Repository from which the friends are retrieved.
+    private final Repository<UUID, User> userRepository;
+    // IDs of the friends of each user.
+    private final Map<UUID, Set<UUID>> adjacency = new HashMap<>();
+    // IDs of the friends of each user, by the date of the friendship.
+    private final Map<UUID, NavigableMap<LocalDateTime, Set<UUID>>> friendsByDate = new HashMap<>();
+
+    /**
+     * Initializes an in memory friendship repository.
+     *
+     * @param userRepository Repository that stores the users of the friendships.
+     */
+    public InMemoryFriendshipRepository(Repository<UUID, User> userRepository) {
+        super(Friendship::compareKeys);
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public Optional<Friendship> getOne(Tuple<UUID, UUID> id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        return super.getOne(Friendship.key(id));
+    }
+
+    @Override
+    public Optional<Friendship> delete(Tuple<UUID, UUID> id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+        return super.delete(Friendship.key(id));
+    }
+
+    @Override
+    public Page<Tuple<UUID, UUID>, Friendship> page(Tuple<UUID, UUID> afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        return super.page(afterKey == null ? null : Friendship.key(afterKey), limit, sortOrder);
+    }
+
+    @Override
+    protected boolean containsEqual(Friendship friendship) {
+        // Friendships are equal when their canonical IDs are.
+        return super.getOne(friendship.getId()).isPresent();
+    }
+
+    @Override
+    protected void entityAdded(Friendship friendship) {
+        super.entityAdded(friendship);
+
+        UUID left = friendship.getId().getLeft();
+        UUID right = friendship.getId().getRight();
+        this.adjacency.computeIfAbsent(left, id -> new LinkedHashSet<>()).add(right);
+        this.adjacency.computeIfAbsent(right, id -> new LinkedHashSet<>()).add(left);
+        this.linkDated(friendship);
+    }
+
+    @Override
+    protected void entityRemoved(Friendship friendship) {
+        super.entityRemoved(friendship);
+
+        this.unlink(friendship.getId().getLeft(), friendship.getId().getRight());
+        this.unlink(friendship.getId().getRight(), friendship.getId().getLeft());
+        this.unlinkDated(friendship);
+    }
+
+    @Override
+    protected void entityReplaced(Friendship old, Friendship friendship) {
+        super.entityReplaced(old, friendship);
+
+        // Only the date of a friendship can change, so only the index by date is updated.
+        this.unlinkDated(old);
+        this.linkDated(friendship);
+    }
+
+    private void linkDated(Friendship friendship) {
+        LocalDateTime date = friendship.getFriendshipDate();
+        if (date == null) {
+            return;
+        }
+
+        UUID left = friendship.getId().getLeft();
+        UUID right = friendship.getId().getRight();
+        this.friendsByDate.computeIfAbsent(left, id -> new TreeMap<>()).computeIfAbsent(date, key -> new HashSet<>()).add(right);
+        this.friendsByDate.computeIfAbsent(right, id -> new TreeMap<>()).computeIfAbsent(date, key -> new HashSet<>()).add(left);
+    }
+
+    private void unlinkDated(Friendship friendship) {
+        LocalDateTime date = friendship.getFriendshipDate();
+        if (date != null) {
+            this.unlinkDated(friendship.getId().getLeft(), date, friendship.getId().getRight());
+            this.unlinkDated(friendship.getId().getRight(), date, friendship.getId().getLeft());
+        }
+    }
+
+    private void unlinkDated(UUID userId, LocalDateTime date, UUID friendId) {
+        NavigableMap<LocalDateTime, Set<UUID>> friends = this.friendsByDate.get(userId);
+        if (friends == null) {
+            return;
+        }
+
+        Set<UUID> friendsOfDate = friends.get(date);
+        if (friendsOfDate != null && friendsOfDate.remove(friendId) && friendsOfDate.isEmpty()) {
+            friends.remove(date);
+            if (friends.isEmpty()) {
+                this.friendsByDate.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Removes a friend from the adjacency of a user.
+     *
+     * @param userId   ID of the user.
+     * @param friendId ID of the friend.
+     */
+    private void unlink(UUID userId, UUID friendId) {
+        Set<UUID> friends = this.adjacency.get(userId);
+        if (friends != null) {
+            friends.remove(friendId);
+            if (friends.isEmpty()) {
+                this.adjacency.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the friends of a user.
+     *
+     * @param userId ID of the user.
+     * @return The IDs of the friends of the user.
+     */
+    public Set<UUID> getFriendIdsOf(UUID userId) {
+        return Collections.unmodifiableSet(this.adjacency.getOrDefault(userId, Collections.emptySet()));
+    }
+
+    /**
+     * Returns the friends of a user from a time range, from the index of the friends by date.
+     */
+    @Override
+    public List<User> getFriendsBetween(UUID userId, LocalDateTime from, LocalDateTime to) throws IllegalArgumentException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("The range cannot be null!");
+        }
+
+        List<User> friends = new ArrayList<>();
+        NavigableMap<LocalDateTime, Set<UUID>> friendsOfUser = this.friendsByDate.get(userId);
+        if (friendsOfUser != null && from.isBefore(to)) {
+            this.addFriends(friends, friendsOfUser.subMap(from, true, to, false));
+        }
+        return friends;
+    }
+
+    /**
+     * Returns the friends of a user from a month of any year, from the index of the friends by date:
+     * the month of each year between the first and the last friendship of the user is a range of the index.
+     */
+    @Override
+    public List<User> getFriendsFromMonth(UUID userId, Month month) throws IllegalArgumentException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        if (month == null) {
+            throw new IllegalArgumentException("The month cannot be null!");
+        }
+
+        List<User> friends = new ArrayList<>();
+        NavigableMap<LocalDateTime, Set<UUID>> friendsOfUser = this.friendsByDate.get(userId);
+        if (friendsOfUser != null) {
+            int lastYear = friendsOfUser.lastKey().getYear();
+            for (int year = friendsOfUser.firstKey().getYear(); year <= lastYear; year++) {
+                LocalDateTime start = LocalDateTime.of(year, month, 1, 0, 0);
+                this.addFriends(friends, friendsOfUser.subMap(start, true, start.plusMonths(1), false));
+            }
+        }
+        return friends;
+    }
+
+    private void addFriends(List<User> friends, NavigableMap<LocalDateTime, Set<UUID>> friendIdsByDate) {
+        friendIdsByDate.values().forEach(friendIds ->
+                friendIds.forEach(friendId -> this.userRepository.getOne(friendId).ifPresent(friends::add)));
+    }
+
+    @Override
+    public List<Friendship> deleteFriendshipsOf(UUID userId) throws IllegalArgumentException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        // Copying the friends first, as each deletion unlinks the friend from the adjacency.
+        List<Friendship> deleted = new ArrayList<>();
+        for (UUID friendId : new ArrayList<>(this.getFriendIdsOf(userId))) {
+            super.delete(Friendship.key(userId, friendId)).ifPresent(deleted::add);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<User> getFriendsOf(UUID userId) throws IllegalArgumentException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        List<User> friends = new ArrayList<>();
+        this.getFriendIdsOf(userId).forEach(friendId -> this.userRepository.getOne(friendId).ifPresent(friends::add));
+        return friends;
+    }
+}
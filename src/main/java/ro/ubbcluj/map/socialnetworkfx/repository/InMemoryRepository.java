@@ -3,12 +3,12 @@ package ro.ubbcluj.map.socialnetworkfx.repository;
 import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * Repository that stores its values in memory.
+ * Secondary indexes declared when the repository is created are kept up to date on every change: their lookups
+ * don't scan the entities, and the unique ones reject the entities whose key belongs to another stored entity.
  *
  * @param <ID> ID type of the stored Entity.
  * @param <E>  Entity to be stored.
@@ -16,9 +16,134 @@ import java.util.Optional;
 public class InMemoryRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
     // Data structure that stores the entities
     private final Map<ID, E> entities;
+    // Order of the IDs used for paging, null for their natural order.
+    private final Comparator<? super ID> keyComparator;
+    // Sorted index of the IDs, built on the first paging and maintained afterwards.
+    private NavigableSet<ID> sortedKeys;
+    // Secondary indexes of the entities.
+    private final List<SecondaryIndex<?, ID, E>> indexes;
 
     public InMemoryRepository() {
+        this(null);
+    }
+
+    /**
+     * Initializes an in memory repository that pages its entities in a given order of the IDs.
+     *
+     * @param keyComparator Order of the IDs, null for their natural order.
+     */
+    public InMemoryRepository(Comparator<? super ID> keyComparator) {
+        this(keyComparator, List.of());
+    }
+
+    /**
+     * Initializes an in memory repository with secondary indexes.
+     *
+     * @param keyComparator Order of the IDs, null for their natural order.
+     * @param indexes       Secondary indexes of the entities, empty when created.
+     */
+    public InMemoryRepository(Comparator<? super ID> keyComparator, Collection<? extends SecondaryIndex<?, ID, E>> indexes) {
         this.entities = new HashMap<>();
+        this.keyComparator = keyComparator;
+        this.indexes = List.copyOf(indexes);
+    }
+
+    /**
+     * Called after an entity was added, so that the indexes of the repository follow the change.
+     *
+     * @param entity Entity that was added.
+     */
+    protected void entityAdded(E entity) {
+        if (this.sortedKeys != null) {
+            this.sortedKeys.add(entity.getId());
+        }
+        this.indexes.forEach(index -> index.add(entity));
+    }
+
+    /**
+     * Called after an entity was removed, so that the indexes of the repository follow the change.
+     *
+     * @param entity Entity that was removed.
+     */
+    protected void entityRemoved(E entity) {
+        if (this.sortedKeys != null) {
+            this.sortedKeys.remove(entity.getId());
+        }
+        this.indexes.forEach(index -> index.remove(entity));
+    }
+
+    /**
+     * Called after an entity was replaced by an entity with the same ID,
+     * so that the indexes of the repository follow the change.
+     *
+     * @param old    Entity that was replaced.
+     * @param entity Entity that replaced it.
+     */
+    protected void entityReplaced(E old, E entity) {
+        // The IDs didn't change, so the sorted index stays the same.
+        this.indexes.forEach(index -> index.replace(old, entity));
+    }
+
+    /**
+     * Checks whether an entity equal to a given one is stored. All the entities are compared, so the repositories
+     * whose entities can be compared through an index or their ID should override it.
+     *
+     * @param entity Entity to look for.
+     * @return true if an equal entity is stored, false otherwise.
+     */
+    protected boolean containsEqual(E entity) {
+        return this.entities.containsValue(entity);
+    }
+
+    /**
+     * Returns the unique index that prevents an entity from being stored, because its key belongs to another entity.
+     *
+     * @param entity Entity to check.
+     * @return The name of the index, empty if the entity can be stored.
+     */
+    private Optional<String> conflictingIndex(E entity) {
+        return this.indexes.stream()
+                .filter(index -> index.conflict(entity).isPresent())
+                .map(SecondaryIndex::getName)
+                .findFirst();
+    }
+
+    /**
+     * Returns the entities with a given key in one of the indexes of the repository.
+     *
+     * @param index Index declared by the repository.
+     * @param key   Key to look up.
+     * @param <K>   Type of the key.
+     * @return The entities with the key.
+     * @throws IllegalArgumentException If the index isn't declared by the repository or the key is null.
+     */
+    public <K> List<E> findBy(SecondaryIndex<K, ID, E> index, K key) throws IllegalArgumentException {
+        return this.entitiesOf(this.declared(index).find(key));
+    }
+
+    /**
+     * Returns the entities whose string in one of the indexes of the repository starts with a prefix.
+     *
+     * @param index  Index declared by the repository.
+     * @param prefix Prefix to look up.
+     * @return The entities whose string starts with the prefix, in the order of the strings.
+     * @throws IllegalArgumentException If the index isn't declared by the repository or the prefix is null.
+     */
+    public List<E> findByPrefix(PrefixIndex<ID, E> index, String prefix) throws IllegalArgumentException {
+        return this.entitiesOf(this.declared(index).findByPrefix(prefix));
+    }
+
+    private <I extends SecondaryIndex<?, ID, E>> I declared(I index) {
+        if (index == null || this.indexes.stream().noneMatch(declared -> declared == index)) {
+            throw new IllegalArgumentException("The index isn't declared by the repository!");
+        }
+        return index;
+    }
+
+    private List<E> entitiesOf(Collection<ID> ids) {
+        List<E> found = new ArrayList<>(ids.size());
+        ids.forEach(id -> found.add(this.entities.get(id)));
+        return found;
     }
 
     @Override
@@ -50,10 +175,19 @@ public class InMemoryRepository<ID, E extends Entity<ID>> implements Repository<
         if (e == null) {
             throw new IllegalArgumentException("Entity cannot be null!");
         }
-        if (this.entities.containsValue(e)) {
+        if (this.containsEqual(e)) {
             throw new RepositoryException("The same entity is already stored!");
         }
-        return Optional.ofNullable(this.entities.putIfAbsent(e.getId(), e));
+        Optional<E> existing = Optional.ofNullable(this.entities.get(e.getId()));
+        if (existing.isEmpty()) {
+            Optional<String> conflict = this.conflictingIndex(e);
+            if (conflict.isPresent()) {
+                throw new RepositoryException("An entity with the same " + conflict.get() + " is already stored!");
+            }
+            this.entities.put(e.getId(), e);
+            this.entityAdded(e);
+        }
+        return existing;
     }
 
 
@@ -63,7 +197,9 @@ public class InMemoryRepository<ID, E extends Entity<ID>> implements Repository<
             throw new IllegalArgumentException("Id cannot be null!");
         }
 
-        return Optional.ofNullable(this.entities.remove(id));
+        Optional<E> removed = Optional.ofNullable(this.entities.remove(id));
+        removed.ifPresent(this::entityRemoved);
+        return removed;
     }
 
     @Override
@@ -74,6 +210,100 @@ public class InMemoryRepository<ID, E extends Entity<ID>> implements Repository<
         if (this.entities.get(e.getId()) == null) {
             throw new RepositoryException("Entity with the specified id doesn't exist!");
         }
-        return Optional.ofNullable(this.entities.put(e.getId(), e));
+        Optional<String> conflict = this.conflictingIndex(e);
+        if (conflict.isPresent()) {
+            throw new RepositoryException("An entity with the same " + conflict.get() + " is already stored!");
+        }
+        E old = this.entities.put(e.getId(), e);
+        this.entityReplaced(old, e);
+        return Optional.of(old);
+    }
+
+    @Override
+    public BatchResult<E> saveAll(Collection<E> entities) throws IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> {
+            // An entity equal to a stored one is reported instead of failing the whole bulk.
+            if (this.containsEqual(entity) || this.entities.containsKey(entity.getId()) || this.conflictingIndex(entity).isPresent()) {
+                result.add(entity, BatchResult.Outcome.DUPLICATE);
+            } else {
+                this.entities.put(entity.getId(), entity);
+                this.entityAdded(entity);
+                result.add(entity, BatchResult.Outcome.INSERTED);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public BatchResult<ID> deleteAll(Collection<ID> ids) throws IllegalArgumentException {
+        if (ids == null || ids.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Ids cannot be null!");
+        }
+
+        BatchResult<ID> result = new BatchResult<>(ids.size());
+        ids.forEach(id -> result.add(id,
+                this.delete(id).isPresent() ? BatchResult.Outcome.DELETED : BatchResult.Outcome.MISSING));
+        return result;
+    }
+
+    @Override
+    public BatchResult<E> updateAll(Collection<E> entities) throws IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> {
+            // An entity whose key belongs to another entity is reported, the stored one being kept.
+            if (this.entities.containsKey(entity.getId()) && this.conflictingIndex(entity).isPresent()) {
+                result.add(entity, BatchResult.Outcome.DUPLICATE);
+                return;
+            }
+            E old = this.entities.replace(entity.getId(), entity);
+            if (old != null) {
+                this.entityReplaced(old, entity);
+                result.add(entity, BatchResult.Outcome.UPDATED);
+            } else {
+                result.add(entity, BatchResult.Outcome.MISSING);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive!");
+        }
+        if (sortOrder == null) {
+            throw new IllegalArgumentException("The sort order cannot be null!");
+        }
+
+        if (this.sortedKeys == null) {
+            this.sortedKeys = new TreeSet<>(this.keyComparator);
+            this.sortedKeys.addAll(this.entities.keySet());
+        }
+
+        // Seeking the key in the sorted index, then walking at most one more entity than the limit.
+        NavigableSet<ID> keys;
+        if (sortOrder == SortOrder.ASCENDING) {
+            keys = afterKey == null ? this.sortedKeys : this.sortedKeys.tailSet(afterKey, false);
+        } else {
+            keys = afterKey == null ? this.sortedKeys.descendingSet() : this.sortedKeys.headSet(afterKey, false).descendingSet();
+        }
+
+        List<E> content = new ArrayList<>(limit);
+        Iterator<ID> iterator = keys.iterator();
+        while (iterator.hasNext() && content.size() < limit) {
+            content.add(this.entities.get(iterator.next()));
+        }
+
+        ID nextKey = iterator.hasNext() ? content.get(content.size() - 1).getId() : null;
+        return new Page<>(content, nextKey);
     }
 }
@@ -0,0 +1,179 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+
+import java.util.*;
+
+/**
+ * User repository that stores its values in memory, along with an inverted index of the trigrams of the last names.
+ * A substring of at least three characters is searched only among the users that have all of its trigrams.
+ * <p>
+ * The users are also indexed by their names and email, which identify them, by their email and by their last name,
+ * so that neither the duplicate checks nor the lookups by these fields scan all the users.
+ */
+public class InMemoryUserRepository extends InMemoryRepository<UUID, User> implements UserRepository {
+    // Length of the indexed substrings.
+    private static final int GRAM_LENGTH = 3;
+
+    // IDs of the users whose last name contains each trigram.
+    private final Map<String, Set<UUID>> lastNameGrams = new HashMap<>();
+    // Users by their names and email, equal users having the same key.
+    private final UniqueIndex<List<String>, UUID, User> naturalKeys;
+    // Users by their email.
+    private final SecondaryIndex<String, UUID, User> emails;
+    // Users by their last name.
+    private final PrefixIndex<UUID, User> lastNames;
+
+    public InMemoryUserRepository() {
+        this(false);
+    }
+
+    /**
+     * Initializes an in memory user repository.
+     *
+     * @param uniqueEmails true if two users cannot share an email, false otherwise.
+     */
+    public InMemoryUserRepository(boolean uniqueEmails) {
+        this(new UniqueIndex<>("names and email", user -> Arrays.asList(user.getFirstName(), user.getLastName(), user.getEmail())),
+                uniqueEmails ? new UniqueIndex<>("email", User::getEmail) : new HashIndex<>("email", User::getEmail),
+                new PrefixIndex<>("last name", User::getLastName));
+    }
+
+    private InMemoryUserRepository(UniqueIndex<List<String>, UUID, User> naturalKeys, SecondaryIndex<String, UUID, User> emails,
+                                   PrefixIndex<UUID, User> lastNames) {
+        super(Friendship::compareIds, List.of(naturalKeys, emails, lastNames));
+        this.naturalKeys = naturalKeys;
+        this.emails = emails;
+        this.lastNames = lastNames;
+    }
+
+    @Override
+    protected boolean containsEqual(User user) {
+        return this.naturalKeys.get(Arrays.asList(user.getFirstName(), user.getLastName(), user.getEmail())).isPresent();
+    }
+
+    /**
+     * Returns the users with a given email.
+     *
+     * @param email Email to look up.
+     * @return The users with the email.
+     * @throws IllegalArgumentException If the email is null.
+     */
+    public List<User> usersWithEmail(String email) throws IllegalArgumentException {
+        return this.findBy(this.emails, email);
+    }
+
+    /**
+     * Returns the users whose last name starts with a prefix, in the order of the last names.
+     * The search is case-sensitive, an empty prefix matching every user with a last name.
+     *
+     * @param prefix Prefix to look up.
+     * @return The users whose last name starts with the prefix.
+     * @throws IllegalArgumentException If the prefix is null.
+     */
+    public List<User> usersLastNameStartsWith(String prefix) throws IllegalArgumentException {
+        return this.findByPrefix(this.lastNames, prefix);
+    }
+
+    @Override
+    protected void entityAdded(User user) {
+        super.entityAdded(user);
+        this.index(user);
+    }
+
+    @Override
+    protected void entityRemoved(User user) {
+        super.entityRemoved(user);
+        this.unindex(user);
+    }
+
+    @Override
+    protected void entityReplaced(User old, User user) {
+        super.entityReplaced(old, user);
+        if (!Objects.equals(old.getLastName(), user.getLastName())) {
+            this.unindex(old);
+            this.index(user);
+        }
+    }
+
+    /**
+     * Adds the trigrams of the last name of a user to the index.
+     *
+     * @param user User to index.
+     */
+    private void index(User user) {
+        grams(user.getLastName()).forEach(gram -> this.lastNameGrams.computeIfAbsent(gram, g -> new HashSet<>()).add(user.getId()));
+    }
+
+    /**
+     * Removes the trigrams of the last name of a user from the index.
+     *
+     * @param user User to remove.
+     */
+    private void unindex(User user) {
+        grams(user.getLastName()).forEach(gram -> {
+            Set<UUID> ids = this.lastNameGrams.get(gram);
+            if (ids != null) {
+                ids.remove(user.getId());
+                if (ids.isEmpty()) {
+                    this.lastNameGrams.remove(gram);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the distinct substrings of a given length of a string.
+     *
+     * @param string String to split, may be null.
+     * @return The trigrams of the string.
+     */
+    private static Set<String> grams(String string) {
+        Set<String> grams = new HashSet<>();
+        if (string != null) {
+            for (int i = 0; i + GRAM_LENGTH <= string.length(); i++) {
+                grams.add(string.substring(i, i + GRAM_LENGTH));
+            }
+        }
+        return grams;
+    }
+
+    @Override
+    public List<User> usersLastNameContainsString(String string) throws IllegalArgumentException {
+        if (string == null) {
+            throw new IllegalArgumentException("The string cannot be null!");
+        }
+
+        List<User> userList = new ArrayList<>();
+
+        // Substrings shorter than a trigram can't be looked up in the index, so all the users are checked.
+        if (string.length() < GRAM_LENGTH) {
+            this.getAll().forEach(user -> {
+                if (user.getLastName() != null && user.getLastName().contains(string)) {
+                    userList.add(user);
+                }
+            });
+            return userList;
+        }
+
+        // Intersecting the postings of the trigrams, starting with the smallest one.
+        List<Set<UUID>> postings = new ArrayList<>();
+        for (String gram : grams(string)) {
+            Set<UUID> ids = this.lastNameGrams.get(gram);
+            if (ids == null) {
+                return userList;
+            }
+            postings.add(ids);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        for (UUID id : postings.get(0)) {
+            if (postings.stream().skip(1).allMatch(ids -> ids.contains(id))) {
+                // Having all the trigrams doesn't mean having them in the right order, so the candidate is verified.
+                this.getOne(id).filter(user -> user.getLastName().contains(string)).ifPresent(userList::add);
+            }
+        }
+        return userList;
+    }
+}
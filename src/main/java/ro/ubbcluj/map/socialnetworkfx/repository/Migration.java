@@ -0,0 +1,54 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import java.util.List;
+
+/**
+ * Versioned change of the schema of a part of the database, such as the tables of a repository.
+ * The migrations of a part are applied in ascending order of their versions, each of them once.
+ */
+public final class Migration {
+    private final String component;
+    private final int version;
+    private final String description;
+    private final List<String> statements;
+
+    /**
+     * Initializes a migration.
+     *
+     * @param component   Part of the database changed by the migration.
+     * @param version     Version of the part after the migration, starting from 1.
+     * @param description What the migration changes.
+     * @param statements  Statements of the migration, applied in order.
+     */
+    public Migration(String component, int version, String description, List<String> statements) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("The version of a migration must be positive!");
+        }
+
+        this.component = component;
+        this.version = version;
+        this.description = description;
+        this.statements = List.copyOf(statements);
+    }
+
+    public String getComponent() {
+        return this.component;
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public List<String> getStatements() {
+        return this.statements;
+    }
+
+    @Override
+    public String toString() {
+        return this.component + " v" + this.version + " (" + this.description + ")";
+    }
+}
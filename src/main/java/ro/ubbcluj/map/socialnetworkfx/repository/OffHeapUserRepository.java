@@ -0,0 +1,651 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.EntityCodec;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * User repository that stores its users outside the heap, so that millions of users don't weigh on the garbage
+ * collector. The users are kept encoded in direct memory chunks, and a {@link User} is only created when it is read.
+ * <p>
+ * Each user is stored in a block of a chunk, located through an open-addressing index of the IDs, itself stored in
+ * direct memory. A second index, of the hashes of the names and emails, rejects the users equal to a stored one,
+ * like {@link InMemoryRepository} does.
+ * Blocks freed by deletes and updates are reused through a free list, and the users are moved to fresh chunks
+ * once the free blocks take more than half of the used memory.
+ * <p>
+ * Paging orders the IDs as unsigned numbers, the same order as the one of the database.
+ */
+public class OffHeapUserRepository implements Repository<UUID, User> {
+    // Size of a chunk, the largest block that can be stored.
+    private static final int CHUNK_SIZE = 1 << 24;
+    // Header of a block: its size.
+    private static final int BLOCK_HEADER_SIZE = 4;
+    // Smallest block, the free blocks being split only if the rest is at least as large.
+    private static final int MIN_BLOCK_SIZE = 16;
+    // Free memory, relative to the used memory, from which the users are moved to fresh chunks.
+    private static final double DEFRAGMENTATION_RATIO = 0.5;
+
+    // Chunks of the blocks, an address being the index of its chunk followed by its offset in the chunk.
+    private List<ByteBuffer> chunks = new ArrayList<>();
+    // Offset of the first unused byte of the last chunk.
+    private int top = CHUNK_SIZE;
+    // Free blocks, by their size.
+    private TreeMap<Integer, ArrayDeque<Long>> freeBlocks = new TreeMap<>();
+    private long freeBytes = 0;
+    private long usedBytes = 0;
+
+    // Address of each user, by ID.
+    private AddressTable ids = new AddressTable();
+    // Address of each user, by the hash of its names and email.
+    private AddressTable values = new AddressTable();
+
+    // IDs in ascending order, built on the first paging and rebuilt after the IDs changed.
+    private long[] sortedMostSignificant;
+    private long[] sortedLeastSignificant;
+
+    // Statistics of the store.
+    private long defragmentationCount = 0;
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return this.ids.size == 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.ids.size;
+    }
+
+    @Override
+    public Iterable<User> getAll() {
+        try (Stream<User> users = this.stream()) {
+            return users.toList();
+        }
+    }
+
+    /**
+     * Streams the users, creating each one only when it is reached.
+     * Users added while streaming aren't listed, and users removed while streaming are skipped.
+     */
+    @Override
+    public Stream<User> stream() {
+        long[] mostSignificant;
+        long[] leastSignificant;
+        synchronized (this) {
+            mostSignificant = new long[this.ids.size];
+            leastSignificant = new long[this.ids.size];
+            int[] count = {0};
+            this.ids.forEach((key1, key2, address) -> {
+                mostSignificant[count[0]] = key1;
+                leastSignificant[count[0]++] = key2;
+            });
+        }
+
+        return IntStream.range(0, mostSignificant.length)
+                .mapToObj(i -> this.getOne(new UUID(mostSignificant[i], leastSignificant[i])))
+                .flatMap(Optional::stream);
+    }
+
+    @Override
+    public synchronized Page<UUID, User> page(UUID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive!");
+        }
+        if (sortOrder == null) {
+            throw new IllegalArgumentException("The sort order cannot be null!");
+        }
+
+        if (this.sortedMostSignificant == null) {
+            this.sortIds();
+        }
+
+        // Seeking the key in the sorted IDs, then walking at most one more user than the limit.
+        int count = this.sortedMostSignificant.length;
+        int step = sortOrder == SortOrder.ASCENDING ? 1 : -1;
+        int start;
+        if (afterKey == null) {
+            start = sortOrder == SortOrder.ASCENDING ? 0 : count - 1;
+        } else {
+            int position = this.searchSorted(afterKey);
+            if (position >= 0) {
+                start = position + step;
+            } else {
+                // The insertion point is the first greater ID.
+                start = sortOrder == SortOrder.ASCENDING ? -position - 1 : -position - 2;
+            }
+        }
+
+        List<User> content = new ArrayList<>(limit);
+        int position = start;
+        for (; position >= 0 && position < count && content.size() < limit; position += step) {
+            long address = this.ids.get(this.sortedMostSignificant[position], this.sortedLeastSignificant[position]);
+            content.add(this.read(address));
+        }
+
+        UUID nextKey = position >= 0 && position < count ? content.get(content.size() - 1).getId() : null;
+        return new Page<>(content, nextKey);
+    }
+
+    @Override
+    public synchronized Optional<User> getOne(UUID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        long address = this.ids.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return address < 0 ? Optional.empty() : Optional.of(this.read(address));
+    }
+
+    @Override
+    public synchronized Optional<User> save(User user) throws RepositoryException, IllegalArgumentException {
+        if (user == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        long existing = this.ids.get(user.getId().getMostSignificantBits(), user.getId().getLeastSignificantBits());
+        if (existing >= 0) {
+            return Optional.of(this.read(existing));
+        }
+
+        ByteBuffer record = encode(user);
+        long hash = valueHash(record);
+        if (this.findValue(record, hash) >= 0) {
+            throw new RepositoryException("The same entity is already stored!");
+        }
+
+        this.insert(user.getId(), record, hash);
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized Optional<User> delete(UUID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        long address = this.ids.get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (address < 0) {
+            return Optional.empty();
+        }
+
+        User removed = this.read(address);
+        this.remove(id, address);
+        this.defragmentIfNeeded();
+        return Optional.of(removed);
+    }
+
+    @Override
+    public synchronized Optional<User> update(User user) throws RepositoryException, IllegalArgumentException {
+        if (user == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        long address = this.ids.get(user.getId().getMostSignificantBits(), user.getId().getLeastSignificantBits());
+        if (address < 0) {
+            throw new RepositoryException("Entity with the specified id doesn't exist!");
+        }
+
+        User old = this.read(address);
+        ByteBuffer record = encode(user);
+        long hash = valueHash(record);
+        long same = this.findValue(record, hash);
+        if (same >= 0 && same != address) {
+            throw new RepositoryException("The same entity is already stored!");
+        }
+
+        ByteBuffer block = this.block(address);
+        if (block.getInt(0) - BLOCK_HEADER_SIZE >= record.remaining()) {
+            // Overwriting the user in place, its block being large enough.
+            this.values.remove(valueHash(this.record(address)), 0, address);
+            block.put(BLOCK_HEADER_SIZE, record, 0, record.remaining());
+            this.values.put(hash, 0, address);
+        } else {
+            this.remove(user.getId(), address);
+            this.insert(user.getId(), record, hash);
+            this.defragmentIfNeeded();
+        }
+        return Optional.of(old);
+    }
+
+    /**
+     * Moves the users to fresh chunks, one after another, releasing the free blocks.
+     */
+    public synchronized void defragment() {
+        List<ByteBuffer> oldChunks = this.chunks;
+        AddressTable oldIds = this.ids;
+
+        this.chunks = new ArrayList<>();
+        this.top = CHUNK_SIZE;
+        this.freeBlocks = new TreeMap<>();
+        this.freeBytes = 0;
+        this.usedBytes = 0;
+        this.ids = new AddressTable(oldIds.size);
+        this.values = new AddressTable(oldIds.size);
+
+        oldIds.forEach((key1, key2, address) -> {
+            ByteBuffer block = oldChunks.get((int) (address >>> 32)).slice((int) address, CHUNK_SIZE - (int) address);
+            ByteBuffer record = block.slice(BLOCK_HEADER_SIZE, block.getInt(0) - BLOCK_HEADER_SIZE);
+            record.limit(recordLength(record));
+            this.insert(new UUID(key1, key2), record, valueHash(record));
+        });
+        this.defragmentationCount++;
+    }
+
+    /**
+     * @return Number of bytes of direct memory held by the chunks.
+     */
+    public synchronized long getReservedBytes() {
+        return (long) this.chunks.size() * CHUNK_SIZE;
+    }
+
+    /**
+     * @return Number of bytes of the blocks of the stored users.
+     */
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    /**
+     * @return Number of bytes of the free blocks.
+     */
+    public synchronized long getFreeBytes() {
+        return this.freeBytes;
+    }
+
+    /**
+     * @return Number of defragmentations since the repository was created.
+     */
+    public synchronized long getDefragmentationCount() {
+        return this.defragmentationCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "OffHeapUserRepository{size=" + this.ids.size + ", chunks=" + this.chunks.size() + ", used=" + this.usedBytes
+                + ", free=" + this.freeBytes + ", defragmentations=" + this.defragmentationCount + "}";
+    }
+
+    private static ByteBuffer encode(User user) {
+        ByteBuffer record = ByteBuffer.allocate(EntityCodec.sizeOf(user));
+        EntityCodec.writeUser(record, user);
+        if (record.capacity() > CHUNK_SIZE - BLOCK_HEADER_SIZE) {
+            throw new IllegalArgumentException("The user is too large to be stored!");
+        }
+        return record.flip();
+    }
+
+    /**
+     * Returns the length of an encoded user, by skipping its fields.
+     */
+    private static int recordLength(ByteBuffer record) {
+        ByteBuffer reader = record.duplicate();
+        EntityCodec.readUser(reader);
+        return reader.position();
+    }
+
+    /**
+     * Hashes the names and the email of an encoded user, which follow its ID.
+     */
+    private static long valueHash(ByteBuffer record) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 16; i < record.limit(); i++) {
+            hash = (hash ^ (record.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private ByteBuffer block(long address) {
+        return this.chunks.get((int) (address >>> 32)).slice((int) address, CHUNK_SIZE - (int) address);
+    }
+
+    /**
+     * Returns the encoded user stored at an address.
+     */
+    private ByteBuffer record(long address) {
+        ByteBuffer block = this.block(address);
+        ByteBuffer record = block.slice(BLOCK_HEADER_SIZE, block.getInt(0) - BLOCK_HEADER_SIZE);
+        return record.limit(recordLength(record));
+    }
+
+    private User read(long address) {
+        return EntityCodec.readUser(this.block(address).position(BLOCK_HEADER_SIZE));
+    }
+
+    /**
+     * Searches for a stored user with the same names and email as an encoded user.
+     *
+     * @return The address of the stored user, or -1 if there is none.
+     */
+    private long findValue(ByteBuffer record, long hash) {
+        ByteBuffer value = record.slice(16, record.limit() - 16);
+        long[] found = {-1};
+        this.values.forEachWithKey(hash, 0, address -> {
+            ByteBuffer stored = this.record(address);
+            if (found[0] < 0 && stored.slice(16, stored.limit() - 16).equals(value)) {
+                found[0] = address;
+            }
+        });
+        return found[0];
+    }
+
+    private void insert(UUID id, ByteBuffer record, long hash) {
+        long address = this.allocate(BLOCK_HEADER_SIZE + record.remaining());
+        this.block(address).put(BLOCK_HEADER_SIZE, record, record.position(), record.remaining());
+        this.ids.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), address);
+        this.values.put(hash, 0, address);
+        this.sortedMostSignificant = null;
+        this.sortedLeastSignificant = null;
+    }
+
+    private void remove(UUID id, long address) {
+        this.values.remove(valueHash(this.record(address)), 0, address);
+        this.ids.remove(id.getMostSignificantBits(), id.getLeastSignificantBits(), address);
+        this.free(address);
+        this.sortedMostSignificant = null;
+        this.sortedLeastSignificant = null;
+    }
+
+    /**
+     * Allocates a block, reusing the smallest free block that is large enough, or the end of the last chunk.
+     *
+     * @param size Size needed, the header included.
+     * @return The address of the block, whose header holds its size.
+     */
+    private long allocate(int size) {
+        int blockSize = Math.max(MIN_BLOCK_SIZE, (size + 7) & ~7);
+
+        Map.Entry<Integer, ArrayDeque<Long>> free = this.freeBlocks.ceilingEntry(blockSize);
+        long address;
+        if (free != null) {
+            address = free.getValue().poll();
+            if (free.getValue().isEmpty()) {
+                this.freeBlocks.remove(free.getKey());
+            }
+            this.freeBytes -= free.getKey();
+
+            // Splitting the block, if the rest is large enough to be reused.
+            if (free.getKey() - blockSize >= MIN_BLOCK_SIZE) {
+                this.addFree(address + blockSize, free.getKey() - blockSize);
+            } else {
+                blockSize = free.getKey();
+            }
+        } else {
+            if (this.top + blockSize > CHUNK_SIZE) {
+                // The end of the last chunk is too small, so it is kept for smaller blocks.
+                if (CHUNK_SIZE - this.top >= MIN_BLOCK_SIZE) {
+                    this.addFree(((long) (this.chunks.size() - 1) << 32) | this.top, CHUNK_SIZE - this.top);
+                }
+                this.chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+                this.top = 0;
+            }
+            address = ((long) (this.chunks.size() - 1) << 32) | this.top;
+            this.top += blockSize;
+        }
+
+        this.block(address).putInt(0, blockSize);
+        this.usedBytes += blockSize;
+        return address;
+    }
+
+    private void free(long address) {
+        int blockSize = this.block(address).getInt(0);
+        this.usedBytes -= blockSize;
+        this.addFree(address, blockSize);
+    }
+
+    private void addFree(long address, int blockSize) {
+        this.block(address).putInt(0, blockSize);
+        this.freeBlocks.computeIfAbsent(blockSize, size -> new ArrayDeque<>()).push(address);
+        this.freeBytes += blockSize;
+    }
+
+    private void defragmentIfNeeded() {
+        if (this.freeBytes > CHUNK_SIZE && this.freeBytes > this.usedBytes * DEFRAGMENTATION_RATIO) {
+            this.defragment();
+        }
+    }
+
+    private void sortIds() {
+        int count = this.ids.size;
+        long[] mostSignificant = new long[count];
+        long[] leastSignificant = new long[count];
+        int[] position = {0};
+        this.ids.forEach((key1, key2, address) -> {
+            mostSignificant[position[0]] = key1;
+            leastSignificant[position[0]++] = key2;
+        });
+        sort(mostSignificant, leastSignificant, 0, count - 1);
+        this.sortedMostSignificant = mostSignificant;
+        this.sortedLeastSignificant = leastSignificant;
+    }
+
+    /**
+     * Binary search of an ID among the sorted IDs.
+     *
+     * @return The position of the ID, or {@code -(insertion point) - 1} if it is missing.
+     */
+    private int searchSorted(UUID id) {
+        int low = 0;
+        int high = this.sortedMostSignificant.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(this.sortedMostSignificant[middle], this.sortedLeastSignificant[middle],
+                    id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static int compare(long mostSignificant1, long leastSignificant1, long mostSignificant2, long leastSignificant2) {
+        int comparison = Long.compareUnsigned(mostSignificant1, mostSignificant2);
+        return comparison != 0 ? comparison : Long.compareUnsigned(leastSignificant1, leastSignificant2);
+    }
+
+    /**
+     * Sorts two parallel arrays of the halves of the IDs, by quicksort, without creating any object.
+     */
+    private static void sort(long[] mostSignificant, long[] leastSignificant, int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            long pivot1 = mostSignificant[middle];
+            long pivot2 = leastSignificant[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(mostSignificant[i], leastSignificant[i], pivot1, pivot2) < 0) {
+                    i++;
+                }
+                while (compare(mostSignificant[j], leastSignificant[j], pivot1, pivot2) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(mostSignificant, leastSignificant, i++, j--);
+                }
+            }
+
+            // Recursing on the smaller part, so that the depth stays logarithmic.
+            if (j - low < high - i) {
+                sort(mostSignificant, leastSignificant, low, j);
+                low = i;
+            } else {
+                sort(mostSignificant, leastSignificant, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(mostSignificant[j - 1], leastSignificant[j - 1], mostSignificant[j], leastSignificant[j]) > 0; j--) {
+                swap(mostSignificant, leastSignificant, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] mostSignificant, long[] leastSignificant, int i, int j) {
+        long first = mostSignificant[i];
+        mostSignificant[i] = mostSignificant[j];
+        mostSignificant[j] = first;
+        long second = leastSignificant[i];
+        leastSignificant[i] = leastSignificant[j];
+        leastSignificant[j] = second;
+    }
+
+    /**
+     * Open-addressing hash table from a key of two longs to addresses, stored in direct memory.
+     * Collisions are resolved by linear probing, and removals shift the following entries back,
+     * so that no tombstones are left behind. A key may be stored several times, with different addresses.
+     */
+    private static final class AddressTable {
+        // Each slot holds the two halves of the key and the address, EMPTY for a free slot.
+        private static final int SLOT_LONGS = 3;
+        private static final long EMPTY = -1;
+        private static final double MAX_LOAD = 0.75;
+
+        private LongBuffer slots;
+        private int mask;
+        private int size = 0;
+
+        private AddressTable() {
+            this(0);
+        }
+
+        private AddressTable(int expectedSize) {
+            int capacity = 16;
+            while (capacity * MAX_LOAD < expectedSize) {
+                capacity <<= 1;
+            }
+            this.allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            if ((long) capacity * SLOT_LONGS * Long.BYTES > Integer.MAX_VALUE) {
+                throw new RepositoryException("The index cannot hold more entries!");
+            }
+            this.slots = ByteBuffer.allocateDirect(capacity * SLOT_LONGS * Long.BYTES).asLongBuffer();
+            for (int slot = 0; slot < capacity; slot++) {
+                this.slots.put(slot * SLOT_LONGS + 2, EMPTY);
+            }
+            this.mask = capacity - 1;
+        }
+
+        private int home(long key1, long key2) {
+            long hash = key1 * 0x9E3779B97F4A7C15L ^ key2;
+            hash ^= hash >>> 32;
+            hash *= 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & this.mask;
+        }
+
+        private long key1(int slot) {
+            return this.slots.get(slot * SLOT_LONGS);
+        }
+
+        private long key2(int slot) {
+            return this.slots.get(slot * SLOT_LONGS + 1);
+        }
+
+        private long address(int slot) {
+            return this.slots.get(slot * SLOT_LONGS + 2);
+        }
+
+        private void set(int slot, long key1, long key2, long address) {
+            this.slots.put(slot * SLOT_LONGS, key1);
+            this.slots.put(slot * SLOT_LONGS + 1, key2);
+            this.slots.put(slot * SLOT_LONGS + 2, address);
+        }
+
+        /**
+         * @return The address of the first entry with a key, or -1 if there is none.
+         */
+        private long get(long key1, long key2) {
+            for (int slot = this.home(key1, key2); this.address(slot) != EMPTY; slot = (slot + 1) & this.mask) {
+                if (this.key1(slot) == key1 && this.key2(slot) == key2) {
+                    return this.address(slot);
+                }
+            }
+            return -1;
+        }
+
+        private void forEachWithKey(long key1, long key2, java.util.function.LongConsumer action) {
+            for (int slot = this.home(key1, key2); this.address(slot) != EMPTY; slot = (slot + 1) & this.mask) {
+                if (this.key1(slot) == key1 && this.key2(slot) == key2) {
+                    action.accept(this.address(slot));
+                }
+            }
+        }
+
+        private void forEach(EntryConsumer action) {
+            for (int slot = 0; slot <= this.mask; slot++) {
+                if (this.address(slot) != EMPTY) {
+                    action.accept(this.key1(slot), this.key2(slot), this.address(slot));
+                }
+            }
+        }
+
+        private void put(long key1, long key2, long address) {
+            if (this.size + 1 > (this.mask + 1) * MAX_LOAD) {
+                this.resize();
+            }
+
+            int slot = this.home(key1, key2);
+            while (this.address(slot) != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.set(slot, key1, key2, address);
+            this.size++;
+        }
+
+        private void remove(long key1, long key2, long address) {
+            int slot = this.home(key1, key2);
+            while (this.address(slot) != address || this.key1(slot) != key1 || this.key2(slot) != key2) {
+                if (this.address(slot) == EMPTY) {
+                    return;
+                }
+                slot = (slot + 1) & this.mask;
+            }
+
+            // Shifting back the following entries that can't be reached anymore from their home slot.
+            int hole = slot;
+            for (int next = (hole + 1) & this.mask; this.address(next) != EMPTY; next = (next + 1) & this.mask) {
+                int home = this.home(this.key1(next), this.key2(next));
+                if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                    this.set(hole, this.key1(next), this.key2(next), this.address(next));
+                    hole = next;
+                }
+            }
+            this.set(hole, 0, 0, EMPTY);
+            this.size--;
+        }
+
+        private void resize() {
+            LongBuffer old = this.slots;
+            int oldCapacity = this.mask + 1;
+            this.allocate(oldCapacity * 2);
+            this.size = 0;
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                long address = old.get(slot * SLOT_LONGS + 2);
+                if (address != EMPTY) {
+                    this.put(old.get(slot * SLOT_LONGS), old.get(slot * SLOT_LONGS + 1), address);
+                }
+            }
+        }
+    }
+
+    /**
+     * Action on an entry of an address table.
+     */
+    private interface EntryConsumer {
+        void accept(long key1, long key2, long address);
+    }
+}
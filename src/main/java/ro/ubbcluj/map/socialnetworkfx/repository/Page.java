@@ -0,0 +1,48 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Page of entities retrieved from a repository through keyset pagination.
+ *
+ * @param <ID> ID of the paged entities.
+ * @param <E>  Entity paged.
+ */
+public class Page<ID, E> {
+    private final List<E> content;
+    private final ID nextKey;
+
+    /**
+     * Initializes a page.
+     *
+     * @param content Entities of the page.
+     * @param nextKey Key after which the next page starts, null if this is the last page.
+     */
+    public Page(List<E> content, ID nextKey) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextKey = nextKey;
+    }
+
+    /**
+     * @return The entities of the page.
+     */
+    public List<E> getContent() {
+        return this.content;
+    }
+
+    /**
+     * @return The key that should be passed to retrieve the next page, empty if this is the last page.
+     */
+    public Optional<ID> getNextKey() {
+        return Optional.ofNullable(this.nextKey);
+    }
+
+    /**
+     * @return true if there are entities after this page, false otherwise.
+     */
+    public boolean hasNext() {
+        return this.nextKey != null;
+    }
+}
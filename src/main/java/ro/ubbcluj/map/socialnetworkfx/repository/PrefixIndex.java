@@ -0,0 +1,85 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * Secondary index of the entities by a string, kept sorted so that the entities whose string starts with
+ * a given prefix are found without scanning all the entities.
+ *
+ * @param <ID> ID type of the indexed Entity.
+ * @param <E>  Entity that is indexed.
+ */
+public class PrefixIndex<ID, E extends Entity<ID>> extends SecondaryIndex<String, ID, E> {
+    // IDs of the entities with each string, each string being changed atomically by the map.
+    private final ConcurrentHashMap<String, Object> postings = new ConcurrentHashMap<>();
+    // Strings that have postings, in order, added and removed along with their postings.
+    private final NavigableSet<String> strings = new ConcurrentSkipListSet<>();
+
+    /**
+     * Initializes a prefix index.
+     *
+     * @param name Name of the index.
+     * @param key  Function that derives the string of an entity.
+     */
+    public PrefixIndex(String name, Function<? super E, String> key) {
+        super(name, key);
+    }
+
+    @Override
+    public Collection<ID> find(String key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("The key cannot be null!");
+        }
+        return postings(this.postings.get(key));
+    }
+
+    /**
+     * Returns the IDs of the entities whose string starts with a prefix, in the order of the strings.
+     * The search is case-sensitive, an empty prefix matching every indexed entity.
+     *
+     * @param prefix Prefix to look up.
+     * @return The IDs of the entities whose string starts with the prefix.
+     * @throws IllegalArgumentException If the prefix is null.
+     */
+    public List<ID> findByPrefix(String prefix) throws IllegalArgumentException {
+        if (prefix == null) {
+            throw new IllegalArgumentException("The prefix cannot be null!");
+        }
+
+        // The strings with the prefix are contiguous, starting with the prefix itself.
+        List<ID> ids = new ArrayList<>();
+        for (String string : this.strings.tailSet(prefix, true)) {
+            if (!string.startsWith(prefix)) {
+                break;
+            }
+            ids.addAll(postings(this.postings.get(string)));
+        }
+        return ids;
+    }
+
+    @Override
+    protected void add(String key, ID id) {
+        this.postings.compute(key, (string, existing) -> {
+            if (existing == null) {
+                this.strings.add(string);
+            }
+            return withPosting(existing, id);
+        });
+    }
+
+    @Override
+    protected void remove(String key, ID id) {
+        this.postings.computeIfPresent(key, (string, existing) -> {
+            Object rest = withoutPosting(existing, id);
+            if (rest == null) {
+                this.strings.remove(string);
+            }
+            return rest;
+        });
+    }
+}
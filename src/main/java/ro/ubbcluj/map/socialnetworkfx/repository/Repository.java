@@ -3,7 +3,11 @@ package ro.ubbcluj.map.socialnetworkfx.repository;
 import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 
+import java.util.Collection;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * CRUD Operations for the repository interface.
@@ -33,6 +37,27 @@ public interface Repository<ID, E extends Entity<ID>> {
      */
     Iterable<E> getAll();
 
+    /**
+     * Lazily streams all the contents of the repository, without materializing them first.
+     * The stream holds resources until it is closed, so it should be used in a try-with-resources block.
+     *
+     * @return Stream of all the values stored in the repository.
+     */
+    default Stream<E> stream() {
+        return StreamSupport.stream(this.getAll().spliterator(), false);
+    }
+
+    /**
+     * Retrieves a page of entities ordered by their IDs, starting right after a given key.
+     *
+     * @param afterKey  ID after which the page starts, null for the first page.
+     * @param limit     Maximum number of entities in the page.
+     * @param sortOrder Order of the IDs.
+     * @return The page of entities, along with the key of the next page.
+     * @throws IllegalArgumentException If the limit isn't positive or the sort order is null.
+     */
+    Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException;
+
     /**
      * Searches for one entity in the repository.
      *
@@ -77,4 +102,61 @@ public interface Repository<ID, E extends Entity<ID>> {
      * @throws IllegalArgumentException If the id is null.
      */
     Optional<E> update(E e) throws RepositoryException, IllegalArgumentException;
+
+    /**
+     * Adds a bulk of entities to the repository.
+     * The default implementation saves the entities one by one.
+     *
+     * @param entities Entities that should be added.
+     * @return The outcome for each entity: {@code INSERTED} or {@code DUPLICATE}.
+     * @throws IllegalArgumentException If the collection or any of its entities is null.
+     */
+    default BatchResult<E> saveAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> result.add(entity,
+                this.save(entity).isEmpty() ? BatchResult.Outcome.INSERTED : BatchResult.Outcome.DUPLICATE));
+        return result;
+    }
+
+    /**
+     * Removes a bulk of entities from the repository.
+     * The default implementation deletes the entities one by one.
+     *
+     * @param ids IDs of the entities to remove.
+     * @return The outcome for each ID: {@code DELETED} or {@code MISSING}.
+     * @throws IllegalArgumentException If the collection or any of its IDs is null.
+     */
+    default BatchResult<ID> deleteAll(Collection<ID> ids) throws RepositoryException, IllegalArgumentException {
+        if (ids == null || ids.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Ids cannot be null!");
+        }
+
+        BatchResult<ID> result = new BatchResult<>(ids.size());
+        ids.forEach(id -> result.add(id,
+                this.delete(id).isPresent() ? BatchResult.Outcome.DELETED : BatchResult.Outcome.MISSING));
+        return result;
+    }
+
+    /**
+     * Updates a bulk of entities.
+     * The default implementation updates the entities one by one.
+     *
+     * @param entities New entities.
+     * @return The outcome for each entity: {@code UPDATED} or {@code MISSING}.
+     * @throws IllegalArgumentException If the collection or any of its entities is null.
+     */
+    default BatchResult<E> updateAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> result.add(entity,
+                this.update(entity).isPresent() ? BatchResult.Outcome.UPDATED : BatchResult.Outcome.MISSING));
+        return result;
+    }
 }
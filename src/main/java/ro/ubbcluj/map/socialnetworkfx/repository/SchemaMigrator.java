@@ -0,0 +1,111 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Brings the schema of the database up to date by applying the migrations that weren't applied yet.
+ * The version of each part of the schema is recorded in the {@code schema_version} table, so a migration is
+ * applied once, and an upgrade only applies the migrations that came after the recorded versions.
+ * <p>
+ * The pending migrations are applied in a single transaction, under a lock shared by all the clients of the
+ * database: clients starting at the same time don't apply a migration twice, and a failed upgrade leaves
+ * the schema as it was.
+ */
+public final class SchemaMigrator {
+    // Table of the applied migrations.
+    private static final String VERSION_TABLE = "create table if not exists schema_version (" +
+            "component text not null, " +
+            "version int not null, " +
+            "description text not null, " +
+            "applied_at timestamptz not null default now(), " +
+            "primary key (component, version))";
+    // Key of the advisory lock under which the migrations are applied.
+    private static final long LOCK_KEY = 0x5C4E_4D41_5F56_4552L;
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies the migrations that weren't applied yet.
+     *
+     * @param connection Connection to the database.
+     * @param migrations Migrations of the schema, the versions of each part being in ascending order.
+     * @return The migrations that were applied, empty if the schema was up to date.
+     * @throws IllegalArgumentException If the versions of a part aren't in ascending order.
+     * @throws RepositoryException      If a migration failed, in which case none of them was applied.
+     */
+    public static List<Migration> migrate(Connection connection, List<Migration> migrations) throws IllegalArgumentException, RepositoryException {
+        checkOrder(migrations);
+
+        Migration current = null;
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                // Locking before creating the version table, as two concurrent creations of a table may conflict.
+                statement.execute("select pg_advisory_xact_lock(" + LOCK_KEY + ")");
+                statement.execute(VERSION_TABLE);
+                Map<String, Integer> versions = appliedVersions(statement);
+
+                List<Migration> applied = new ArrayList<>();
+                try (PreparedStatement record = connection.prepareStatement(
+                        "insert into schema_version(component, version, description) values (?, ?, ?)")) {
+                    for (Migration migration : migrations) {
+                        if (migration.getVersion() <= versions.getOrDefault(migration.getComponent(), 0)) {
+                            continue;
+                        }
+
+                        current = migration;
+                        for (String sql : migration.getStatements()) {
+                            statement.execute(sql);
+                        }
+                        record.setString(1, migration.getComponent());
+                        record.setInt(2, migration.getVersion());
+                        record.setString(3, migration.getDescription());
+                        record.executeUpdate();
+
+                        versions.put(migration.getComponent(), migration.getVersion());
+                        applied.add(migration);
+                    }
+                }
+
+                connection.commit();
+                return applied;
+            } catch (SQLException sqlException) {
+                connection.rollback();
+                throw sqlException;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException sqlException) {
+            String failed = current == null ? "The schema versions couldn't be read: " : "Migration " + current + " failed: ";
+            throw new RepositoryException(failed + sqlException.getMessage());
+        }
+    }
+
+    /**
+     * Reads the latest applied version of each part of the schema.
+     */
+    private static Map<String, Integer> appliedVersions(Statement statement) throws SQLException {
+        Map<String, Integer> versions = new HashMap<>();
+        try (ResultSet resultSet = statement.executeQuery("select component, max(version) from schema_version group by component")) {
+            while (resultSet.next()) {
+                versions.put(resultSet.getString(1), resultSet.getInt(2));
+            }
+        }
+        return versions;
+    }
+
+    private static void checkOrder(List<Migration> migrations) {
+        Map<String, Integer> versions = new HashMap<>();
+        for (Migration migration : migrations) {
+            Integer previous = versions.put(migration.getComponent(), migration.getVersion());
+            if (previous != null && previous >= migration.getVersion()) {
+                throw new IllegalArgumentException("The migrations of " + migration.getComponent() + " aren't in ascending order of their versions!");
+            }
+        }
+    }
+}
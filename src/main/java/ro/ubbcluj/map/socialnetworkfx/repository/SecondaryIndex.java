@@ -0,0 +1,156 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Index of the entities of an in memory repository by a key derived from them, declared when the repository is
+ * created and kept up to date by it on every change. Entities whose key is null aren't indexed.
+ * <p>
+ * The indexes can be read and changed from several threads, each key being changed atomically.
+ *
+ * @param <K>  Type of the key.
+ * @param <ID> ID type of the indexed Entity.
+ * @param <E>  Entity that is indexed.
+ */
+public abstract class SecondaryIndex<K, ID, E extends Entity<ID>> {
+    // Name of the index, used in the error messages.
+    private final String name;
+    // Key of an entity.
+    private final Function<? super E, ? extends K> key;
+
+    /**
+     * Initializes a secondary index.
+     *
+     * @param name Name of the index.
+     * @param key  Function that derives the key of an entity.
+     */
+    protected SecondaryIndex(String name, Function<? super E, ? extends K> key) {
+        this.name = name;
+        this.key = key;
+    }
+
+    /**
+     * @return The name of the index.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the IDs of the entities with a given key.
+     *
+     * @param key Key to look up.
+     * @return The IDs of the entities with the key.
+     * @throws IllegalArgumentException If the key is null.
+     */
+    public abstract Collection<ID> find(K key) throws IllegalArgumentException;
+
+    /**
+     * Adds the key of an entity to the storage of the index.
+     */
+    protected abstract void add(K key, ID id);
+
+    /**
+     * Removes the key of an entity from the storage of the index.
+     */
+    protected abstract void remove(K key, ID id);
+
+    /**
+     * Returns the ID of a stored entity that prevents an entity from being stored, for the unique indexes.
+     *
+     * @param key Key of the entity.
+     * @param id  ID of the entity, which doesn't conflict with itself.
+     * @return The ID of the conflicting entity, empty if there is none.
+     */
+    protected Optional<ID> conflict(K key, ID id) {
+        return Optional.empty();
+    }
+
+    K keyOf(E entity) {
+        return this.key.apply(entity);
+    }
+
+    void add(E entity) {
+        K entityKey = this.key.apply(entity);
+        if (entityKey != null) {
+            this.add(entityKey, entity.getId());
+        }
+    }
+
+    void remove(E entity) {
+        K entityKey = this.key.apply(entity);
+        if (entityKey != null) {
+            this.remove(entityKey, entity.getId());
+        }
+    }
+
+    /**
+     * Moves an entity to the key of the entity that replaces it, if the key changed.
+     */
+    void replace(E old, E entity) {
+        if (!Objects.equals(this.key.apply(old), this.key.apply(entity))) {
+            this.remove(old);
+            this.add(entity);
+        }
+    }
+
+    Optional<ID> conflict(E entity) {
+        K entityKey = this.key.apply(entity);
+        return entityKey == null ? Optional.empty() : this.conflict(entityKey, entity.getId());
+    }
+
+    /**
+     * Adds an ID to the postings of a key, changing them in place. A key with a single entity is mapped to its ID,
+     * so that the indexes of mostly distinct keys don't hold a set for each key, and a key shared by several
+     * entities to a concurrent set, so that adding to it doesn't copy the IDs already there.
+     * The postings are changed inside {@link ConcurrentHashMap#compute}, which changes each key atomically.
+     *
+     * @param existing Postings of the key, null if the key has none.
+     * @return The postings of the key with the ID.
+     */
+    @SuppressWarnings("unchecked")
+    static <ID> Object withPosting(Object existing, ID id) {
+        if (existing == null || existing.equals(id)) {
+            return id;
+        }
+        if (existing instanceof Set) {
+            ((Set<ID>) existing).add(id);
+            return existing;
+        }
+        Set<ID> ids = ConcurrentHashMap.newKeySet();
+        ids.add((ID) existing);
+        ids.add(id);
+        return ids;
+    }
+
+    /**
+     * Removes an ID from the postings of a key, changing them in place.
+     *
+     * @param existing Postings of the key.
+     * @return The postings of the key without the ID, null if none are left.
+     */
+    @SuppressWarnings("unchecked")
+    static <ID> Object withoutPosting(Object existing, ID id) {
+        if (existing instanceof Set) {
+            Set<ID> ids = (Set<ID>) existing;
+            ids.remove(id);
+            return ids.size() == 1 ? ids.iterator().next() : ids;
+        }
+        return existing.equals(id) ? null : existing;
+    }
+
+    /**
+     * Returns the IDs of the postings of a key.
+     */
+    @SuppressWarnings("unchecked")
+    static <ID> Collection<ID> postings(Object posting) {
+        if (posting == null) {
+            return Collections.emptySet();
+        }
+        return posting instanceof Set ? Collections.unmodifiableSet((Set<ID>) posting) : Collections.singleton((ID) posting);
+    }
+}
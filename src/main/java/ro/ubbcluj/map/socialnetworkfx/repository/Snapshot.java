@@ -0,0 +1,467 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read-only image of the users and the friendships, stored in a binary file that is memory-mapped when opened,
+ * so that the application starts without loading the whole network from the database.
+ * The file holds the users sorted by ID, along with the friendships as adjacency lists, and is read in place:
+ * opening it doesn't depend on its size, and only the pages that are actually read are loaded from the disk.
+ * <p>
+ * Layout of the file, all numbers being big-endian:
+ * <ul>
+ *     <li>header: magic, version, watermark, user count, friendship count and the offsets of the sections;</li>
+ *     <li>user index: for each user, ordered by ID, the ID and the offset of its record;</li>
+ *     <li>user records: first name, last name and email, each as its UTF-8 length followed by its bytes;</li>
+ *     <li>adjacency offsets: for each user, the position of its first edge, followed by the number of edges;</li>
+ *     <li>edges: for each user, the indexes of its friends in ascending order, along with the friendship dates.</li>
+ * </ul>
+ * The IDs are ordered as unsigned numbers, the same order as the one of the database.
+ */
+public class Snapshot {
+    // Identification of the format.
+    private static final int MAGIC = 0x534E4658;
+    private static final int VERSION = 1;
+
+    // Sizes of the fixed-length parts of the file.
+    private static final int HEADER_SIZE = 40;
+    private static final int INDEX_ENTRY_SIZE = 20;
+    private static final int EDGE_SIZE = 12;
+
+    // Length written for a null string, and date written for a missing date.
+    private static final int NULL_STRING = 0xFFFF;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    // Mapped content of the file.
+    private final ByteBuffer buffer;
+    // Moment up to which the snapshot reflects the database.
+    private final Instant watermark;
+    private final int userCount;
+    private final int friendshipCount;
+    // Offsets of the sections.
+    private final int recordsOffset;
+    private final int adjacencyOffset;
+    private final int edgesOffset;
+
+    private Snapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("The file is not a snapshot!");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buffer.getInt(4));
+        }
+
+        this.watermark = fromMicros(buffer.getLong(8));
+        this.userCount = buffer.getInt(16);
+        this.friendshipCount = buffer.getInt(20);
+        this.recordsOffset = buffer.getInt(24);
+        this.adjacencyOffset = buffer.getInt(28);
+        this.edgesOffset = buffer.getInt(32);
+        int end = buffer.getInt(36);
+
+        // Checking that the sections fit the file, so that a truncated file is rejected on opening.
+        if (this.userCount < 0 || this.friendshipCount < 0
+                || this.recordsOffset != HEADER_SIZE + (long) this.userCount * INDEX_ENTRY_SIZE
+                || this.adjacencyOffset < this.recordsOffset
+                || this.edgesOffset != this.adjacencyOffset + 4L * (this.userCount + 1)
+                || end != this.edgesOffset + 2L * this.friendshipCount * EDGE_SIZE
+                || end != buffer.capacity()) {
+            throw new IOException("The snapshot is corrupted!");
+        }
+    }
+
+    /**
+     * Opens a snapshot by mapping its file in memory.
+     *
+     * @param file Path of the snapshot.
+     * @return The opened snapshot.
+     * @throws IOException If the file couldn't be read or isn't a valid snapshot.
+     */
+    public static Snapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot is corrupted!");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given users and friendships.
+     * The snapshot is written to a temporary file which then replaces the given file, so that a crash while writing
+     * never leaves a partial snapshot behind.
+     * Friendships of users that aren't among the given users are skipped, such friendships being newer than the
+     * users that were read, and thus newer than the watermark.
+     *
+     * @param file        Path of the snapshot.
+     * @param watermark   Moment up to which the users and the friendships reflect the database.
+     * @param users       Users of the snapshot.
+     * @param friendships Friendships of the snapshot.
+     * @throws IOException              If the file couldn't be written.
+     * @throws IllegalArgumentException If the snapshot would be larger than 2 GB.
+     */
+    public static void write(Path file, Instant watermark, Iterable<User> users, Iterable<Friendship> friendships) throws IOException {
+        // Sorting the users by ID, the position of each user being its index in the snapshot.
+        List<User> sortedUsers = new ArrayList<>();
+        users.forEach(sortedUsers::add);
+        sortedUsers.sort((user1, user2) -> Friendship.compareIds(user1.getId(), user2.getId()));
+        Map<UUID, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < sortedUsers.size(); i++) {
+            indexes.put(sortedUsers.get(i).getId(), i);
+        }
+
+        // Encoding the records, to know their offsets before writing the index.
+        List<byte[][]> records = new ArrayList<>(sortedUsers.size());
+        long recordsSize = 0;
+        for (User user : sortedUsers) {
+            byte[][] record = {encode(user.getFirstName()), encode(user.getLastName()), encode(user.getEmail())};
+            records.add(record);
+            for (byte[] field : record) {
+                recordsSize += 2 + (field == null ? 0 : field.length);
+            }
+        }
+
+        // Both directions of each friendship, ordered by user and then by friend.
+        List<long[]> edges = new ArrayList<>();
+        for (Friendship friendship : friendships) {
+            Integer index1 = indexes.get(friendship.getId().getLeft());
+            Integer index2 = indexes.get(friendship.getId().getRight());
+            if (index1 == null || index2 == null || index1.equals(index2)) {
+                continue;
+            }
+            long date = friendship.getFriendshipDate() == null ? NULL_DATE : toMicros(friendship.getFriendshipDate());
+            edges.add(new long[]{index1, index2, date});
+            edges.add(new long[]{index2, index1, date});
+        }
+        edges.sort(Comparator.<long[]>comparingLong(edge -> edge[0]).thenComparingLong(edge -> edge[1]));
+
+        long recordsOffset = HEADER_SIZE + (long) sortedUsers.size() * INDEX_ENTRY_SIZE;
+        long adjacencyOffset = recordsOffset + recordsSize;
+        long edgesOffset = adjacencyOffset + 4L * (sortedUsers.size() + 1);
+        long end = edgesOffset + (long) edges.size() * EDGE_SIZE;
+        if (end > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The snapshot cannot be larger than 2 GB!");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            // Header.
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(toMicros(watermark));
+            output.writeInt(sortedUsers.size());
+            output.writeInt(edges.size() / 2);
+            output.writeInt((int) recordsOffset);
+            output.writeInt((int) adjacencyOffset);
+            output.writeInt((int) edgesOffset);
+            output.writeInt((int) end);
+
+            // User index.
+            long recordOffset = recordsOffset;
+            for (int i = 0; i < sortedUsers.size(); i++) {
+                UUID id = sortedUsers.get(i).getId();
+                output.writeLong(id.getMostSignificantBits());
+                output.writeLong(id.getLeastSignificantBits());
+                output.writeInt((int) recordOffset);
+                for (byte[] field : records.get(i)) {
+                    recordOffset += 2 + (field == null ? 0 : field.length);
+                }
+            }
+
+            // User records.
+            for (byte[][] record : records) {
+                for (byte[] field : record) {
+                    if (field == null) {
+                        output.writeShort(NULL_STRING);
+                    } else {
+                        output.writeShort(field.length);
+                        output.write(field);
+                    }
+                }
+            }
+
+            // Adjacency offsets.
+            int edge = 0;
+            for (int i = 0; i <= sortedUsers.size(); i++) {
+                while (edge < edges.size() && edges.get(edge)[0] < i) {
+                    edge++;
+                }
+                output.writeInt(edge);
+            }
+
+            // Edges.
+            for (long[] current : edges) {
+                output.writeInt((int) current[1]);
+                output.writeLong(current[2]);
+            }
+        }
+
+        // Making the content durable before it replaces the previous snapshot.
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The moment up to which the snapshot reflects the database.
+     */
+    public Instant getWatermark() {
+        return this.watermark;
+    }
+
+    /**
+     * @return The number of users in the snapshot.
+     */
+    public int getUserCount() {
+        return this.userCount;
+    }
+
+    /**
+     * @return The number of friendships in the snapshot.
+     */
+    public int getFriendshipCount() {
+        return this.friendshipCount;
+    }
+
+    /**
+     * @return The users of the snapshot, as a read-only view.
+     */
+    public View<UUID, User> users() {
+        return new View<>() {
+            @Override
+            public Optional<User> get(UUID id) {
+                int index = Snapshot.this.indexOf(id);
+                return index < 0 ? Optional.empty() : Optional.of(Snapshot.this.userAt(index));
+            }
+
+            @Override
+            public Stream<User> stream() {
+                return IntStream.range(0, Snapshot.this.userCount).mapToObj(Snapshot.this::userAt);
+            }
+
+            @Override
+            public int size() {
+                return Snapshot.this.userCount;
+            }
+        };
+    }
+
+    /**
+     * @return The friendships of the snapshot, as a read-only view.
+     */
+    public View<Tuple<UUID, UUID>, Friendship> friendships() {
+        return new View<>() {
+            @Override
+            public Optional<Friendship> get(Tuple<UUID, UUID> id) {
+                Tuple<UUID, UUID> key = Friendship.key(id);
+                int index1 = Snapshot.this.indexOf(key.getLeft());
+                int index2 = Snapshot.this.indexOf(key.getRight());
+                if (index1 < 0 || index2 < 0) {
+                    return Optional.empty();
+                }
+
+                int edge = Snapshot.this.edgeTo(index1, index2);
+                return edge < 0 ? Optional.empty() : Optional.of(Snapshot.this.friendshipAt(index1, edge));
+            }
+
+            @Override
+            public Stream<Friendship> stream() {
+                // Each friendship is listed once, from the user with the smaller ID, which is its canonical order.
+                return IntStream.range(0, Snapshot.this.userCount).boxed()
+                        .flatMap(index -> IntStream.range(Snapshot.this.firstEdge(index), Snapshot.this.firstEdge(index + 1))
+                                .filter(edge -> Snapshot.this.neighbourAt(edge) > index)
+                                .mapToObj(edge -> Snapshot.this.friendshipAt(index, edge)));
+            }
+
+            @Override
+            public int size() {
+                return Snapshot.this.friendshipCount;
+            }
+        };
+    }
+
+    /**
+     * Returns the IDs of the friends of a user, in the time it takes to read them.
+     *
+     * @param userId ID of the user.
+     * @return The IDs of the friends, ordered by ID, or an empty list if the user isn't in the snapshot.
+     */
+    public List<UUID> friendIdsOf(UUID userId) {
+        int index = this.indexOf(userId);
+        if (index < 0) {
+            return List.of();
+        }
+
+        List<UUID> friendIds = new ArrayList<>(this.firstEdge(index + 1) - this.firstEdge(index));
+        for (int edge = this.firstEdge(index); edge < this.firstEdge(index + 1); edge++) {
+            friendIds.add(this.idAt(this.neighbourAt(edge)));
+        }
+        return friendIds;
+    }
+
+    /**
+     * Searches for the index of a user by binary search in the user index.
+     *
+     * @param id ID of the user.
+     * @return The index of the user, or -1 if the user isn't in the snapshot.
+     */
+    private int indexOf(UUID id) {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        int low = 0;
+        int high = this.userCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_SIZE + middle * INDEX_ENTRY_SIZE;
+            int comparison = Long.compareUnsigned(this.buffer.getLong(entry), id.getMostSignificantBits());
+            if (comparison == 0) {
+                comparison = Long.compareUnsigned(this.buffer.getLong(entry + 8), id.getLeastSignificantBits());
+            }
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private UUID idAt(int index) {
+        int entry = HEADER_SIZE + index * INDEX_ENTRY_SIZE;
+        return new UUID(this.buffer.getLong(entry), this.buffer.getLong(entry + 8));
+    }
+
+    private User userAt(int index) {
+        int offset = this.buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE + 16);
+        String[] fields = new String[3];
+        for (int i = 0; i < fields.length; i++) {
+            int length = Short.toUnsignedInt(this.buffer.getShort(offset));
+            offset += 2;
+            if (length != NULL_STRING) {
+                byte[] bytes = new byte[length];
+                this.buffer.get(offset, bytes);
+                fields[i] = new String(bytes, StandardCharsets.UTF_8);
+                offset += length;
+            }
+        }
+        return new User(this.idAt(index), fields[0], fields[1], fields[2]);
+    }
+
+    private int firstEdge(int index) {
+        return this.buffer.getInt(this.adjacencyOffset + index * 4);
+    }
+
+    private int neighbourAt(int edge) {
+        return this.buffer.getInt(this.edgesOffset + edge * EDGE_SIZE);
+    }
+
+    private Friendship friendshipAt(int index, int edge) {
+        long date = this.buffer.getLong(this.edgesOffset + edge * EDGE_SIZE + 4);
+        return new Friendship(this.idAt(index), this.idAt(this.neighbourAt(edge)), date == NULL_DATE ? null : toLocalDateTime(date));
+    }
+
+    /**
+     * Searches for the edge between two users by binary search in the edges of the first user.
+     *
+     * @return The position of the edge, or -1 if the users aren't friends.
+     */
+    private int edgeTo(int index, int neighbour) {
+        int low = this.firstEdge(index);
+        int high = this.firstEdge(index + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = this.neighbourAt(middle);
+            if (current < neighbour) {
+                low = middle + 1;
+            } else if (current > neighbour) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] encode(String string) {
+        if (string == null) {
+            return null;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("Strings longer than " + (NULL_STRING - 1) + " bytes cannot be stored!");
+        }
+        return bytes;
+    }
+
+    private static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+    }
+
+    private static Instant fromMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000);
+    }
+
+    private static long toMicros(LocalDateTime date) {
+        return toMicros(date.toInstant(ZoneOffset.UTC));
+    }
+
+    private static LocalDateTime toLocalDateTime(long micros) {
+        return LocalDateTime.ofInstant(fromMicros(micros), ZoneOffset.UTC);
+    }
+
+    /**
+     * Read-only view of the entities of a snapshot.
+     *
+     * @param <ID> ID type of the Entity.
+     * @param <E>  Entity of the view.
+     */
+    public interface View<ID, E> {
+        /**
+         * Searches for an entity.
+         *
+         * @param id ID of the entity.
+         * @return The entity, or an empty optional if it isn't in the snapshot.
+         * @throws IllegalArgumentException If the id is null.
+         */
+        Optional<E> get(ID id) throws IllegalArgumentException;
+
+        /**
+         * @return Stream of all the entities, ordered by ID.
+         */
+        Stream<E> stream();
+
+        /**
+         * @return The number of entities.
+         */
+        int size();
+    }
+}
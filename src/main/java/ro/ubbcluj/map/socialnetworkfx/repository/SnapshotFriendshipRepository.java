@@ -0,0 +1,113 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.*;
+
+/**
+ * Snapshot decorator of a friendship repository, which answers the neighbourhood queries from the adjacency lists
+ * of the snapshot, along with the friendships changed after the snapshot was taken.
+ */
+public class SnapshotFriendshipRepository extends SnapshotRepository<Tuple<UUID, UUID>, Friendship> implements FriendshipRepository {
+    private final FriendshipRepository friendshipRepository;
+    // Repository from which the friends are retrieved.
+    private final Repository<UUID, User> userRepository;
+    // Snapshot whose adjacency lists are used, null if no snapshot is attached.
+    private volatile Snapshot snapshot;
+
+    /**
+     * Initializes the decorator, without a snapshot.
+     *
+     * @param delegate       Repository that stores the friendships.
+     * @param userRepository Repository that stores the users of the friendships.
+     */
+    public SnapshotFriendshipRepository(FriendshipRepository delegate, Repository<UUID, User> userRepository) {
+        this(delegate, userRepository, UnitOfWork.NONE);
+    }
+
+    /**
+     * Initializes the decorator of a repository whose writes may be made in units of work, without a snapshot.
+     *
+     * @param delegate       Repository that stores the friendships.
+     * @param userRepository Repository that stores the users of the friendships.
+     * @param unitOfWork     Unit of work of the wrapped repository, such as its connection pool.
+     */
+    public SnapshotFriendshipRepository(FriendshipRepository delegate, Repository<UUID, User> userRepository, UnitOfWork unitOfWork) {
+        super(delegate, unitOfWork);
+        this.friendshipRepository = delegate;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Starts serving the reads from the friendships of a snapshot.
+     *
+     * @param snapshot Snapshot of the friendships.
+     * @param changes  Current state of the friendships changed after the snapshot was taken, empty for the deleted ones.
+     */
+    public synchronized void attach(Snapshot snapshot, Map<Tuple<UUID, UUID>, Optional<Friendship>> changes) {
+        this.attach(snapshot.friendships(), changes);
+        this.snapshot = this.isAttached() ? snapshot : null;
+    }
+
+    @Override
+    public synchronized void detach() {
+        this.snapshot = null;
+        super.detach();
+    }
+
+    @Override
+    protected Tuple<UUID, UUID> key(Tuple<UUID, UUID> id) {
+        return Friendship.key(id);
+    }
+
+    @Override
+    public List<User> getFriendsOf(UUID userId) throws IllegalArgumentException, RepositoryException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null || !this.isAttached()) {
+            return this.friendshipRepository.getFriendsOf(userId);
+        }
+
+        // Adjusting the friends of the snapshot with the friendships of the user that changed since.
+        Set<UUID> friendIds = new LinkedHashSet<>(snapshot.friendIdsOf(userId));
+        this.getChanges().forEach((id, friendship) -> {
+            UUID friendId = userId.equals(id.getLeft()) ? id.getRight() : userId.equals(id.getRight()) ? id.getLeft() : null;
+            if (friendId != null) {
+                if (friendship.isPresent()) {
+                    friendIds.add(friendId);
+                } else {
+                    friendIds.remove(friendId);
+                }
+            }
+        });
+
+        List<User> friends = new ArrayList<>(friendIds.size());
+        friendIds.forEach(friendId -> this.userRepository.getOne(friendId).ifPresent(friends::add));
+        return friends;
+    }
+
+    @Override
+    public List<Friendship> deleteFriendshipsOf(UUID userId) throws IllegalArgumentException, RepositoryException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        List<Friendship> deleted;
+        try {
+            deleted = this.friendshipRepository.deleteFriendshipsOf(userId);
+        } catch (RuntimeException exception) {
+            // The friendships that were deleted aren't known, so the changes can no longer be tracked.
+            this.detach();
+            throw exception;
+        }
+
+        deleted.forEach(friendship -> this.record(friendship.getId(), Optional.empty()));
+        return deleted;
+    }
+}
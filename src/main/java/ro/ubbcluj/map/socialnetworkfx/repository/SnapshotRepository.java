@@ -0,0 +1,354 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Repository decorator that serves the reads from a snapshot, along with the changes made after the snapshot was taken.
+ * Writes go to the wrapped repository first and are then recorded among the changes, so that the reads always
+ * reflect the wrapped repository without reaching it.
+ * Until a snapshot is attached, or after the changes could no longer be tracked, every operation goes to the wrapped
+ * repository. Paging always goes to the wrapped repository, which keeps the order of the IDs.
+ * <p>
+ * The writes are recorded from the start of the catch-up of a snapshot, so that the writes made while the changes
+ * since the snapshot are read aren't missed. A write made in a unit of work that is rolled back is read again from
+ * the wrapped repository.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity to be stored.
+ */
+public class SnapshotRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
+    // Repository that stores the entities.
+    private final Repository<ID, E> delegate;
+    // Entities of the snapshot, null if no snapshot is attached.
+    private volatile Snapshot.View<ID, E> snapshot;
+    // Current state of the entities changed after the snapshot was taken, empty for the deleted ones.
+    private final Map<ID, Optional<E>> changes = new ConcurrentHashMap<>();
+    // Whether the writes are recorded while no snapshot is attached, during the catch-up of a snapshot.
+    private volatile boolean recording = false;
+    // Whether the changes could no longer be tracked during the catch-up, so that the snapshot isn't attached.
+    private boolean catchUpLost = false;
+    // Unit of work in which the writes are made, whose rollbacks discard the recorded writes.
+    private final UnitOfWork unitOfWork;
+
+    /**
+     * Initializes the decorator, without a snapshot.
+     *
+     * @param delegate Repository that stores the entities.
+     */
+    public SnapshotRepository(Repository<ID, E> delegate) {
+        this(delegate, UnitOfWork.NONE);
+    }
+
+    /**
+     * Initializes the decorator of a repository whose writes may be made in units of work, without a snapshot.
+     *
+     * @param delegate   Repository that stores the entities.
+     * @param unitOfWork Unit of work of the wrapped repository, such as its connection pool.
+     */
+    public SnapshotRepository(Repository<ID, E> delegate, UnitOfWork unitOfWork) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("The repository cannot be null!");
+        }
+        this.delegate = delegate;
+        this.unitOfWork = unitOfWork;
+    }
+
+    /**
+     * @return The repository that stores the entities.
+     */
+    public Repository<ID, E> getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Starts recording the writes before a snapshot is attached, the reads still going to the wrapped repository.
+     * Called before reading the changes made after the snapshot was taken, so that the writes made while they are
+     * read are recorded as well.
+     */
+    public synchronized void beginCatchUp() {
+        this.snapshot = null;
+        this.changes.clear();
+        this.catchUpLost = false;
+        this.recording = true;
+    }
+
+    /**
+     * Starts serving the reads from a snapshot. After {@link #beginCatchUp()}, the writes recorded since are kept,
+     * being newer than the given changes, and the snapshot isn't attached if the changes were lost in the meantime.
+     *
+     * @param snapshot Entities of the snapshot.
+     * @param changes  Current state of the entities changed after the snapshot was taken, empty for the deleted ones.
+     */
+    protected synchronized void attach(Snapshot.View<ID, E> snapshot, Map<ID, Optional<E>> changes) {
+        if (this.catchUpLost) {
+            this.catchUpLost = false;
+            return;
+        }
+        if (!this.recording) {
+            this.snapshot = null;
+            this.changes.clear();
+        }
+        changes.forEach((id, entity) -> this.changes.putIfAbsent(this.key(id), entity));
+        this.snapshot = snapshot;
+        this.recording = false;
+    }
+
+    /**
+     * Stops serving the reads from the snapshot, every operation going to the wrapped repository afterwards.
+     */
+    public synchronized void detach() {
+        this.catchUpLost = this.recording;
+        this.recording = false;
+        this.snapshot = null;
+        this.changes.clear();
+    }
+
+    /**
+     * @return true if the reads are served from a snapshot, false otherwise.
+     */
+    public boolean isAttached() {
+        return this.snapshot != null;
+    }
+
+    /**
+     * @return The number of entities changed after the snapshot was taken.
+     */
+    public int getChangeCount() {
+        return this.changes.size();
+    }
+
+    /**
+     * Returns the key under which the changes of an entity are recorded, for IDs that have several equal forms.
+     *
+     * @param id ID of the entity.
+     * @return The key of the entity.
+     */
+    protected ID key(ID id) {
+        return id;
+    }
+
+    /**
+     * Returns the changes made after the snapshot was taken.
+     *
+     * @return The current state of each changed entity, empty if it was deleted.
+     */
+    protected Map<ID, Optional<E>> getChanges() {
+        return this.changes;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    @Override
+    public int size() {
+        Snapshot.View<ID, E> snapshot = this.snapshot;
+        if (snapshot == null) {
+            return this.delegate.size();
+        }
+
+        // Replacing the changed entities of the snapshot with their current state.
+        int size = snapshot.size();
+        for (Map.Entry<ID, Optional<E>> change : this.changes.entrySet()) {
+            if (snapshot.get(change.getKey()).isPresent()) {
+                size--;
+            }
+            if (change.getValue().isPresent()) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Iterable<E> getAll() {
+        if (this.snapshot == null) {
+            return this.delegate.getAll();
+        }
+
+        try (Stream<E> stream = this.stream()) {
+            return stream.toList();
+        }
+    }
+
+    @Override
+    public Stream<E> stream() {
+        Snapshot.View<ID, E> snapshot = this.snapshot;
+        if (snapshot == null) {
+            return this.delegate.stream();
+        }
+
+        // The entities of the snapshot that didn't change, followed by the current state of the changed ones.
+        Map<ID, Optional<E>> changes = Map.copyOf(this.changes);
+        return Stream.concat(
+                snapshot.stream().filter(entity -> !changes.containsKey(this.key(entity.getId()))),
+                changes.values().stream().flatMap(Optional::stream));
+    }
+
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        return this.delegate.page(afterKey, limit, sortOrder);
+    }
+
+    @Override
+    public Optional<E> getOne(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        Snapshot.View<ID, E> snapshot = this.snapshot;
+        if (snapshot == null) {
+            return this.delegate.getOne(id);
+        }
+
+        Optional<E> changed = this.changes.get(this.key(id));
+        return changed != null ? changed : snapshot.get(id);
+    }
+
+    @Override
+    public Optional<E> save(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        Optional<E> existing;
+        try {
+            existing = this.delegate.save(e);
+        } catch (RuntimeException exception) {
+            this.refresh(e.getId());
+            throw exception;
+        }
+
+        if (existing.isEmpty()) {
+            this.record(e.getId(), Optional.of(e));
+        }
+        return existing;
+    }
+
+    @Override
+    public Optional<E> delete(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> removed;
+        try {
+            removed = this.delegate.delete(id);
+        } catch (RuntimeException exception) {
+            this.refresh(id);
+            throw exception;
+        }
+
+        this.record(id, Optional.empty());
+        return removed;
+    }
+
+    @Override
+    public Optional<E> update(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> old;
+        try {
+            old = this.delegate.update(e);
+        } catch (RuntimeException exception) {
+            this.refresh(e.getId());
+            throw exception;
+        }
+
+        if (old.isPresent()) {
+            this.record(e.getId(), Optional.of(e));
+        }
+        return old;
+    }
+
+    @Override
+    public BatchResult<E> saveAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        BatchResult<E> result;
+        try {
+            result = this.delegate.saveAll(entities);
+        } catch (RuntimeException exception) {
+            this.refreshAll(entities == null ? null : entities.stream().filter(Objects::nonNull).map(E::getId).toList());
+            throw exception;
+        }
+
+        result.getOutcomes().stream()
+                .filter(outcome -> outcome.getRight() == BatchResult.Outcome.INSERTED)
+                .forEach(outcome -> this.record(outcome.getLeft().getId(), Optional.of(outcome.getLeft())));
+        return result;
+    }
+
+    @Override
+    public BatchResult<ID> deleteAll(Collection<ID> ids) throws RepositoryException, IllegalArgumentException {
+        BatchResult<ID> result;
+        try {
+            result = this.delegate.deleteAll(ids);
+        } catch (RuntimeException exception) {
+            this.refreshAll(ids);
+            throw exception;
+        }
+
+        result.getOutcomes().forEach(outcome -> this.record(outcome.getLeft(), Optional.empty()));
+        return result;
+    }
+
+    @Override
+    public BatchResult<E> updateAll(Collection<E> entities) throws RepositoryException, IllegalArgumentException {
+        BatchResult<E> result;
+        try {
+            result = this.delegate.updateAll(entities);
+        } catch (RuntimeException exception) {
+            this.refreshAll(entities == null ? null : entities.stream().filter(Objects::nonNull).map(E::getId).toList());
+            throw exception;
+        }
+
+        result.getOutcomes().stream()
+                .filter(outcome -> outcome.getRight() == BatchResult.Outcome.UPDATED)
+                .forEach(outcome -> this.record(outcome.getLeft().getId(), Optional.of(outcome.getLeft())));
+        return result;
+    }
+
+    /**
+     * Records the current state of an entity, if a snapshot is attached.
+     *
+     * @param id     ID of the entity.
+     * @param entity Current state of the entity, empty if it was deleted.
+     */
+    protected void record(ID id, Optional<E> entity) {
+        if (this.snapshot != null || this.recording) {
+            this.changes.put(this.key(id), entity);
+            this.unitOfWork.onRollback(() -> this.refresh(id));
+        }
+    }
+
+    /**
+     * Reads again the state of an entity after a failed write, which may or may not have taken effect.
+     * If the state can't be read either, the snapshot is detached, since its changes are no longer known.
+     *
+     * @param id ID of the entity.
+     */
+    private void refresh(ID id) {
+        if ((this.snapshot == null && !this.recording) || id == null) {
+            return;
+        }
+
+        try {
+            this.record(id, this.delegate.getOne(id));
+        } catch (RuntimeException exception) {
+            this.detach();
+        }
+    }
+
+    private void refreshAll(Collection<ID> ids) {
+        if (ids != null) {
+            ids.stream().filter(Objects::nonNull).forEach(this::refresh);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Snapshot decorator of a user repository, which keeps the search capability of the wrapped repository.
+ * Searches are served by the index of the wrapped repository.
+ */
+public class SnapshotUserRepository extends SnapshotRepository<UUID, User> implements UserRepository {
+    private final UserRepository userRepository;
+
+    /**
+     * Initializes the decorator, without a snapshot.
+     *
+     * @param delegate Repository that stores the users.
+     */
+    public SnapshotUserRepository(UserRepository delegate) {
+        super(delegate);
+        this.userRepository = delegate;
+    }
+
+    /**
+     * Initializes the decorator of a repository whose writes may be made in units of work, without a snapshot.
+     *
+     * @param delegate   Repository that stores the users.
+     * @param unitOfWork Unit of work of the wrapped repository, such as its connection pool.
+     */
+    public SnapshotUserRepository(UserRepository delegate, UnitOfWork unitOfWork) {
+        super(delegate, unitOfWork);
+        this.userRepository = delegate;
+    }
+
+    /**
+     * Starts serving the reads from the users of a snapshot.
+     *
+     * @param snapshot Snapshot of the users.
+     * @param changes  Current state of the users changed after the snapshot was taken, empty for the deleted ones.
+     */
+    public void attach(Snapshot snapshot, Map<UUID, Optional<User>> changes) {
+        this.attach(snapshot.users(), changes);
+    }
+
+    @Override
+    public List<User> usersLastNameContainsString(String string) throws IllegalArgumentException, RepositoryException {
+        return this.userRepository.usersLastNameContainsString(string);
+    }
+}
@@ -0,0 +1,9 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+/**
+ * Order in which the entities of a repository are paged, based on their IDs.
+ */
+public enum SortOrder {
+    ASCENDING,
+    DESCENDING
+}
@@ -0,0 +1,64 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index whose keys identify the entities: an entity whose key belongs to another stored entity
+ * is rejected by the repository.
+ *
+ * @param <K>  Type of the key.
+ * @param <ID> ID type of the indexed Entity.
+ * @param <E>  Entity that is indexed.
+ */
+public class UniqueIndex<K, ID, E extends Entity<ID>> extends SecondaryIndex<K, ID, E> {
+    // ID of the entity with each key.
+    private final Map<K, ID> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a unique index.
+     *
+     * @param name Name of the index.
+     * @param key  Function that derives the key of an entity.
+     */
+    public UniqueIndex(String name, Function<? super E, ? extends K> key) {
+        super(name, key);
+    }
+
+    /**
+     * Returns the ID of the entity with a given key.
+     *
+     * @param key Key to look up.
+     * @return The ID of the entity with the key, empty if there is none.
+     * @throws IllegalArgumentException If the key is null.
+     */
+    public Optional<ID> get(K key) throws IllegalArgumentException {
+        if (key == null) {
+            throw new IllegalArgumentException("The key cannot be null!");
+        }
+        return Optional.ofNullable(this.ids.get(key));
+    }
+
+    @Override
+    public Collection<ID> find(K key) throws IllegalArgumentException {
+        return this.get(key).map(Collections::singleton).orElse(Collections.emptySet());
+    }
+
+    @Override
+    protected void add(K key, ID id) {
+        this.ids.put(key, id);
+    }
+
+    @Override
+    protected void remove(K key, ID id) {
+        this.ids.remove(key, id);
+    }
+
+    @Override
+    protected Optional<ID> conflict(K key, ID id) {
+        return Optional.ofNullable(this.ids.get(key)).filter(existing -> !existing.equals(id));
+    }
+}
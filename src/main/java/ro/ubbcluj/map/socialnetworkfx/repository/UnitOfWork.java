@@ -0,0 +1,41 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.function.Supplier;
+
+/**
+ * Groups the changes made to several repositories, so that they are applied all together or not at all.
+ */
+public interface UnitOfWork {
+    /**
+     * Unit of work of the repositories that don't support transactions, which runs the work as it is.
+     */
+    UnitOfWork NONE = new UnitOfWork() {
+        @Override
+        public <T> T run(Supplier<T> work) {
+            return work.get();
+        }
+    };
+
+    /**
+     * Runs a work whose changes are kept only if it completes. A work run inside another one joins it.
+     *
+     * @param work Work that changes the repositories.
+     * @param <T>  Type of the result of the work.
+     * @return The result of the work.
+     * @throws RepositoryException If the changes couldn't be applied, in which case none of them is kept.
+     */
+    <T> T run(Supplier<T> work) throws RepositoryException;
+
+    /**
+     * Registers an action to run if the unit of work running on the calling thread is rolled back, once its changes
+     * were discarded, such as reading again the state that a decorator recorded. Outside a unit of work, and for the
+     * repositories that don't support transactions, the changes are kept as soon as they are made, so nothing is
+     * registered.
+     *
+     * @param action Action to run after a rollback.
+     */
+    default void onRollback(Runnable action) {
+    }
+}
@@ -7,15 +7,70 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-public class UserDBRepository extends DBRepository<UUID, User> {
+public class UserDBRepository extends DBRepository<UUID, User> implements UserRepository {
+    // Part of the schema versions that covers the users table.
+    public static final String SCHEMA_COMPONENT = "users";
+    // User given as input to the insert statements.
+    private static final String INPUT = "input(id, first_name, last_name, email) as (values (?::uuid, ?, ?, ?))";
+    // Insert of the input user, skipped if a user with the same ID or the same fields is already stored.
+    // The fields are looked up through the unique index on them, which also rejects a concurrent insert of the same user.
+    private static final String INSERT_INPUT = "insert into users(id, first_name, last_name, email) " +
+            "select * from input i " +
+            "where not exists (select 1 from users u where u.first_name = i.first_name AND u.last_name = i.last_name AND u.email = i.email) " +
+            "on conflict do nothing";
+
     public UserDBRepository(String db_url, String username, String password) {
         super(db_url, username, password);
     }
 
+    public UserDBRepository(ConnectionPool connectionPool) {
+        super(connectionPool);
+    }
+
+    /**
+     * Returns the migrations of the users table, which the tables referencing the users depend on.
+     *
+     * @return The migrations of the users table.
+     */
+    public static List<Migration> schemaMigrations() {
+        return List.of(
+                new Migration(SCHEMA_COMPONENT, 1, "users table", List.of(
+                        "create table if not exists users (id uuid primary key, " +
+                                "first_name text not null, last_name text not null, email text not null)",
+                        // A table created before the migrations may lack its primary key.
+                        "do $$ begin " +
+                                "if not exists (select 1 from pg_constraint where conrelid = 'users'::regclass AND contype = 'p') then " +
+                                "alter table users add primary key (id); " +
+                                "end if; " +
+                                "end $$"
+                )),
+                new Migration(SCHEMA_COMPONENT, 2, "unique natural key", List.of(
+                        // A user stored several times with the same fields keeps only one row.
+                        "delete from users a using users b " +
+                                "where a.ctid < b.ctid AND a.first_name = b.first_name AND a.last_name = b.last_name AND a.email = b.email",
+                        "create unique index if not exists users_natural_key_uidx on users(first_name, last_name, email)"
+                )),
+                new Migration(SCHEMA_COMPONENT, 3, "trigram index on the last name", List.of(
+                        // Trigram index that serves the substring searches on the last name.
+                        "create extension if not exists pg_trgm",
+                        "create index if not exists users_last_name_trgm_idx on users using gin (last_name gin_trgm_ops)"
+                )),
+                // Change log that serves the catch-up of the snapshots.
+                new Migration(SCHEMA_COMPONENT, 4, "change log", changeLogStatements("users", "id"))
+        );
+    }
+
+    @Override
+    protected List<Migration> migrations() {
+        return schemaMigrations();
+    }
+
     @Override
     public PreparedStatement statementCount(Connection connection) throws RepositoryException {
         try {
@@ -47,13 +102,18 @@ public class UserDBRepository extends DBRepository<UUID, User> {
     }
 
     @Override
-    public PreparedStatement statementSelectOnFields(Connection connection, User user) throws RepositoryException {
-        String sql = "select * from users where first_name = ? AND last_name = ? AND email = ?";
+    public PreparedStatement statementInsert(Connection connection, User user) throws RepositoryException {
+        // The conflicting user is selected in the same statement, only if the insert didn't happen.
+        String sql = "with " + INPUT + ", inserted as (" + INSERT_INPUT + " returning *) " +
+                "select true as was_inserted, * from inserted " +
+                "union all " +
+                "select false, u.* from users u, input i " +
+                "where (u.id = i.id OR (u.first_name = i.first_name AND u.last_name = i.last_name AND u.email = i.email)) " +
+                "AND not exists (select 1 from inserted) " +
+                "limit 1";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setString(1, user.getFirstName());
-            statement.setString(2, user.getLastName());
-            statement.setString(3, user.getEmail());
+            this.setInsertParameters(statement, user);
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
@@ -61,14 +121,29 @@ public class UserDBRepository extends DBRepository<UUID, User> {
     }
 
     @Override
-    public PreparedStatement statementInsert(Connection connection, User user) throws RepositoryException {
-        String sql = "insert into users(id, first_name, last_name, email) values(?, ?, ?,?)";
+    public PreparedStatement statementDelete(Connection connection, UUID uuid) throws RepositoryException {
+        String sql = "delete from users where id = ? returning *";
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setObject(1, uuid);
+            return statement;
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public PreparedStatement statementUpdate(Connection connection, User user) throws RepositoryException {
+        // The old row is locked and read in the same statement that updates it.
+        String sql = "with old as (select * from users where id = ? for update) " +
+                "update users u set first_name = ?, last_name = ?, email = ? from old where u.id = old.id " +
+                "returning old.*";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
             statement.setObject(1, user.getId());
             statement.setString(2, user.getFirstName());
-            statement.setObject(3, user.getLastName());
-            statement.setObject(4, user.getEmail());
+            statement.setString(3, user.getLastName());
+            statement.setString(4, user.getEmail());
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
@@ -76,11 +151,17 @@ public class UserDBRepository extends DBRepository<UUID, User> {
     }
 
     @Override
-    public PreparedStatement statementDelete(Connection connection, UUID uuid) throws RepositoryException {
-        String sql = "delete from users where id = ?";
+    public PreparedStatement statementPage(Connection connection, UUID afterKey, int limit, SortOrder sortOrder) throws RepositoryException {
+        String direction = sortOrder == SortOrder.ASCENDING ? "asc" : "desc";
+        String seek = afterKey == null ? "" : (sortOrder == SortOrder.ASCENDING ? "where id > ? " : "where id < ? ");
+        String sql = "select * from users " + seek + "order by id " + direction + " limit ?";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setObject(1, uuid);
+            int index = 1;
+            if (afterKey != null) {
+                statement.setObject(index++, afterKey);
+            }
+            statement.setInt(index, limit);
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
@@ -88,33 +169,163 @@ public class UserDBRepository extends DBRepository<UUID, User> {
     }
 
     @Override
-    public PreparedStatement statementUpdate(Connection connection, User user) throws RepositoryException {
+    public PreparedStatement statementInsertBatch(Connection connection) throws RepositoryException {
+        String sql = "with " + INPUT + " " + INSERT_INPUT;
+        try {
+            return connection.prepareStatement(sql);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public PreparedStatement statementDeleteBatch(Connection connection) throws RepositoryException {
+        String sql = "delete from users where id = ?";
+        try {
+            return connection.prepareStatement(sql);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    @Override
+    public PreparedStatement statementUpdateBatch(Connection connection) throws RepositoryException {
         String sql = "update users set first_name = ?, last_name = ?, email = ? where id = ?";
+        try {
+            return connection.prepareStatement(sql);
+        } catch (SQLException sqlException) {
+            throw new RepositoryException(sqlException.getMessage());
+        }
+    }
+
+    /**
+     * Sets the fields of a user to the input of an insert statement.
+     *
+     * @param statement PreparedStatement to edit.
+     * @param user      User to insert.
+     * @throws SQLException Related to the statement editing.
+     */
+    private void setInsertParameters(PreparedStatement statement, User user) throws SQLException {
+        statement.setObject(1, user.getId());
+        statement.setString(2, user.getFirstName());
+        statement.setString(3, user.getLastName());
+        statement.setString(4, user.getEmail());
+    }
+
+    @Override
+    protected void addInsertBatch(PreparedStatement statement, User user) throws SQLException {
+        this.setInsertParameters(statement, user);
+        statement.addBatch();
+    }
+
+    @Override
+    protected void addDeleteBatch(PreparedStatement statement, UUID uuid) throws SQLException {
+        statement.setObject(1, uuid);
+        statement.addBatch();
+    }
+
+    @Override
+    protected void addUpdateBatch(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(1, user.getFirstName());
+        statement.setString(2, user.getLastName());
+        statement.setString(3, user.getEmail());
+        statement.setObject(4, user.getId());
+        statement.addBatch();
+    }
+
+    @Override
+    protected String sqlCopyStaging() {
+        return "create temporary table users_staging (like users including defaults) on commit drop";
+    }
+
+    @Override
+    protected String sqlCopyIn() {
+        return "copy users_staging(id, first_name, last_name, email) from stdin with (format csv)";
+    }
+
+    @Override
+    protected String sqlCopyMerge() {
+        // Users with the same fields are inserted only once, even if they appear several times in the load.
+        return "insert into users(id, first_name, last_name, email) " +
+                "select distinct on (s.first_name, s.last_name, s.email) s.id, s.first_name, s.last_name, s.email " +
+                "from users_staging s " +
+                "where not exists (select 1 from users u where u.first_name = s.first_name AND u.last_name = s.last_name AND u.email = s.email) " +
+                "on conflict do nothing returning id";
+    }
+
+    @Override
+    protected void writeCopyRow(StringBuilder row, User user) {
+        appendCsv(row, user.getId()).append(',');
+        appendCsv(row, user.getFirstName()).append(',');
+        appendCsv(row, user.getLastName()).append(',');
+        appendCsv(row, user.getEmail()).append('\n');
+    }
+
+    @Override
+    protected UUID extractIdFromResultSet(ResultSet resultSet) throws SQLException {
+        return UUID.fromString(resultSet.getString("id"));
+    }
+
+    @Override
+    public PreparedStatement statementChangesSince(Connection connection, Instant since) throws RepositoryException {
+        String sql = "select c.id_1 as change_id_1, c.id_2 as change_id_2, u.id is not null as is_present, u.* " +
+                "from (select distinct id_1, id_2 from row_changes where table_name = 'users' AND changed_at > ?) c " +
+                "left join users u on u.id = c.id_1";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setString(1, user.getFirstName());
-            statement.setString(2, user.getLastName());
-            statement.setString(3, user.getEmail());
-            statement.setObject(4, user.getId());
+            statement.setTimestamp(1, Timestamp.from(since));
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
         }
     }
 
+    @Override
+    protected UUID extractChangeIdFromResultSet(ResultSet resultSet) throws SQLException {
+        return UUID.fromString(resultSet.getString("change_id_1"));
+    }
+
+    /**
+     * Returns the SQL Interrogation that selects the users which have a given substring in their last name.
+     * The pattern is served by the trigram index when the substring has at least three characters.
+     *
+     * @param string Substring to find, matched literally.
+     * @return SQL Interrogation for selecting the users.
+     */
     public PreparedStatement statementLastNameLike(Connection connection, String string) throws RepositoryException {
         String sql = "select * from users where last_name like ?";
         try {
             PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setString(1, "%" + string + "%");
+            statement.setString(1, "%" + escapeLike(string) + "%");
             return statement;
         } catch (SQLException sqlException) {
             throw new RepositoryException(sqlException.getMessage());
         }
     }
 
+    /**
+     * Escapes the wildcards of a like pattern, so that the string is matched literally.
+     *
+     * @param string String to escape.
+     * @return The escaped string.
+     */
+    private static String escapeLike(String string) {
+        return string.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     @Override
     protected User extractFromResultSet(ResultSet resultSet) throws SQLException {
+        return extractUser(resultSet);
+    }
+
+    /**
+     * Extracts a User from a given result set that contains the columns of the users table.
+     *
+     * @param resultSet Given result set.
+     * @return User extracted from the result set.
+     * @throws SQLException Resulted from the extraction if a problem was encountered.
+     */
+    static User extractUser(ResultSet resultSet) throws SQLException {
         String ID = resultSet.getString("ID");
         String first_name = resultSet.getString("first_name");
         String last_name = resultSet.getString("last_name");
@@ -123,27 +334,19 @@ public class UserDBRepository extends DBRepository<UUID, User> {
         return new User(UUID.fromString(ID), first_name, last_name, email);
     }
 
-    /**
-     * Returns the list of users that have a substring equal to 'string' in their last name.
-     *
-     * @param string Substring to find.
-     * @return List of users that have a substring equal to 'string' in their last name.
-     * @throws RepositoryException SQL related exceptions.
-     */
-    public List<User> usersLastNameContainsString(String string) throws RepositoryException {
+    @Override
+    public List<User> usersLastNameContainsString(String string) throws IllegalArgumentException, RepositoryException {
+        if (string == null) {
+            throw new IllegalArgumentException("The string cannot be null!");
+        }
+
         try (Connection connection = this.connect()) {
             try (PreparedStatement statement = this.statementLastNameLike(connection, string)) {
                 ResultSet resultSet = statement.executeQuery();
                 List<User> userList = new ArrayList<>();
 
                 while (resultSet.next()) {
-                    String ID = resultSet.getString("ID");
-                    String first_name = resultSet.getString("first_name");
-                    String last_name = resultSet.getString("last_name");
-                    String email = resultSet.getString("email");
-
-                    User user = new User(UUID.fromString(ID), first_name, last_name, email);
-                    userList.add(user);
+                    userList.add(extractUser(resultSet));
                 }
                 return userList;
             } catch (SQLException sqlException) {
@@ -0,0 +1,23 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository of users that can search them by their last name without scanning all the users.
+ */
+public interface UserRepository extends Repository<UUID, User> {
+    /**
+     * Returns the list of users that have a substring equal to 'string' in their last name.
+     * The search is case-sensitive, an empty string matching every user.
+     *
+     * @param string Substring to find.
+     * @return List of users that have a substring equal to 'string' in their last name.
+     * @throws IllegalArgumentException If the string is null.
+     * @throws RepositoryException      If the users couldn't be retrieved.
+     */
+    List<User> usersLastNameContainsString(String string) throws IllegalArgumentException, RepositoryException;
+}
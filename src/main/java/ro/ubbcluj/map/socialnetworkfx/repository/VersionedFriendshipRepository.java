@@ -0,0 +1,164 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.utility.PersistentTreeMap;
+
+import java.util.*;
+
+/**
+ * Friendship repository that stores its values in memory as versions, along with a versioned adjacency of each user,
+ * so that the snapshots answer the neighbourhood queries as well.
+ * Friendships are looked up by their canonical ID, so the order of the users in a given ID doesn't matter.
+ */
+public class VersionedFriendshipRepository extends VersionedRepository<Tuple<UUID, UUID>, Friendship> implements FriendshipRepository {
+    // Repository from which the friends are retrieved.
+    private final Repository<UUID, User> userRepository;
+    // IDs of the friends of each user, in the latest version, each friend being mapped to itself.
+    private volatile PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> adjacency = PersistentTreeMap.empty(null);
+
+    /**
+     * Initializes a versioned friendship repository.
+     *
+     * @param userRepository Repository that stores the users of the friendships.
+     */
+    public VersionedFriendshipRepository(Repository<UUID, User> userRepository) {
+        super(Friendship::compareKeys, List.of());
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * @return The repository that stores the users of the friendships.
+     */
+    public Repository<UUID, User> getUserRepository() {
+        return this.userRepository;
+    }
+
+    /**
+     * Returns views of the users and of the friendships taken at the same point in time. If the users are
+     * versioned as well, no change is applied to either repository in between, and the friends are retrieved
+     * from the view of the users; otherwise they are retrieved from the latest users.
+     *
+     * @return The view of the users and the view of the friendships.
+     */
+    public Tuple<Repository<UUID, User>, FriendshipRepository> snapshotWithUsers() {
+        if (this.userRepository instanceof VersionedRepository<UUID, User> users) {
+            // The writers hold a single lock at a time, so holding both of them can't deadlock.
+            synchronized (users) {
+                synchronized (this) {
+                    Repository<UUID, User> userView = users.snapshot();
+                    return new Tuple<>(userView, new FriendshipView(this.entityVersion(), this.adjacency, userView));
+                }
+            }
+        }
+        return new Tuple<>(this.userRepository, (FriendshipRepository) this.snapshot());
+    }
+
+    @Override
+    protected Repository<Tuple<UUID, UUID>, Friendship> view(PersistentTreeMap<Tuple<UUID, UUID>, Friendship> entities) {
+        return new FriendshipView(entities, this.adjacency, this.userRepository);
+    }
+
+    @Override
+    protected Tuple<UUID, UUID> key(Tuple<UUID, UUID> id) {
+        return Friendship.key(id);
+    }
+
+    @Override
+    protected void entityAdded(Friendship friendship) {
+        super.entityAdded(friendship);
+
+        UUID left = friendship.getId().getLeft();
+        UUID right = friendship.getId().getRight();
+        this.adjacency = link(link(this.adjacency, left, right), right, left);
+    }
+
+    @Override
+    protected void entityRemoved(Friendship friendship) {
+        super.entityRemoved(friendship);
+
+        UUID left = friendship.getId().getLeft();
+        UUID right = friendship.getId().getRight();
+        this.adjacency = unlink(unlink(this.adjacency, left, right), right, left);
+    }
+
+    @Override
+    public List<User> getFriendsOf(UUID userId) throws IllegalArgumentException {
+        return friendsOf(this.adjacency, this.userRepository, userId);
+    }
+
+    /**
+     * Deletes all the friendships of a user. The deletions are applied under the lock of the repository,
+     * so no snapshot sees only a part of them.
+     */
+    @Override
+    public synchronized List<Friendship> deleteFriendshipsOf(UUID userId) throws IllegalArgumentException {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        List<Friendship> deleted = new ArrayList<>();
+        PersistentTreeMap<UUID, UUID> friendIds = this.adjacency.get(userId);
+        if (friendIds != null) {
+            // The version of the friends stays unchanged while the friendships are deleted.
+            friendIds.keys().forEach(friendId -> this.delete(Friendship.key(userId, friendId)).ifPresent(deleted::add));
+        }
+        return deleted;
+    }
+
+    private static PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> link(
+            PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> adjacency, UUID userId, UUID friendId) {
+        PersistentTreeMap<UUID, UUID> friends = adjacency.get(userId);
+        return adjacency.put(userId, (friends != null ? friends : PersistentTreeMap.<UUID, UUID>empty(null)).put(friendId, friendId));
+    }
+
+    private static PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> unlink(
+            PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> adjacency, UUID userId, UUID friendId) {
+        PersistentTreeMap<UUID, UUID> friends = adjacency.get(userId);
+        if (friends == null) {
+            return adjacency;
+        }
+        friends = friends.remove(friendId);
+        return friends.isEmpty() ? adjacency.remove(userId) : adjacency.put(userId, friends);
+    }
+
+    private static List<User> friendsOf(PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> adjacency,
+                                        Repository<UUID, User> userRepository, UUID userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        List<User> friends = new ArrayList<>();
+        PersistentTreeMap<UUID, UUID> friendIds = adjacency.get(userId);
+        if (friendIds != null) {
+            friendIds.keys().forEach(friendId -> userRepository.getOne(friendId).ifPresent(friends::add));
+        }
+        return friends;
+    }
+
+    /**
+     * Read-only view of a version of the friendships and of the adjacency.
+     */
+    private static class FriendshipView extends View<Tuple<UUID, UUID>, Friendship> implements FriendshipRepository {
+        private final PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> adjacency;
+        private final Repository<UUID, User> userRepository;
+
+        private FriendshipView(PersistentTreeMap<Tuple<UUID, UUID>, Friendship> entities,
+                               PersistentTreeMap<UUID, PersistentTreeMap<UUID, UUID>> adjacency, Repository<UUID, User> userRepository) {
+            super(entities);
+            this.adjacency = adjacency;
+            this.userRepository = userRepository;
+        }
+
+        @Override
+        protected Tuple<UUID, UUID> key(Tuple<UUID, UUID> id) {
+            return Friendship.key(id);
+        }
+
+        @Override
+        public List<User> getFriendsOf(UUID userId) throws IllegalArgumentException {
+            return friendsOf(this.adjacency, this.userRepository, userId);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+import ro.ubbcluj.map.socialnetworkfx.utility.PersistentTreeMap;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Repository that stores its values in memory as versions: each change creates a new version of the entities
+ * that shares everything that didn't change with the previous one, so that a {@link #snapshot()} of the
+ * repository is taken in constant time and stays unchanged while the writes continue.
+ * <p>
+ * Reads of the repository don't lock and see the latest version. The changes are applied one at a time.
+ * Like {@link ConcurrentInMemoryRepository}, an entity is a duplicate of another when they share a key
+ * in one of the unique indexes, which follow the latest version.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity to be stored.
+ */
+public class VersionedRepository<ID, E extends Entity<ID>> implements Repository<ID, E> {
+    // Latest version of the entities.
+    private volatile PersistentTreeMap<ID, E> entities;
+    // Secondary indexes of the latest version.
+    private final List<SecondaryIndex<?, ID, E>> indexes;
+
+    /**
+     * Initializes a versioned repository.
+     *
+     * @param keyComparator Order of the IDs used for paging, {@link Friendship#compareIds} for the user IDs, so that
+     *                      the pages follow the order of the database; null for the natural order of the IDs.
+     * @param indexes       Secondary indexes of the entities, empty when created.
+     */
+    public VersionedRepository(Comparator<? super ID> keyComparator, Collection<? extends SecondaryIndex<?, ID, E>> indexes) {
+        this.entities = PersistentTreeMap.empty(keyComparator);
+        this.indexes = List.copyOf(indexes);
+    }
+
+    /**
+     * Returns a point-in-time view of the repository, which isn't affected by the later changes.
+     *
+     * @return The read-only view of the latest version.
+     */
+    public synchronized Repository<ID, E> snapshot() {
+        return this.view(this.entities);
+    }
+
+    /**
+     * @return The latest version of the entities.
+     */
+    protected PersistentTreeMap<ID, E> entityVersion() {
+        return this.entities;
+    }
+
+    /**
+     * Creates the view of a version. Called with the lock of the repository held, so that the repositories
+     * that keep other versioned structures can capture them alongside.
+     *
+     * @param entities Version of the entities.
+     * @return The view of the version.
+     */
+    protected Repository<ID, E> view(PersistentTreeMap<ID, E> entities) {
+        return new View<>(entities);
+    }
+
+    /**
+     * Called after an entity was added, with the lock of the repository held.
+     *
+     * @param entity Entity that was added.
+     */
+    protected void entityAdded(E entity) {
+        this.indexes.forEach(index -> index.add(entity));
+    }
+
+    /**
+     * Called after an entity was removed, with the lock of the repository held.
+     *
+     * @param entity Entity that was removed.
+     */
+    protected void entityRemoved(E entity) {
+        this.indexes.forEach(index -> index.remove(entity));
+    }
+
+    /**
+     * Called after an entity was replaced by an entity with the same ID, with the lock of the repository held.
+     *
+     * @param old    Entity that was replaced.
+     * @param entity Entity that replaced it.
+     */
+    protected void entityReplaced(E old, E entity) {
+        this.indexes.forEach(index -> index.replace(old, entity));
+    }
+
+    /**
+     * Returns the key of an ID in the version of the entities, for the repositories whose IDs have several forms.
+     */
+    protected ID key(ID id) {
+        return id;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.entities.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return this.entities.size();
+    }
+
+    /**
+     * Returns the entities of the latest version, unchanged by the later writes.
+     */
+    @Override
+    public Iterable<E> getAll() {
+        PersistentTreeMap<ID, E> entities = this.entities;
+        return () -> entities.values().iterator();
+    }
+
+    @Override
+    public Stream<E> stream() {
+        return this.entities.values();
+    }
+
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        return View.page(this.entities, afterKey == null ? null : this.key(afterKey), limit, sortOrder);
+    }
+
+    @Override
+    public Optional<E> getOne(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+        return Optional.ofNullable(this.entities.get(this.key(id)));
+    }
+
+    @Override
+    public synchronized Optional<E> save(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        E existing = this.entities.get(e.getId());
+        if (existing != null) {
+            return Optional.of(existing);
+        }
+        this.checkConflicts(e);
+
+        this.entities = this.entities.put(e.getId(), e);
+        this.entityAdded(e);
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized Optional<E> delete(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        E old = this.entities.get(this.key(id));
+        if (old == null) {
+            return Optional.empty();
+        }
+
+        this.entities = this.entities.remove(old.getId());
+        this.entityRemoved(old);
+        return Optional.of(old);
+    }
+
+    @Override
+    public synchronized Optional<E> update(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        E old = this.entities.get(e.getId());
+        if (old == null) {
+            throw new RepositoryException("Entity with the specified id doesn't exist!");
+        }
+        this.checkConflicts(e);
+
+        this.entities = this.entities.put(e.getId(), e);
+        this.entityReplaced(old, e);
+        return Optional.of(old);
+    }
+
+    @Override
+    public synchronized BatchResult<E> saveAll(Collection<E> entities) throws IllegalArgumentException {
+        if (entities == null || entities.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Entities cannot be null!");
+        }
+
+        BatchResult<E> result = new BatchResult<>(entities.size());
+        entities.forEach(entity -> {
+            BatchResult.Outcome outcome;
+            try {
+                outcome = this.save(entity).isEmpty() ? BatchResult.Outcome.INSERTED : BatchResult.Outcome.DUPLICATE;
+            } catch (RepositoryException exception) {
+                outcome = BatchResult.Outcome.DUPLICATE;
+            }
+            result.add(entity, outcome);
+        });
+        return result;
+    }
+
+    /**
+     * Returns the entities with a given key in one of the indexes of the latest version.
+     *
+     * @param index Index declared by the repository.
+     * @param key   Key to look up.
+     * @param <K>   Type of the key.
+     * @return The entities with the key.
+     * @throws IllegalArgumentException If the index isn't declared by the repository or the key is null.
+     */
+    public synchronized <K> List<E> findBy(SecondaryIndex<K, ID, E> index, K key) throws IllegalArgumentException {
+        if (index == null || this.indexes.stream().noneMatch(declared -> declared == index)) {
+            throw new IllegalArgumentException("The index isn't declared by the repository!");
+        }
+
+        List<E> found = new ArrayList<>();
+        index.find(key).forEach(id -> found.add(this.entities.get(id)));
+        return found;
+    }
+
+    /**
+     * Checks that no other entity has the keys of an entity in the unique indexes.
+     *
+     * @throws RepositoryException If another entity has one of the keys.
+     */
+    private void checkConflicts(E entity) throws RepositoryException {
+        for (SecondaryIndex<?, ID, E> index : this.indexes) {
+            if (index.conflict(entity).isPresent()) {
+                throw new RepositoryException("An entity with the same " + index.getName() + " is already stored!");
+            }
+        }
+    }
+
+    /**
+     * Read-only view of a version of the entities.
+     *
+     * @param <ID> ID type of the Entity.
+     * @param <E>  Entity of the view.
+     */
+    protected static class View<ID, E extends Entity<ID>> implements Repository<ID, E> {
+        private final PersistentTreeMap<ID, E> entities;
+
+        protected View(PersistentTreeMap<ID, E> entities) {
+            this.entities = entities;
+        }
+
+        /**
+         * Returns the key of an ID in the version of the entities, for the views whose IDs have several forms.
+         */
+        protected ID key(ID id) {
+            return id;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.entities.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return this.entities.size();
+        }
+
+        @Override
+        public Iterable<E> getAll() {
+            return () -> this.entities.values().iterator();
+        }
+
+        @Override
+        public Stream<E> stream() {
+            return this.entities.values();
+        }
+
+        @Override
+        public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+            return page(this.entities, afterKey == null ? null : this.key(afterKey), limit, sortOrder);
+        }
+
+        @Override
+        public Optional<E> getOne(ID id) throws IllegalArgumentException {
+            if (id == null) {
+                throw new IllegalArgumentException("The id cannot be null!");
+            }
+            return Optional.ofNullable(this.entities.get(this.key(id)));
+        }
+
+        @Override
+        public Optional<E> save(E e) throws RepositoryException {
+            throw new RepositoryException("A snapshot cannot be changed!");
+        }
+
+        @Override
+        public Optional<E> delete(ID id) throws RepositoryException {
+            throw new RepositoryException("A snapshot cannot be changed!");
+        }
+
+        @Override
+        public Optional<E> update(E e) throws RepositoryException {
+            throw new RepositoryException("A snapshot cannot be changed!");
+        }
+
+        private static <ID, E extends Entity<ID>> Page<ID, E> page(PersistentTreeMap<ID, E> entities, ID afterKey, int limit, SortOrder sortOrder) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("The limit must be positive!");
+            }
+            if (sortOrder == null) {
+                throw new IllegalArgumentException("The sort order cannot be null!");
+            }
+
+            // Seeking the key in the tree, then walking at most one more entity than the limit.
+            List<E> content = new ArrayList<>(limit);
+            Iterator<Map.Entry<ID, E>> iterator = entities.iterator(afterKey, sortOrder == SortOrder.DESCENDING);
+            while (iterator.hasNext() && content.size() < limit) {
+                content.add(iterator.next().getValue());
+            }
+
+            ID nextKey = iterator.hasNext() ? content.get(content.size() - 1).getId() : null;
+            return new Page<>(content, nextKey);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package ro.ubbcluj.map.socialnetworkfx.repository;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Entity;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Repository decorator that accepts the writes in memory and applies them to another repository later,
+ * grouped in bulk operations.
+ * The pending writes on the same ID are coalesced into one, and they are flushed when their number reaches the
+ * batch size, periodically, on {@link #flush()}, on {@link #close()} and when the virtual machine shuts down.
+ * <p>
+ * Lookups and listings see the pending writes. Counting and paging flush the pending writes first.
+ * A save checks the ID of the entity against the pending writes and the wrapped repository, so it is reported as
+ * a duplicate only if an entity with the same ID exists. The duplicates detected by the wrapped repository
+ * when flushing, such as users with the same fields, are only counted by {@link #getRejectedCount()}.
+ * <p>
+ * When the number of pending writes reaches the capacity, writers wait for a flush to make room.
+ *
+ * @param <ID> ID type of the stored Entity.
+ * @param <E>  Entity to be stored.
+ */
+public class WriteBehindRepository<ID, E extends Entity<ID>> implements Repository<ID, E>, AutoCloseable {
+    // Default values for the buffer configuration.
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1_000;
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final long DEFAULT_OFFER_TIMEOUT_MILLIS = 5_000;
+
+    // Repository to which the writes are applied.
+    private final Repository<ID, E> delegate;
+
+    // Configuration of the buffer.
+    private final int batchSize;
+    private final int capacity;
+    private final long offerTimeoutMillis;
+
+    // Writes that weren't flushed yet, at most one for each ID.
+    private Map<ID, Write<E>> pending = new LinkedHashMap<>();
+    // Writes that are being flushed, visible to the lookups until the wrapped repository applied them.
+    private Map<ID, Write<E>> inFlight = Map.of();
+    // Whether a flush was requested because the batch size was reached.
+    private boolean flushRequested = false;
+    // Lock that allows a single flush at a time.
+    private final Object flushLock = new Object();
+
+    // Thread that flushes the writes periodically or when the batch size is reached.
+    private final ScheduledExecutorService flusher;
+    // Flushes the pending writes when the virtual machine shuts down.
+    private final Thread shutdownHook;
+    private volatile boolean closed = false;
+
+    // Statistics of the buffer.
+    private long flushCount = 0;
+    private long writtenCount = 0;
+    private long rejectedCount = 0;
+
+    /**
+     * Initializes a write-behind buffer with the default configuration.
+     *
+     * @param delegate Repository to which the writes are applied.
+     */
+    public WriteBehindRepository(Repository<ID, E> delegate) {
+        this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_CAPACITY, DEFAULT_OFFER_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Initializes a write-behind buffer in front of a repository.
+     *
+     * @param delegate            Repository to which the writes are applied.
+     * @param batchSize           Number of pending writes that triggers a flush.
+     * @param flushIntervalMillis Time between the periodic flushes.
+     * @param capacity            Maximum number of pending writes.
+     * @param offerTimeoutMillis  Time a writer waits for room in the buffer before failing.
+     */
+    public WriteBehindRepository(Repository<ID, E> delegate, int batchSize, long flushIntervalMillis,
+                                 int capacity, long offerTimeoutMillis) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("The wrapped repository cannot be null!");
+        }
+        if (batchSize <= 0 || capacity < batchSize) {
+            throw new IllegalArgumentException("The batch size must be positive and not greater than the capacity!");
+        }
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("The flush interval must be positive!");
+        }
+
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        this.shutdownHook = new Thread(this::flushQuietly, "write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    /**
+     * @return The repository to which the writes are applied.
+     */
+    public Repository<ID, E> getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        this.flush();
+        return this.delegate.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        this.flush();
+        return this.delegate.size();
+    }
+
+    @Override
+    public Iterable<E> getAll() {
+        try (Stream<E> entities = this.stream()) {
+            return entities.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Stream<E> stream() {
+        // The pending writes hold the latest state of their entities, replacing the stored ones.
+        Map<ID, Write<E>> overlay = this.overlay();
+        Stream<E> stored = this.delegate.stream().filter(entity -> !overlay.containsKey(entity.getId()));
+        Stream<E> written = overlay.values().stream()
+                .filter(write -> write.kind != Kind.DELETE)
+                .map(write -> write.entity);
+        return Stream.concat(stored, written);
+    }
+
+    @Override
+    public Page<ID, E> page(ID afterKey, int limit, SortOrder sortOrder) throws IllegalArgumentException {
+        this.flush();
+        return this.delegate.page(afterKey, limit, sortOrder);
+    }
+
+    @Override
+    public Optional<E> getOne(ID id) throws IllegalArgumentException {
+        if (id == null) {
+            throw new IllegalArgumentException("The id cannot be null!");
+        }
+
+        Write<E> write = this.lookup(id);
+        if (write != null) {
+            return write.kind == Kind.DELETE ? Optional.empty() : Optional.of(write.entity);
+        }
+        return this.delegate.getOne(id);
+    }
+
+    @Override
+    public Optional<E> save(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Entity cannot be null!");
+        }
+
+        Optional<E> existing = this.getOne(e.getId());
+        if (existing.isEmpty()) {
+            this.enqueue(e.getId(), new Write<>(Kind.SAVE, e));
+        }
+        return existing;
+    }
+
+    @Override
+    public Optional<E> delete(ID id) throws IllegalArgumentException {
+        Optional<E> existing = this.getOne(id);
+        existing.ifPresent(entity -> this.enqueue(id, new Write<>(Kind.DELETE, entity)));
+        return existing;
+    }
+
+    @Override
+    public Optional<E> update(E e) throws RepositoryException, IllegalArgumentException {
+        if (e == null) {
+            throw new IllegalArgumentException("Id cannot be null!");
+        }
+
+        Optional<E> old = this.getOne(e.getId());
+        if (old.isPresent()) {
+            this.enqueue(e.getId(), new Write<>(Kind.UPDATE, e));
+        }
+        return old;
+    }
+
+    /**
+     * Returns the latest write on an ID that wasn't applied yet.
+     *
+     * @param id ID in cause.
+     * @return The pending or in flight write on the ID, null if there is none.
+     */
+    private synchronized Write<E> lookup(ID id) {
+        Write<E> write = this.pending.get(id);
+        return write != null ? write : this.inFlight.get(id);
+    }
+
+    /**
+     * @return The latest write on each ID that wasn't applied yet.
+     */
+    private synchronized Map<ID, Write<E>> overlay() {
+        Map<ID, Write<E>> overlay = new LinkedHashMap<>(this.inFlight);
+        overlay.putAll(this.pending);
+        return overlay;
+    }
+
+    /**
+     * Adds a write to the pending ones, coalescing it with the pending write on the same ID.
+     * Waits for room in the buffer if it is full.
+     *
+     * @param id    ID of the written entity.
+     * @param write Write to add.
+     * @throws RepositoryException If the buffer is closed or stays full for longer than the offer timeout.
+     */
+    private synchronized void enqueue(ID id, Write<E> write) throws RepositoryException {
+        if (this.closed) {
+            throw new RepositoryException("The write-behind repository is closed!");
+        }
+
+        // Waiting for room, unless the write is coalesced with a pending one.
+        long deadline = System.currentTimeMillis() + this.offerTimeoutMillis;
+        while (!this.pending.containsKey(id) && this.pending.size() >= this.capacity) {
+            this.requestFlush();
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new RepositoryException("The write-behind buffer stayed full for " + this.offerTimeoutMillis + " ms!");
+            }
+            try {
+                this.wait(remaining);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new RepositoryException("Interrupted while waiting for room in the write-behind buffer!");
+            }
+        }
+
+        this.merge(id, write);
+        if (this.pending.size() >= this.batchSize) {
+            this.requestFlush();
+        }
+    }
+
+    /**
+     * Coalesces a write with the pending write on the same ID, the given write being the newer one.
+     *
+     * @param id    ID of the written entity.
+     * @param write Newer write.
+     */
+    private void merge(ID id, Write<E> write) {
+        Write<E> older = this.pending.get(id);
+        Write<E> merged = older == null ? write : older.then(write);
+        if (merged == null) {
+            this.pending.remove(id);
+        } else {
+            this.pending.put(id, merged);
+        }
+    }
+
+    private void requestFlush() {
+        if (!this.flushRequested && !this.flusher.isShutdown()) {
+            this.flushRequested = true;
+            this.flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Applies the pending writes to the wrapped repository, with at most one bulk operation for each kind of write,
+     * the deletions first, then the updates, then the saves.
+     * Writes that failed are kept pending, to be retried by the next flush.
+     *
+     * @throws RepositoryException If any of the bulk operations failed.
+     */
+    public void flush() throws RepositoryException {
+        synchronized (this.flushLock) {
+            Map<ID, Write<E>> writes;
+            synchronized (this) {
+                this.flushRequested = false;
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                writes = this.pending;
+                this.inFlight = writes;
+                this.pending = new LinkedHashMap<>();
+                this.notifyAll();
+            }
+
+            Map<Kind, List<Write<E>>> byKind = new EnumMap<>(Kind.class);
+            writes.values().forEach(write -> byKind.computeIfAbsent(write.kind, kind -> new ArrayList<>()).add(write));
+
+            List<Write<E>> failed = new ArrayList<>();
+            RuntimeException failure = null;
+            long written = 0;
+            long rejected = 0;
+            for (Map.Entry<Kind, List<Write<E>>> group : byKind.entrySet()) {
+                try {
+                    BatchResult<?> result = this.apply(group.getKey(), group.getValue());
+                    written += result.getAppliedCount();
+                    rejected += result.size() - result.getAppliedCount();
+                } catch (RuntimeException exception) {
+                    failed.addAll(group.getValue());
+                    failure = exception;
+                }
+            }
+
+            synchronized (this) {
+                // The failed writes are older than the pending ones on the same IDs.
+                failed.forEach(write -> {
+                    ID id = write.entity.getId();
+                    Write<E> newer = this.pending.get(id);
+                    Write<E> merged = newer == null ? write : write.then(newer);
+                    if (merged == null) {
+                        this.pending.remove(id);
+                    } else {
+                        this.pending.put(id, merged);
+                    }
+                });
+                this.inFlight = Map.of();
+                this.flushCount++;
+                this.writtenCount += written;
+                this.rejectedCount += rejected;
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Applies a group of writes of the same kind to the wrapped repository, in a single bulk operation.
+     *
+     * @param kind   Kind of the writes.
+     * @param writes Writes to apply.
+     * @return The outcome of the bulk operation.
+     */
+    private BatchResult<?> apply(Kind kind, List<Write<E>> writes) throws RepositoryException {
+        return switch (kind) {
+            case SAVE -> this.delegate.saveAll(writes.stream().map(write -> write.entity).toList());
+            case UPDATE -> this.delegate.updateAll(writes.stream().map(write -> write.entity).toList());
+            case DELETE -> this.delegate.deleteAll(writes.stream().map(write -> write.entity.getId()).toList());
+        };
+    }
+
+    private void flushQuietly() {
+        try {
+            this.flush();
+        } catch (RuntimeException exception) {
+            // The writes stay pending, the next flush retrying them.
+            System.err.println("Write-behind flush failed: " + exception.getMessage());
+        }
+    }
+
+    /**
+     * @return Number of writes that weren't flushed yet.
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size() + this.inFlight.size();
+    }
+
+    /**
+     * @return Number of flushes that applied writes.
+     */
+    public synchronized long getFlushCount() {
+        return this.flushCount;
+    }
+
+    /**
+     * @return Number of writes applied by the wrapped repository.
+     */
+    public synchronized long getWrittenCount() {
+        return this.writtenCount;
+    }
+
+    /**
+     * @return Number of writes that had no effect on the wrapped repository, such as duplicates.
+     */
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    /**
+     * Stops accepting writes and flushes the pending ones.
+     *
+     * @throws RepositoryException If the pending writes couldn't be flushed.
+     */
+    @Override
+    public void close() throws RepositoryException {
+        this.closed = true;
+        this.flusher.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // The virtual machine is already shutting down, the hook flushing the writes.
+        }
+        this.flush();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "WriteBehindRepository{pending=" + this.getPendingCount() + ", flushes=" + this.flushCount
+                + ", written=" + this.writtenCount + ", rejected=" + this.rejectedCount + "}";
+    }
+
+    /**
+     * Kind of a write, in the order the kinds are flushed: the deletions and the updates free the fields they held,
+     * such as the names and email of a user, before the saves and the updates that reuse them are applied.
+     */
+    private enum Kind {
+        DELETE,
+        UPDATE,
+        SAVE
+    }
+
+    /**
+     * Write that wasn't applied yet, along with the entity it writes.
+     * A deletion keeps the deleted entity, so that its ID is known.
+     */
+    private static class Write<E> {
+        private final Kind kind;
+        private final E entity;
+
+        private Write(Kind kind, E entity) {
+            this.kind = kind;
+            this.entity = entity;
+        }
+
+        /**
+         * Coalesces this write with a newer write on the same ID.
+         *
+         * @param newer Newer write.
+         * @return The write with the same effect as both, null if they cancel each other.
+         */
+        private Write<E> then(Write<E> newer) {
+            if (this.kind == Kind.SAVE) {
+                // An entity saved and then deleted never reaches the wrapped repository.
+                return newer.kind == Kind.DELETE ? null : new Write<>(Kind.SAVE, newer.entity);
+            }
+            if (this.kind == Kind.DELETE && newer.kind == Kind.SAVE) {
+                // An entity deleted and then saved again replaces the stored one.
+                return new Write<>(Kind.UPDATE, newer.entity);
+            }
+            return newer;
+        }
+    }
+}
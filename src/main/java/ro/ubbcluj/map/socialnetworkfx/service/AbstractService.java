@@ -6,8 +6,11 @@ import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 import ro.ubbcluj.map.socialnetworkfx.exception.ServiceException;
+import ro.ubbcluj.map.socialnetworkfx.repository.BatchResult;
+import ro.ubbcluj.map.socialnetworkfx.repository.Page;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public interface AbstractService<ID> {
@@ -22,6 +25,15 @@ public interface AbstractService<ID> {
 
     void addUser(String firstName, String lastName, String email) throws ServiceException;
 
+    /**
+     * Adds a bulk of users to the list of users.
+     *
+     * @param users Users to be added.
+     * @return The outcome for each user: inserted or duplicate.
+     * @throws ServiceException If any of the users is invalid or the bulk couldn't be added.
+     */
+    BatchResult<User> addUsers(Collection<User> users) throws ServiceException;
+
     /**
      * Removes a user from the list of users.
      *
@@ -56,6 +68,16 @@ public interface AbstractService<ID> {
      */
     ArrayList<User> getUsers();
 
+    /**
+     * Returns a page of users, ordered by ID, that starts right after a given ID.
+     *
+     * @param afterId ID after which the page starts, null for the first page.
+     * @param limit   Maximum number of users in the page.
+     * @return The page of users.
+     * @throws ServiceException If the page couldn't be retrieved.
+     */
+    Page<ID, User> getUsersPage(ID afterId, int limit) throws ServiceException;
+
     /**
      * Returns an iterable of users which are friends with the user with the specified id.
      *
@@ -92,6 +114,16 @@ public interface AbstractService<ID> {
     ArrayList<Friendship> getFriendships();
 
 
+    /**
+     * Returns a page of friendships, ordered by ID, that starts right after a given ID.
+     *
+     * @param afterId ID after which the page starts, null for the first page.
+     * @param limit   Maximum number of friendships in the page.
+     * @return The page of friendships.
+     * @throws ServiceException If the page couldn't be retrieved.
+     */
+    Page<Tuple<ID, ID>, Friendship> getFriendshipsPage(Tuple<ID, ID> afterId, int limit) throws ServiceException;
+
     /**
      * Returns the number of communities and a list of the most active communities.
      */
@@ -0,0 +1,191 @@
+package ro.ubbcluj.map.socialnetworkfx.service;
+
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.repository.BatchResult;
+import ro.ubbcluj.map.socialnetworkfx.repository.Page;
+import ro.ubbcluj.map.socialnetworkfx.utility.TaskExecutor;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking view of the service, whose operations run in the background and return futures,
+ * so that callers such as the UI thread never wait for the database.
+ * Operations on the same user (or the same friendship) run in the order they were requested, while independent
+ * operations may run at the same time, up to the concurrency given for the service.
+ * A future completes exceptionally with the {@link ro.ubbcluj.map.socialnetworkfx.exception.ServiceException}
+ * thrown by the operation, wrapped in a {@link java.util.concurrent.CompletionException} when joined.
+ * Observers of the service are notified from the thread that ran the operation.
+ */
+public class AsyncService implements AutoCloseable {
+    // Service that runs the operations.
+    private final Service service;
+    // Executor of the operations.
+    private final TaskExecutor executor;
+
+    /**
+     * Initializes a non-blocking view of the service.
+     *
+     * @param service        Service that runs the operations.
+     * @param maxConcurrency Maximum number of operations that run at the same time,
+     *                       usually the number of connections available to the repositories.
+     */
+    public AsyncService(Service service, int maxConcurrency) {
+        this.service = service;
+        this.executor = new TaskExecutor(maxConcurrency);
+    }
+
+    /**
+     * @return The service that runs the operations.
+     */
+    public Service getService() {
+        return this.service;
+    }
+
+    /**
+     * @see Service#addUser(String, String, String)
+     */
+    public CompletableFuture<Void> addUser(String firstName, String lastName, String email) {
+        return this.executor.submit(() -> {
+            this.service.addUser(firstName, lastName, email);
+            return null;
+        });
+    }
+
+    /**
+     * @see Service#addUsers(Collection)
+     */
+    public CompletableFuture<BatchResult<User>> addUsers(Collection<User> users) {
+        return this.executor.submit(() -> this.service.addUsers(users));
+    }
+
+    /**
+     * @see Service#removeUser(UUID)
+     */
+    public CompletableFuture<User> removeUser(UUID userId) {
+        return this.executor.submit(userId, () -> this.service.removeUser(userId));
+    }
+
+    /**
+     * Removes several users at the same time.
+     *
+     * @param userIds IDs of the users to remove.
+     * @return Future of the removed users, in the order of their IDs, which completes exceptionally
+     * if any of the users couldn't be removed.
+     */
+    public CompletableFuture<List<User>> removeUsers(Collection<UUID> userIds) {
+        return allOf(userIds.stream().map(this::removeUser).toList());
+    }
+
+    /**
+     * @see Service#getUser(UUID)
+     */
+    public CompletableFuture<User> getUser(UUID userId) {
+        return this.executor.submit(userId, () -> this.service.getUser(userId));
+    }
+
+    /**
+     * @see Service#updateUser(User)
+     */
+    public CompletableFuture<User> updateUser(User user) {
+        return this.executor.submit(user == null ? null : user.getId(), () -> this.service.updateUser(user));
+    }
+
+    /**
+     * @see Service#getUsersPage(UUID, int)
+     */
+    public CompletableFuture<Page<UUID, User>> getUsersPage(UUID afterId, int limit) {
+        return this.executor.submit(() -> this.service.getUsersPage(afterId, limit));
+    }
+
+    /**
+     * @see Service#getFriendsOf(UUID)
+     */
+    public CompletableFuture<List<User>> getFriendsOf(UUID userId) {
+        return this.executor.submit(userId, () -> this.service.getFriendsOf(userId));
+    }
+
+    /**
+     * Retrieves the friends of several users at the same time.
+     *
+     * @param userIds IDs of the users.
+     * @return Future of the friends of each user, in the order of their IDs.
+     */
+    public CompletableFuture<Map<UUID, List<User>>> getFriendsOf(Collection<UUID> userIds) {
+        List<UUID> ids = new ArrayList<>(userIds);
+        return allOf(ids.stream().map(this::getFriendsOf).toList()).thenApply(friends -> {
+            Map<UUID, List<User>> friendsOf = new LinkedHashMap<>();
+            for (int i = 0; i < ids.size(); i++) {
+                friendsOf.put(ids.get(i), friends.get(i));
+            }
+            return friendsOf;
+        });
+    }
+
+    /**
+     * @see Service#addFriendship(UUID, UUID)
+     */
+    public CompletableFuture<Void> addFriendship(UUID id1, UUID id2) {
+        return this.executor.submit(Friendship.key(id1, id2), () -> {
+            this.service.addFriendship(id1, id2);
+            return null;
+        });
+    }
+
+    /**
+     * @see Service#removeFriendship(UUID, UUID)
+     */
+    public CompletableFuture<Friendship> removeFriendship(UUID id1, UUID id2) {
+        return this.executor.submit(Friendship.key(id1, id2), () -> this.service.removeFriendship(id1, id2));
+    }
+
+    /**
+     * @see Service#getFriendshipsPage(Tuple, int)
+     */
+    public CompletableFuture<Page<Tuple<UUID, UUID>, Friendship>> getFriendshipsPage(Tuple<UUID, UUID> afterId, int limit) {
+        return this.executor.submit(() -> this.service.getFriendshipsPage(afterId, limit));
+    }
+
+    /**
+     * @see Service#communities()
+     */
+    public CompletableFuture<Tuple<Integer, List<List<UUID>>>> communities() {
+        return this.executor.submit(this.service::communities);
+    }
+
+    /**
+     * @see Service#friendsFromMonth(UUID, String)
+     */
+    public CompletableFuture<List<User>> friendsFromMonth(UUID userId, String month) {
+        return this.executor.submit(userId, () -> this.service.friendsFromMonth(userId, month));
+    }
+
+    /**
+     * @see Service#usersWithStringInLastName(String)
+     */
+    public CompletableFuture<List<User>> usersWithStringInLastName(String string) {
+        return this.executor.submit(() -> this.service.usersWithStringInLastName(string));
+    }
+
+    /**
+     * Combines several futures into the future of their results, in the order of the futures.
+     *
+     * @param futures Futures to combine.
+     * @param <T>     Type of the results.
+     * @return Future of the results, which completes exceptionally if any of the futures does.
+     */
+    private static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Stops accepting operations. The operations that were already requested still run.
+     */
+    @Override
+    public void close() {
+        this.executor.close();
+    }
+}
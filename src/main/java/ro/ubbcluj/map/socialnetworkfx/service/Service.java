@@ -9,30 +9,72 @@ import ro.ubbcluj.map.socialnetworkfx.events.UserChangeEvent;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 import ro.ubbcluj.map.socialnetworkfx.exception.ServiceException;
 import ro.ubbcluj.map.socialnetworkfx.exception.ValidatorException;
+import ro.ubbcluj.map.socialnetworkfx.repository.BatchResult;
+import ro.ubbcluj.map.socialnetworkfx.repository.FriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.Page;
 import ro.ubbcluj.map.socialnetworkfx.repository.Repository;
-import ro.ubbcluj.map.socialnetworkfx.repository.UserDBRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.SortOrder;
+import ro.ubbcluj.map.socialnetworkfx.repository.UnitOfWork;
+import ro.ubbcluj.map.socialnetworkfx.repository.UserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.VersionedFriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.utility.CommunityIndex;
+import ro.ubbcluj.map.socialnetworkfx.utility.ComponentMetric;
+import ro.ubbcluj.map.socialnetworkfx.utility.ComponentMetricEngine;
+import ro.ubbcluj.map.socialnetworkfx.utility.DiameterMetric;
 import ro.ubbcluj.map.socialnetworkfx.utility.Graph;
+import ro.ubbcluj.map.socialnetworkfx.utility.UuidDictionary;
 import ro.ubbcluj.map.socialnetworkfx.utility.observer.Observable;
 import ro.ubbcluj.map.socialnetworkfx.utility.observer.Observer;
 import ro.ubbcluj.map.socialnetworkfx.validator.FriendshipValidator;
 import ro.ubbcluj.map.socialnetworkfx.validator.UserValidator;
 
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Month;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.Stream;
 
 public class Service implements AbstractService<UUID>, Observable<SocialNetworkEvent> {
+    // Time given by default to the ranking of the communities.
+    public static final Duration DEFAULT_COMMUNITY_BUDGET = Duration.ofSeconds(2);
+
     // Repository that stores Users.
     private final Repository<UUID, User> userRepository;
     // Repository that stores Friendships.
     private final Repository<Tuple<UUID, UUID>, Friendship> friendshipRepository;
+    // Unit of work in which the changes spanning both repositories are applied.
+    private final UnitOfWork unitOfWork;
+
+    // Ranks the communities, by their diameter unless another metric is set.
+    private volatile ComponentMetricEngine communityEngine = new ComponentMetricEngine(new DiameterMetric(), DEFAULT_COMMUNITY_BUDGET);
+
+    // Pool of the parallel analytics, null while they run on the calling thread.
+    private volatile ForkJoinPool analyticsPool = null;
 
-    // Set of observers to the Service.
-    private final Set<Observer<SocialNetworkEvent>> observers = new HashSet<>();
+    // Communities of the network, loaded when they are first asked for and kept up to date by the changes after that.
+    private final CommunityIndex communityIndex = new CommunityIndex();
+
+    // Set of observers to the Service, copied on change so that the operations can notify them from any thread.
+    private final Set<Observer<SocialNetworkEvent>> observers = new CopyOnWriteArraySet<>();
 
     public Service(Repository<UUID, User> userRepo, Repository<Tuple<UUID, UUID>, Friendship> friendshipRepo) {
+        this(userRepo, friendshipRepo, UnitOfWork.NONE);
+    }
+
+    /**
+     * Initializes a service whose changes spanning both repositories are applied in a unit of work.
+     *
+     * @param userRepo       Repository of the users.
+     * @param friendshipRepo Repository of the friendships.
+     * @param unitOfWork     Unit of work shared by the repositories, such as their connection pool.
+     */
+    public Service(Repository<UUID, User> userRepo, Repository<Tuple<UUID, UUID>, Friendship> friendshipRepo, UnitOfWork unitOfWork) {
         this.userRepository = userRepo;
         this.friendshipRepository = friendshipRepo;
+        this.unitOfWork = unitOfWork;
     }
 
     @Override
@@ -57,39 +99,74 @@ public class Service implements AbstractService<UUID>, Observable<SocialNetworkE
         } catch (RepositoryException rE) {
             throw new ServiceException("Couldn't add user.", rE);
         }
+        this.communityIndex.addUser(user.getId());
 
         // Notifying the observers with the event of adding that occurred.
         this.notify(new UserChangeEvent(EventType.ADD_USER, user, null));
     }
 
     @Override
-    public User removeUser(UUID userId) throws ServiceException {
-        // Trying to delete the user from the Repository.
-        Optional<User> deleted = this.userRepository.delete(userId);
+    public BatchResult<User> addUsers(Collection<User> users) throws ServiceException {
+        try {
+            // Validating all the users so that the bulk reaches the Repository in a valid state.
+            UserValidator userValidator = new UserValidator();
+            users.forEach(userValidator::validate);
+        } catch (ValidatorException vE) {
+            throw new ServiceException("Users weren't validated.", vE);
+        }
 
-        // Verifying if the user was deleted.
-        if (deleted.isEmpty()) {
-            throw new ServiceException("The user with the specified ID does not exist.");
+        BatchResult<User> result;
+        try {
+            // Saving all the users in a single bulk.
+            result = this.userRepository.saveAll(users);
+        } catch (RepositoryException | IllegalArgumentException exception) {
+            throw new ServiceException("Couldn't add users.", exception);
         }
 
-        // Deleting all the friendships that contained the user.
-        // This implementation was relevant for a type of Repository which
-        // wouldn't perform deleting on cascade.
+        // Notifying the observers with the event of adding for each user that was actually added.
+        result.getApplied().forEach(user -> {
+            this.communityIndex.addUser(user.getId());
+            this.notify(new UserChangeEvent(EventType.ADD_USER, user, null));
+        });
 
-        Iterable<User> friendsOf = this.getFriendsOf(userId);
-        friendsOf.forEach(user -> {
-            if (this.friendshipRepository.getOne(new Tuple<>(userId, user.getId())).isEmpty()) {
-                this.friendshipRepository.delete(new Tuple<>(user.getId(), userId));
-            } else {
-                this.friendshipRepository.delete(new Tuple<>(userId, user.getId()));
-            }
+        return result;
+    }
+
+    @Override
+    public User removeUser(UUID userId) throws ServiceException {
+        // Deleting the friendships of the user and the user in a single unit of work, so that the user
+        // is never removed while keeping some friendships. The friendships go first, through their repository,
+        // so that a database deleting them on cascade doesn't remove them behind its decorators.
+        User deleted = this.unitOfWork.run(() -> {
+            this.deleteFriendshipsOf(userId);
+
+            // Verifying if the user was deleted, which otherwise discards the work.
+            return this.userRepository.delete(userId)
+                    .orElseThrow(() -> new ServiceException("The user with the specified ID does not exist."));
         });
+        this.communityIndex.removeUser(userId);
 
         // Notifying the observers with the event of removing that occurred.
-        this.notify(new UserChangeEvent(EventType.REMOVE_USER, null, deleted.get()));
+        this.notify(new UserChangeEvent(EventType.REMOVE_USER, null, deleted));
 
         // Returning the deleted user.
-        return deleted.get();
+        return deleted;
+    }
+
+    /**
+     * Deletes all the friendships of a user.
+     *
+     * @param userId ID of the user.
+     */
+    private void deleteFriendshipsOf(UUID userId) throws RepositoryException {
+        // Deleting the friendships at once, from the neighbourhood index of the repository, if it has one.
+        if (this.friendshipRepository instanceof FriendshipRepository repository) {
+            repository.deleteFriendshipsOf(userId);
+            return;
+        }
+
+        // Each friendship is stored under its canonical ID, so it is deleted directly.
+        this.getFriendsOf(userId).forEach(user -> this.friendshipRepository.delete(Friendship.key(userId, user.getId())));
     }
 
     @Override
@@ -140,32 +217,76 @@ public class Service implements AbstractService<UUID>, Observable<SocialNetworkE
 
     @Override
     public ArrayList<User> getUsers() {
-        ArrayList<User> userList = new ArrayList<>();
+        // Populating the user list straight from the repository stream.
+        try (Stream<User> users = this.userRepository.stream()) {
+            return users.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
 
-        // Populating the user list.
-        this.userRepository.getAll().forEach(userList::add);
-        return userList;
+    @Override
+    public Page<UUID, User> getUsersPage(UUID afterId, int limit) throws ServiceException {
+        try {
+            // Seeking the page in the repository, so that its cost doesn't depend on how deep it is.
+            return this.userRepository.page(afterId, limit, SortOrder.ASCENDING);
+        } catch (RepositoryException | IllegalArgumentException exception) {
+            throw new ServiceException("Couldn't retrieve the users.", exception);
+        }
     }
 
     @Override
     public ArrayList<User> getFriendsOf(UUID uuid) throws RepositoryException {
+        return friendsOf(this.userRepository, this.friendshipRepository, uuid);
+    }
+
+    /**
+     * Retrieves the friends of a user from given repositories.
+     *
+     * @param userRepository       Repository of the users.
+     * @param friendshipRepository Repository of the friendships.
+     * @param uuid                 ID of the user.
+     * @return The friends of the user.
+     */
+    private static ArrayList<User> friendsOf(Repository<UUID, User> userRepository,
+                                             Repository<Tuple<UUID, UUID>, Friendship> friendshipRepository, UUID uuid) throws RepositoryException {
+        // Answering from the neighbourhood index of the repository, if it has one.
+        if (friendshipRepository instanceof FriendshipRepository repository) {
+            return new ArrayList<>(repository.getFriendsOf(uuid));
+        }
+
         ArrayList<User> friends = new ArrayList<>();
 
         // Retrieving all friends of the user.
-        this.friendshipRepository.getAll().forEach(friendship -> {
-            // Deciding which one of the users is our user.
-            if (friendship.getId().getLeft().equals(uuid)) {
-                Optional<User> friend = this.userRepository.getOne(friendship.getId().getRight());
-                friend.ifPresent(friends::add);
-            } else if (friendship.getId().getRight().equals(uuid)) {
-                Optional<User> friend = this.userRepository.getOne(friendship.getId().getLeft());
-                friend.ifPresent(friends::add);
-            }
-        });
+        try (Stream<Friendship> friendships = friendshipRepository.stream()) {
+            friendships.forEach(friendship -> {
+                // Deciding which one of the users is our user.
+                if (friendship.getId().getLeft().equals(uuid)) {
+                    Optional<User> friend = userRepository.getOne(friendship.getId().getRight());
+                    friend.ifPresent(friends::add);
+                } else if (friendship.getId().getRight().equals(uuid)) {
+                    Optional<User> friend = userRepository.getOne(friendship.getId().getLeft());
+                    friend.ifPresent(friends::add);
+                }
+            });
+        }
 
         return friends;
     }
 
+    /**
+     * Returns the repositories that the long analytics should read. If the repositories keep versions, these are
+     * views of the users and of the friendships at the same point in time, so that the analytics see a consistent
+     * network while the changes continue; otherwise they are the repositories themselves.
+     *
+     * @return The repository of the users and the repository of the friendships.
+     */
+    private Tuple<Repository<UUID, User>, Repository<Tuple<UUID, UUID>, Friendship>> readView() {
+        if (this.friendshipRepository instanceof VersionedFriendshipRepository versioned && versioned.getUserRepository() == this.userRepository) {
+            Tuple<Repository<UUID, User>, FriendshipRepository> views = versioned.snapshotWithUsers();
+            return new Tuple<>(views.getLeft(), views.getRight());
+        }
+        return new Tuple<>(this.userRepository, this.friendshipRepository);
+    }
+
     @Override
     public void addFriendship(UUID id1, UUID id2) throws ServiceException {
         try {
@@ -182,26 +303,19 @@ public class Service implements AbstractService<UUID>, Observable<SocialNetworkE
         } catch (ValidatorException | RepositoryException exception) {
             throw new ServiceException("Couldn't add friendship.", exception);
         }
+        this.communityIndex.addFriendship(id1, id2);
     }
 
     @Override
     public Friendship removeFriendship(UUID id1, UUID id2) throws ServiceException {
-        // Retrieving the friendship between the two users.
-        Optional<Friendship> friendship = this.friendshipRepository.getOne(new Tuple<>(id1, id2));
+        // Deleting the friendship between the two users, stored under its canonical ID.
+        Optional<Friendship> friendship = this.friendshipRepository.delete(Friendship.key(id1, id2));
 
-        // Verifying if the friendship is present, but reversed.
+        // Verifying if the friendship was present.
         if (friendship.isEmpty()) {
-            friendship = this.friendshipRepository.getOne(new Tuple<>(id2, id1));
-            if (friendship.isEmpty()) {
-                throw new ServiceException("No friendship found.");
-
-                // Deleting the friendship if present.
-            } else {
-                this.friendshipRepository.delete(friendship.get().getId());
-            }
-        } else {
-            this.friendshipRepository.delete(friendship.get().getId());
+            throw new ServiceException("No friendship found.");
         }
+        this.communityIndex.removeFriendship(id1, id2);
 
         // Returning the deleted friendship.
         return friendship.get();
@@ -209,81 +323,163 @@ public class Service implements AbstractService<UUID>, Observable<SocialNetworkE
 
     @Override
     public ArrayList<Friendship> getFriendships() {
-        ArrayList<Friendship> friendshipList = new ArrayList<>();
+        // Populating the friendship list straight from the repository stream.
+        try (Stream<Friendship> friendships = this.friendshipRepository.stream()) {
+            return friendships.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
 
-        // Populating the friendship list.
-        this.friendshipRepository.getAll().forEach(friendshipList::add);
-        return friendshipList;
+    @Override
+    public Page<Tuple<UUID, UUID>, Friendship> getFriendshipsPage(Tuple<UUID, UUID> afterId, int limit) throws ServiceException {
+        try {
+            // Seeking the page in the repository, so that its cost doesn't depend on how deep it is.
+            return this.friendshipRepository.page(afterId, limit, SortOrder.ASCENDING);
+        } catch (RepositoryException | IllegalArgumentException exception) {
+            throw new ServiceException("Couldn't retrieve the friendships.", exception);
+        }
+    }
+
+    /**
+     * Sets the metric by which the communities are ranked.
+     *
+     * @param metric Metric of the strength of a community.
+     * @param budget Time after which the metric stops refining its bounds and settles for approximate results.
+     */
+    public void setCommunityMetric(ComponentMetric metric, Duration budget) {
+        this.communityEngine = new ComponentMetricEngine(metric, budget);
+    }
+
+    /**
+     * Sets the number of threads of the analytics on the communities. With more than one thread, the communities are
+     * found and measured in parallel, and the users of each community are listed in the order of the graph rather
+     * than in the order they were reached, so that the result doesn't depend on the number of threads.
+     *
+     * @param parallelism Number of threads, 1 for running the analytics on the calling thread.
+     * @throws ServiceException If the number of threads isn't positive.
+     */
+    public void setAnalyticsParallelism(int parallelism) throws ServiceException {
+        if (parallelism < 1) {
+            throw new ServiceException("The number of threads must be positive!");
+        }
+
+        ForkJoinPool previous = this.analyticsPool;
+        this.analyticsPool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        if (previous != null) {
+            previous.shutdown();
+        }
     }
 
     @Override
     public Tuple<Integer, List<List<UUID>>> communities() {
-        // List, which will contain the members of the most active community.
-        List<List<UUID>> communityMembers = new ArrayList<>();
+        Graph graph = this.buildGraph();
+        ForkJoinPool pool = this.analyticsPool;
+        List<int[]> communities = pool == null ? graph.communities() : graph.communities(pool);
 
-        // Set, which will contain all the users from the app.
-        Set<UUID> userSet = new HashSet<>();
+        // Returning the total number of communities and the most active ones.
+        return new Tuple<>(communities.size(), this.strongest(graph, communities, pool).map(graph::idsOf).getComponents());
+    }
 
-        // List, which will contain the user IDs.
-        ArrayList<UUID> userIds = new ArrayList<>();
+    /**
+     * Finds the most active communities along with their strength, which is exact unless the time budget of the
+     * metric ran out or a community was too large to be measured exactly.
+     *
+     * @return The users of the most active communities and their strength.
+     */
+    public ComponentMetricEngine.Strongest<List<UUID>> mostActiveCommunities() {
+        Graph graph = this.buildGraph();
+        ForkJoinPool pool = this.analyticsPool;
+        List<int[]> communities = pool == null ? graph.communities() : graph.communities(pool);
+        return this.strongest(graph, communities, pool).map(graph::idsOf);
+    }
 
-        // Map, which will contain the friends for each user.
-        HashMap<UUID, List<UUID>> friends = new HashMap<>();
+    private ComponentMetricEngine.Strongest<int[]> strongest(Graph graph, List<int[]> communities, ForkJoinPool pool) {
+        return pool == null ? this.communityEngine.strongest(graph, communities) : this.communityEngine.strongest(graph, communities, pool);
+    }
 
-        // Populating the user IDs list.
-        this.userRepository.getAll().forEach(user -> userIds.add(user.getId()));
+    /**
+     * @return The number of communities, from the index kept up to date by the changes.
+     */
+    public int communityCount() {
+        return this.loadedCommunityIndex().communityCount();
+    }
 
-        // Populating the friend's map with empty lists.
-        userIds.forEach(userId -> friends.put(userId, new ArrayList<>()));
+    /**
+     * Returns the community of a user, identified by one of its users, which may change as the network changes.
+     *
+     * @param userId ID of the user.
+     * @return The ID of the user that identifies the community.
+     * @throws ServiceException If the user does not exist.
+     */
+    public UUID communityOf(UUID userId) throws ServiceException {
+        return this.loadedCommunityIndex().communityOf(userId)
+                .orElseThrow(() -> new ServiceException("The user does not exist!"));
+    }
 
-        // Populating the friend's map with all the friends.
-        userIds.forEach(userId -> {
-            Iterable<User> friendsOf = this.getFriendsOf(userId);
-            friendsOf.forEach(user -> friends.get(userId).add(user.getId()));
-        });
+    /**
+     * Returns the number of users in the community of a user.
+     *
+     * @param userId ID of the user.
+     * @return The size of the community.
+     * @throws ServiceException If the user does not exist.
+     */
+    public int communitySize(UUID userId) throws ServiceException {
+        int size = this.loadedCommunityIndex().communitySize(userId);
+        if (size == 0) {
+            throw new ServiceException("The user does not exist!");
+        }
+        return size;
+    }
 
-        // Initializing a new Graph.
-        Graph graph = new Graph();
-
-        // 'atomic' variable which will contain the community with the most interactions.
-        final int[] max = {-1};
-
-        // Finding the longest path of interactions between users.
-        userIds.forEach(userId -> {
-            if (!userSet.contains(userId)) {
-                // Extracting a component of the graph based on a user.
-                List<UUID> component = graph.runDFS(userId, userSet, friends);
-
-                // Computing the longest path of the component.
-                int path = graph.longestPath(component, friends);
-
-                // Verifying if the maximum length should be updated.
-                if (path > max[0]) {
-                    // Clearing the community list, meaning that a longer path was found.
-                    communityMembers.clear();
-                    communityMembers.add(component);
-                    max[0] = path;
-                } else if (path == max[0]) {
-                    // Adding a new component to the community list.
-                    communityMembers.add(component);
-                }
-            }
-        });
+    /**
+     * @return The number of communities of each size, by ascending size.
+     */
+    public SortedMap<Integer, Integer> communitySizes() {
+        return this.loadedCommunityIndex().communitySizes();
+    }
 
-        // Retrieving the total number of communities.
-        Integer noCommunities = graph.communities(userIds, friends).size();
+    /**
+     * Returns the index of the communities, loading it from the repositories the first time.
+     */
+    private CommunityIndex loadedCommunityIndex() {
+        if (!this.communityIndex.isLoaded()) {
+            this.communityIndex.load(this::buildGraph);
+        }
+        return this.communityIndex;
+    }
 
-        // Returning the total number of communities and all the communities.
-        return new Tuple<>(noCommunities, communityMembers);
+    /**
+     * Builds the graph of the network from a consistent view of the repositories.
+     */
+    private Graph buildGraph() {
+        Tuple<Repository<UUID, User>, Repository<Tuple<UUID, UUID>, Friendship>> view = this.readView();
+
+        // Numbering the users, then building the graph of the network in a single pass over the friendships.
+        UuidDictionary userIds = new UuidDictionary(view.getLeft().size());
+        try (Stream<User> users = view.getLeft().stream()) {
+            users.forEach(user -> userIds.add(user.getId()));
+        }
+        try (Stream<Friendship> friendships = view.getRight().stream()) {
+            return Graph.build(userIds, friendships.map(Friendship::getId));
+        }
     }
 
     @Override
     public List<User> usersWithMinimumFriends(int N) {
+        Tuple<Repository<UUID, User>, Repository<Tuple<UUID, UUID>, Friendship>> view = this.readView();
+
+        // Counting the friends of each user once, instead of once for each comparison.
+        List<User> users;
+        try (Stream<User> userStream = view.getLeft().stream()) {
+            users = userStream.toList();
+        }
+        Map<UUID, Integer> friendCounts = new HashMap<>();
+        users.forEach(user -> friendCounts.put(user.getId(), friendsOf(view.getLeft(), view.getRight(), user.getId()).size()));
+
         // Returning the list of users sorted by: Number of friends -> First name -> Last name, in ascending order.
-        return this.getUsers().stream()
-                .filter(user -> this.getFriendsOf(user.getId()).size() >= N)
+        return users.stream()
+                .filter(user -> friendCounts.getOrDefault(user.getId(), 0) >= N)
                 .sorted(Comparator
-                        .comparingInt((User user) -> this.getFriendsOf(user.getId()).size()).reversed()
+                        .comparingInt((User user) -> friendCounts.getOrDefault(user.getId(), 0)).reversed()
                         .thenComparing(User::getFirstName).reversed()
                         .thenComparing(User::getLastName).reversed())
                 .toList();
@@ -299,29 +495,52 @@ public class Service implements AbstractService<UUID>, Observable<SocialNetworkE
             throw new ServiceException("The user does not exist!");
         }
 
+        Month friendshipMonth;
+        try {
+            friendshipMonth = Month.of(Integer.parseInt(month));
+        } catch (DateTimeException | NumberFormatException exception) {
+            throw new ServiceException("The month must be a number between 1 and 12.", exception);
+        }
+
+        // Answering from the index of the friends by date of the repository, if it has one.
+        if (this.friendshipRepository instanceof FriendshipRepository repository) {
+            return repository.getFriendsFromMonth(userId, friendshipMonth);
+        }
+
         // Retrieving all the friends of the user from the month 'month'.
-        Iterable<Friendship> friendshipIterable = this.friendshipRepository.getAll();
-        return StreamSupport.stream(friendshipIterable.spliterator(), false)
-                .filter(friendship -> friendship.getFriendshipDate().getMonthValue() == Integer.parseInt(month))
-                .filter(friendship -> friendship.getId().getLeft().equals(userId) || friendship.getId().getRight().equals(userId))
-                .map(friendship -> {
-                    Optional<User> user;
-                    if (friendship.getId().getLeft().equals(userId)) {
-                        user = this.userRepository.getOne(friendship.getId().getRight());
-                    } else {
-                        user = this.userRepository.getOne(friendship.getId().getLeft());
-                    }
-                    return user.orElse(null);
-                })
-                .collect(Collectors.toList());
+        try (Stream<Friendship> friendships = this.friendshipRepository.stream()) {
+            return friendships
+                    .filter(friendship -> friendship.getFriendshipDate().getMonth() == friendshipMonth)
+                    .filter(friendship -> friendship.getId().getLeft().equals(userId) || friendship.getId().getRight().equals(userId))
+                    .map(friendship -> {
+                        Optional<User> user;
+                        if (friendship.getId().getLeft().equals(userId)) {
+                            user = this.userRepository.getOne(friendship.getId().getRight());
+                        } else {
+                            user = this.userRepository.getOne(friendship.getId().getLeft());
+                        }
+                        return user.orElse(null);
+                    })
+                    .collect(Collectors.toList());
+        }
     }
 
     @Override
     public List<User> usersWithStringInLastName(String string) throws ServiceException {
+        if (string == null) {
+            throw new ServiceException("The searched string cannot be null.");
+        }
+
         try {
-            // DB implemented operation, that's the explanation for the cast.
-            UserDBRepository userDBRepository = (UserDBRepository) this.userRepository;
-            return userDBRepository.usersLastNameContainsString(string);
+            // Answering from the search index of the repository, if it has one.
+            if (this.userRepository instanceof UserRepository repository) {
+                return repository.usersLastNameContainsString(string);
+            }
+
+            // Checking the last name of every user otherwise.
+            try (Stream<User> users = this.userRepository.stream()) {
+                return users.filter(user -> user.getLastName().contains(string)).collect(Collectors.toList());
+            }
         } catch (RepositoryException repositoryException) {
             throw new ServiceException(repositoryException.getMessage());
         }
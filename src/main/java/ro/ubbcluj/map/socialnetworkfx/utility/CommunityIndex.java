@@ -0,0 +1,401 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Communities of the network, kept up to date on every change instead of being searched again for each question.
+ * The users are kept in a union-find forest, so adding a friendship merges two communities in near constant time,
+ * and the number of communities, the community of a user and the sizes of the communities are answered in constant
+ * or near constant time.
+ * <p>
+ * A forest can't be split, so removing a friendship searches the network from both of its users at once, one user
+ * at a time on each side. If the searches meet, the community stays whole, usually after a few steps. Otherwise the
+ * side that ran out of users first, the smaller one, becomes a community of its own, and the rest of the community
+ * is traversed again to flatten its forest. Removing a user traverses its community again from each of its friends,
+ * unless it had at most one friend.
+ * <p>
+ * The index is loaded from a graph of the network the first time it is needed and follows the changes reported
+ * after that. The changes are idempotent: a change that the loaded graph already had is ignored.
+ */
+public class CommunityIndex {
+    private static final int[] NO_FRIENDS = new int[0];
+    // Mark that no user has, the users never visited being marked with 0.
+    private static final int NO_MARK = -1;
+
+    // Numbers of the users; a removed user gets a new number if it is added back.
+    private final UuidDictionary users = new UuidDictionary();
+    // Parent of each user in the union-find forest, the roots being their own parents.
+    private int[] parents = new int[16];
+    // Number of users in the community of each root.
+    private int[] sizes = new int[16];
+    // Friends of each user, the first degrees[v] of them being used.
+    private int[][] friends = new int[16][];
+    private int[] degrees = new int[16];
+
+    // Number of communities of each size.
+    private final TreeMap<Integer, Integer> sizeCounts = new TreeMap<>();
+    private int communityCount = 0;
+    private boolean loaded = false;
+
+    // Users visited by the searches that follow a removal, marked with the number of the search that visited them.
+    private int[] marks = new int[16];
+    private int searchCount = 0;
+
+    public synchronized boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Loads the communities from a graph of the network, unless they were loaded already.
+     * The changes reported while the graph is built wait for the index to be loaded.
+     *
+     * @param network Builds the graph of the network.
+     */
+    public synchronized void load(Supplier<Graph> network) {
+        if (this.loaded) {
+            return;
+        }
+
+        // The users are numbered as in the graph, since they are added in the same order.
+        Graph graph = network.get();
+        for (int vertex = 0; vertex < graph.vertexCount(); vertex++) {
+            this.addVertex(graph.idOf(vertex));
+        }
+        for (int vertex = 0; vertex < graph.vertexCount(); vertex++) {
+            for (int i = 0; i < graph.degree(vertex); i++) {
+                int friend = graph.friend(vertex, i);
+                if (vertex < friend) {
+                    this.link(vertex, friend);
+                }
+            }
+        }
+        this.loaded = true;
+    }
+
+    /**
+     * Adds a user, as a community of its own.
+     *
+     * @param userId ID of the user.
+     */
+    public synchronized void addUser(UUID userId) {
+        if (this.loaded) {
+            this.addVertex(userId);
+        }
+    }
+
+    /**
+     * Removes a user along with its friendships, splitting its community if the user was the only link between
+     * some of its friends.
+     *
+     * @param userId ID of the user.
+     */
+    public synchronized void removeUser(UUID userId) {
+        int user = this.loaded ? this.users.indexOf(userId) : -1;
+        if (user < 0) {
+            return;
+        }
+
+        int root = this.find(user);
+        int[] userFriends = Arrays.copyOf(this.friends[user], this.degrees[user]);
+        for (int friend : userFriends) {
+            this.detach(friend, user);
+        }
+        this.friends[user] = NO_FRIENDS;
+        this.degrees[user] = 0;
+        this.users.remove(userId);
+        this.countSize(this.sizes[root], -1);
+
+        if (userFriends.length == 0) {
+            this.communityCount--;
+        } else if (userFriends.length == 1 && root != user) {
+            // A user with a single friend doesn't link anyone, and stays in the forest as an inner node.
+            this.sizes[root]--;
+            this.countSize(this.sizes[root], 1);
+        } else {
+            // The friends may have been linked only through the user, so the community is traversed again.
+            this.communityCount--;
+            int search = this.newSearch();
+            for (int friend : userFriends) {
+                if (this.marks[friend] != search) {
+                    this.flatten(this.traverse(friend, search));
+                    this.communityCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a friendship, merging the communities of its users. The friendships of unknown users are ignored.
+     *
+     * @param id1 ID of a user.
+     * @param id2 ID of the other user.
+     */
+    public synchronized void addFriendship(UUID id1, UUID id2) {
+        int user1 = this.loaded ? this.users.indexOf(id1) : -1;
+        int user2 = this.loaded ? this.users.indexOf(id2) : -1;
+        if (user1 >= 0 && user2 >= 0 && user1 != user2 && !this.areFriends(user1, user2)) {
+            this.link(user1, user2);
+        }
+    }
+
+    /**
+     * Removes a friendship, splitting the community of its users if it was the only link between them.
+     *
+     * @param id1 ID of a user.
+     * @param id2 ID of the other user.
+     */
+    public synchronized void removeFriendship(UUID id1, UUID id2) {
+        int user1 = this.loaded ? this.users.indexOf(id1) : -1;
+        int user2 = this.loaded ? this.users.indexOf(id2) : -1;
+        if (user1 < 0 || user2 < 0 || !this.areFriends(user1, user2)) {
+            return;
+        }
+
+        int root = this.find(user1);
+        this.detach(user1, user2);
+        this.detach(user2, user1);
+
+        int[] separated = this.separatedPart(user1, user2);
+        if (separated.length == 0) {
+            return;
+        }
+
+        // The part that ran out becomes a community of its own. The pointers of the rest may go through it,
+        // so the rest is flattened as well, from the user of the friendship that it kept.
+        this.countSize(this.sizes[root], -1);
+        int rest = separated[0] == user1 ? user2 : user1;
+        this.flatten(separated);
+        this.flatten(this.traverse(rest, this.newSearch()));
+        this.communityCount++;
+    }
+
+    /**
+     * @return The number of communities.
+     */
+    public synchronized int communityCount() {
+        return this.communityCount;
+    }
+
+    /**
+     * Returns the community of a user, identified by one of its users. Two users are in the same community when
+     * their communities are identified by the same user, which may change as the network changes.
+     *
+     * @param userId ID of the user.
+     * @return The ID of the user that identifies the community, empty if the user is unknown.
+     */
+    public synchronized Optional<UUID> communityOf(UUID userId) {
+        int user = this.loaded ? this.users.indexOf(userId) : -1;
+        return user < 0 ? Optional.empty() : Optional.of(this.users.uuidOf(this.find(user)));
+    }
+
+    /**
+     * @param userId ID of the user.
+     * @return The number of users in the community of a user, 0 if the user is unknown.
+     */
+    public synchronized int communitySize(UUID userId) {
+        int user = this.loaded ? this.users.indexOf(userId) : -1;
+        return user < 0 ? 0 : this.sizes[this.find(user)];
+    }
+
+    /**
+     * @return The number of communities of each size, by ascending size.
+     */
+    public synchronized SortedMap<Integer, Integer> communitySizes() {
+        return new TreeMap<>(this.sizeCounts);
+    }
+
+    private void addVertex(UUID userId) {
+        int count = this.users.size();
+        int user = this.users.add(userId);
+        if (user < count) {
+            return;
+        }
+
+        if (user == this.parents.length) {
+            int capacity = user * 2;
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+            this.friends = Arrays.copyOf(this.friends, capacity);
+            this.degrees = Arrays.copyOf(this.degrees, capacity);
+            this.marks = Arrays.copyOf(this.marks, capacity);
+        }
+        this.parents[user] = user;
+        this.sizes[user] = 1;
+        this.friends[user] = NO_FRIENDS;
+        this.countSize(1, 1);
+        this.communityCount++;
+    }
+
+    private void link(int user1, int user2) {
+        this.attach(user1, user2);
+        this.attach(user2, user1);
+
+        int root1 = this.find(user1);
+        int root2 = this.find(user2);
+        if (root1 == root2) {
+            return;
+        }
+
+        // Union by size, the smaller community going under the root of the larger one.
+        if (this.sizes[root1] < this.sizes[root2]) {
+            int root = root1;
+            root1 = root2;
+            root2 = root;
+        }
+        this.countSize(this.sizes[root1], -1);
+        this.countSize(this.sizes[root2], -1);
+        this.parents[root2] = root1;
+        this.sizes[root1] += this.sizes[root2];
+        this.countSize(this.sizes[root1], 1);
+        this.communityCount--;
+    }
+
+    /**
+     * Finds the root of the community of a user, halving the path to it.
+     */
+    private int find(int user) {
+        while (this.parents[user] != user) {
+            this.parents[user] = this.parents[this.parents[user]];
+            user = this.parents[user];
+        }
+        return user;
+    }
+
+    private boolean areFriends(int user1, int user2) {
+        // Looking among the friends of the user with fewer of them.
+        if (this.degrees[user1] > this.degrees[user2]) {
+            return this.position(user2, user1) >= 0;
+        }
+        return this.position(user1, user2) >= 0;
+    }
+
+    private int position(int user, int friend) {
+        for (int i = 0; i < this.degrees[user]; i++) {
+            if (this.friends[user][i] == friend) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void attach(int user, int friend) {
+        if (this.degrees[user] == this.friends[user].length) {
+            this.friends[user] = Arrays.copyOf(this.friends[user], Math.max(4, this.degrees[user] * 2));
+        }
+        this.friends[user][this.degrees[user]++] = friend;
+    }
+
+    private void detach(int user, int friend) {
+        int i = this.position(user, friend);
+        this.friends[user][i] = this.friends[user][--this.degrees[user]];
+    }
+
+    /**
+     * Makes a community of users, rooted at the first of them.
+     */
+    private void flatten(int[] community) {
+        for (int user : community) {
+            this.parents[user] = community[0];
+        }
+        this.sizes[community[0]] = community.length;
+        this.countSize(community.length, 1);
+    }
+
+    /**
+     * Searches from the two users of a removed friendship at once, one user at a time on each side, until the
+     * searches meet or one of them runs out of users.
+     *
+     * @return The users reached by the search that ran out, empty if the searches met.
+     */
+    private int[] separatedPart(int user1, int user2) {
+        Search first = new Search(user1, this.newSearch());
+        Search second = new Search(user2, this.newSearch());
+        while (true) {
+            for (Search search : new Search[]{first, second}) {
+                Search other = search == first ? second : first;
+                if (search.isDone()) {
+                    return search.reached();
+                }
+                if (search.step(other.mark)) {
+                    return NO_FRIENDS;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The users of the community of a user, marked as visited by the search.
+     */
+    private int[] traverse(int user, int search) {
+        Search traversal = new Search(user, search);
+        while (!traversal.isDone()) {
+            traversal.step(NO_MARK);
+        }
+        return traversal.reached();
+    }
+
+    private int newSearch() {
+        if (this.searchCount == Integer.MAX_VALUE) {
+            Arrays.fill(this.marks, 0);
+            this.searchCount = 0;
+        }
+        return ++this.searchCount;
+    }
+
+    private void countSize(int size, int change) {
+        this.sizeCounts.merge(size, change, Integer::sum);
+        this.sizeCounts.remove(size, 0);
+    }
+
+    /**
+     * Breadth first search that visits one user at a time.
+     */
+    private final class Search {
+        private final int mark;
+        private int[] queue = new int[16];
+        private int head = 0;
+        private int tail = 0;
+
+        private Search(int source, int mark) {
+            this.mark = mark;
+            this.visit(source);
+        }
+
+        private boolean isDone() {
+            return this.head == this.tail;
+        }
+
+        /**
+         * Visits the friends of the next user.
+         *
+         * @param stopMark Mark of the users at which the search stops.
+         * @return Whether a friend had the stop mark.
+         */
+        private boolean step(int stopMark) {
+            int user = this.queue[this.head++];
+            for (int i = 0; i < degrees[user]; i++) {
+                int friend = friends[user][i];
+                if (marks[friend] == stopMark) {
+                    return true;
+                }
+                if (marks[friend] != this.mark) {
+                    this.visit(friend);
+                }
+            }
+            return false;
+        }
+
+        private void visit(int user) {
+            marks[user] = this.mark;
+            if (this.tail == this.queue.length) {
+                this.queue = Arrays.copyOf(this.queue, this.tail * 2);
+            }
+            this.queue[this.tail++] = user;
+        }
+
+        private int[] reached() {
+            return Arrays.copyOf(this.queue, this.tail);
+        }
+    }
+}
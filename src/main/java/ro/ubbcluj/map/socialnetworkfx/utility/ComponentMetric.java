@@ -0,0 +1,35 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+/**
+ * Metric of the strength of a community, computed on a connected component of the graph of the network.
+ * An implementation returns an exact result when it can within its deadline, and bounds of the result otherwise.
+ * It may measure several components at once, from different threads, each of them with its own traversal.
+ */
+public interface ComponentMetric {
+    /**
+     * @return The name of the metric.
+     */
+    String getName();
+
+    /**
+     * Computes the metric of a component.
+     *
+     * @param traversal     Traversal of the graph of the component, owned by the calling thread.
+     * @param component     Users of the component.
+     * @param deadlineNanos Value of {@link System#nanoTime()} after which the computation stops refining its bounds.
+     * @return The value of the metric, exact or between bounds.
+     */
+    MetricResult measure(Graph.Traversal traversal, int[] component, long deadlineNanos);
+
+    /**
+     * Returns a value that the metric can't exceed on a component, known without computing it,
+     * so that the components which can't be the strongest are skipped. By default, the number of friendships
+     * on a path through every user of the component.
+     *
+     * @param component Users of the component.
+     * @return The upper bound of the metric.
+     */
+    default int upperBound(int[] component) {
+        return component.length - 1;
+    }
+}
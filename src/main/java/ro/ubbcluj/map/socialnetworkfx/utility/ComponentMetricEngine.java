@@ -0,0 +1,229 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Finds the strongest communities of the network according to a metric, within a time budget.
+ * The components are measured from the largest to the smallest, with a single traversal of the graph, and the ones
+ * whose metric can't reach the strongest value found so far are skipped. The metric refines its bounds until the
+ * budget is spent, after which the remaining components get the cheapest bounds it has.
+ * <p>
+ * The components may also be measured in parallel on a fork-join pool. The strongest components are the same
+ * whatever the number of threads, as long as the budget isn't spent.
+ */
+public class ComponentMetricEngine {
+    private final ComponentMetric metric;
+    private final Duration budget;
+
+    /**
+     * Initializes the engine.
+     *
+     * @param metric Metric of the strength of a community.
+     * @param budget Time after which the metric stops refining its bounds.
+     */
+    public ComponentMetricEngine(ComponentMetric metric, Duration budget) {
+        this.metric = Objects.requireNonNull(metric);
+        this.budget = Objects.requireNonNull(budget);
+    }
+
+    public ComponentMetric getMetric() {
+        return this.metric;
+    }
+
+    public Duration getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Finds the strongest components of a graph.
+     *
+     * @param graph      Graph of the network.
+     * @param components Connected components of the graph.
+     * @return The strongest components, in the order they were given, along with their strength.
+     */
+    public Strongest<int[]> strongest(Graph graph, List<int[]> components) {
+        long deadlineNanos = this.deadline();
+        Integer[] order = largestFirst(components);
+
+        Graph.Traversal traversal = graph.newTraversal();
+        MetricResult[] results = new MetricResult[components.size()];
+        int best = -1;
+        for (int i : order) {
+            int[] component = components.get(i);
+            if (this.metric.upperBound(component) < best) {
+                continue;
+            }
+            results[i] = this.metric.measure(traversal, component, deadlineNanos);
+            best = Math.max(best, results[i].getValue());
+        }
+
+        return Strongest.of(components, results, best);
+    }
+
+    /**
+     * Finds the strongest components of a graph, measuring them in parallel. The components are split between the
+     * threads largest first, in ranges halved until they hold few users, so that the threads that finished their
+     * components steal the ranges of the busy ones. Each thread reuses a traversal of the graph from one component
+     * to the next.
+     *
+     * @param graph      Graph of the network.
+     * @param components Connected components of the graph.
+     * @param pool       Pool measuring the components.
+     * @return The strongest components, in the order they were given, along with their strength.
+     */
+    public Strongest<int[]> strongest(Graph graph, List<int[]> components, ForkJoinPool pool) {
+        long deadlineNanos = this.deadline();
+        Integer[] order = largestFirst(components);
+
+        // Number of users of the components before each position of the order, which gives the work of a range.
+        long[] work = new long[order.length + 1];
+        for (int i = 0; i < order.length; i++) {
+            work[i + 1] = work[i] + components.get(order[i]).length;
+        }
+
+        MetricResult[] results = new MetricResult[components.size()];
+        AtomicInteger best = new AtomicInteger(-1);
+        ConcurrentLinkedQueue<Graph.Traversal> traversals = new ConcurrentLinkedQueue<>();
+        pool.invoke(new MeasureTask(0, order.length, (from, to) -> {
+            Graph.Traversal traversal = Objects.requireNonNullElseGet(traversals.poll(), graph::newTraversal);
+            for (int position = from; position < to; position++) {
+                int i = order[position];
+                int[] component = components.get(i);
+                if (this.metric.upperBound(component) < best.get()) {
+                    continue;
+                }
+                results[i] = this.metric.measure(traversal, component, deadlineNanos);
+                best.accumulateAndGet(results[i].getValue(), Math::max);
+            }
+            traversals.add(traversal);
+        }, work));
+
+        return Strongest.of(components, results, best.get());
+    }
+
+    private long deadline() {
+        long start = System.nanoTime();
+        return start + Math.min(this.budget.toNanos(), Long.MAX_VALUE - start);
+    }
+
+    /**
+     * Orders the components largest first, since they usually are the strongest and let the others be skipped.
+     */
+    private static Integer[] largestFirst(List<int[]> components) {
+        Integer[] order = new Integer[components.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> components.get(i).length).reversed());
+        return order;
+    }
+
+    /**
+     * Measures a range of the components, split in halves while it holds more than a grain of users.
+     */
+    @SuppressWarnings("serial") // The tasks are never serialized.
+    private static final class MeasureTask extends RecursiveAction {
+        // Number of users under which a range is measured by a single thread.
+        private static final long GRAIN = 1 << 14;
+
+        private final int from;
+        private final int to;
+        private final RangeAction action;
+        private final long[] work;
+
+        private MeasureTask(int from, int to, RangeAction action, long[] work) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= 1 || this.work[this.to] - this.work[this.from] <= GRAIN) {
+                this.action.run(this.from, this.to);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new MeasureTask(this.from, middle, this.action, this.work), new MeasureTask(middle, this.to, this.action, this.work));
+        }
+    }
+
+    private interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Strongest components found by the engine.
+     * The strength is exact when the metric of the strongest components is, and the components are certain when,
+     * in addition, no other component may reach it.
+     *
+     * @param <C> Type of the components.
+     */
+    public static final class Strongest<C> {
+        private final List<C> components;
+        private final MetricResult strength;
+        private final boolean certain;
+
+        private Strongest(List<C> components, MetricResult strength, boolean certain) {
+            this.components = components;
+            this.strength = strength;
+            this.certain = certain;
+        }
+
+        private static Strongest<int[]> of(List<int[]> components, MetricResult[] results, int best) {
+            List<int[]> strongest = new ArrayList<>();
+            int upperBound = Math.max(best, 0);
+            boolean certain = true;
+            for (int i = 0; i < results.length; i++) {
+                MetricResult result = results[i];
+                if (result == null) {
+                    continue;
+                }
+                upperBound = Math.max(upperBound, result.getUpperBound());
+                if (result.getValue() == best) {
+                    strongest.add(components.get(i));
+                    certain &= result.isExact();
+                } else {
+                    certain &= result.getUpperBound() < best;
+                }
+            }
+            return new Strongest<>(strongest, MetricResult.between(Math.max(best, 0), upperBound), certain);
+        }
+
+        /**
+         * Converts the components, keeping their strength.
+         *
+         * @param mapper Function converting a component.
+         * @param <D>    Type of the converted components.
+         * @return The converted strongest components.
+         */
+        public <D> Strongest<D> map(Function<C, D> mapper) {
+            return new Strongest<>(this.components.stream().map(mapper).toList(), this.strength, this.certain);
+        }
+
+        public List<C> getComponents() {
+            return this.components;
+        }
+
+        /**
+         * @return The value of the metric on the strongest components, or its bounds if it isn't exact.
+         */
+        public MetricResult getStrength() {
+            return this.strength;
+        }
+
+        /**
+         * @return Whether the components are the strongest ones for sure and their strength is exact.
+         */
+        public boolean isExact() {
+            return this.certain && this.strength.isExact();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+/**
+ * Diameter of a component, the greatest distance between two of its users.
+ * Small components are measured exactly, by a breadth first search from every user. Large components are measured
+ * with iFUB: a double sweep gives a lower bound, then the users are searched from the farthest level of a central
+ * user inwards, until the levels left can't hold a longer distance than the one found. Both refine their bounds
+ * until the deadline.
+ */
+public class DiameterMetric implements ComponentMetric {
+    // Number of users up to which a component is searched from every user.
+    public static final int DEFAULT_EXACT_LIMIT = 1_000;
+
+    private final int exactLimit;
+
+    public DiameterMetric() {
+        this(DEFAULT_EXACT_LIMIT);
+    }
+
+    /**
+     * Initializes the diameter metric.
+     *
+     * @param exactLimit Number of users up to which a component is searched from every user.
+     */
+    public DiameterMetric(int exactLimit) {
+        this.exactLimit = exactLimit;
+    }
+
+    @Override
+    public String getName() {
+        return "diameter";
+    }
+
+    @Override
+    public MetricResult measure(Graph.Traversal traversal, int[] component, long deadlineNanos) {
+        if (component.length <= 2) {
+            return MetricResult.exact(component.length - 1);
+        }
+        return component.length <= this.exactLimit
+                ? allSources(traversal, component, deadlineNanos)
+                : iFub(traversal, component, deadlineNanos);
+    }
+
+    /**
+     * Searches the component from every user, the diameter being the greatest eccentricity.
+     */
+    private static MetricResult allSources(Graph.Traversal traversal, int[] component, long deadlineNanos) {
+        int lower = 0;
+        int upper = component.length - 1;
+        for (int source : component) {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                return MetricResult.between(lower, upper);
+            }
+
+            // The distance between two users is at most the sum of their distances to any user.
+            int eccentricity = traversal.bfs(source);
+            lower = Math.max(lower, eccentricity);
+            upper = Math.min(upper, 2 * eccentricity);
+        }
+        return MetricResult.exact(lower);
+    }
+
+    /**
+     * Measures the component with the iFUB algorithm.
+     */
+    private static MetricResult iFub(Graph.Traversal traversal, int[] component, long deadlineNanos) {
+        Graph graph = traversal.getGraph();
+
+        // Double sweep from a user of highest degree: the user farthest from it is searched in turn.
+        int start = component[0];
+        for (int vertex : component) {
+            if (graph.degree(vertex) > graph.degree(start)) {
+                start = vertex;
+            }
+        }
+        traversal.bfs(start);
+        int lower = traversal.bfs(traversal.farthest());
+
+        // The middle of the path found by the sweep is a central user, from which the levels are built.
+        int center = traversal.farthest();
+        for (int i = 0; i < lower / 2; i++) {
+            center = traversal.parent(center);
+        }
+        int eccentricity = traversal.bfs(center);
+        lower = Math.max(lower, eccentricity);
+        int upper = Math.min(component.length - 1, 2 * eccentricity);
+
+        // Keeping the users by level, since the searches below reuse the traversal.
+        int[] byDistance = new int[traversal.visitedCount()];
+        int[] levelStarts = new int[eccentricity + 2];
+        for (int i = 0; i < byDistance.length; i++) {
+            byDistance[i] = traversal.visited(i);
+            levelStarts[traversal.distance(byDistance[i]) + 1] = i + 1;
+        }
+
+        // Any two users within the levels below i are at most 2(i - 1) apart, so once the users of the levels
+        // from i outwards were searched, the diameter is either found or at most 2(i - 1).
+        for (int level = eccentricity; level > 0 && upper > lower; level--) {
+            for (int i = levelStarts[level]; i < levelStarts[level + 1]; i++) {
+                if (System.nanoTime() - deadlineNanos > 0) {
+                    return MetricResult.between(lower, upper);
+                }
+                lower = Math.max(lower, traversal.bfs(byDistance[i]));
+            }
+            upper = Math.max(lower, Math.min(upper, 2 * (level - 1)));
+        }
+        return MetricResult.exact(lower);
+    }
+}
@@ -1,104 +1,455 @@
 package ro.ubbcluj.map.socialnetworkfx.utility;
 
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
 
+/**
+ * Undirected graph of the network, kept in compressed sparse row form.
+ * The users are numbered densely through a dictionary, and the friends of user {@code v} are
+ * {@code targets[offsets[v]]} to {@code targets[offsets[v + 1] - 1]}, so the graph costs two ints for each
+ * friendship and the traversals read the friends of a user from consecutive memory.
+ */
 public class Graph {
+    // Numbers of the users.
+    private final UuidDictionary users;
+    // Position of the first friend of each user in the targets, followed by the number of targets.
+    private final int[] offsets;
+    // Friends of the users, grouped by user.
+    private final int[] targets;
+
+    private Graph(UuidDictionary users, int[] offsets, int[] targets) {
+        this.users = users;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
 
     /**
-     * Lee algorithm to calculate the longest path from a source to the rest of the members.
+     * Builds the graph in a single pass over the friendships.
+     * The friendships are first collected as pairs of numbers, then placed in the rows of their users.
      *
-     * @param source  Source from where we compute the longest path.
-     * @param users   Set of users.
-     * @param friends Collection of User/Friends_of_User
-     * @return Longest path from source to all other members in the network.
+     * @param users       Numbers of the users, which the graph keeps.
+     * @param friendships IDs of the friendships, each of them once; the friendships of unknown users are skipped.
+     * @return The graph of the network.
      */
-    private int lee(UUID source, Set<UUID> users, HashMap<UUID, List<UUID>> friends) {
-        final int[] max = {-1};
-
-        for (UUID uuid : friends.get(source)) {
-            if (!users.contains(uuid)) {
-                users.add(uuid);
-                int tempPath = lee(uuid, users, friends);
-                if (tempPath > max[0]) {
-                    max[0] = tempPath;
-                }
-                users.remove(uuid);
+    public static Graph build(UuidDictionary users, Stream<Tuple<UUID, UUID>> friendships) {
+        int userCount = users.size();
+
+        // Collecting the friendships between known users, counting the friends of each user.
+        int[] degrees = new int[userCount + 1];
+        IntList sources = new IntList();
+        IntList destinations = new IntList();
+        friendships.forEach(friendship -> {
+            int left = users.indexOf(friendship.getLeft());
+            int right = users.indexOf(friendship.getRight());
+            if (left >= 0 && right >= 0) {
+                sources.add(left);
+                destinations.add(right);
+                degrees[left]++;
+                degrees[right]++;
             }
+        });
+
+        // Turning the degrees into the offsets of the rows, then filling each row from its start.
+        int[] offsets = new int[userCount + 1];
+        for (int v = 0; v < userCount; v++) {
+            offsets[v + 1] = offsets[v] + degrees[v];
+        }
+        int[] next = Arrays.copyOf(offsets, userCount);
+        int[] targets = new int[offsets[userCount]];
+        for (int i = 0; i < sources.size(); i++) {
+            int left = sources.get(i);
+            int right = destinations.get(i);
+            targets[next[left]++] = right;
+            targets[next[right]++] = left;
         }
 
-        return max[0] + 1;
+        return new Graph(users, offsets, targets);
+    }
+
+    /**
+     * @return The number of users.
+     */
+    public int vertexCount() {
+        return this.users.size();
+    }
+
+    /**
+     * @return The number of friendships.
+     */
+    public int edgeCount() {
+        return this.targets.length / 2;
+    }
+
+    /**
+     * Returns the number of a user.
+     *
+     * @param userId ID of the user.
+     * @return The number of the user, -1 if the user isn't in the graph.
+     */
+    public int indexOf(UUID userId) {
+        return this.users.indexOf(userId);
     }
 
     /**
-     * Longest path from a source to the rest of the members.
+     * Returns the ID of a user.
      *
-     * @param source  Source where we start the computing.
-     * @param friends Collection of User/Friends_of_User
-     * @return Longest path from source to the rest of the members.
+     * @param vertex Number of the user.
+     * @return The ID of the user.
      */
-    private int longestPathFromSource(UUID source, HashMap<UUID, List<UUID>> friends) {
-        Set<UUID> set = new HashSet<>();
-        return lee(source, set, friends);
+    public UUID idOf(int vertex) {
+        return this.users.uuidOf(vertex);
     }
 
     /**
-     * Longest path of the whole graph on the network.
+     * Returns the IDs of several users.
      *
-     * @param users   Users from the network.
-     * @param friends Collection of User/Friends_of_User
-     * @return Longest path in the graph.
+     * @param vertices Numbers of the users.
+     * @return The IDs of the users, in the same order.
      */
-    public int longestPath(Iterable<UUID> users, HashMap<UUID, List<UUID>> friends) {
-        final int[] max = {0};
+    public List<UUID> idsOf(int[] vertices) {
+        List<UUID> ids = new ArrayList<>(vertices.length);
+        for (int vertex : vertices) {
+            ids.add(this.users.uuidOf(vertex));
+        }
+        return ids;
+    }
 
-        for (UUID uuid : users) {
-            int path = this.longestPathFromSource(uuid, friends);
-            if (max[0] < path) {
-                max[0] = path;
+    /**
+     * @return The number of friends of a user.
+     */
+    public int degree(int vertex) {
+        return this.offsets[vertex + 1] - this.offsets[vertex];
+    }
+
+    /**
+     * Returns a friend of a user.
+     *
+     * @param vertex Number of the user.
+     * @param i      Position of the friend, less than the degree of the user.
+     * @return The number of the friend.
+     */
+    public int friend(int vertex, int i) {
+        return this.targets[this.offsets[vertex] + i];
+    }
+
+    /**
+     * Creates the state of the breadth first searches on the graph, reused from one search to the next,
+     * so that a search costs the size of the component it visits. A traversal is used by one thread at a time.
+     *
+     * @return A new traversal of the graph.
+     */
+    public Traversal newTraversal() {
+        return new Traversal();
+    }
+
+    /**
+     * Depth first search on the network, visiting the friends of each user in order, without recursion.
+     *
+     * @param source  User from where the search starts.
+     * @param visited Users visited so far, updated with the users of the component.
+     * @return The users of the component of the source, in the order they were visited.
+     */
+    public int[] runDFS(int source, boolean[] visited) {
+        IntList component = new IntList();
+        // Users on the path of the search, along with the position of the next friend to visit for each of them.
+        IntList stack = new IntList();
+        IntList nextEdges = new IntList();
+
+        visited[source] = true;
+        component.add(source);
+        stack.add(source);
+        nextEdges.add(this.offsets[source]);
+
+        while (stack.size() > 0) {
+            int top = stack.size() - 1;
+            int vertex = stack.get(top);
+            int edge = nextEdges.get(top);
+
+            if (edge == this.offsets[vertex + 1]) {
+                stack.removeLast();
+                nextEdges.removeLast();
+                continue;
+            }
+            nextEdges.set(top, edge + 1);
+
+            int friend = this.targets[edge];
+            if (!visited[friend]) {
+                visited[friend] = true;
+                component.add(friend);
+                stack.add(friend);
+                nextEdges.add(this.offsets[friend]);
             }
         }
 
-        return max[0];
+        return component.toArray();
     }
 
     /**
-     * DFS on the network.
+     * Finds the communities of the network, which are the connected components of the graph, using DFS.
      *
-     * @param userId  UserId from where we start the search.
-     * @param users   Set of users.
-     * @param friends Friends with the user with userId.
-     * @return List of a community of users.
+     * @return The users of each community, the communities being ordered by their first user.
      */
-    public List<UUID> runDFS(UUID userId, Set<UUID> users, HashMap<UUID, List<UUID>> friends) {
-        List<UUID> list = new ArrayList<>();
-        list.add(userId);
-        users.add(userId);
+    public List<int[]> communities() {
+        boolean[] visited = new boolean[this.vertexCount()];
+        List<int[]> communities = new ArrayList<>();
 
-        friends.get(userId).forEach(_userId -> {
-            if (!users.contains(_userId)) {
-                List<UUID> uuidFriends = runDFS(_userId, users, friends);
-                list.addAll(uuidFriends);
+        for (int vertex = 0; vertex < this.vertexCount(); vertex++) {
+            if (!visited[vertex]) {
+                communities.add(this.runDFS(vertex, visited));
             }
-        });
+        }
 
-        return list;
+        return communities;
     }
 
     /**
-     * Calculates the number of communities from a given graph using DFS.
+     * Finds the communities of the network in parallel, in the manner of Shiloach and Vishkin: the friendships are
+     * hooked onto a shared union-find forest by compare-and-set, the larger root always going under the smaller one,
+     * and the paths are halved as they are followed. The hooks never form a cycle, and the root of each community
+     * ends as its smallest user, so the result doesn't depend on the order in which the threads hooked the friendships.
      *
-     * @return Each user with its community number.
+     * @param pool Pool running the search.
+     * @return The users of each community in ascending order, the communities being ordered by their first user.
      */
-    public List<List<UUID>> communities(Iterable<UUID> users, HashMap<UUID, List<UUID>> friends) {
-        Set<UUID> set = new HashSet<>();
-        List<List<UUID>> list = new ArrayList<>();
+    public List<int[]> communities(ForkJoinPool pool) {
+        int userCount = this.vertexCount();
+        int grain = Math.max(1024, userCount / (pool.getParallelism() * 8));
 
-        users.forEach(userId -> {
-            if (!set.contains(userId)) {
-                list.add(runDFS(userId, set, friends));
+        AtomicIntegerArray parents = new AtomicIntegerArray(userCount);
+        pool.invoke(new RangeTask(0, userCount, grain, (from, to) -> {
+            for (int vertex = from; vertex < to; vertex++) {
+                parents.set(vertex, vertex);
             }
-        });
+        }));
+        pool.invoke(new RangeTask(0, userCount, grain, (from, to) -> {
+            for (int vertex = from; vertex < to; vertex++) {
+                // Each friendship is in the rows of both its users, and is hooked from the row of the larger one.
+                for (int edge = this.offsets[vertex]; edge < this.offsets[vertex + 1]; edge++) {
+                    if (this.targets[edge] < vertex) {
+                        hook(parents, vertex, this.targets[edge]);
+                    }
+                }
+            }
+        }));
+        int[] roots = new int[userCount];
+        pool.invoke(new RangeTask(0, userCount, grain, (from, to) -> {
+            for (int vertex = from; vertex < to; vertex++) {
+                roots[vertex] = find(parents, vertex);
+            }
+        }));
+
+        // Grouping the users by root, in a single ascending pass.
+        int[] sizes = new int[userCount];
+        for (int vertex = 0; vertex < userCount; vertex++) {
+            sizes[roots[vertex]]++;
+        }
+        int[][] members = new int[userCount][];
+        List<int[]> communities = new ArrayList<>();
+        for (int vertex = 0; vertex < userCount; vertex++) {
+            int root = roots[vertex];
+            if (root == vertex) {
+                members[root] = new int[sizes[root]];
+                communities.add(members[root]);
+                sizes[root] = 0;
+            }
+            members[root][sizes[root]++] = vertex;
+        }
+        return communities;
+    }
 
-        return list;
+    private static void hook(AtomicIntegerArray parents, int vertex, int friend) {
+        while (true) {
+            int root1 = find(parents, vertex);
+            int root2 = find(parents, friend);
+            if (root1 == root2) {
+                return;
+            }
+            // Hooking the larger root under the smaller one, unless another thread hooked it in the meantime.
+            if (root1 > root2 ? parents.compareAndSet(root1, root1, root2) : parents.compareAndSet(root2, root2, root1)) {
+                return;
+            }
+        }
+    }
+
+    private static int find(AtomicIntegerArray parents, int vertex) {
+        while (true) {
+            int parent = parents.get(vertex);
+            if (parent == vertex) {
+                return vertex;
+            }
+            int grandparent = parents.get(parent);
+            if (grandparent != parent) {
+                parents.compareAndSet(vertex, parent, grandparent);
+            }
+            vertex = parent;
+        }
+    }
+
+    /**
+     * Work on the users of a range, split in halves until they are smaller than a grain, so that idle threads steal
+     * the halves of the busy ones.
+     */
+    @SuppressWarnings("serial") // The tasks are never serialized.
+    private static final class RangeTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final RangeAction action;
+
+        private RangeTask(int from, int to, int grain, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.grain) {
+                this.action.run(this.from, this.to);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new RangeTask(this.from, middle, this.grain, this.action), new RangeTask(middle, this.to, this.grain, this.action));
+        }
+    }
+
+    private interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Breadth first searches on the graph, sharing their arrays.
+     */
+    public final class Traversal {
+        // Distance of each user from the source of the last search, -1 for the users it didn't visit.
+        private final int[] distances;
+        // User from which each user was reached in the last search.
+        private final int[] parents;
+        // Users visited by the last search, in the order they were visited.
+        private final int[] queue;
+        private int visitedCount = 0;
+
+        private Traversal() {
+            this.distances = new int[vertexCount()];
+            this.parents = new int[vertexCount()];
+            this.queue = new int[vertexCount()];
+            Arrays.fill(this.distances, -1);
+        }
+
+        public Graph getGraph() {
+            return Graph.this;
+        }
+
+        /**
+         * Runs a breadth first search from a user, forgetting the previous search.
+         *
+         * @param source User from where the search starts.
+         * @return The eccentricity of the source, which is the distance to the farthest user it reaches.
+         */
+        public int bfs(int source) {
+            for (int i = 0; i < this.visitedCount; i++) {
+                this.distances[this.queue[i]] = -1;
+            }
+
+            this.distances[source] = 0;
+            this.parents[source] = source;
+            this.queue[0] = source;
+            int head = 0;
+            int tail = 1;
+            while (head < tail) {
+                int vertex = this.queue[head++];
+                int next = this.distances[vertex] + 1;
+                for (int edge = offsets[vertex]; edge < offsets[vertex + 1]; edge++) {
+                    int friend = targets[edge];
+                    if (this.distances[friend] < 0) {
+                        this.distances[friend] = next;
+                        this.parents[friend] = vertex;
+                        this.queue[tail++] = friend;
+                    }
+                }
+            }
+
+            this.visitedCount = tail;
+            return this.distances[this.queue[tail - 1]];
+        }
+
+        /**
+         * @return The number of users visited by the last search.
+         */
+        public int visitedCount() {
+            return this.visitedCount;
+        }
+
+        /**
+         * Returns a user visited by the last search, the users being ordered by their distance from the source.
+         *
+         * @param i Position of the user, less than the number of visited users.
+         * @return The number of the user.
+         */
+        public int visited(int i) {
+            return this.queue[i];
+        }
+
+        /**
+         * @return The distance of a user from the source of the last search, -1 if it wasn't visited.
+         */
+        public int distance(int vertex) {
+            return this.distances[vertex];
+        }
+
+        /**
+         * @return The user from which a user was reached in the last search, the source for the source itself.
+         */
+        public int parent(int vertex) {
+            return this.parents[vertex];
+        }
+
+        /**
+         * @return The last user visited by the last search, which is one of the farthest from the source.
+         */
+        public int farthest() {
+            return this.queue[this.visitedCount - 1];
+        }
+    }
+
+    /**
+     * Growable list of primitive ints.
+     */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        private void add(int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        private int get(int index) {
+            return this.values[index];
+        }
+
+        private void set(int index, int value) {
+            this.values[index] = value;
+        }
+
+        private void removeLast() {
+            this.size--;
+        }
+
+        private int size() {
+            return this.size;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
     }
 }
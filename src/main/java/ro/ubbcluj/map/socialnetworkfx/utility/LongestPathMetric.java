@@ -0,0 +1,112 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+/**
+ * Length of the longest path without repeated users in a component, the metric the communities were first ranked by.
+ * The problem is NP-hard in general, so it is computed exactly only where that is cheap: on trees, where the double
+ * sweep finds it in linear time, and on components small enough for a search over the subsets of their users.
+ * Other components get the length of a shortest path found by a double sweep as lower bound.
+ */
+public class LongestPathMetric implements ComponentMetric {
+    // Number of users up to which a component is searched exhaustively.
+    public static final int DEFAULT_SEARCH_LIMIT = 16;
+
+    private final int searchLimit;
+
+    public LongestPathMetric() {
+        this(DEFAULT_SEARCH_LIMIT);
+    }
+
+    /**
+     * Initializes the longest path metric.
+     *
+     * @param searchLimit Number of users up to which a component is searched exhaustively, at most 24.
+     */
+    public LongestPathMetric(int searchLimit) {
+        if (searchLimit > 24) {
+            throw new IllegalArgumentException("The search limit cannot exceed 24 users!");
+        }
+        this.searchLimit = searchLimit;
+    }
+
+    @Override
+    public String getName() {
+        return "longest path";
+    }
+
+    @Override
+    public MetricResult measure(Graph.Traversal traversal, int[] component, long deadlineNanos) {
+        if (component.length <= 2) {
+            return MetricResult.exact(component.length - 1);
+        }
+
+        // The farthest user from any user ends a longest path of a tree, from which the farthest user ends it.
+        traversal.bfs(component[0]);
+        int sweep = traversal.bfs(traversal.farthest());
+        if (isTree(traversal.getGraph(), component)) {
+            return MetricResult.exact(sweep);
+        }
+
+        if (component.length <= this.searchLimit) {
+            return search(traversal.getGraph(), component, sweep, deadlineNanos);
+        }
+        return MetricResult.between(sweep, component.length - 1);
+    }
+
+    private static boolean isTree(Graph graph, int[] component) {
+        long degrees = 0;
+        for (int vertex : component) {
+            degrees += graph.degree(vertex);
+        }
+        return degrees / 2 == component.length - 1;
+    }
+
+    /**
+     * Finds the longest path by going through the subsets of users in ascending order, keeping for each subset
+     * the users where a path through exactly that subset can end.
+     */
+    private static MetricResult search(Graph graph, int[] component, int lower, long deadlineNanos) {
+        int n = component.length;
+
+        // Friends of each user, as a set of positions in the component.
+        int[] adjacency = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < graph.degree(component[i]); k++) {
+                int friend = graph.friend(component[i], k);
+                for (int j = 0; j < n; j++) {
+                    if (component[j] == friend) {
+                        adjacency[i] |= 1 << j;
+                        break;
+                    }
+                }
+            }
+        }
+
+        int[] ends = new int[1 << n];
+        for (int i = 0; i < n; i++) {
+            ends[1 << i] = 1 << i;
+        }
+
+        int best = lower;
+        for (int subset = 1; subset < ends.length; subset++) {
+            if ((subset & 0xFFF) == 0 && System.nanoTime() - deadlineNanos > 0) {
+                return MetricResult.between(best, n - 1);
+            }
+            if (ends[subset] == 0) {
+                continue;
+            }
+
+            best = Math.max(best, Integer.bitCount(subset) - 1);
+            if (best == n - 1) {
+                break;
+            }
+            for (int remaining = ends[subset]; remaining != 0; remaining &= remaining - 1) {
+                int end = Integer.numberOfTrailingZeros(remaining);
+                for (int next = adjacency[end] & ~subset; next != 0; next &= next - 1) {
+                    int friend = Integer.numberOfTrailingZeros(next);
+                    ends[subset | 1 << friend] |= 1 << friend;
+                }
+            }
+        }
+        return MetricResult.exact(best);
+    }
+}
@@ -0,0 +1,54 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+/**
+ * Value of a metric of a component of the network, which is either exact or known to lie between two bounds.
+ */
+public final class MetricResult {
+    private final int value;
+    private final int upperBound;
+
+    private MetricResult(int value, int upperBound) {
+        this.value = value;
+        this.upperBound = upperBound;
+    }
+
+    /**
+     * @param value Exact value of the metric.
+     * @return The exact result.
+     */
+    public static MetricResult exact(int value) {
+        return new MetricResult(value, value);
+    }
+
+    /**
+     * @param lowerBound Value that the metric reaches, found so far.
+     * @param upperBound Value that the metric doesn't exceed.
+     * @return The result between the bounds, which is exact if they are equal.
+     */
+    public static MetricResult between(int lowerBound, int upperBound) {
+        if (upperBound < lowerBound) {
+            throw new IllegalArgumentException("The upper bound cannot be less than the lower bound!");
+        }
+        return new MetricResult(lowerBound, upperBound);
+    }
+
+    /**
+     * @return The value of the metric if it is exact, its lower bound otherwise.
+     */
+    public int getValue() {
+        return this.value;
+    }
+
+    public int getUpperBound() {
+        return this.upperBound;
+    }
+
+    public boolean isExact() {
+        return this.value == this.upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return this.isExact() ? String.valueOf(this.value) : this.value + ".." + this.upperBound;
+    }
+}
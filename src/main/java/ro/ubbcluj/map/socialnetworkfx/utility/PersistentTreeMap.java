@@ -0,0 +1,241 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable sorted map, kept as an AVL tree. Adding or removing a key returns a new map that shares all the
+ * nodes that didn't change with the old one, so a change costs a logarithmic number of new nodes and every
+ * version of the map stays valid as long as it is referenced.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+public final class PersistentTreeMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> root;
+    private final int size;
+
+    private PersistentTreeMap(Comparator<? super K> comparator, Node<K, V> root, int size) {
+        this.comparator = comparator;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns an empty map.
+     *
+     * @param comparator Order of the keys, null for their natural order.
+     * @param <K>        Type of the keys.
+     * @param <V>        Type of the values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentTreeMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentTreeMap<>(comparator != null ? comparator : (key1, key2) -> ((Comparable<? super K>) key1).compareTo(key2), null, 0);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key Key to look up.
+     * @return The value of the key, null if the key is missing.
+     */
+    public V get(K key) {
+        Node<K, V> node = this.root;
+        while (node != null) {
+            int comparison = this.comparator.compare(key, node.key);
+            if (comparison == 0) {
+                return node.value;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    public boolean containsKey(K key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * Returns a map where a key has a given value.
+     *
+     * @param key   Key to set.
+     * @param value Value of the key, not null.
+     * @return The new map, this one being unchanged.
+     */
+    public PersistentTreeMap<K, V> put(K key, V value) {
+        boolean[] added = {false};
+        Node<K, V> root = this.put(this.root, key, value, added);
+        return new PersistentTreeMap<>(this.comparator, root, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a map without a key.
+     *
+     * @param key Key to remove.
+     * @return The new map, or this one if the key is missing.
+     */
+    public PersistentTreeMap<K, V> remove(K key) {
+        if (!this.containsKey(key)) {
+            return this;
+        }
+        return new PersistentTreeMap<>(this.comparator, this.remove(this.root, key), this.size - 1);
+    }
+
+    /**
+     * Iterates the entries in ascending order of the keys.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return this.iterator(null, false);
+    }
+
+    /**
+     * Iterates the entries whose keys come after a key.
+     *
+     * @param afterKey   Key after which the iteration starts, excluded, null to start with the first key.
+     * @param descending true to iterate in descending order of the keys, false for ascending order.
+     * @return The iterator of the entries.
+     */
+    public Iterator<Map.Entry<K, V>> iterator(K afterKey, boolean descending) {
+        // The stack holds the nodes whose key and right (or left, if descending) subtree are left to visit.
+        Deque<Node<K, V>> stack = new ArrayDeque<>();
+        for (Node<K, V> node = this.root; node != null; ) {
+            int comparison = afterKey == null ? (descending ? 1 : -1) : this.comparator.compare(afterKey, node.key);
+            if (descending ? comparison > 0 : comparison < 0) {
+                stack.push(node);
+                node = descending ? node.right : node.left;
+            } else {
+                node = descending ? node.left : node.right;
+            }
+        }
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<K, V> next = stack.pop();
+                for (Node<K, V> node = descending ? next.left : next.right; node != null; node = descending ? node.right : node.left) {
+                    stack.push(node);
+                }
+                return Map.entry(next.key, next.value);
+            }
+        };
+    }
+
+    /**
+     * Streams the values in ascending order of the keys.
+     */
+    public Stream<V> values() {
+        return StreamSupport.stream(Spliterators.spliterator(this.iterator(), this.size, Spliterator.ORDERED | Spliterator.SIZED), false)
+                .map(Map.Entry::getValue);
+    }
+
+    /**
+     * Streams the keys in ascending order.
+     */
+    public Stream<K> keys() {
+        return StreamSupport.stream(Spliterators.spliterator(this.iterator(), this.size, Spliterator.ORDERED | Spliterator.SIZED), false)
+                .map(Map.Entry::getKey);
+    }
+
+    private Node<K, V> put(Node<K, V> node, K key, V value, boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return new Node<>(key, value, null, null);
+        }
+
+        int comparison = this.comparator.compare(key, node.key);
+        if (comparison == 0) {
+            return node.value == value ? node : new Node<>(key, value, node.left, node.right);
+        }
+        if (comparison < 0) {
+            return balance(node.key, node.value, this.put(node.left, key, value, added), node.right);
+        }
+        return balance(node.key, node.value, node.left, this.put(node.right, key, value, added));
+    }
+
+    private Node<K, V> remove(Node<K, V> node, K key) {
+        int comparison = this.comparator.compare(key, node.key);
+        if (comparison < 0) {
+            return balance(node.key, node.value, this.remove(node.left, key), node.right);
+        }
+        if (comparison > 0) {
+            return balance(node.key, node.value, node.left, this.remove(node.right, key));
+        }
+
+        // Replacing the removed node by the smallest node of its right subtree.
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<K, V> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, this.remove(node.right, successor.key));
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Creates a node from its parts, rotating them if the heights of the subtrees differ by more than one.
+     */
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            return new Node<>(left.right.key, left.right.value,
+                    new Node<>(left.key, left.value, left.left, left.right.left),
+                    new Node<>(key, value, left.right.right, right));
+        }
+        if (difference < -1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            return new Node<>(right.left.key, right.left.value,
+                    new Node<>(key, value, left, right.left.left),
+                    new Node<>(right.key, right.value, right.left.right, right.right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final Node<K, V> left;
+        private final Node<K, V> right;
+        private final int height;
+
+        private Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executes blocking tasks in the background, returning their results as futures.
+ * At most a given number of tasks run at the same time, so that a backend isn't flooded with requests.
+ * Tasks submitted with the same key run one after another, in the order they were submitted.
+ * Cancelling a future skips its task if it didn't start yet and interrupts it otherwise.
+ * <p>
+ * Tasks run on virtual threads when the runtime provides them, and on a fixed pool of daemon threads otherwise.
+ */
+public class TaskExecutor implements AutoCloseable {
+    // Executor of the tasks.
+    private final ExecutorService executor;
+    // Permits for running, one for each task that may run at the same time.
+    private final Semaphore permits;
+    // Completion of the last task submitted for each key.
+    private final Map<Object, CompletableFuture<Void>> lastTasks = new HashMap<>();
+
+    /**
+     * Initializes an executor.
+     *
+     * @param maxConcurrency Maximum number of tasks that run at the same time.
+     */
+    public TaskExecutor(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("The concurrency must be positive!");
+        }
+
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.executor = newExecutor(maxConcurrency);
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread for each task if the runtime supports it,
+     * or a fixed pool of daemon threads otherwise.
+     *
+     * @param maxConcurrency Maximum number of tasks that run at the same time.
+     * @return The executor.
+     */
+    private static ExecutorService newExecutor(int maxConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            // Virtual threads aren't available, the pool being as large as the allowed concurrency.
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "task-executor-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Submits a task that may run at the same time as any other task.
+     *
+     * @param task Task to run.
+     * @param <T>  Type of the result of the task.
+     * @return Future that completes with the result of the task, or exceptionally with the exception it threw.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        Task<T> submitted = new Task<>(task);
+        this.start(submitted);
+        return submitted.result;
+    }
+
+    /**
+     * Submits a task that runs after all the tasks previously submitted with the same key finished.
+     *
+     * @param key  Key of the task, usually the ID of the entity it works on.
+     * @param task Task to run.
+     * @param <T>  Type of the result of the task.
+     * @return Future that completes with the result of the task, or exceptionally with the exception it threw.
+     */
+    public <T> CompletableFuture<T> submit(Object key, Supplier<T> task) {
+        Task<T> submitted = new Task<>(task);
+
+        CompletableFuture<Void> previous;
+        synchronized (this.lastTasks) {
+            previous = this.lastTasks.put(key, submitted.finished);
+        }
+
+        // Forgetting the key once its last task finished.
+        submitted.finished.whenComplete((ignored, exception) -> {
+            synchronized (this.lastTasks) {
+                this.lastTasks.remove(key, submitted.finished);
+            }
+        });
+
+        if (previous == null) {
+            this.start(submitted);
+        } else {
+            previous.whenComplete((ignored, exception) -> this.start(submitted));
+        }
+        return submitted.result;
+    }
+
+    private void start(Task<?> task) {
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException exception) {
+            task.result.completeExceptionally(exception);
+            task.finished.complete(null);
+        }
+    }
+
+    /**
+     * Stops accepting tasks. The tasks that were already submitted still run.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Task along with the future of its result and the completion of its run.
+     * The run may finish after the result, when the future is cancelled while the task is running.
+     *
+     * @param <T> Type of the result of the task.
+     */
+    private class Task<T> implements Runnable {
+        private final Supplier<T> supplier;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        // Thread that runs the task, null if the task isn't running.
+        private Thread runner;
+
+        private Task(Supplier<T> supplier) {
+            this.supplier = supplier;
+            this.result.whenComplete((value, exception) -> {
+                if (this.result.isCancelled()) {
+                    this.interrupt();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Skipping the task if it was cancelled before it started.
+                if (this.result.isDone()) {
+                    return;
+                }
+
+                try {
+                    TaskExecutor.this.permits.acquire();
+                } catch (InterruptedException interruptedException) {
+                    this.result.completeExceptionally(interruptedException);
+                    return;
+                }
+
+                try {
+                    if (this.begin()) {
+                        this.result.complete(this.supplier.get());
+                    }
+                } catch (Throwable throwable) {
+                    this.result.completeExceptionally(throwable);
+                } finally {
+                    this.end();
+                    TaskExecutor.this.permits.release();
+                }
+            } finally {
+                this.finished.complete(null);
+            }
+        }
+
+        private synchronized boolean begin() {
+            if (this.result.isDone()) {
+                return false;
+            }
+            this.runner = Thread.currentThread();
+            return true;
+        }
+
+        private synchronized void end() {
+            this.runner = null;
+            // Clearing an interruption that arrived too late, so that it doesn't reach the next task of the thread.
+            Thread.interrupted();
+        }
+
+        private synchronized void interrupt() {
+            if (this.runner != null) {
+                this.runner.interrupt();
+            }
+        }
+    }
+}
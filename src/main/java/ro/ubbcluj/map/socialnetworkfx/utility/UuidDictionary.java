@@ -0,0 +1,161 @@
+package ro.ubbcluj.map.socialnetworkfx.utility;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Dictionary that numbers UUIDs densely, the first added UUID getting 0, the next one 1, and so on.
+ * The UUIDs are kept as pairs of primitive longs and found through an open addressing table of their numbers,
+ * so a UUID costs about 24 bytes instead of the objects of a boxed map.
+ */
+public final class UuidDictionary {
+    // Halves of the UUIDs, indexed by their numbers.
+    private long[] mostBits;
+    private long[] leastBits;
+    private int size = 0;
+
+    // Numbers of the UUIDs plus one, by the hash of the UUIDs, 0 marking a free slot. Kept at most half full.
+    private int[] table;
+
+    public UuidDictionary() {
+        this(16);
+    }
+
+    /**
+     * Initializes a dictionary.
+     *
+     * @param expectedSize Number of UUIDs expected, so that the dictionary doesn't grow while they are added.
+     */
+    public UuidDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.mostBits = new long[capacity];
+        this.leastBits = new long[capacity];
+        this.table = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+    /**
+     * @return The number of numbers given so far, including those of the removed UUIDs.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a UUID, if it isn't added already.
+     *
+     * @param uuid UUID to add.
+     * @return The number of the UUID.
+     */
+    public int add(UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+
+        int slot = this.slotOf(most, least);
+        if (this.table[slot] != 0) {
+            return this.table[slot] - 1;
+        }
+
+        if (this.size == this.mostBits.length) {
+            this.mostBits = Arrays.copyOf(this.mostBits, this.size * 2);
+            this.leastBits = Arrays.copyOf(this.leastBits, this.size * 2);
+        }
+        this.mostBits[this.size] = most;
+        this.leastBits[this.size] = least;
+        this.table[slot] = ++this.size;
+
+        if (this.size * 2 > this.table.length) {
+            this.rehash();
+        }
+        return this.size - 1;
+    }
+
+    /**
+     * Removes a UUID, whose number isn't given again: if the UUID is added back, it gets a new number.
+     * The slots following it are shifted back instead of being marked, so the lookups don't slow down.
+     *
+     * @param uuid UUID to remove.
+     * @return The number the UUID had, -1 if it wasn't added.
+     */
+    public int remove(UUID uuid) {
+        int hole = this.slotOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        int index = this.table[hole] - 1;
+        if (index < 0) {
+            return -1;
+        }
+
+        // Moving back each following UUID of the cluster whose own slot isn't between the hole and it.
+        int mask = this.table.length - 1;
+        for (int slot = (hole + 1) & mask; this.table[slot] != 0; slot = (slot + 1) & mask) {
+            int other = this.table[slot] - 1;
+            int home = hash(this.mostBits[other], this.leastBits[other]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                this.table[hole] = this.table[slot];
+                hole = slot;
+            }
+        }
+        this.table[hole] = 0;
+        return index;
+    }
+
+    /**
+     * Returns the number of a UUID.
+     *
+     * @param uuid UUID to look up.
+     * @return The number of the UUID, -1 if it wasn't added.
+     */
+    public int indexOf(UUID uuid) {
+        return this.table[this.slotOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())] - 1;
+    }
+
+    /**
+     * Returns the UUID with a given number.
+     *
+     * @param index Number of the UUID.
+     * @return The UUID.
+     * @throws IndexOutOfBoundsException If no UUID has the number.
+     */
+    public UUID uuidOf(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return new UUID(this.mostBits[index], this.leastBits[index]);
+    }
+
+    /**
+     * Finds the slot of a UUID, or the free slot where it would be added.
+     */
+    private int slotOf(long most, long least) {
+        int mask = this.table.length - 1;
+        int slot = hash(most, least) & mask;
+        while (this.table[slot] != 0) {
+            int index = this.table[slot] - 1;
+            if (this.mostBits[index] == most && this.leastBits[index] == least) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        // Moving the entries of the table rather than all the numbers, which include those of the removed UUIDs.
+        int[] entries = this.table;
+        this.table = new int[entries.length * 2];
+        int mask = this.table.length - 1;
+        for (int entry : entries) {
+            if (entry == 0) {
+                continue;
+            }
+            int slot = hash(this.mostBits[entry - 1], this.leastBits[entry - 1]) & mask;
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.table[slot] = entry;
+        }
+    }
+
+    private static int hash(long most, long least) {
+        long hash = (most ^ Long.rotateLeft(least, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
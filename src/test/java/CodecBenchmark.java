@@ -0,0 +1,104 @@
+import ro.ubbcluj.map.socialnetworkfx.entity.EntityCodec;
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the size and the throughput of the binary codec with the ones of Java serialization.
+ * Not part of the tests, it is run on its own: {@code java -cp <classes> CodecBenchmark [users] [friendships]}.
+ */
+public class CodecBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int friendshipCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        Random random = new Random(42);
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            users.add(new User("First" + random.nextInt(1_000), "Last" + random.nextInt(1_000), "user" + i + "@mail.com"));
+        }
+        List<Friendship> friendships = new ArrayList<>(friendshipCount);
+        LocalDateTime date = LocalDateTime.of(2023, 1, 1, 0, 0);
+        for (int i = 0; i < friendshipCount; i++) {
+            friendships.add(new Friendship(users.get(random.nextInt(userCount)).getId(), users.get(random.nextInt(userCount)).getId(),
+                    date.plusSeconds(random.nextInt(31_536_000))));
+        }
+
+        System.out.println("Users: " + userCount);
+        compare(users, () -> EntityCodec.encodeUsers(users), EntityCodec::decodeUsers);
+        System.out.println("Friendships: " + friendshipCount);
+        compare(friendships, () -> EntityCodec.encodeFriendships(friendships), EntityCodec::decodeFriendships);
+    }
+
+    private static <E> void compare(List<E> entities, Encoder encoder, Decoder<E> decoder) throws IOException, ClassNotFoundException {
+        int count = entities.size();
+
+        // Sizes of the two forms.
+        ByteBuffer encoded = encoder.encode();
+        byte[] serialized = serialize(entities);
+        assert (decoder.decode(encoded.duplicate()).size() == count);
+        System.out.printf("  size:   codec %,d B (%.1f B/entity), serialization %,d B (%.1f B/entity)%n",
+                encoded.remaining(), (double) encoded.remaining() / count, serialized.length, (double) serialized.length / count);
+
+        // Throughput of the two forms, after letting the JIT compile them.
+        long codecEncode = 0, codecDecode = 0, serializationEncode = 0, serializationDecode = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            ByteBuffer buffer = encoder.encode();
+            long encodedAt = System.nanoTime();
+            decoder.decode(buffer);
+            long decodedAt = System.nanoTime();
+            byte[] bytes = serialize(entities);
+            long serializedAt = System.nanoTime();
+            deserialize(bytes);
+            long deserializedAt = System.nanoTime();
+
+            if (round >= WARMUP_ROUNDS) {
+                codecEncode += encodedAt - start;
+                codecDecode += decodedAt - encodedAt;
+                serializationEncode += serializedAt - decodedAt;
+                serializationDecode += deserializedAt - serializedAt;
+            }
+        }
+
+        System.out.printf("  encode: codec %,.0f entities/s, serialization %,.0f entities/s%n",
+                throughput(count, codecEncode), throughput(count, serializationEncode));
+        System.out.printf("  decode: codec %,.0f entities/s, serialization %,.0f entities/s%n",
+                throughput(count, codecDecode), throughput(count, serializationDecode));
+    }
+
+    private static double throughput(int count, long nanos) {
+        return (double) count * MEASURED_ROUNDS / nanos * 1_000_000_000;
+    }
+
+    private static byte[] serialize(List<?> entities) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(new ArrayList<>(entities));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return input.readObject();
+        }
+    }
+
+    private interface Encoder {
+        ByteBuffer encode();
+    }
+
+    private interface Decoder<E> {
+        List<E> decode(ByteBuffer buffer);
+    }
+}
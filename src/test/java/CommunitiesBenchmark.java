@@ -0,0 +1,94 @@
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
+import ro.ubbcluj.map.socialnetworkfx.utility.ComponentMetricEngine;
+import ro.ubbcluj.map.socialnetworkfx.utility.DiameterMetric;
+import ro.ubbcluj.map.socialnetworkfx.utility.Graph;
+import ro.ubbcluj.map.socialnetworkfx.utility.UuidDictionary;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the sequential search and ranking of the communities with the parallel one, for an increasing number of
+ * threads, on a network whose communities have very different sizes.
+ * Not part of the tests, it is run on its own: {@code java -cp <classes> CommunitiesBenchmark [users] [rounds]}.
+ */
+public class CommunitiesBenchmark {
+    public static void main(String[] args) {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        Graph graph = network(userCount, new Random(42));
+        ComponentMetricEngine engine = new ComponentMetricEngine(new DiameterMetric(), Duration.ofMinutes(10));
+        System.out.println("Users: " + graph.vertexCount() + ", friendships: " + graph.edgeCount()
+                + ", cores: " + Runtime.getRuntime().availableProcessors());
+
+        double sequential = measure(rounds, () -> engine.strongest(graph, graph.communities()));
+        System.out.printf("  sequential: %,.0f ms%n", sequential);
+
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double parallel = measure(rounds, () -> engine.strongest(graph, graph.communities(pool), pool));
+            pool.shutdown();
+            System.out.printf("  %2d threads: %,.0f ms, speedup %.2fx%n", threads, parallel, sequential / parallel);
+        }
+    }
+
+    /**
+     * @return The best time of the rounds, in milliseconds, after a round of warm up.
+     */
+    private static double measure(int rounds, Runnable analytics) {
+        analytics.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            analytics.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /**
+     * Builds a network of random communities, whose sizes follow a power law from 2 to 5000 users, so that most of
+     * them are small but most users are in the large ones. In each community, a new user befriends
+     * two users chosen by preferential attachment, the users with more friends being more likely to be chosen, so that
+     * the communities have the popular users and short distances of a social network.
+     */
+    private static Graph network(int userCount, Random random) {
+        UuidDictionary users = new UuidDictionary(userCount);
+        List<UUID> ids = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            ids.add(UUID.randomUUID());
+            users.add(ids.get(i));
+        }
+
+        List<Tuple<UUID, UUID>> friendships = new ArrayList<>();
+        int first = 0;
+        while (first < userCount) {
+            int size = (int) Math.min(5_000, 2 / Math.pow(1 - random.nextDouble(), 1.5));
+            int last = Math.min(userCount, first + size);
+
+            // Users of the friendships of the community so far, each of them once for each friend it has.
+            List<Integer> ends = new ArrayList<>(List.of(first));
+            for (int user = first + 1; user < last; user++) {
+                int friend1 = ends.get(random.nextInt(ends.size()));
+                int friend2 = ends.get(random.nextInt(ends.size()));
+                friendships.add(Friendship.key(ids.get(user), ids.get(friend1)));
+                ends.add(friend1);
+                ends.add(user);
+                if (friend2 != friend1) {
+                    friendships.add(Friendship.key(ids.get(user), ids.get(friend2)));
+                    ends.add(friend2);
+                    ends.add(user);
+                }
+            }
+            first = last;
+        }
+        return Graph.build(users, friendships.stream());
+    }
+}
@@ -0,0 +1,120 @@
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+import ro.ubbcluj.map.socialnetworkfx.repository.ConcurrentInMemoryRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.Repository;
+import ro.ubbcluj.map.socialnetworkfx.repository.UniqueIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Compares the throughput of the concurrent repository with the one of an in memory repository behind a single lock,
+ * for an increasing number of threads running a mix of 80% reads and 20% writes.
+ * Not part of the tests, it is run on its own: {@code java -cp <classes> ConcurrentRepositoryBenchmark [users] [seconds]}.
+ */
+public class ConcurrentRepositoryBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        List<UUID> ids = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            ids.add(UUID.randomUUID());
+        }
+
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        System.out.println("Users: " + userCount + ", cores: " + Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double locked = measure(new LockedRepository(), ids, threads, seconds);
+            ConcurrentInMemoryRepository<UUID, User> concurrent =
+                    new ConcurrentInMemoryRepository<>(Friendship::compareIds, List.of(new UniqueIndex<String, UUID, User>("email", User::getEmail)));
+            double striped = measure(concurrent, ids, threads, seconds);
+            System.out.printf("  %2d threads: single lock %,.0f ops/s, concurrent %,.0f ops/s%n", threads, locked, striped);
+        }
+    }
+
+    private static double measure(Repository<UUID, User> repository, List<UUID> ids, int threads, int seconds) throws InterruptedException {
+        for (int i = 0; i < ids.size(); i++) {
+            repository.save(new User(ids.get(i), "First" + i, "Last" + i, "user" + i + "@mail.com"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Long>> counts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            counts.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long operations = 0;
+                while (System.nanoTime() < deadline) {
+                    int i = random.nextInt(ids.size());
+                    UUID id = ids.get(i);
+                    try {
+                        int operation = random.nextInt(10);
+                        if (operation < 8) {
+                            repository.getOne(id);
+                        } else if (operation == 8) {
+                            repository.update(new User(id, "First" + i, "Last" + i, "user" + i + "@mail.com"));
+                        } else if (repository.delete(id).isPresent()) {
+                            repository.save(new User(id, "First" + i, "Last" + i, "user" + i + "@mail.com"));
+                        }
+                    } catch (RepositoryException exception) {
+                        // Another thread deleted the user in the meantime.
+                    }
+                    operations++;
+                }
+                return operations;
+            }));
+        }
+
+        long total = 0;
+        for (Future<Long> count : counts) {
+            try {
+                total += count.get();
+            } catch (ExecutionException exception) {
+                throw new IllegalStateException(exception.getCause());
+            }
+        }
+        executor.shutdown();
+        return (double) total / seconds;
+    }
+
+    /**
+     * In memory repository with every operation behind the same lock.
+     */
+    private static class LockedRepository extends InMemoryRepository<UUID, User> {
+        private LockedRepository() {
+            super(Friendship::compareIds, List.of(new UniqueIndex<String, UUID, User>("email", User::getEmail)));
+        }
+
+        @Override
+        public synchronized Optional<User> getOne(UUID id) {
+            return super.getOne(id);
+        }
+
+        @Override
+        public synchronized Optional<User> save(User user) {
+            return super.save(user);
+        }
+
+        @Override
+        public synchronized Optional<User> update(User user) {
+            return super.update(user);
+        }
+
+        @Override
+        public synchronized Optional<User> delete(UUID id) {
+            return super.delete(id);
+        }
+
+        @Override
+        protected boolean containsEqual(User user) {
+            // The users of the benchmark are distinct, so they aren't compared with all the stored ones.
+            return false;
+        }
+    }
+}
@@ -1,19 +1,38 @@
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class RunTests {
-    public static void main(String[] args) throws RepositoryException {
+    public static void main(String[] args) throws RepositoryException, SQLException, InterruptedException, IOException {
         TestEntity.run();
+        TestEntity.runCodec();
         TestRepository.run();
+        TestRepository.runFriendshipRepository();
+        TestRepository.runCachingRepository();
+        TestRepository.runUserRepository();
+        TestRepository.runWriteBehindRepository();
+        TestRepository.runAsyncRepository();
+        TestRepository.runSnapshot();
+        TestRepository.runFileRepository();
+        TestRepository.runOffHeapUserRepository();
+        TestRepository.runConcurrentRepository();
+        TestRepository.runVersionedRepository();
         TestValidator.run();
         TestService.run();
+        TestService.runAsyncService();
         TestCommunities.run();
+        TestCommunities.runGraph();
+        TestCommunities.runMetricEngine();
+        TestCommunities.runCommunityIndex();
+        TestCommunities.runParallelCommunities();
 
         TestDBRepository.runUserDBRepository();
         TestDBRepository.runFriendshipDBRepository();
+        TestDBRepository.runConnectionPool();
+        TestDBRepository.runSchemaMigrations();
 
         System.out.println("All tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
     }
@@ -3,15 +3,181 @@ import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
 import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryRepository;
 import ro.ubbcluj.map.socialnetworkfx.service.Service;
+import ro.ubbcluj.map.socialnetworkfx.utility.CommunityIndex;
+import ro.ubbcluj.map.socialnetworkfx.utility.ComponentMetricEngine;
+import ro.ubbcluj.map.socialnetworkfx.utility.DiameterMetric;
+import ro.ubbcluj.map.socialnetworkfx.utility.Graph;
+import ro.ubbcluj.map.socialnetworkfx.utility.LongestPathMetric;
+import ro.ubbcluj.map.socialnetworkfx.utility.MetricResult;
+import ro.ubbcluj.map.socialnetworkfx.utility.UuidDictionary;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public class TestCommunities {
     public static void run() {
+        Service service = network();
+        Tuple<Integer, List<List<UUID>>> integerListTuple = service.communities();
+        assert (integerListTuple.getLeft() == 2 && integerListTuple.getRight().get(0).size() == 5);
+
+        System.out.println("Communities tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runGraph() {
+        // the graph numbers the users densely and skips the friendships of unknown users
+        List<UUID> chain = randomIds(100_000);
+        UuidDictionary ids = idsOf(chain);
+        assert (ids.add(chain.get(0)) == 0 && ids.indexOf(UUID.randomUUID()) == -1 && ids.uuidOf(99_999).equals(chain.get(99_999)));
+        List<Tuple<UUID, UUID>> links = linksOf(chain);
+        links.add(Friendship.key(chain.get(0), UUID.randomUUID()));
+        Graph graph = Graph.build(ids, links.stream());
+        assert (graph.vertexCount() == 100_000 && graph.edgeCount() == 99_999 && graph.degree(0) == 1 && graph.degree(1) == 2);
+
+        // a long chain is traversed without recursion, in the order of the friends
+        List<int[]> communities = graph.communities();
+        assert (communities.size() == 1 && graph.idsOf(communities.get(0)).equals(chain));
+
+        System.out.println("Graph tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runMetricEngine() {
+        List<UUID> chain = randomIds(100_000);
+        List<Tuple<UUID, UUID>> links = linksOf(chain);
+        Graph graph = Graph.build(idsOf(chain), links.stream());
+        List<int[]> communities = graph.communities();
+
+        int[] small = {0, 1, 2};
+        Graph path = Graph.build(idsOf(chain.subList(0, 3)), links.subList(0, 2).stream());
+        assert (new LongestPathMetric().measure(path.newTraversal(), small, Long.MAX_VALUE).getValue() == 2);
+
+        // the diameter of the chain is found exactly by iFUB, with a handful of searches instead of one per user
+        Graph.Traversal traversal = graph.newTraversal();
+        MetricResult diameter = new DiameterMetric().measure(traversal, communities.get(0), System.nanoTime() + 60_000_000_000L);
+        assert (diameter.isExact() && diameter.getValue() == 99_999);
+        MetricResult bounded = new DiameterMetric(0).measure(traversal, communities.get(0), System.nanoTime());
+        assert (bounded.getValue() == 99_999 || !bounded.isExact());
+
+        // a cycle of 5 users with a chord: the diameter is 2, the longest path goes through every user
+        UuidDictionary ring = idsOf(chain.subList(0, 5));
+        List<Tuple<UUID, UUID>> ringLinks = new ArrayList<>(links.subList(0, 4));
+        ringLinks.add(Friendship.key(chain.get(4), chain.get(0)));
+        ringLinks.add(Friendship.key(chain.get(0), chain.get(2)));
+        Graph cycle = Graph.build(ring, ringLinks.stream());
+        int[] cycleUsers = cycle.communities().get(0);
+        assert (new DiameterMetric().measure(cycle.newTraversal(), cycleUsers, Long.MAX_VALUE).getValue() == 2);
+        assert (new DiameterMetric(0).measure(cycle.newTraversal(), cycleUsers, System.nanoTime() + 1_000_000_000L).getValue() == 2);
+        MetricResult longest = new LongestPathMetric().measure(cycle.newTraversal(), cycleUsers, Long.MAX_VALUE);
+        assert (longest.isExact() && longest.getValue() == 4);
+        assert (!new LongestPathMetric(0).measure(cycle.newTraversal(), cycleUsers, Long.MAX_VALUE).isExact());
+
+        // the ranking says which communities are the strongest, and whether that is certain
+        ComponentMetricEngine.Strongest<int[]> strongest = new ComponentMetricEngine(new DiameterMetric(), Duration.ofSeconds(10))
+                .strongest(cycle, cycle.communities());
+        assert (strongest.isExact() && strongest.getComponents().size() == 1 && strongest.getStrength().getValue() == 2);
+        Service service = network();
+        service.setCommunityMetric(new LongestPathMetric(), Duration.ofSeconds(10));
+        ComponentMetricEngine.Strongest<List<UUID>> active = service.mostActiveCommunities();
+        assert (active.isExact() && active.getStrength().getValue() == 4 && active.getComponents().get(0).size() == 5);
+
+        System.out.println("Metric engine tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runCommunityIndex() {
+        // the community index follows the changes made through the service
+        Service service = network();
+        ArrayList<User> users = service.getUsers();
+        assert (service.communityCount() == 2 && service.communitySizes().equals(new TreeMap<>(Map.of(2, 1, 5, 1))));
+        assert (service.communityOf(users.get(4).getId()).equals(service.communityOf(users.get(0).getId())));
+        service.removeFriendship(users.get(1).getId(), users.get(4).getId());
+        assert (service.communityCount() == 3 && service.communitySize(users.get(0).getId()) == 4 && service.communitySize(users.get(4).getId()) == 1);
+        service.removeUser(users.get(1).getId());
+        assert (service.communityCount() == 3 && service.communitySize(users.get(2).getId()) == 3);
+        service.addFriendship(users.get(4).getId(), users.get(5).getId());
+        assert (service.communityCount() == 2 && service.communitySizes().equals(new TreeMap<>(Map.of(3, 2))));
+
+        // after random changes, the index has the communities of a graph built from scratch
+        CommunityIndex index = new CommunityIndex();
+        List<UUID> people = randomIds(60);
+        Set<Tuple<UUID, UUID>> friendships = new HashSet<>();
+        index.load(() -> Graph.build(idsOf(people), Stream.empty()));
+        Random random = new Random(7);
+        for (int step = 0; step < 3_000; step++) {
+            UUID user1 = people.get(random.nextInt(people.size()));
+            UUID user2 = people.get(random.nextInt(people.size()));
+            int change = random.nextInt(10);
+            if (change < 5 && !user1.equals(user2)) {
+                index.addFriendship(user1, user2);
+                friendships.add(Friendship.key(user1, user2));
+            } else if (change < 9) {
+                index.removeFriendship(user1, user2);
+                friendships.remove(Friendship.key(user1, user2));
+            } else {
+                index.removeUser(user1);
+                friendships.removeIf(friendship -> friendship.getLeft().equals(user1) || friendship.getRight().equals(user1));
+                index.addUser(user1);
+            }
+        }
+        Graph rebuilt = Graph.build(idsOf(people), friendships.stream());
+        List<int[]> expected = rebuilt.communities();
+        assert (index.communityCount() == expected.size());
+        for (int[] community : expected) {
+            UUID identifier = index.communityOf(rebuilt.idOf(community[0])).orElseThrow();
+            for (int user : community) {
+                assert (index.communityOf(rebuilt.idOf(user)).orElseThrow().equals(identifier) && index.communitySize(rebuilt.idOf(user)) == community.length);
+            }
+        }
+
+        System.out.println("Community index tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runParallelCommunities() {
+        // the parallel search finds the same communities, listed in ascending order whatever the number of threads
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<UUID> chain = randomIds(100_000);
+        Graph graph = Graph.build(idsOf(chain), linksOf(chain).stream());
+        List<int[]> parallel = graph.communities(pool);
+        assert (parallel.size() == 1 && Arrays.equals(parallel.get(0), Arrays.stream(graph.communities().get(0)).sorted().toArray()));
+
+        // a sparse random network, with communities of many sizes
+        List<UUID> people = randomIds(200);
+        Random random = new Random(7);
+        Set<Tuple<UUID, UUID>> friendships = new HashSet<>();
+        for (int i = 0; i < 150; i++) {
+            UUID user1 = people.get(random.nextInt(people.size()));
+            UUID user2 = people.get(random.nextInt(people.size()));
+            if (!user1.equals(user2)) {
+                friendships.add(Friendship.key(user1, user2));
+            }
+        }
+        Graph network = Graph.build(idsOf(people), friendships.stream());
+        List<int[]> sequential = network.communities();
+        sequential.forEach(Arrays::sort);
+        List<int[]> hooked = network.communities(pool);
+        assert (hooked.size() == sequential.size());
+        for (int i = 0; i < hooked.size(); i++) {
+            assert (Arrays.equals(hooked.get(i), sequential.get(i)));
+        }
+        ComponentMetricEngine engine = new ComponentMetricEngine(new DiameterMetric(), Duration.ofSeconds(10));
+        ComponentMetricEngine.Strongest<int[]> measured = engine.strongest(network, hooked, pool);
+        assert (measured.isExact() && measured.getComponents().equals(engine.strongest(network, hooked).getComponents()));
+        pool.shutdown();
+
+        Service service = network();
+        service.setAnalyticsParallelism(3);
+        assert (service.communities().getLeft() == 2 && service.mostActiveCommunities().getComponents().get(0).size() == 5);
+        service.setAnalyticsParallelism(1);
+
+        System.out.println("Parallel communities tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    /**
+     * @return A service whose network has a community of 5 users and a community of 2 users.
+     */
+    private static Service network() {
         InMemoryRepository<UUID, User> userInMemoryRepository = new InMemoryRepository<>();
         InMemoryRepository<Tuple<UUID, UUID>, Friendship> friendshipInMemoryRepository = new InMemoryRepository<>();
         Service service = new Service(userInMemoryRepository, friendshipInMemoryRepository);
@@ -34,10 +200,31 @@ public class TestCommunities {
         service.addFriendship(users.get(1).getId(), users.get(4).getId());
 
         service.addFriendship(users.get(5).getId(), users.get(6).getId());
+        return service;
+    }
 
-        Tuple<Integer, List<List<UUID>>> integerListTuple = service.communities();
-        assert (integerListTuple.getLeft() == 2 && integerListTuple.getRight().get(0).size() == 5);
+    private static List<UUID> randomIds(int count) {
+        List<UUID> uuids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        return uuids;
+    }
 
-        System.out.println("Communities tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    /**
+     * @return The friendships of a chain of users, each user being the friend of the next one.
+     */
+    private static List<Tuple<UUID, UUID>> linksOf(List<UUID> chain) {
+        List<Tuple<UUID, UUID>> links = new ArrayList<>();
+        for (int i = 0; i + 1 < chain.size(); i++) {
+            links.add(Friendship.key(chain.get(i), chain.get(i + 1)));
+        }
+        return links;
+    }
+
+    private static UuidDictionary idsOf(List<UUID> uuids) {
+        UuidDictionary ids = new UuidDictionary();
+        uuids.forEach(ids::add);
+        return ids;
     }
 }
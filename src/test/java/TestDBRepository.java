@@ -1,15 +1,26 @@
 import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
 import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
+import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+import ro.ubbcluj.map.socialnetworkfx.repository.BatchResult;
+import ro.ubbcluj.map.socialnetworkfx.repository.ConnectionPool;
 import ro.ubbcluj.map.socialnetworkfx.repository.FriendshipDBRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.Migration;
+import ro.ubbcluj.map.socialnetworkfx.repository.Page;
+import ro.ubbcluj.map.socialnetworkfx.repository.SchemaMigrator;
+import ro.ubbcluj.map.socialnetworkfx.repository.SortOrder;
 import ro.ubbcluj.map.socialnetworkfx.repository.UserDBRepository;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 public class TestDBRepository {
     private static void clearDBUser(UserDBRepository userDBRepository) {
@@ -61,6 +72,30 @@ public class TestDBRepository {
 
         assert userDBRepository.getOne(user3.getId()).isPresent();
 
+        assert userDBRepository.usersLastNameContainsString("ung").equals(List.of(user3));
+        assert userDBRepository.usersLastNameContainsString("%").isEmpty();
+
+        userDBRepository.setFetchSize(1);
+        try (Stream<User> users = userDBRepository.stream()) {
+            assert users.map(User::getId).toList().equals(List.of(user3.getId()));
+        }
+
+        Page<UUID, User> page = userDBRepository.page(null, 1, SortOrder.ASCENDING);
+        assert page.getContent().equals(List.of(user3)) && !page.hasNext();
+
+        // bulk operations, through batches and through COPY
+        User user4 = new User("Ion", "Popa", "ion.popa@mail.com");
+        BatchResult<User> saved = userDBRepository.saveAll(List.of(user4, user3));
+        assert saved.getApplied().equals(List.of(user4)) && saved.getRejected().equals(List.of(user3));
+
+        userDBRepository.setCopyThreshold(1);
+        User user5 = new User("Dan", "Popa", "dan.popa@mail.com");
+        saved = userDBRepository.saveAll(List.of(user5, user4));
+        assert saved.getApplied().equals(List.of(user5)) && saved.getRejected().equals(List.of(user4));
+        assert userDBRepository.size() == 3;
+
+        assert userDBRepository.deleteAll(List.of(user4.getId(), user5.getId(), user1.getId())).getAppliedCount() == 2;
+
         System.out.println("UserDBRepository passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
     }
 
@@ -91,9 +126,70 @@ public class TestDBRepository {
         Friendship friendshipUpdated = new Friendship(user1.getId(), user2.getId());
         friendshipDBRepository.update(friendshipUpdated);
 
+        assert friendshipDBRepository.getFriendsOf(user2.getId()).equals(List.of(user1));
+
         Optional<Friendship> friendshipRet = friendshipDBRepository.getOne(friendship.getId());
         assert friendshipRet.isEmpty() || friendshipRet.get().equals(friendship);
 
         System.out.println("FriendshipDBRepository passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
     }
+
+    public static void runConnectionPool() throws SQLException {
+        ConnectionPool connectionPool = new ConnectionPool("jdbc:postgresql://localhost:5432/socialNetworkTests", "postgres", "postgres", 2, 60_000, 100, 2);
+        UserDBRepository userDBRepository = new UserDBRepository(connectionPool);
+        FriendshipDBRepository friendshipDBRepository = new FriendshipDBRepository(connectionPool);
+
+        Connection connection1 = userDBRepository.connect();
+        Connection connection2 = friendshipDBRepository.connect();
+        assert connectionPool.getActiveConnections() == 2;
+
+        // the pool is exhausted
+        try {
+            userDBRepository.connect();
+            assert false;
+        } catch (RepositoryException rE) {
+            assert connectionPool.getTimeoutCount() == 1;
+        }
+
+        connection1.close();
+        assert connection1.isClosed();
+        assert connectionPool.getActiveConnections() == 1 && connectionPool.getIdleConnections() == 1;
+
+        // the returned connection is reused
+        userDBRepository.size();
+        assert connectionPool.getIdleConnections() == 1;
+
+        connection2.close();
+        assert connectionPool.getActiveConnections() == 0 && connectionPool.getIdleConnections() == 2;
+
+        connectionPool.close();
+        assert connectionPool.getIdleConnections() == 0;
+
+        System.out.println("ConnectionPool passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runSchemaMigrations() throws SQLException {
+        FriendshipDBRepository friendshipDBRepository = new FriendshipDBRepository("jdbc:postgresql://localhost:5432/socialNetworkTests", "postgres", "postgres");
+
+        // the first connection brings the schema of the friendships and of the users they reference up to date
+        try (Connection connection = friendshipDBRepository.connect();
+             PreparedStatement statement = connection.prepareStatement("select max(version) from schema_version where component = ?")) {
+            statement.setString(1, UserDBRepository.SCHEMA_COMPONENT);
+            ResultSet resultSet = statement.executeQuery();
+            assert resultSet.next() && resultSet.getInt(1) == UserDBRepository.schemaMigrations().size();
+
+            // the applied migrations aren't applied again
+            assert SchemaMigrator.migrate(connection, UserDBRepository.schemaMigrations()).isEmpty();
+        }
+
+        // the versions of a part of the schema must be in ascending order
+        try {
+            SchemaMigrator.migrate(null, List.of(new Migration("tests", 2, "second", List.of()), new Migration("tests", 1, "first", List.of())));
+            assert false;
+        } catch (IllegalArgumentException iAE) {
+            assert true;
+        }
+
+        System.out.println("SchemaMigrator passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
 }
@@ -1,8 +1,13 @@
+import ro.ubbcluj.map.socialnetworkfx.entity.EntityCodec;
 import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.UUID;
 
 public class TestEntity {
@@ -38,14 +43,66 @@ public class TestEntity {
         // Testing friendship
         Friendship friendship = new Friendship(user1.getId(), user2.getId());
         assert (friendship.getFriendshipDate().getHour() == LocalDateTime.now().getHour());
-        assert (friendship.getId().getLeft() == user1.getId());
-        assert (friendship.getId().getRight() == user2.getId());
+        assert (Friendship.compareIds(friendship.getId().getLeft(), friendship.getId().getRight()) < 0);
+        assert (friendship.getId().equals(Friendship.key(user2.getId(), user1.getId())));
+
+        // Testing the canonical order, which compares the IDs as unsigned values
+        UUID low = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        UUID high = UUID.fromString("ffffffff-0000-0000-0000-000000000000");
+        assert (new Friendship(high, low).getId().getLeft().equals(low));
 
         Friendship newFriendship = new Friendship(user2.getId(), user1.getId());
+        assert (friendship.getId().equals(newFriendship.getId()));
         newFriendship.setId(friendship.getId());
         assert (friendship.equals(newFriendship));
         assert (!(friendship.hashCode() == newFriendship.hashCode()));
 
         System.out.println("Entity tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
     }
+
+    public static void runCodec() {
+        User user1 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user2 = new User("\u0218tefan", null, "stefan.dobrescu@mail.com");
+        Friendship friendship = new Friendship(user1.getId(), user2.getId(), LocalDateTime.of(2023, 11, 20, 10, 30, 15, 123_456_000));
+
+        // Testing the round trip of each entity
+        assert (EntityCodec.decodeUser(ByteBuffer.wrap(EntityCodec.encode(user1))).equals(user1));
+        User decoded = EntityCodec.decodeUser(ByteBuffer.wrap(EntityCodec.encode(user2)));
+        assert (decoded.equals(user2) && decoded.getLastName() == null && decoded.getFirstName().equals(user2.getFirstName()));
+        Friendship decodedFriendship = EntityCodec.decodeFriendship(ByteBuffer.wrap(EntityCodec.encode(friendship)));
+        assert (decodedFriendship.getId().equals(friendship.getId()) && decodedFriendship.getFriendshipDate().equals(friendship.getFriendshipDate()));
+        Tuple<UUID, UUID> id = new Tuple<>(user2.getId(), user1.getId());
+        assert (EntityCodec.decodeFriendshipId(ByteBuffer.wrap(EntityCodec.encode(id))).equals(id));
+        assert (EntityCodec.encode(user1).length == 2 + 16 + 3 + "Marian".length() + "Chiriac".length() + "marian.chiriac@mail.com".length());
+
+        // Testing the batches, read from a direct little-endian buffer
+        ByteBuffer encoded = EntityCodec.encodeUsers(List.of(user1, user2));
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining()).order(ByteOrder.LITTLE_ENDIAN).put(encoded).flip();
+        assert (EntityCodec.decodeUsers(direct).equals(List.of(user1, user2)) && !direct.hasRemaining());
+        assert (EntityCodec.decodeFriendships(EntityCodec.encodeFriendships(List.of(friendship))).get(0).getId().equals(friendship.getId()));
+
+        // Testing the rejected messages
+        byte[] message = EntityCodec.encode(user1);
+        try {
+            EntityCodec.decodeFriendship(ByteBuffer.wrap(message));
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+        try {
+            EntityCodec.decodeUser(ByteBuffer.wrap(message, 0, message.length - 1));
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+        message[0] = EntityCodec.VERSION + 1;
+        try {
+            EntityCodec.decodeUser(ByteBuffer.wrap(message));
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+
+        System.out.println("Codec tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
 }
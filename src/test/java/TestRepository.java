@@ -1,12 +1,43 @@
+import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
+import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
 import ro.ubbcluj.map.socialnetworkfx.exception.RepositoryException;
+import ro.ubbcluj.map.socialnetworkfx.repository.FriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.AsyncRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.BatchResult;
+import ro.ubbcluj.map.socialnetworkfx.repository.CachingRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.ConcurrentInMemoryRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.FileFriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.FileUserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryFriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryUserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.Page;
 import ro.ubbcluj.map.socialnetworkfx.repository.Repository;
 import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.OffHeapUserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.Snapshot;
+import ro.ubbcluj.map.socialnetworkfx.repository.SnapshotFriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.SnapshotUserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.SortOrder;
+import ro.ubbcluj.map.socialnetworkfx.repository.UnitOfWork;
+import ro.ubbcluj.map.socialnetworkfx.repository.UniqueIndex;
+import ro.ubbcluj.map.socialnetworkfx.repository.VersionedFriendshipRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.VersionedRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.WriteBehindRepository;
+import ro.ubbcluj.map.socialnetworkfx.utility.PersistentTreeMap;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.Month;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class TestRepository {
     public static void run() throws RepositoryException {
@@ -76,6 +107,800 @@ public class TestRepository {
         Optional<User> updated = userRepository.update(user2);
         assert (updated.isPresent() && updated.get().equals(user1));
 
+        // bulk operations
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+        User user4 = new User("Maria", "Lungu", "maria.lungu@mail.com");
+        try {
+            userRepository.saveAll(null);
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+
+        BatchResult<User> saved = userRepository.saveAll(List.of(user3, user4, user2));
+        assert (saved.getApplied().equals(List.of(user3, user4)));
+        assert (saved.getOutcomes().get(2).getRight() == BatchResult.Outcome.DUPLICATE);
+        assert (userRepository.size() == 3);
+
+        user4.setFirstName("Mariana");
+        BatchResult<User> updatedAll = userRepository.updateAll(List.of(user4, new User("Dan", "Popa", "dan.popa@mail.com")));
+        assert (updatedAll.getApplied().equals(List.of(user4)) && updatedAll.getRejected().size() == 1);
+
+        BatchResult<UUID> deletedAll = userRepository.deleteAll(List.of(user3.getId(), user4.getId(), user3.getId()));
+        assert (deletedAll.getAppliedCount() == 2 && deletedAll.getOutcomes().get(2).getRight() == BatchResult.Outcome.MISSING);
+        assert (userRepository.size() == 1);
+
+        // keyset pagination
+        Repository<UUID, User> pagedRepository = new InMemoryRepository<>();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = new User("Ion", "Lungu", "ion.lungu" + i + "@mail.com");
+            pagedRepository.save(user);
+            ids.add(user.getId());
+        }
+        Collections.sort(ids);
+
+        Page<UUID, User> page = pagedRepository.page(null, 2, SortOrder.ASCENDING);
+        assert (page.getContent().stream().map(User::getId).toList().equals(ids.subList(0, 2)) && page.hasNext());
+        page = pagedRepository.page(page.getNextKey().get(), 2, SortOrder.ASCENDING);
+        assert (page.getContent().stream().map(User::getId).toList().equals(ids.subList(2, 4)) && page.hasNext());
+
+        // the sorted index follows the changes made after the first page
+        pagedRepository.delete(ids.get(4));
+        page = pagedRepository.page(page.getNextKey().get(), 2, SortOrder.ASCENDING);
+        assert (page.getContent().isEmpty() && !page.hasNext());
+
+        page = pagedRepository.page(ids.get(2), 5, SortOrder.DESCENDING);
+        assert (page.getContent().stream().map(User::getId).toList().equals(List.of(ids.get(1), ids.get(0))) && !page.hasNext());
+
+        try {
+            pagedRepository.page(null, 0, SortOrder.ASCENDING);
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+
+        // the users are paged in the unsigned order of their IDs, as in the database
+        InMemoryUserRepository orderedRepository = new InMemoryUserRepository();
+        User low = new User("Ion", "Lungu", "ion.lungu@mail.com");
+        low.setId(new UUID(0x1L, 0L));
+        User high = new User("Dan", "Popa", "dan.popa@mail.com");
+        high.setId(new UUID(0x8000000000000000L, 0L));
+        orderedRepository.saveAll(List.of(high, low));
+        assert (orderedRepository.page(null, 2, SortOrder.ASCENDING).getContent().equals(List.of(low, high)));
+        assert (orderedRepository.page(low.getId(), 2, SortOrder.ASCENDING).getContent().equals(List.of(high)));
+
         System.out.println("Repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
     }
+
+    public static void runFriendshipRepository() {
+        Repository<UUID, User> userRepository = new InMemoryRepository<>();
+        InMemoryFriendshipRepository friendshipRepository = new InMemoryFriendshipRepository(userRepository);
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+        userRepository.saveAll(List.of(user1, user2, user3));
+
+        friendshipRepository.save(new Friendship(user1.getId(), user2.getId()));
+        friendshipRepository.saveAll(List.of(new Friendship(user3.getId(), user1.getId())));
+
+        assert (friendshipRepository.getFriendsOf(user1.getId()).equals(List.of(user2, user3)));
+        assert (friendshipRepository.getFriendsOf(user2.getId()).equals(List.of(user1)));
+
+        // A friendship is found in any order of its users and can't be stored reversed.
+        assert (friendshipRepository.getOne(new Tuple<>(user1.getId(), user3.getId())).isPresent());
+        assert (friendshipRepository.saveAll(List.of(new Friendship(user2.getId(), user1.getId()))).getAppliedCount() == 0);
+        assert (friendshipRepository.size() == 2);
+
+        friendshipRepository.delete(new Tuple<>(user1.getId(), user2.getId()));
+        assert (friendshipRepository.getFriendsOf(user1.getId()).equals(List.of(user3)));
+        assert (friendshipRepository.getFriendsOf(user2.getId()).isEmpty());
+
+        try {
+            friendshipRepository.getFriendsOf(null);
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+
+        // The friends from a time range or from a month of any year are found by the dates of the friendships,
+        // in chronological order, following the changes of the dates.
+        friendshipRepository.save(new Friendship(user1.getId(), user2.getId(), LocalDateTime.of(2021, 3, 15, 10, 0)));
+        friendshipRepository.update(new Friendship(user3.getId(), user1.getId(), LocalDateTime.of(2023, 3, 1, 0, 0)));
+        assert (friendshipRepository.getFriendsFromMonth(user1.getId(), Month.MARCH).equals(List.of(user2, user3)));
+        assert (friendshipRepository.getFriendsFromMonth(user3.getId(), Month.APRIL).isEmpty());
+        assert (friendshipRepository.getFriendsBetween(user1.getId(), LocalDateTime.of(2021, 1, 1, 0, 0), LocalDateTime.of(2023, 3, 1, 0, 0)).equals(List.of(user2)));
+
+        VersionedFriendshipRepository versionedRepository = new VersionedFriendshipRepository(userRepository);
+        versionedRepository.saveAll(friendshipRepository.stream().toList());
+        assert (versionedRepository.getFriendsFromMonth(user1.getId(), Month.MARCH).equals(List.of(user2, user3)));
+        assert (versionedRepository.getFriendsBetween(user2.getId(), LocalDateTime.of(2022, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 1, 0, 0)).isEmpty());
+
+        // The friendships are paged in the unsigned order of their IDs, as in the database, after a key in any order.
+        List<User> ordered = new ArrayList<>();
+        for (long high : new long[]{0x1000000000000000L, 0x2000000000000000L, 0x9000000000000000L, 0xa000000000000000L}) {
+            User user = new User("First" + ordered.size(), "Last", "user" + ordered.size() + "@mail.com");
+            user.setId(new UUID(high, 0L));
+            ordered.add(user);
+        }
+        userRepository.saveAll(ordered);
+        Friendship low = new Friendship(ordered.get(0).getId(), ordered.get(1).getId());
+        Friendship high = new Friendship(ordered.get(3).getId(), ordered.get(2).getId());
+        for (FriendshipRepository pagedRepository : List.of(new InMemoryFriendshipRepository(userRepository), new VersionedFriendshipRepository(userRepository))) {
+            pagedRepository.saveAll(List.of(high, low));
+            assert (pagedRepository.page(null, 2, SortOrder.ASCENDING).getContent().equals(List.of(low, high)));
+            assert (pagedRepository.page(new Tuple<>(ordered.get(1).getId(), ordered.get(0).getId()), 2, SortOrder.ASCENDING).getContent().equals(List.of(high)));
+            assert (pagedRepository.page(new Tuple<>(ordered.get(3).getId(), ordered.get(2).getId()), 2, SortOrder.DESCENDING).getContent().equals(List.of(low)));
+        }
+
+        System.out.println("Friendship repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runCachingRepository() throws InterruptedException {
+        Repository<UUID, User> userRepository = new InMemoryRepository<>();
+        CachingRepository<UUID, User> cachingRepository = new CachingRepository<>(userRepository, 2, CachingRepository.NO_EXPIRATION);
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+
+        // Writes go through to the wrapped repository, the least recently used entity being evicted.
+        cachingRepository.save(user1);
+        cachingRepository.save(user2);
+        cachingRepository.save(user3);
+        assert (userRepository.size() == 3);
+        assert (cachingRepository.getCachedCount() == 2 && cachingRepository.getEvictionCount() == 1);
+
+        assert (cachingRepository.getOne(user3.getId()).get().equals(user3));
+        assert (cachingRepository.getHitCount() == 1 && cachingRepository.getMissCount() == 0);
+        assert (cachingRepository.getOne(user1.getId()).get().equals(user1));
+        assert (cachingRepository.getMissCount() == 1);
+
+        // Missing IDs are cached as well.
+        UUID missing = UUID.randomUUID();
+        assert (cachingRepository.getOne(missing).isEmpty());
+        assert (cachingRepository.getOne(missing).isEmpty());
+        assert (cachingRepository.getMissCount() == 2 && cachingRepository.getHitCount() == 2);
+
+        User updated = new User(user1.getId(), "Laurentiu", "Muresan", "laurentiu.muresan@yahoo.com");
+        cachingRepository.update(updated);
+        assert (cachingRepository.getOne(user1.getId()).get().getEmail().equals("laurentiu.muresan@yahoo.com"));
+
+        cachingRepository.delete(user1.getId());
+        assert (cachingRepository.getOne(user1.getId()).isEmpty());
+        assert (userRepository.getOne(user1.getId()).isEmpty());
+
+        // Expired entries are read again from the wrapped repository.
+        CachingRepository<UUID, User> expiringRepository = new CachingRepository<>(userRepository, 10, 1);
+        expiringRepository.getOne(user2.getId());
+        Thread.sleep(5);
+        assert (expiringRepository.getOne(user2.getId()).get().equals(user2));
+        assert (expiringRepository.getMissCount() == 2 && expiringRepository.getHitCount() == 0);
+
+        // The IDs written by a unit of work that is rolled back are read again from the wrapped repository.
+        List<Runnable> rollbackActions = new ArrayList<>();
+        UnitOfWork unitOfWork = new UnitOfWork() {
+            @Override
+            public <T> T run(Supplier<T> work) {
+                try {
+                    return work.get();
+                } catch (RuntimeException exception) {
+                    // Discarding the deletion, then running the actions outside the unit of work.
+                    userRepository.save(user2);
+                    List<Runnable> actions = List.copyOf(rollbackActions);
+                    rollbackActions.clear();
+                    actions.forEach(Runnable::run);
+                    throw exception;
+                }
+            }
+
+            @Override
+            public void onRollback(Runnable action) {
+                rollbackActions.add(action);
+            }
+        };
+        CachingRepository<UUID, User> transactional = new CachingRepository<>(userRepository, 10, CachingRepository.NO_EXPIRATION, unitOfWork);
+        try {
+            unitOfWork.run(() -> {
+                transactional.delete(user2.getId());
+                assert (transactional.getOne(user2.getId()).isEmpty());
+                throw new RepositoryException("Rolled back!");
+            });
+            assert false;
+        } catch (RepositoryException exception) {
+            assert (transactional.getOne(user2.getId()).get().equals(user2));
+        }
+
+        System.out.println("Caching repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runUserRepository() {
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Mariana", "Chiriacescu", "mariana.chiriacescu@mail.com");
+        userRepository.saveAll(List.of(user1, user2, user3));
+
+        assert (new HashSet<>(userRepository.usersLastNameContainsString("iriac")).equals(Set.of(user2, user3)));
+        assert (userRepository.usersLastNameContainsString("escu").equals(List.of(user3)));
+        assert (userRepository.usersLastNameContainsString("Mu").equals(List.of(user1)));
+        assert (userRepository.usersLastNameContainsString("").size() == 3);
+        // having the trigrams of the substring isn't enough, they must be in order
+        assert (userRepository.usersLastNameContainsString("iacChir").isEmpty());
+        assert (userRepository.usersLastNameContainsString("chiriac").isEmpty());
+
+        // the index follows the updates and the deletions
+        userRepository.update(new User(user1.getId(), "Laurentiu", "Chiriac", "laurentiu.chiriac@mail.com"));
+        assert (userRepository.usersLastNameContainsString("Mures").isEmpty());
+        assert (userRepository.usersLastNameContainsString("Chiriac").size() == 3);
+
+        userRepository.delete(user3.getId());
+        assert (userRepository.usersLastNameContainsString("escu").isEmpty());
+        assert (userRepository.usersLastNameContainsString("Chiriac").size() == 2);
+
+        try {
+            userRepository.usersLastNameContainsString(null);
+            assert false;
+        } catch (IllegalArgumentException exception) {
+            assert true;
+        }
+
+        // the secondary indexes follow the changes as well
+        assert (userRepository.usersLastNameStartsWith("Chir").size() == 2 && userRepository.usersLastNameStartsWith("Mur").isEmpty());
+        assert (userRepository.usersWithEmail("laurentiu.chiriac@mail.com").size() == 1 && userRepository.usersWithEmail("laurentiu.muresan@mail.com").isEmpty());
+        User sameEmail = new User("Laur", "Chiriac", "laurentiu.chiriac@mail.com");
+        userRepository.save(sameEmail);
+        assert (userRepository.usersWithEmail("laurentiu.chiriac@mail.com").size() == 2);
+        try {
+            userRepository.save(new User("Marian", "Chiriac", "marian.chiriac@mail.com"));
+            assert false;
+        } catch (RepositoryException exception) {
+            assert true;
+        }
+
+        // a unique email index rejects the users and the updates that would share an email
+        InMemoryUserRepository uniqueRepository = new InMemoryUserRepository(true);
+        uniqueRepository.save(user2);
+        uniqueRepository.save(user3);
+        assert (uniqueRepository.saveAll(List.of(sameEmail, new User("Other", "Name", user2.getEmail()))).getAppliedCount() == 1);
+        try {
+            uniqueRepository.update(new User(user3.getId(), "Mariana", "Chiriacescu", user2.getEmail()));
+            assert false;
+        } catch (RepositoryException exception) {
+            assert (uniqueRepository.getOne(user3.getId()).get().equals(user3));
+        }
+
+        // inserting many users doesn't compare them with all the stored ones
+        InMemoryUserRepository largeRepository = new InMemoryUserRepository(true);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            users.add(new User("First" + i, "Last" + i, "user" + i + "@mail.com"));
+        }
+        assert (largeRepository.saveAll(users).getAppliedCount() == 200_000 && largeRepository.usersLastNameStartsWith("Last19999").size() == 11);
+
+        // users that share a key are added to and removed from its postings in place, not by copying them
+        InMemoryUserRepository sharedRepository = new InMemoryUserRepository();
+        List<User> namesakes = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            namesakes.add(new User("First" + i, "Lungu", "lungu@mail.com"));
+        }
+        long start = System.nanoTime();
+        assert (sharedRepository.saveAll(namesakes).getAppliedCount() == 100_000);
+        sharedRepository.deleteAll(namesakes.subList(0, 50_000).stream().map(User::getId).toList());
+        assert (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assert (sharedRepository.usersLastNameStartsWith("Lun").size() == 50_000 && sharedRepository.usersWithEmail("lungu@mail.com").size() == 50_000);
+
+        System.out.println("User repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runWriteBehindRepository() {
+        Repository<UUID, User> userRepository = new InMemoryRepository<>();
+        WriteBehindRepository<UUID, User> writeBehindRepository = new WriteBehindRepository<>(userRepository, 3, 3_600_000, 10, 100);
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+
+        // The writes stay pending, while being visible to the lookups.
+        assert (writeBehindRepository.save(user1).isEmpty());
+        assert (writeBehindRepository.save(user2).isEmpty());
+        assert (writeBehindRepository.save(user1).get().equals(user1));
+        assert (userRepository.isEmpty() && writeBehindRepository.getPendingCount() == 2);
+        assert (writeBehindRepository.getOne(user2.getId()).get().equals(user2));
+        assert (writeBehindRepository.getAll().spliterator().getExactSizeIfKnown() == 2);
+
+        // The writes on the same ID are coalesced.
+        User updated = new User(user1.getId(), "Laurentiu", "Muresan", "laurentiu.muresan@yahoo.com");
+        assert (writeBehindRepository.update(updated).get().equals(user1));
+        assert (writeBehindRepository.delete(user2.getId()).get().equals(user2));
+        assert (writeBehindRepository.getPendingCount() == 1 && writeBehindRepository.getOne(user2.getId()).isEmpty());
+
+        writeBehindRepository.flush();
+        assert (userRepository.size() == 1 && userRepository.getOne(user1.getId()).get().getEmail().equals("laurentiu.muresan@yahoo.com"));
+        assert (writeBehindRepository.getFlushCount() == 1 && writeBehindRepository.getWrittenCount() == 1);
+
+        // The stored entities and the pending writes are listed together.
+        writeBehindRepository.save(user3);
+        writeBehindRepository.delete(user1.getId());
+        assert (writeBehindRepository.stream().map(User::getId).toList().equals(List.of(user3.getId())));
+
+        // Closing flushes the pending writes and rejects the next ones.
+        writeBehindRepository.close();
+        assert (userRepository.size() == 1 && userRepository.getOne(user3.getId()).isPresent());
+        try {
+            writeBehindRepository.save(user1);
+            assert false;
+        } catch (RepositoryException exception) {
+            assert true;
+        }
+
+        // A user deleted and saved again under another ID keeps its names and email: the deletion is flushed first.
+        InMemoryUserRepository users = new InMemoryUserRepository();
+        users.save(user1);
+        WriteBehindRepository<UUID, User> buffered = new WriteBehindRepository<>(users, 10, 3_600_000, 10, 100);
+        User copy = new User(user1.getFirstName(), user1.getLastName(), user1.getEmail());
+        buffered.delete(user1.getId());
+        assert (buffered.save(copy).isEmpty() && buffered.getOne(copy.getId()).isPresent());
+        buffered.close();
+        assert (users.size() == 1 && users.getOne(copy.getId()).isPresent() && buffered.getRejectedCount() == 0);
+
+        System.out.println("Write-behind repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runAsyncRepository() {
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User updated = new User(user1.getId(), "Laurentiu", "Muresan", "laurentiu.muresan@yahoo.com");
+
+        // A lookup of this ID waits to be released, holding its slot of the executor.
+        UUID blockingId = UUID.randomUUID();
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryUserRepository userRepository = new InMemoryUserRepository() {
+            @Override
+            public Optional<User> getOne(UUID id) throws IllegalArgumentException {
+                if (blockingId.equals(id)) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException interruptedException) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getOne(id);
+            }
+        };
+
+        // The operations on the same ID run in the order they were requested.
+        try (AsyncRepository<UUID, User> asyncRepository = new AsyncRepository<>(userRepository, 4)) {
+            CompletableFuture<Optional<User>> saved = asyncRepository.save(user1);
+            CompletableFuture<Optional<User>> old = asyncRepository.update(updated);
+            CompletableFuture<Optional<User>> current = asyncRepository.getOne(user1.getId());
+            CompletableFuture<Optional<User>> deleted = asyncRepository.delete(user1.getId());
+            CompletableFuture<Optional<User>> missing = asyncRepository.getOne(user1.getId());
+            assert (saved.join().isEmpty() && old.join().get().equals(user1));
+            assert (current.join().get().getEmail().equals("laurentiu.muresan@yahoo.com") && deleted.join().isPresent());
+            assert (missing.join().isEmpty());
+
+            asyncRepository.save(user1).join();
+            asyncRepository.save(user2).join();
+            assert (asyncRepository.getMany(List.of(user2.getId(), UUID.randomUUID(), user1.getId())).join().equals(List.of(user2, user1)));
+        }
+
+        // An operation cancelled before it starts never reaches the repository.
+        try (AsyncRepository<UUID, User> asyncRepository = new AsyncRepository<>(userRepository, 1)) {
+            User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+            CompletableFuture<Optional<User>> blocked = asyncRepository.getOne(blockingId);
+            CompletableFuture<Optional<User>> cancelled = asyncRepository.save(user3);
+            cancelled.cancel(true);
+            release.countDown();
+
+            assert (blocked.join().isEmpty() && asyncRepository.size().join() == 2);
+            assert (cancelled.isCancelled() && userRepository.getOne(user3.getId()).isEmpty());
+        }
+
+        System.out.println("Async repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runSnapshot() throws IOException {
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+        InMemoryFriendshipRepository friendshipRepository = new InMemoryFriendshipRepository(userRepository);
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", null);
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+        User user4 = new User("\u0218tefan", "Dobrescu", "stefan.dobrescu@mail.com");
+        userRepository.saveAll(List.of(user1, user2, user3));
+        Friendship friendship12 = new Friendship(user1.getId(), user2.getId(), LocalDateTime.of(2023, 11, 20, 10, 30, 15));
+        Friendship friendship13 = new Friendship(user3.getId(), user1.getId(), LocalDateTime.of(2023, 12, 1, 8, 0));
+        friendshipRepository.saveAll(List.of(friendship12, friendship13));
+
+        // The snapshot holds the same users and friendships.
+        Path file = Files.createTempFile("snapshot", ".bin");
+        Instant watermark = Instant.parse("2023-12-01T10:15:30.123456Z");
+        Snapshot.write(file, watermark, userRepository.getAll(), friendshipRepository.getAll());
+        Snapshot snapshot = Snapshot.open(file);
+        assert (snapshot.getWatermark().equals(watermark));
+        assert (snapshot.getUserCount() == 3 && snapshot.getFriendshipCount() == 2);
+        assert (snapshot.users().get(user2.getId()).get().equals(user2) && snapshot.users().get(user2.getId()).get().getEmail() == null);
+        assert (snapshot.users().get(user4.getId()).isEmpty());
+        assert (new HashSet<>(snapshot.users().stream().toList()).equals(new HashSet<>(List.of(user1, user2, user3))));
+        assert (snapshot.friendships().get(new Tuple<>(user1.getId(), user3.getId())).get().getFriendshipDate().equals(friendship13.getFriendshipDate()));
+        assert (snapshot.friendships().get(new Tuple<>(user2.getId(), user3.getId())).isEmpty());
+        assert (new HashSet<>(snapshot.friendships().stream().map(Friendship::getId).toList()).equals(Set.of(friendship12.getId(), friendship13.getId())));
+        assert (new HashSet<>(snapshot.friendIdsOf(user1.getId())).equals(Set.of(user2.getId(), user3.getId())));
+
+        // The reads are served from the snapshot along with the changes made after it.
+        SnapshotUserRepository snapshotUserRepository = new SnapshotUserRepository(userRepository);
+        SnapshotFriendshipRepository snapshotFriendshipRepository = new SnapshotFriendshipRepository(friendshipRepository, snapshotUserRepository);
+        userRepository.save(user4);
+        snapshotUserRepository.attach(snapshot, Map.of(user4.getId(), Optional.of(user4)));
+        snapshotFriendshipRepository.attach(snapshot, Map.of());
+        assert (snapshotUserRepository.size() == 4 && snapshotUserRepository.getOne(user4.getId()).get().equals(user4));
+
+        User updated = new User(user3.getId(), "Ion", "Lungu", "ion.lungu@yahoo.com");
+        snapshotUserRepository.update(updated);
+        snapshotUserRepository.delete(user2.getId());
+        assert (snapshotUserRepository.getOne(user3.getId()).get().getEmail().equals("ion.lungu@yahoo.com"));
+        assert (snapshotUserRepository.getOne(user2.getId()).isEmpty() && snapshotUserRepository.size() == 3);
+        assert (new HashSet<>(snapshotUserRepository.stream().toList()).equals(new HashSet<>(userRepository.stream().toList())));
+
+        snapshotFriendshipRepository.delete(new Tuple<>(user2.getId(), user1.getId()));
+        snapshotFriendshipRepository.save(new Friendship(user4.getId(), user1.getId()));
+        assert (snapshotFriendshipRepository.getOne(friendship12.getId()).isEmpty() && snapshotFriendshipRepository.size() == 2);
+        assert (new HashSet<>(snapshotFriendshipRepository.getFriendsOf(user1.getId())).equals(Set.of(updated, user4)));
+
+        // A write made while the changes since the snapshot are read is newer than them.
+        snapshotUserRepository.beginCatchUp();
+        User renamed = new User(user4.getId(), "\u0218tefan", "Dobrescu", "stefan.dobrescu@yahoo.com");
+        snapshotUserRepository.update(renamed);
+        snapshotUserRepository.attach(snapshot, Map.of(user4.getId(), Optional.of(user4), user3.getId(), Optional.of(updated), user2.getId(), Optional.empty()));
+        assert (snapshotUserRepository.getOne(user4.getId()).get().getEmail().equals("stefan.dobrescu@yahoo.com"));
+        assert (snapshotUserRepository.getOne(user2.getId()).isEmpty() && snapshotUserRepository.size() == 3);
+
+        // A write of a unit of work that is rolled back is read again once the rollback discarded it.
+        List<Runnable> rollbackActions = new ArrayList<>();
+        UnitOfWork unitOfWork = new UnitOfWork() {
+            @Override
+            public <T> T run(Supplier<T> work) {
+                try {
+                    return work.get();
+                } catch (RuntimeException exception) {
+                    // Discarding the deletion, then running the actions outside the unit of work.
+                    userRepository.save(user1);
+                    List<Runnable> actions = List.copyOf(rollbackActions);
+                    rollbackActions.clear();
+                    actions.forEach(Runnable::run);
+                    throw exception;
+                }
+            }
+
+            @Override
+            public void onRollback(Runnable action) {
+                rollbackActions.add(action);
+            }
+        };
+        SnapshotUserRepository transactional = new SnapshotUserRepository(userRepository, unitOfWork);
+        transactional.attach(snapshot, Map.of());
+        try {
+            unitOfWork.run(() -> {
+                transactional.delete(user1.getId());
+                throw new RepositoryException("Rolled back!");
+            });
+            assert false;
+        } catch (RepositoryException exception) {
+            assert (transactional.getOne(user1.getId()).get().equals(user1));
+        }
+
+        // A corrupted file is rejected.
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 30));
+        try {
+            Snapshot.open(file);
+            assert false;
+        } catch (IOException exception) {
+            assert true;
+        }
+        Files.delete(file);
+
+        System.out.println("Snapshot tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runFileRepository() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("file-repository");
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+        User updated = new User(user3.getId(), "Ion", "Lungu", "ion.lungu@yahoo.com");
+
+        FileUserRepository userRepository = new FileUserRepository(directory.resolve("users"));
+        FileFriendshipRepository friendshipRepository = new FileFriendshipRepository(directory.resolve("friendships"), userRepository);
+        assert (userRepository.saveAll(List.of(user1, user2, user3)).getAppliedCount() == 3);
+        userRepository.update(updated);
+        userRepository.delete(user2.getId());
+        friendshipRepository.save(new Friendship(user3.getId(), user1.getId()));
+        friendshipRepository.save(new Friendship(user1.getId(), user2.getId()));
+        friendshipRepository.delete(new Tuple<>(user2.getId(), user1.getId()));
+        userRepository.close();
+        friendshipRepository.close();
+
+        // The changes are replayed from the logs.
+        userRepository = new FileUserRepository(directory.resolve("users"));
+        friendshipRepository = new FileFriendshipRepository(directory.resolve("friendships"), userRepository);
+        assert (userRepository.size() == 2 && userRepository.getOne(user3.getId()).get().getEmail().equals("ion.lungu@yahoo.com"));
+        assert (userRepository.getOne(user2.getId()).isEmpty() && userRepository.usersLastNameContainsString("Mure").equals(List.of(user1)));
+        assert (friendshipRepository.size() == 1 && friendshipRepository.getFriendsOf(user1.getId()).equals(List.of(updated)));
+
+        // Concurrent writers share the syncs, and the compaction keeps the entities.
+        FileUserRepository repository = userRepository;
+        long appendsBefore = repository.getAppendCount();
+        long syncsBefore = repository.getSyncCount();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int writer = i;
+            writers.add(new Thread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    repository.save(new User("First" + writer, "Last" + j, "user" + writer + "." + j + "@mail.com"));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        assert (userRepository.size() == 402 && userRepository.getAppendCount() - appendsBefore == 400);
+        assert (userRepository.getSyncCount() - syncsBefore < 400);
+        userRepository.compact();
+        userRepository.delete(user1.getId());
+        userRepository.close();
+        try {
+            userRepository.save(user1);
+            assert false;
+        } catch (RepositoryException exception) {
+            assert true;
+        }
+
+        // A change partially written during a crash is discarded.
+        Path log;
+        try (var files = Files.list(directory.resolve("users"))) {
+            assert (files.filter(file -> file.getFileName().toString().startsWith("snapshot")).count() == 1);
+        }
+        try (var files = Files.list(directory.resolve("users"))) {
+            log = files.filter(file -> file.getFileName().toString().startsWith("log")).max(Comparator.naturalOrder()).get();
+        }
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2}, java.nio.file.StandardOpenOption.APPEND);
+        userRepository = new FileUserRepository(directory.resolve("users"));
+        assert (userRepository.size() == 401 && userRepository.getOne(user1.getId()).isEmpty());
+        userRepository.save(user1);
+        userRepository.close();
+        userRepository = new FileUserRepository(directory.resolve("users"));
+        assert (userRepository.size() == 402);
+        userRepository.close();
+        friendshipRepository.close();
+
+        System.out.println("File repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runOffHeapUserRepository() {
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+
+        OffHeapUserRepository repository = new OffHeapUserRepository();
+        assert (repository.isEmpty() && repository.getOne(user1.getId()).isEmpty());
+        assert (repository.save(user1).isEmpty() && repository.save(user2).isEmpty() && repository.save(user3).isEmpty());
+        assert (repository.save(user1).get().equals(user1) && repository.size() == 3);
+        try {
+            repository.save(new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com"));
+            assert false;
+        } catch (RepositoryException exception) {
+            assert true;
+        }
+
+        // Updates are done in place if the user fits, otherwise the user is moved.
+        User shorter = new User(user3.getId(), "Ion", "Lungu", "ion@mail.com");
+        User longer = new User(user3.getId(), "Ion", "Lungu", "ion.lungu.longer.address@mail.com");
+        long used = repository.getUsedBytes();
+        assert (repository.update(shorter).get().equals(user3) && repository.getUsedBytes() == used);
+        assert (repository.update(longer).get().equals(shorter) && repository.getFreeBytes() > 0);
+        assert (repository.getOne(user3.getId()).get().getEmail().equals("ion.lungu.longer.address@mail.com"));
+        assert (repository.delete(user2.getId()).get().equals(user2) && repository.delete(user2.getId()).isEmpty());
+        assert (repository.save(user2).isEmpty() && repository.getOne(user2.getId()).get().equals(user2));
+
+        // A user can't be updated to the names and email of another one, but can keep its own.
+        try {
+            repository.update(new User(user2.getId(), "Laurentiu", "Muresan", "laurentiu.muresan@mail.com"));
+            assert false;
+        } catch (RepositoryException exception) {
+            assert (repository.getOne(user2.getId()).get().getFirstName().equals("Marian"));
+        }
+        assert (repository.update(user2).isPresent() && repository.size() == 3);
+
+        // Pages follow the unsigned order of the IDs.
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            User user = new User("First" + i, "Last" + i, "user" + i + "@mail.com");
+            repository.save(user);
+            ids.add(user.getId());
+        }
+        ids.addAll(List.of(user1.getId(), user2.getId(), user3.getId()));
+        ids.sort((id1, id2) -> {
+            int comparison = Long.compareUnsigned(id1.getMostSignificantBits(), id2.getMostSignificantBits());
+            return comparison != 0 ? comparison : Long.compareUnsigned(id1.getLeastSignificantBits(), id2.getLeastSignificantBits());
+        });
+        List<UUID> paged = new ArrayList<>();
+        Page<UUID, User> page = repository.page(null, 700, SortOrder.ASCENDING);
+        page.getContent().forEach(user -> paged.add(user.getId()));
+        while (page.hasNext()) {
+            page = repository.page(page.getNextKey().get(), 700, SortOrder.ASCENDING);
+            page.getContent().forEach(user -> paged.add(user.getId()));
+        }
+        assert (paged.equals(ids));
+        assert (repository.page(ids.get(10), 3, SortOrder.DESCENDING).getContent().stream().map(User::getId).toList().equals(List.of(ids.get(9), ids.get(8), ids.get(7))));
+
+        // Deleting most users frees their blocks, which are released by the defragmentation.
+        for (int i = 0; i < 4000; i++) {
+            repository.delete(ids.get(i));
+        }
+        repository.defragment();
+        assert (repository.size() == 1003 && repository.getFreeBytes() == 0 && repository.getDefragmentationCount() == 1);
+        assert (repository.stream().count() == 1003 && repository.getOne(ids.get(4000)).isPresent() && repository.getOne(ids.get(0)).isEmpty());
+
+        System.out.println("Off-heap user repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runConcurrentRepository() throws InterruptedException {
+        UniqueIndex<String, UUID, User> emails = new UniqueIndex<>("email", User::getEmail);
+        ConcurrentInMemoryRepository<UUID, User> repository = new ConcurrentInMemoryRepository<>(Friendship::compareIds, List.of(emails));
+
+        // Threads racing for the same email: exactly one of them stores its user.
+        List<Thread> threads = new ArrayList<>();
+        int[] saved = new int[1];
+        for (int i = 0; i < 8; i++) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                try {
+                    if (repository.save(new User("First" + thread, "Last", "same@mail.com")).isEmpty()) {
+                        synchronized (saved) {
+                            saved[0]++;
+                        }
+                    }
+                } catch (RepositoryException exception) {
+                    assert (exception.getMessage().contains("email"));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assert (saved[0] == 1 && repository.size() == 1);
+
+        // Threads saving, updating and deleting users from a shared pool of IDs and emails.
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        threads.clear();
+        for (int i = 0; i < 8; i++) {
+            Random random = new Random(i);
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 20_000; j++) {
+                    UUID id = ids.get(random.nextInt(ids.size()));
+                    User user = new User(id, "First", "Last", "user" + random.nextInt(48) + "@mail.com");
+                    try {
+                        switch (random.nextInt(3)) {
+                            case 0 -> repository.save(user);
+                            case 1 -> repository.update(user);
+                            default -> repository.delete(id);
+                        }
+                    } catch (RepositoryException exception) {
+                        // The ID is missing or the email is taken.
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // The index, the paging and the entities agree, and no email is shared.
+        List<User> users = new ArrayList<>();
+        repository.getAll().forEach(users::add);
+        assert (users.stream().map(User::getEmail).distinct().count() == users.size());
+        for (User user : users) {
+            assert (repository.findBy(emails, user.getEmail()).equals(List.of(user)));
+        }
+        for (int i = 0; i < 48; i++) {
+            List<User> found = repository.findBy(emails, "user" + i + "@mail.com");
+            assert (found.isEmpty() || users.contains(found.get(0)));
+        }
+        assert (repository.page(null, 1000, SortOrder.ASCENDING).getContent().size() == repository.size());
+
+        System.out.println("Concurrent repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
+
+    public static void runVersionedRepository() throws InterruptedException {
+        // The versions of a persistent map stay unchanged, and the latest one matches a sorted map.
+        Random random = new Random(7);
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty(null);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentTreeMap<Integer, Integer> early = null;
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                map = map.put(key, i);
+                expected.put(key, i);
+            }
+            if (i == 100) {
+                early = map;
+            }
+        }
+        assert (map.size() == expected.size() && map.keys().toList().equals(new ArrayList<>(expected.keySet())));
+        assert (early.size() <= 101 && early.values().allMatch(value -> value <= 100));
+        List<Integer> descending = new ArrayList<>();
+        map.iterator(1_000, true).forEachRemaining(entry -> descending.add(entry.getKey()));
+        assert (descending.equals(new ArrayList<>(expected.headMap(1_000, false).descendingKeySet())));
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+        VersionedRepository<UUID, User> userRepository = new VersionedRepository<>(Friendship::compareIds, List.of());
+        VersionedFriendshipRepository friendshipRepository = new VersionedFriendshipRepository(userRepository);
+        userRepository.saveAll(List.of(user1, user2, user3));
+        friendshipRepository.save(new Friendship(user1.getId(), user2.getId()));
+        friendshipRepository.save(new Friendship(user3.getId(), user1.getId()));
+
+        // A snapshot keeps the users and the friendships of its point in time.
+        Tuple<Repository<UUID, User>, FriendshipRepository> snapshot = friendshipRepository.snapshotWithUsers();
+        userRepository.delete(user2.getId());
+        friendshipRepository.delete(new Tuple<>(user2.getId(), user1.getId()));
+        userRepository.update(new User(user3.getId(), "Ion", "Lungu", "ion.lungu@yahoo.com"));
+        assert (snapshot.getLeft().size() == 3 && snapshot.getRight().size() == 2);
+        assert (new HashSet<>(snapshot.getRight().getFriendsOf(user1.getId())).equals(Set.of(user2, user3)));
+        assert (snapshot.getLeft().getOne(user3.getId()).get().getEmail().equals("ion.lungu@mail.com"));
+        assert (snapshot.getRight().getOne(new Tuple<>(user2.getId(), user1.getId())).isPresent());
+        assert (userRepository.size() == 2 && friendshipRepository.getFriendsOf(user1.getId()).size() == 1);
+        try {
+            snapshot.getLeft().save(user2);
+            assert false;
+        } catch (RepositoryException exception) {
+            assert true;
+        }
+
+        // A long read of a snapshot sees a consistent network while a writer keeps changing it.
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2_000; i++) {
+                User user = new User("First" + i, "Last" + i, "user" + i + "@mail.com");
+                userRepository.save(user);
+                friendshipRepository.save(new Friendship(user.getId(), user1.getId()));
+                friendshipRepository.delete(new Tuple<>(user.getId(), user1.getId()));
+                userRepository.delete(user.getId());
+            }
+        });
+        writer.start();
+        for (int round = 0; round < 50; round++) {
+            Tuple<Repository<UUID, User>, FriendshipRepository> view = friendshipRepository.snapshotWithUsers();
+            Set<UUID> ids = new HashSet<>();
+            view.getLeft().stream().forEach(user -> ids.add(user.getId()));
+            assert (view.getRight().stream().allMatch(friendship -> ids.contains(friendship.getId().getLeft()) && ids.contains(friendship.getId().getRight())));
+        }
+        writer.join();
+        assert (userRepository.size() == 2 && friendshipRepository.size() == 1);
+
+        // The pages of a version follow the order of the IDs.
+        Page<UUID, User> page = userRepository.page(null, 1, SortOrder.DESCENDING);
+        assert (page.hasNext() && userRepository.page(page.getNextKey().get(), 1, SortOrder.DESCENDING).getContent().size() == 1);
+
+        // The friendships of a user are deleted at once, leaving the snapshots taken before unchanged.
+        FriendshipRepository before = friendshipRepository.snapshotWithUsers().getRight();
+        assert (friendshipRepository.deleteFriendshipsOf(user1.getId()).size() == 1);
+        assert (friendshipRepository.isEmpty() && before.getFriendsOf(user1.getId()).get(0).getId().equals(user3.getId()));
+
+        System.out.println("Versioned repository tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
 }
@@ -2,12 +2,27 @@ import ro.ubbcluj.map.socialnetworkfx.entity.Friendship;
 import ro.ubbcluj.map.socialnetworkfx.entity.Tuple;
 import ro.ubbcluj.map.socialnetworkfx.entity.User;
 import ro.ubbcluj.map.socialnetworkfx.exception.ServiceException;
+import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryFriendshipRepository;
 import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.InMemoryUserRepository;
+import ro.ubbcluj.map.socialnetworkfx.repository.UnitOfWork;
+import ro.ubbcluj.map.socialnetworkfx.service.AsyncService;
 import ro.ubbcluj.map.socialnetworkfx.service.Service;
+import ro.ubbcluj.map.socialnetworkfx.utility.TaskExecutor;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class TestService {
     public static void run() {
@@ -48,6 +63,10 @@ public class TestService {
 
         service.addUser("Mariana", "Chiriac", "mariana.chiriac@mail.com");
 
+        // searching by last name without a search index
+        assert (service.usersWithStringInLastName("hiri").size() == 1);
+        assert (service.usersWithStringInLastName("").size() == 2);
+
         // adding a friendship
         User user1 = service.getUsers().get(0);
         User user2 = service.getUsers().get(service.getUsers().size() - 1);
@@ -99,8 +118,16 @@ public class TestService {
         User friend2 = service.getUsers().get(service.getUsers().size() - 1);
         service.addFriendship(friend1.getId(), friend2.getId());
 
-        Friendship removedFriendship = service.removeFriendship(friend1.getId(), friend2.getId());
-        assert (removedFriendship.getId().getLeft().equals(friend1.getId()));
+        // the friendship can't be added again in the reversed order
+        try {
+            service.addFriendship(friend2.getId(), friend1.getId());
+            assert false;
+        } catch (ServiceException sE) {
+            assert true;
+        }
+
+        Friendship removedFriendship = service.removeFriendship(friend2.getId(), friend1.getId());
+        assert (removedFriendship.getId().equals(Friendship.key(friend1.getId(), friend2.getId())));
         assert (service.getFriendships().isEmpty());
 
         assert service.friendsFromMonth(friend1.getId(), "10").isEmpty();
@@ -116,4 +143,85 @@ public class TestService {
 
         System.out.println("Service tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
     }
+
+    public static void runAsyncService() {
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+        InMemoryFriendshipRepository friendshipRepository = new InMemoryFriendshipRepository(userRepository);
+        Service service = new Service(userRepository, friendshipRepository);
+
+        User user1 = new User("Laurentiu", "Muresan", "laurentiu.muresan@mail.com");
+        User user2 = new User("Marian", "Chiriac", "marian.chiriac@mail.com");
+        User user3 = new User("Ion", "Lungu", "ion.lungu@mail.com");
+
+        try (AsyncService asyncService = new AsyncService(service, 4)) {
+            asyncService.addUsers(List.of(user1, user2, user3)).join();
+            asyncService.addFriendship(user1.getId(), user2.getId()).join();
+            asyncService.addFriendship(user3.getId(), user1.getId()).join();
+
+            // the friends of several users are retrieved at the same time, keeping the order of the users
+            Map<UUID, List<User>> friendsOf = asyncService.getFriendsOf(List.of(user2.getId(), user1.getId(), user3.getId())).join();
+            assert (List.copyOf(friendsOf.keySet()).equals(List.of(user2.getId(), user1.getId(), user3.getId())));
+            assert (friendsOf.get(user1.getId()).size() == 2 && friendsOf.get(user2.getId()).equals(List.of(user1)));
+
+            // the operations on the same user run in the order they were requested
+            User updated = new User(user2.getId(), "Marian", "Chiriacescu", "marian.chiriacescu@mail.com");
+            CompletableFuture<User> old = asyncService.updateUser(updated);
+            CompletableFuture<User> current = asyncService.getUser(user2.getId());
+            CompletableFuture<User> removed = asyncService.removeUser(user2.getId());
+            CompletableFuture<User> missing = asyncService.getUser(user2.getId());
+
+            assert (old.join().equals(user2) && current.join().equals(updated) && removed.join().equals(updated));
+            try {
+                missing.join();
+                assert false;
+            } catch (CompletionException exception) {
+                assert (exception.getCause() instanceof ServiceException);
+            }
+            assert (asyncService.getFriendsOf(user1.getId()).join().equals(List.of(user3)));
+        }
+
+        // removing a user deletes all of its friendships in a single unit of work,
+        // including the friendships with users that are no longer stored
+        AtomicInteger works = new AtomicInteger();
+        Service cascading = new Service(userRepository, friendshipRepository, new UnitOfWork() {
+            @Override
+            public <T> T run(Supplier<T> work) {
+                works.incrementAndGet();
+                return work.get();
+            }
+        });
+        User user4 = new User("Ana", "Pop", "ana.pop@mail.com");
+        cascading.addUsers(List.of(user4));
+        cascading.addFriendship(user4.getId(), user1.getId());
+        cascading.addFriendship(user3.getId(), user4.getId());
+        userRepository.delete(user3.getId());
+
+        assert (cascading.removeUser(user4.getId()).equals(user4) && works.get() == 1);
+        assert (friendshipRepository.getFriendIdsOf(user4.getId()).isEmpty());
+        assert (friendshipRepository.getOne(Friendship.key(user3.getId(), user4.getId())).isEmpty());
+        assert (friendshipRepository.getFriendIdsOf(user1.getId()).equals(Set.of(user3.getId())));
+
+        // a task cancelled before it starts never runs
+        try (TaskExecutor executor = new TaskExecutor(1)) {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicBoolean ran = new AtomicBoolean(false);
+
+            CompletableFuture<Boolean> blocking = executor.submit(() -> {
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException interruptedException) {
+                    return false;
+                }
+            });
+            CompletableFuture<Boolean> cancelled = executor.submit(() -> ran.getAndSet(true));
+            cancelled.cancel(true);
+            release.countDown();
+
+            assert (blocking.join());
+            assert (executor.submit(() -> true).join());
+            assert (cancelled.isCancelled() && !ran.get());
+        }
+
+        System.out.println("Async service tests passed at: " + DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss").format(LocalDateTime.now()));
+    }
 }